@@ -0,0 +1,53 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import rhythmbox.benchmarks.AggregationBenchmark;
+
+/**
+ * Computes the statistics of the library for AggregationBenchmark.
+ */
+public class AggregationBenchmarkTarget extends LibraryBenchmarkTarget 
+	implements AggregationBenchmark.Target
+{
+	@Override
+	public long aggregateLibrary(String mode) throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = getParser();
+		SongField[] groupBy = {SongField.ARTIST, SongField.ALBUM, 
+				SongField.GENRE};
+		LibraryStatistics statistics;
+		switch (mode)
+		{
+			case "sequential":
+				statistics = LibraryStatistics.compute(parser.returnSongs(), 1, 
+						groupBy);
+				break;
+			case "parallel":
+				statistics = parser.aggregateSongs(groupBy);
+				break;
+			case "parse":
+				parser.parseLibrary();
+				statistics = parser.aggregateSongs(groupBy);
+				break;
+			default:
+				statistics = parser.aggregateLibrary(groupBy);
+		}
+		return statistics.getTotal().getTrackCount();
+	}
+}
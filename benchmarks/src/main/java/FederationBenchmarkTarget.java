@@ -0,0 +1,45 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.List;
+
+import rhythmbox.benchmarks.FederationBenchmark;
+
+/**
+ * Parses several libraries with a LibraryFederation for 
+ * FederationBenchmark.
+ */
+public class FederationBenchmarkTarget extends LibraryBenchmarkTarget 
+	implements FederationBenchmark.Target
+{
+	@Override
+	public int parseLibraries(List<String> libLocations, String engine, 
+			int parallelism) throws Exception
+	{
+		LibraryFederation federation = new LibraryFederation();
+		federation.setParseEngine(ParseEngine.valueOf(engine));
+		federation.setParallelism(parallelism);
+		FederatedLibrary federated = federation.parseLibraries(libLocations);
+		if (!federated.getFailures().isEmpty())
+		{
+			throw federated.getFailures().values().iterator().next();
+		}
+		return federated.getMerged().size();
+	}
+}
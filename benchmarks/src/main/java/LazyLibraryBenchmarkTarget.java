@@ -0,0 +1,53 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.List;
+
+import rhythmbox.benchmarks.LazyLibraryBenchmark;
+
+/**
+ * Reads the library and browses some of its songs for 
+ * LazyLibraryBenchmark.
+ */
+public class LazyLibraryBenchmarkTarget extends LibraryBenchmarkTarget 
+	implements LazyLibraryBenchmark.Target
+{
+	@Override
+	public long browseLibrary(boolean lazy, int browsed) throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = getParser();
+		List<Song> songs;
+		if (lazy)
+		{
+			songs = parser.parseLibraryLazily().asList();
+		}
+		else
+		{
+			parser.parseLibrary();
+			songs = parser.returnSongs();
+		}
+		long bitRates = 0;
+		int step = Math.max(1, songs.size() / browsed);
+		for (int row = 0; row < songs.size(); row += step)
+		{
+			bitRates += songs.get(row).getBitRate();
+		}
+		return bitRates;
+	}
+}
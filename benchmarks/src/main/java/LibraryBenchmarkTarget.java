@@ -0,0 +1,102 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.IOException;
+import java.io.Writer;
+
+import rhythmbox.benchmarks.BenchmarkTarget;
+
+/**
+ * Lets the benchmarks, which cannot import classes from the default package,
+ * use the parser. The targets of the benchmarks that use more of it extend 
+ * this class.
+ */
+public class LibraryBenchmarkTarget implements BenchmarkTarget 
+{
+	//The parser of the benchmarked library.
+	private RhythmboxXMLLibraryParser parser;
+
+	public LibraryBenchmarkTarget()
+	{
+		parser = null;
+	}
+
+	@Override
+	public void generate(String libLocation, int entries, long seed) 
+			throws IOException
+	{
+		new LibraryGenerator(seed).generate(libLocation, entries);
+	}
+
+	@Override
+	public void generate(String libLocation, int entries, long seed, 
+			double ignoreFraction) throws IOException
+	{
+		LibraryGenerator generator = new LibraryGenerator(seed);
+		generator.setEntryFractions(ignoreFraction, 0.05, 0.01);
+		generator.generate(libLocation, entries);
+	}
+
+	@Override
+	public void open(String libLocation, String engine)
+	{
+		parser = new RhythmboxXMLLibraryParser(libLocation);
+		parser.setParseEngine(ParseEngine.valueOf(engine));
+	}
+
+	@Override
+	public int parseLibrary() throws Exception
+	{
+		parser.parseLibrary();
+		return parser.returnSongs().size();
+	}
+
+	/**
+	 * @return The parser of the benchmarked library, which is null until it
+	 * is opened.
+	 */
+	protected RhythmboxXMLLibraryParser getParser()
+	{
+		return parser;
+	}
+
+	/**
+	 * @return A Writer that discards what is written to it.
+	 */
+	protected static Writer discard()
+	{
+		return new Writer()
+		{
+			@Override
+			public void write(char[] cbuf, int off, int len)
+			{
+			}
+
+			@Override
+			public void flush()
+			{
+			}
+
+			@Override
+			public void close()
+			{
+			}
+		};
+	}
+}
@@ -0,0 +1,74 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.Writer;
+
+import rhythmbox.benchmarks.LibraryDiffBenchmark;
+
+/**
+ * Diffs the library with a rewritten version of it for 
+ * LibraryDiffBenchmark.
+ */
+public class LibraryDiffBenchmarkTarget extends RewriteBenchmarkTarget 
+	implements LibraryDiffBenchmark.Target
+{
+	//Discards the changes.
+	private Writer discard;
+
+	public LibraryDiffBenchmarkTarget()
+	{
+		discard = discard();
+	}
+
+	@Override
+	public long diffLibrary(String newLocation, boolean streaming) throws 
+		Exception
+	{
+		RhythmboxXMLLibraryParser parser = getParser();
+		if (streaming)
+		{
+			return new LibraryDiff(parser.getLibLocation(), newLocation)
+					.writeChanges(discard);
+		}
+		parser.parseLibrary();
+		RhythmboxXMLLibraryParser newParser = 
+				new RhythmboxXMLLibraryParser(newLocation);
+		newParser.setParseEngine(parser.getParseEngine());
+		newParser.parseLibrary();
+		LibraryChange change = LibraryChange.between(parser.returnSongs(), 
+				newParser.returnSongs());
+		SongExporter exporter = new SongExporter(discard, 
+				ExportFormat.JSON_LINES);
+		for (int i = 0; i < change.getModifiedSongs().size(); i++)
+		{
+			exporter.exportChange("modified", change.getModifiedSongs().get(i),
+					change.getPreviousSongs().get(i));
+		}
+		for (Song song : change.getAddedSongs())
+		{
+			exporter.exportChange("added", song, null);
+		}
+		for (Song song : change.getRemovedSongs())
+		{
+			exporter.exportChange("removed", song, null);
+		}
+		exporter.flush();
+		return exporter.getSongCount();
+	}
+}
@@ -0,0 +1,50 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import rhythmbox.benchmarks.QueryBenchmark;
+
+/**
+ * Queries the parsed songs for QueryBenchmark.
+ */
+public class QueryBenchmarkTarget extends LibraryBenchmarkTarget 
+	implements QueryBenchmark.Target
+{
+	@Override
+	public int queryRockRatedHighBitRate(boolean indexed)
+	{
+		RhythmboxXMLLibraryParser parser = getParser();
+		if (indexed)
+		{
+			return parser.querySongs(SongQuery.and(
+					SongQuery.eq(SongField.GENRE, "Rock"), 
+					SongQuery.atLeast(SongField.RATING, 4), 
+					SongQuery.atLeast(SongField.BIT_RATE, 256))).size();
+		}
+		int count = 0;
+		for (Song song : parser.returnSongs())
+		{
+			if (song.getGenre().equalsIgnoreCase("Rock") && 
+					song.getRating() >= 4 && song.getBitRate() >= 256)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,65 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rhythmbox.benchmarks.RewriteBenchmark;
+
+/**
+ * Rewrites the library with updates to some of its songs for 
+ * RewriteBenchmark.
+ */
+public class RewriteBenchmarkTarget extends LibraryBenchmarkTarget 
+	implements RewriteBenchmark.Target
+{
+	//The updates that the library is rewritten with, and how many songs 
+	//they were made for.
+	private Map<String, SongUpdate> updates;
+	private int updateCount;
+
+	public RewriteBenchmarkTarget()
+	{
+		updates = new HashMap<String, SongUpdate>();
+		updateCount = 0;
+	}
+
+	@Override
+	public int rewriteLibrary(String outLocation, int updates) throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = getParser();
+		if (updateCount != updates)
+		{
+			updateCount = updates;
+			this.updates.clear();
+			List<Song> songs = parser.returnSongs();
+			for (int i = 0; this.updates.size() < updates && i < songs.size(); 
+					i++)
+			{
+				Song song = songs.get(i);
+				this.updates.put(song.getLocation(), new SongUpdate()
+						.setRating((song.getRating() + 1) % 6)
+						.setPlayCount(song.getPlayCount() + 1));
+			}
+		}
+		return new LibraryRewriter(parser.getLibLocation())
+				.rewrite(this.updates, outLocation);
+	}
+}
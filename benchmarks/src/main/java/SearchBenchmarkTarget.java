@@ -0,0 +1,54 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+
+import rhythmbox.benchmarks.SearchBenchmark;
+
+/**
+ * Searches the parsed songs by title for SearchBenchmark.
+ */
+public class SearchBenchmarkTarget extends LibraryBenchmarkTarget 
+	implements SearchBenchmark.Target
+{
+	@Override
+	public String[] returnTitles()
+	{
+		ArrayList<Song> songs = getParser().returnSongs();
+		String[] titles = new String[songs.size()];
+		for (int i = 0; i < titles.length; i++)
+		{
+			titles[i] = songs.get(i).getTitle();
+		}
+		return titles;
+	}
+
+	@Override
+	public boolean searchForSongByTitle(String title)
+	{
+		try
+		{
+			return getParser().searchForSongByTitle(title) != null;
+		}
+		catch (SongNotFoundException e)
+		{
+			return false;
+		}
+	}
+}
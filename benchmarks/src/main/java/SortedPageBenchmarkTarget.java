@@ -0,0 +1,59 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import rhythmbox.benchmarks.SortedPageBenchmark;
+
+/**
+ * Lists a page of the songs in a sorted order for SortedPageBenchmark.
+ */
+public class SortedPageBenchmarkTarget extends LibraryBenchmarkTarget 
+	implements SortedPageBenchmark.Target
+{
+	@Override
+	public long pageSortedSongs(boolean indexed, int offset, int limit)
+	{
+		RhythmboxXMLLibraryParser parser = getParser();
+		List<Song> page;
+		if (indexed)
+		{
+			page = parser.returnSortIndex().page(SongOrder.ARTIST, offset, limit);
+		}
+		else
+		{
+			List<Song> songs = new ArrayList<Song>(parser.returnSongs());
+			songs.sort(Comparator.comparing(Song::getArtist, 
+					String.CASE_INSENSITIVE_ORDER)
+					.thenComparing(Song::getAlbum, String.CASE_INSENSITIVE_ORDER)
+					.thenComparingInt(Song::getDiscNumber)
+					.thenComparingInt(Song::getTrackNumber));
+			page = songs.subList(Math.min(offset, songs.size()), 
+					Math.min(offset + limit, songs.size()));
+		}
+		long bitRates = 0;
+		for (Song song : page)
+		{
+			bitRates += song.getBitRate();
+		}
+		return bitRates;
+	}
+}
@@ -0,0 +1,91 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks per-artist, per-album and per-genre statistics computed from 
+ * the parsed songs on one thread and in parallel, and computed after a parse
+ * against while parsing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark 
+{
+	@Param({"100000", "1000000"})
+	public int entries;
+
+	@Param({"sequential", "parallel", "parse", "streaming"})
+	public String mode;
+
+	private Target target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, 
+				"AggregationBenchmarkTarget");
+		target.open(GeneratedLibraries.locate(target, entries), "MAPPED");
+		target.parseLibrary();
+	}
+
+	@Benchmark
+	public long aggregateLibrary() throws Exception
+	{
+		return target.aggregateLibrary(mode);
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * AggregationBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends BenchmarkTarget
+	{
+		/**
+		 * Computes the statistics of the library grouped by artist, album and 
+		 * genre.
+		 * @param mode "sequential" or "parallel" to aggregate the parsed songs 
+		 * on one thread or on every processor, "parse" to parse the library and
+		 * then aggregate its songs in parallel, or "streaming" to aggregate the
+		 * songs while the library is parsed
+		 * @return the number of songs
+		 * @throws Exception
+		 */
+		long aggregateLibrary(String mode) throws Exception;
+	}
+}
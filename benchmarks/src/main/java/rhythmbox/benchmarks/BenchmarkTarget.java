@@ -0,0 +1,96 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.io.IOException;
+
+/**
+ * The operations of the parser that every benchmark uses. The parser is in 
+ * the default package, which benchmarks cannot be in or import from, so they
+ * use it through this interface, which LibraryBenchmarkTarget implements. A 
+ * benchmark that uses more of the parser adds its operations in its own 
+ * Target interface, which a class named after the benchmark implements next 
+ * to the parser, such as SearchBenchmarkTarget for SearchBenchmark.
+ */
+public interface BenchmarkTarget 
+{
+	/**
+	 * Writes a generated library to a file.
+	 * @param libLocation the location of the file
+	 * @param entries the number of entries in the library
+	 * @param seed the seed that the library is generated from
+	 * @throws IOException
+	 */
+	void generate(String libLocation, int entries, long seed) throws IOException;
+
+	/**
+	 * Writes a generated library to a file.
+	 * @param libLocation the location of the file
+	 * @param entries the number of entries in the library
+	 * @param seed the seed that the library is generated from
+	 * @param ignoreFraction the fraction of the entries that are ignore 
+	 * entries
+	 * @throws IOException
+	 */
+	void generate(String libLocation, int entries, long seed, 
+			double ignoreFraction) throws IOException;
+
+	/**
+	 * Creates the parser of a library.
+	 * @param libLocation the location of the library
+	 * @param engine the name of the parse engine
+	 */
+	void open(String libLocation, String engine);
+
+	/**
+	 * Calls parseLibrary().
+	 * @return the number of songs that were parsed
+	 * @throws Exception
+	 */
+	int parseLibrary() throws Exception;
+
+	/**
+	 * Loads the implementation of this interface next to the parser.
+	 * @return a new target
+	 */
+	static BenchmarkTarget load()
+	{
+		return load(BenchmarkTarget.class, "LibraryBenchmarkTarget");
+	}
+
+	/**
+	 * Loads the implementation of a benchmark's target next to the parser.
+	 * @param type the interface of the target
+	 * @param className the name of the class that implements it
+	 * @return a new target
+	 */
+	static <T extends BenchmarkTarget> T load(Class<T> type, String className)
+	{
+		try
+		{
+			return type.cast(Class.forName(className).getDeclaredConstructor()
+					.newInstance());
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("The parser could not be loaded", e);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks finding the copies of the same tracks in a parsed library on 
+ * one thread and on several, on libraries ten times apart in size to show 
+ * how the time grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicateBenchmark 
+{
+	@Param({"100000", "1000000"})
+	public int entries;
+
+	@Param({"1", "4"})
+	public int parallelism;
+
+	private Target target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, "DuplicateBenchmarkTarget");
+		target.open(GeneratedLibraries.locate(target, entries), "MAPPED");
+		target.parseLibrary();
+	}
+
+	@Benchmark
+	public int findDuplicates()
+	{
+		return target.findDuplicates(parallelism);
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * DuplicateBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends BenchmarkTarget
+	{
+		/**
+		 * Finds the copies of the same tracks in the parsed songs with a 
+		 * DuplicateFinder.
+		 * @param parallelism the number of threads
+		 * @return the number of groups of copies
+		 */
+		int findDuplicates(int parallelism);
+	}
+}
@@ -0,0 +1,95 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parseLibrary() on generated libraries where a tenth or half of 
+ * the entries are ignore entries, as in libraries whose music folders hold 
+ * many cover images and other files, with the entries that are not songs 
+ * skipped or read into records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntrySkipBenchmark 
+{
+	@Param({"100000"})
+	public int entries;
+
+	@Param({"0.1", "0.5"})
+	public double ignoreFraction;
+
+	@Param({"SAX", "MAPPED"})
+	public String engine;
+
+	//Whether the radio stations and podcast episodes are read into records.
+	@Param({"false", "true"})
+	public boolean records;
+
+	private Target target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, "EntrySkipBenchmarkTarget");
+		target.open(GeneratedLibraries.locate(target, entries, ignoreFraction), 
+				engine);
+		target.setRecordsEnabled(records);
+	}
+
+	@Benchmark
+	public int parseLibrary(EntryCounter counter) throws Exception
+	{
+		counter.entries += entries;
+		return target.parseLibrary();
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * EntrySkipBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends BenchmarkTarget
+	{
+		/**
+		 * Turns the reading of radio stations and podcast episodes on or off by
+		 * setting or removing their handlers.
+		 * @param enabled whether the records are read
+		 */
+		void setRecordsEnabled(boolean enabled);
+	}
+}
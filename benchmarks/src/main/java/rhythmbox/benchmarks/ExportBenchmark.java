@@ -0,0 +1,87 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks exportLibrary() in each format on a parsed library, writing to
+ * a Writer that discards the output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark 
+{
+	@Param({"10000", "100000"})
+	public int entries;
+
+	@Param({"CSV", "TSV", "JSON_LINES", "TEXT"})
+	public String format;
+
+	private Target target;
+	private int songs;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, "ExportBenchmarkTarget");
+		target.open(GeneratedLibraries.locate(target, entries), "SAX");
+		songs = target.parseLibrary();
+	}
+
+	@Benchmark
+	public void exportLibrary(EntryCounter counter) throws Exception
+	{
+		counter.entries += songs;
+		target.exportLibrary(format);
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * ExportBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends BenchmarkTarget
+	{
+		/**
+		 * Calls exportLibrary() with a Writer that discards what is written.
+		 * @param format the name of the export format
+		 * @throws IOException
+		 */
+		void exportLibrary(String format) throws IOException;
+	}
+}
@@ -0,0 +1,104 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the wall time of parsing the libraries of several users with a
+ * LibraryFederation on one thread and on several.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FederationBenchmark 
+{
+	@Param({"8"})
+	public int libraries;
+
+	@Param({"50000"})
+	public int entries;
+
+	@Param({"1", "2", "4", "8"})
+	public int parallelism;
+
+	@Param({"MAPPED"})
+	public String engine;
+
+	private Target target;
+
+	private List<String> libLocations;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, 
+				"FederationBenchmarkTarget");
+		libLocations = new ArrayList<String>(libraries);
+		for (int i = 0; i < libraries; i++)
+		{
+			libLocations.add(GeneratedLibraries.locate(target, entries, -1, 
+					GeneratedLibraries.SEED + i));
+		}
+	}
+
+	@Benchmark
+	public int parseLibraries() throws Exception
+	{
+		return target.parseLibraries(libLocations, engine, parallelism);
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * FederationBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends BenchmarkTarget
+	{
+		/**
+		 * Parses several libraries at the same time with a LibraryFederation 
+		 * and merges them.
+		 * @param libLocations the locations of the libraries
+		 * @param engine the name of the parse engine
+		 * @param parallelism the most libraries that are parsed at once
+		 * @return the number of merged songs
+		 * @throws Exception
+		 */
+		int parseLibraries(List<String> libLocations, String engine, 
+				int parallelism) throws Exception;
+	}
+}
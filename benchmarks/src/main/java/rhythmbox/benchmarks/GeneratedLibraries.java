@@ -0,0 +1,104 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The generated libraries that are benchmarked. They are kept in the 
+ * temporary directory, so that every fork and run benchmarks the same 
+ * library without generating it again.
+ */
+public class GeneratedLibraries 
+{
+	//The seed that the libraries are generated from.
+	public static final long SEED = 42;
+
+	private GeneratedLibraries()
+	{
+	}
+
+	/**
+	 * Returns the location of a generated library, generating it first if 
+	 * needed.
+	 * @param target the target that generates the library
+	 * @param entries the number of entries in the library
+	 * @return the location of the library
+	 * @throws IOException
+	 */
+	public static String locate(BenchmarkTarget target, int entries) throws 
+		IOException
+	{
+		return locate(target, entries, -1);
+	}
+
+	/**
+	 * Returns the location of a generated library with a fraction of ignore
+	 * entries, generating it first if needed.
+	 * @param target the target that generates the library
+	 * @param entries the number of entries in the library
+	 * @param ignoreFraction the fraction of the entries that are ignore 
+	 * entries, or -1 for the generator's default
+	 * @return the location of the library
+	 * @throws IOException
+	 */
+	public static String locate(BenchmarkTarget target, int entries, 
+			double ignoreFraction) throws IOException
+	{
+		return locate(target, entries, ignoreFraction, SEED);
+	}
+
+	/**
+	 * Returns the location of a generated library with a fraction of ignore
+	 * entries and its own seed, generating it first if needed.
+	 * @param target the target that generates the library
+	 * @param entries the number of entries in the library
+	 * @param ignoreFraction the fraction of the entries that are ignore 
+	 * entries, or -1 for the generator's default
+	 * @param seed the seed that the library is generated from
+	 * @return the location of the library
+	 * @throws IOException
+	 */
+	public static synchronized String locate(BenchmarkTarget target, 
+			int entries, double ignoreFraction, long seed) throws IOException
+	{
+		File library = new File(System.getProperty("java.io.tmpdir"), 
+				"rhythmdb-" + entries + "-" + seed + (ignoreFraction < 0 ? "" :
+					"-ignore" + ignoreFraction) + ".xml");
+		if (!library.isFile())
+		{
+			File temp = new File(library.getPath() + ".tmp");
+			if (ignoreFraction < 0)
+			{
+				target.generate(temp.getPath(), entries, seed);
+			}
+			else
+			{
+				target.generate(temp.getPath(), entries, seed, ignoreFraction);
+			}
+			if (!temp.renameTo(library))
+			{
+				throw new IOException("Could not create " + library);
+			}
+		}
+		return library.getPath();
+	}
+}
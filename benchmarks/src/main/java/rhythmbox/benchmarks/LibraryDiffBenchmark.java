@@ -0,0 +1,106 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks writing the changes between a library and a copy of it with 
+ * some ratings and play counts updated, streamed by a LibraryDiff against 
+ * both versions parsed in full and compared with LibraryChange.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryDiffBenchmark 
+{
+	@Param({"100000"})
+	public int entries;
+
+	@Param({"1000"})
+	public int changes;
+
+	@Param({"true", "false"})
+	public boolean streaming;
+
+	private Target target;
+	//The new version of the library.
+	private File copy;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, 
+				"LibraryDiffBenchmarkTarget");
+		target.open(GeneratedLibraries.locate(target, entries), "MAPPED");
+		target.parseLibrary();
+		copy = File.createTempFile("rhythmdb-changed", ".xml");
+		target.rewriteLibrary(copy.getPath(), changes);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		copy.delete();
+	}
+
+	@Benchmark
+	public long diffLibrary() throws Exception
+	{
+		return target.diffLibrary(copy.getPath(), streaming);
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * LibraryDiffBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends RewriteBenchmark.Target
+	{
+		/**
+		 * Finds the changes between the library and a new version of it, and 
+		 * writes them as JSON lines that are discarded.
+		 * @param newLocation the location of the new version
+		 * @param streaming whether the versions are diffed with a LibraryDiff 
+		 * rather than parsed in full and compared with LibraryChange
+		 * @return the number of changes
+		 * @throws Exception
+		 */
+		long diffLibrary(String newLocation, boolean streaming) throws 
+			Exception;
+	}
+}
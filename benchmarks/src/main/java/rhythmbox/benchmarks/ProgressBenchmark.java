@@ -0,0 +1,100 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parseLibrary() with and without progress reports, and 
+ * parseLibraryAsync(), to show what following a parse and handing it to 
+ * another thread cost. Without progress, the synchronous results should 
+ * match those of ParseBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgressBenchmark 
+{
+	@Param({"100000"})
+	public int entries;
+
+	@Param({"SAX", "MAPPED"})
+	public String engine;
+
+	@Param({"false", "true"})
+	public boolean progress;
+
+	@Param({"false", "true"})
+	public boolean async;
+
+	private Target target;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, "ProgressBenchmarkTarget");
+		target.open(GeneratedLibraries.locate(target, entries), engine);
+		target.setProgressEnabled(progress);
+	}
+
+	@Benchmark
+	public int parseLibrary(EntryCounter counter) throws Exception
+	{
+		counter.entries += entries;
+		return async ? target.parseLibraryAsync() : target.parseLibrary();
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * ProgressBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends BenchmarkTarget
+	{
+		/**
+		 * Turns progress reports on or off by adding or removing a progress 
+		 * listener, which is told at most every tenth of a second.
+		 * @param enabled whether progress is reported
+		 */
+		void setProgressEnabled(boolean enabled);
+
+		/**
+		 * Calls parseLibraryAsync() and waits for it to complete.
+		 * @return the number of songs that were parsed
+		 * @throws Exception
+		 */
+		int parseLibraryAsync() throws Exception;
+	}
+}
@@ -0,0 +1,110 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package rhythmbox.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks writing ratings and play counts back into a library with a 
+ * LibraryRewriter against copying the library as it is, which is the least
+ * that a rewrite can cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RewriteBenchmark 
+{
+	@Param({"100000", "1000000"})
+	public int entries;
+
+	@Param({"0", "1000", "100000"})
+	public int updates;
+
+	private Target target;
+	private File library;
+	//Where the copies are written.
+	private File copy;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		target = BenchmarkTarget.load(Target.class, "RewriteBenchmarkTarget");
+		library = new File(GeneratedLibraries.locate(target, entries));
+		target.open(library.getPath(), "MAPPED");
+		target.parseLibrary();
+		copy = File.createTempFile("rhythmdb-rewrite", ".xml");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		copy.delete();
+	}
+
+	@Benchmark
+	public void copyLibrary() throws Exception
+	{
+		Files.copy(library.toPath(), copy.toPath(), 
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Benchmark
+	public int rewriteLibrary() throws Exception
+	{
+		return target.rewriteLibrary(copy.getPath(), updates);
+	}
+
+	/**
+	 * The operations of the parser that this benchmark uses, which 
+	 * RewriteBenchmarkTarget implements next to the parser.
+	 */
+	public interface Target extends BenchmarkTarget
+	{
+		/**
+		 * Writes a copy of the library with a LibraryRewriter, updating the 
+		 * rating and play count of some of the songs that were parsed.
+		 * @param outLocation where the copy is written
+		 * @param updates the number of songs that are updated
+		 * @return the number of entries that were updated
+		 * @throws Exception
+		 */
+		int rewriteLibrary(String outLocation, int updates) throws Exception;
+	}
+}
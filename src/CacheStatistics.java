@@ -0,0 +1,108 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+/**
+ * How well the cache of a {@link LazyLibrary} has worked: how many of the 
+ * songs that were accessed were already materialized, how many had to be 
+ * read from the library, and how many were evicted to keep the cache within
+ * its capacity.
+ */
+public class CacheStatistics 
+{
+	//The number of accesses that found their song in the cache, and those 
+	//that did not.
+	private long hits;
+	private long misses;
+	//The number of songs that were removed from the cache.
+	private long evictions;
+	//The number of songs in the cache, and the most that it can hold.
+	private int size;
+	private int capacity;
+
+	public CacheStatistics(long hits, long misses, long evictions, int size, 
+			int capacity)
+	{
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.size = size;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return The number of accesses that found their song in the cache.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The number of accesses that had to read their song from the 
+	 * library.
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return The fraction of the accesses that found their song in the 
+	 * cache, or 0 if no songs were accessed.
+	 */
+	public double getHitRatio()
+	{
+		long accesses = hits + misses;
+		return accesses == 0 ? 0 : (double) hits / accesses;
+	}
+
+	/**
+	 * @return The number of songs that were removed from the cache to make 
+	 * room for others.
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * @return The number of songs in the cache.
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The most songs that the cache can hold.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return String.format("%d of %d accesses hit the cache (%.1f%%), %d " +
+				"evictions, %d of %d songs cached", hits, hits + misses, 
+				getHitRatio() * 100, evictions, size, capacity);
+	}
+}
@@ -0,0 +1,96 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * How well the strings of a parsed library were deduplicated: how many of the
+ * artists, albums, genres, album artists and comments that were read reused
+ * a String object that had already been created, and about how much memory
+ * that saved.
+ */
+public class DedupStatistics 
+{
+	//The number of strings that were reused, and those that were created.
+	private long hits;
+	private long misses;
+	//The estimated number of bytes that were not allocated.
+	private long bytesSaved;
+
+	public DedupStatistics(long hits, long misses, long bytesSaved)
+	{
+		this.hits = hits;
+		this.misses = misses;
+		this.bytesSaved = bytesSaved;
+	}
+
+	/**
+	 * @return The number of strings that reused an existing String object.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The number of strings that had to be created.
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return The fraction of the strings that reused an existing String 
+	 * object, or 0 if no strings were looked up.
+	 */
+	public double getHitRatio()
+	{
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * @return The estimated number of bytes that were not allocated because
+	 * strings were reused.
+	 */
+	public long getBytesSaved()
+	{
+		return bytesSaved;
+	}
+
+	/**
+	 * Adds these statistics to those of another parse or part of a parse.
+	 * @param other the other statistics
+	 * @return the combined statistics
+	 */
+	public DedupStatistics plus(DedupStatistics other)
+	{
+		return new DedupStatistics(hits + other.hits, misses + other.misses, 
+				bytesSaved + other.bytesSaved);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return String.format("%d of %d strings reused (%.1f%%), about %d KB " +
+				"saved", hits, hits + misses, getHitRatio() * 100, 
+				bytesSaved / 1024);
+	}
+}
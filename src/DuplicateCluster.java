@@ -0,0 +1,94 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Songs that a {@link DuplicateFinder} found to be copies of the same track,
+ * such as a song that was ripped twice at different bit rates, along with the
+ * copy that is suggested to be kept.
+ */
+public class DuplicateCluster 
+{
+	//The copies in library order.
+	private List<Song> songs;
+	//The copy that is suggested to be kept.
+	private Song keeper;
+
+	/**
+	 * @param songs the copies in library order
+	 * @param keeper the copy that is suggested to be kept
+	 */
+	DuplicateCluster(List<Song> songs, Song keeper)
+	{
+		this.songs = songs;
+		this.keeper = keeper;
+	}
+
+	/**
+	 * @return Every copy, in library order.
+	 */
+	public List<Song> getSongs()
+	{
+		return Collections.unmodifiableList(songs);
+	}
+
+	/**
+	 * @return The copy that is suggested to be kept.
+	 */
+	public Song getKeeper()
+	{
+		return keeper;
+	}
+
+	/**
+	 * @return The copies other than the keeper, in library order.
+	 */
+	public List<Song> getDuplicates()
+	{
+		List<Song> duplicates = new ArrayList<Song>(songs.size() - 1);
+		for (Song song : songs)
+		{
+			if (song != keeper)
+			{
+				duplicates.add(song);
+			}
+		}
+		return duplicates;
+	}
+
+	/**
+	 * @return The number of copies.
+	 */
+	public int size()
+	{
+		return songs.size();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return songs.size() + " copies of " + keeper.getTitle() + " by " + 
+				keeper.getArtist() + ", keeping " + keeper.getLocation();
+	}
+}
@@ -0,0 +1,458 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the songs of a library that are copies of the same track, such as a
+ * song that was ripped twice at different bit rates. Songs are candidates 
+ * when their titles, artists and albums are equal once case, accents and 
+ * punctuation are removed, as {@link SongSearch#normalize(String)} does. 
+ * Candidates are found by hashing and sorting rather than by comparing every
+ * pair of songs, and both steps are split between threads. Candidates are 
+ * then copies when their durations are within a tolerance, and, if they have
+ * the same bit rate, so are their file sizes. Songs without a title are 
+ * never copies.
+ */
+public class DuplicateFinder 
+{
+	//The songs are split into parts of about this many.
+	private static final int SPLIT_SIZE = 1 << 13;
+
+	/**
+	 * Orders songs from the best one to keep to the worst: the highest bit
+	 * rate first, then the largest file, the highest rating and the most 
+	 * plays.
+	 */
+	public static final Comparator<Song> BEST_QUALITY = Comparator
+			.comparingInt(Song::getBitRate)
+			.thenComparingLong(Song::getFileSize)
+			.thenComparingInt(Song::getRating)
+			.thenComparingInt(Song::getPlayCount)
+			.reversed();
+
+	//The number of threads that songs are compared on.
+	private int parallelism;
+	//The most seconds that the durations of copies can differ by.
+	private int durationTolerance;
+	//The most that the file sizes of copies with the same bit rate can 
+	//differ by, as a fraction of the larger one.
+	private double fileSizeTolerance;
+	//Orders the copies from the best one to keep to the worst.
+	private Comparator<Song> keeperOrder;
+
+	public DuplicateFinder()
+	{
+		parallelism = Runtime.getRuntime().availableProcessors();
+		durationTolerance = 2;
+		fileSizeTolerance = 0.05;
+		keeperOrder = BEST_QUALITY;
+	}
+
+	/**
+	 * Sets the number of threads that songs are compared on, which defaults
+	 * to the number of processors.
+	 * @param parallelism the number of threads, where 1 compares the songs on
+	 * the calling thread
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return The number of threads that songs are compared on.
+	 */
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Sets the most seconds that the durations of copies can differ by, 
+	 * which defaults to 2. Songs of unknown duration match any duration.
+	 * @param seconds the tolerance
+	 */
+	public void setDurationTolerance(int seconds)
+	{
+		if (seconds < 0)
+		{
+			throw new IllegalArgumentException("The duration tolerance cannot " +
+					"be negative");
+		}
+		durationTolerance = seconds;
+	}
+
+	/**
+	 * @return The most seconds that the durations of copies can differ by.
+	 */
+	public int getDurationTolerance()
+	{
+		return durationTolerance;
+	}
+
+	/**
+	 * Sets the most that the file sizes of copies with the same bit rate can
+	 * differ by, as a fraction of the larger one, which defaults to 0.05. The
+	 * file sizes of copies with different bit rates are not compared, and 
+	 * songs of unknown size match any size.
+	 * @param fraction the tolerance
+	 */
+	public void setFileSizeTolerance(double fraction)
+	{
+		if (!(fraction >= 0))
+		{
+			throw new IllegalArgumentException("The file size tolerance " +
+					"cannot be negative");
+		}
+		fileSizeTolerance = fraction;
+	}
+
+	/**
+	 * @return The most that the file sizes of copies with the same bit rate
+	 * can differ by, as a fraction of the larger one.
+	 */
+	public double getFileSizeTolerance()
+	{
+		return fileSizeTolerance;
+	}
+
+	/**
+	 * Sets the order in which copies are suggested to be kept, which 
+	 * defaults to {@link #BEST_QUALITY}. Of equally good copies, the first 
+	 * one in the library is kept.
+	 * @param keeperOrder orders songs from the best one to keep to the worst
+	 */
+	public void setKeeperOrder(Comparator<Song> keeperOrder)
+	{
+		if (keeperOrder == null)
+		{
+			throw new IllegalArgumentException("The keeper order cannot be " +
+					"null");
+		}
+		this.keeperOrder = keeperOrder;
+	}
+
+	/**
+	 * Finds the copies of the same tracks in a list of songs.
+	 * @param songs the songs, which should not change while they are read
+	 * @return the groups of copies, ordered by the position of their first 
+	 * copy in the list
+	 */
+	public List<DuplicateCluster> findDuplicates(List<Song> songs)
+	{
+		if (parallelism == 1 || songs.size() < SPLIT_SIZE)
+		{
+			return find(songs);
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			return pool.invoke(ForkJoinTask.adapt(() -> find(songs)));
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Finds the copies, splitting the work between the threads of the pool 
+	 * that it runs in, if any.
+	 */
+	private List<DuplicateCluster> find(List<Song> songs)
+	{
+		int size = songs.size();
+		//The normalized title, artist and album of each song, and the hash 
+		//of each one in the high half of a long with the index of the song in
+		//the low half, so that sorting them puts candidates next to each 
+		//other.
+		String[] keys = new String[size];
+		long[] order = new long[size];
+		new KeyTask(songs, keys, order, 0, size).invoke();
+		if (ForkJoinTask.inForkJoinPool())
+		{
+			Arrays.parallelSort(order);
+		}
+		else
+		{
+			Arrays.sort(order);
+		}
+		List<int[]> clusters = new GroupTask(songs, keys, order, 0, size)
+				.invoke();
+		clusters.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+		List<DuplicateCluster> duplicates = 
+				new ArrayList<DuplicateCluster>(clusters.size());
+		for (int[] cluster : clusters)
+		{
+			List<Song> copies = new ArrayList<Song>(cluster.length);
+			Song keeper = null;
+			for (int index : cluster)
+			{
+				Song song = songs.get(index);
+				copies.add(song);
+				if (keeper == null || keeperOrder.compare(song, keeper) < 0)
+				{
+					keeper = song;
+				}
+			}
+			duplicates.add(new DuplicateCluster(copies, keeper));
+		}
+		return duplicates;
+	}
+
+	/**
+	 * @return Whether two candidates are copies of the same track.
+	 */
+	private boolean isCopy(Song a, Song b)
+	{
+		if (a.getDuration() > 0 && b.getDuration() > 0 && 
+				Math.abs(a.getDuration() - b.getDuration()) > durationTolerance)
+		{
+			return false;
+		}
+		if (a.getBitRate() == b.getBitRate() && a.getFileSize() > 0 && 
+				b.getFileSize() > 0)
+		{
+			long difference = Math.abs(a.getFileSize() - b.getFileSize());
+			return difference <= fileSizeTolerance * 
+					Math.max(a.getFileSize(), b.getFileSize());
+		}
+		return true;
+	}
+
+	/**
+	 * Normalizes the title, artist and album of a range of the songs, 
+	 * splitting it in half until the parts are small enough.
+	 */
+	@SuppressWarnings("serial")
+	private static class KeyTask extends RecursiveAction
+	{
+		//The songs, and where the keys and hashes of this range are put.
+		private List<Song> songs;
+		private String[] keys;
+		private long[] order;
+		private int start;
+		private int end;
+
+		public KeyTask(List<Song> songs, String[] keys, long[] order, 
+				int start, int end)
+		{
+			this.songs = songs;
+			this.keys = keys;
+			this.order = order;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute()
+		{
+			if (end - start < SPLIT_SIZE || getPool() == null)
+			{
+				//Artists and albums repeat, so each one is only normalized 
+				//once.
+				HashMap<String, String> normalized = 
+						new HashMap<String, String>();
+				for (int i = start; i < end; i++)
+				{
+					Song song = songs.get(i);
+					String title = SongSearch.normalize(song.getTitle());
+					String key = null;
+					if (!title.isEmpty())
+					{
+						key = title + '\u0000' + 
+								normalized.computeIfAbsent(song.getArtist(), 
+										SongSearch::normalize) + '\u0000' + 
+								normalized.computeIfAbsent(song.getAlbum(), 
+										SongSearch::normalize);
+					}
+					keys[i] = key;
+					order[i] = (key == null ? 0 : (long) key.hashCode() << 32) | i;
+				}
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new KeyTask(songs, keys, order, start, middle), 
+					new KeyTask(songs, keys, order, middle, end));
+		}
+	}
+
+	/**
+	 * Groups the candidates in a range of the sorted hashes into copies, 
+	 * splitting it in half, between runs of equal hashes, until the parts 
+	 * are small enough.
+	 */
+	@SuppressWarnings("serial")
+	private class GroupTask extends RecursiveTask<List<int[]>>
+	{
+		//The songs, their keys and the range of the sorted hashes that this
+		//task groups.
+		private List<Song> songs;
+		private String[] keys;
+		private long[] order;
+		private int start;
+		private int end;
+
+		public GroupTask(List<Song> songs, String[] keys, long[] order, 
+				int start, int end)
+		{
+			this.songs = songs;
+			this.keys = keys;
+			this.order = order;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		protected List<int[]> compute()
+		{
+			int middle = (start + end) >>> 1;
+			if (end - start >= SPLIT_SIZE && getPool() != null)
+			{
+				while (middle < end && hash(middle) == hash(middle - 1))
+				{
+					middle++;
+				}
+			}
+			if (end - start < SPLIT_SIZE || getPool() == null || middle == end)
+			{
+				List<int[]> clusters = new ArrayList<int[]>();
+				int i = start;
+				while (i < end)
+				{
+					int run = i + 1;
+					while (run < end && hash(run) == hash(i))
+					{
+						run++;
+					}
+					if (run - i > 1)
+					{
+						group(i, run, clusters);
+					}
+					i = run;
+				}
+				return clusters;
+			}
+			GroupTask second = new GroupTask(songs, keys, order, middle, end);
+			second.fork();
+			List<int[]> clusters = new GroupTask(songs, keys, order, start, 
+					middle).compute();
+			clusters.addAll(second.join());
+			return clusters;
+		}
+
+		/**
+		 * Groups a run of songs with equal hashes by their keys, and then 
+		 * into copies.
+		 */
+		private void group(int start, int end, List<int[]> clusters)
+		{
+			LinkedHashMap<String, List<Integer>> candidates = 
+					new LinkedHashMap<String, List<Integer>>();
+			for (int i = start; i < end; i++)
+			{
+				int index = (int) order[i];
+				if (keys[index] != null)
+				{
+					candidates.computeIfAbsent(keys[index], 
+							key -> new ArrayList<Integer>()).add(index);
+				}
+			}
+			for (List<Integer> indexes : candidates.values())
+			{
+				if (indexes.size() > 1)
+				{
+					cluster(indexes, clusters);
+				}
+			}
+		}
+
+		/**
+		 * Splits candidates with the same key into copies. Each song, from 
+		 * the shortest to the longest, joins the first group whose first song
+		 * it is a copy of, or starts a new group.
+		 */
+		private void cluster(List<Integer> indexes, List<int[]> clusters)
+		{
+			indexes.sort(Comparator.comparingInt((Integer index) -> 
+				songs.get(index).getDuration()).thenComparingInt(index -> index));
+			List<List<Integer>> groups = new ArrayList<List<Integer>>();
+			for (int index : indexes)
+			{
+				Song song = songs.get(index);
+				List<Integer> joined = null;
+				for (List<Integer> group : groups)
+				{
+					if (isCopy(songs.get(group.get(0)), song))
+					{
+						joined = group;
+						break;
+					}
+				}
+				if (joined == null)
+				{
+					joined = new ArrayList<Integer>();
+					groups.add(joined);
+				}
+				joined.add(index);
+			}
+			for (List<Integer> group : groups)
+			{
+				if (group.size() > 1)
+				{
+					int[] cluster = new int[group.size()];
+					for (int i = 0; i < cluster.length; i++)
+					{
+						cluster[i] = group.get(i);
+					}
+					Arrays.sort(cluster);
+					clusters.add(cluster);
+				}
+			}
+		}
+
+		/**
+		 * @return The hash in the sorted hashes at a position.
+		 */
+		private int hash(int pos)
+		{
+			return (int) (order[pos] >> 32);
+		}
+	}
+}
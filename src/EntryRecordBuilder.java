@@ -0,0 +1,195 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.function.Consumer;
+
+/**
+ * Collects the elements of an iradio or podcast-post entry as they are read 
+ * from a Rhythmbox XML library, and creates a {@link RadioStation} or {@link
+ * PodcastEpisode} from them when the end of the entry is reached. Only the 
+ * types of entries that have a handler are read; every engine skips the 
+ * others without looking at their elements.
+ */
+class EntryRecordBuilder 
+{
+	//Receive the records that are read, or null if they are not read.
+	private Consumer<RadioStation> radioStations;
+	private Consumer<PodcastEpisode> podcastEpisodes;
+	//The type of the entry that is currently read.
+	private EntryType entryType;
+	//Temporary variables that hold the elements of the entry that is 
+	//currently read.
+	private String title;
+	private String genre;
+	private String album;
+	private String location;
+	private String mountpoint;
+	private String description;
+	private long bitRate;
+	private long playCount;
+	private long lastPlayed;
+	private long postTime;
+	private long duration;
+
+	/**
+	 * @param radioStations receives the radio stations that are read, or 
+	 * null if they are skipped
+	 * @param podcastEpisodes receives the podcast episodes that are read, or
+	 * null if they are skipped
+	 */
+	public EntryRecordBuilder(Consumer<RadioStation> radioStations, 
+			Consumer<PodcastEpisode> podcastEpisodes)
+	{
+		this.radioStations = radioStations;
+		this.podcastEpisodes = podcastEpisodes;
+		start(EntryType.OTHER);
+	}
+
+	/**
+	 * @return The handler of the radio stations, or null if they are skipped.
+	 */
+	public Consumer<RadioStation> getRadioStations()
+	{
+		return radioStations;
+	}
+
+	/**
+	 * @return The handler of the podcast episodes, or null if they are 
+	 * skipped.
+	 */
+	public Consumer<PodcastEpisode> getPodcastEpisodes()
+	{
+		return podcastEpisodes;
+	}
+
+	/**
+	 * @param entryType the type of an entry
+	 * @return Whether entries of the type are read into records.
+	 */
+	public boolean isRead(EntryType entryType)
+	{
+		return (entryType == EntryType.IRADIO && radioStations != null) ||
+				(entryType == EntryType.PODCAST_POST && podcastEpisodes != null);
+	}
+
+	/**
+	 * Starts reading an entry whose type is read.
+	 * @param entryType the type of the entry
+	 */
+	public void start(EntryType entryType)
+	{
+		this.entryType = entryType;
+		title = "";
+		genre = "";
+		album = "";
+		location = "";
+		mountpoint = "";
+		description = "";
+		bitRate = 0;
+		playCount = 0;
+		lastPlayed = 0;
+		postTime = 0;
+		duration = 0;
+	}
+
+	/**
+	 * Sets an element of the entry that is currently read. Elements that are
+	 * not kept in a record are ignored, and numeric elements that are not 
+	 * numbers are left at 0.
+	 * @param element the name of the element
+	 * @param text the text of the element
+	 */
+	public void set(String element, String text)
+	{
+		switch (element)
+		{
+			case "title":
+				title = text;
+				break;
+			case "genre":
+				genre = text;
+				break;
+			case "album":
+				album = text;
+				break;
+			case "location":
+				location = text;
+				break;
+			case "mountpoint":
+				mountpoint = text;
+				break;
+			case "description":
+				description = text;
+				break;
+			case "bitrate":
+				bitRate = parseNumber(text);
+				break;
+			case "play-count":
+				playCount = parseNumber(text);
+				break;
+			case "last-played":
+				lastPlayed = parseNumber(text);
+				break;
+			case "post-time":
+				postTime = parseNumber(text);
+				break;
+			case "duration":
+				duration = parseNumber(text);
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Creates the record of the entry that is currently read and passes it 
+	 * to its handler.
+	 */
+	public void end()
+	{
+		if (entryType == EntryType.IRADIO)
+		{
+			radioStations.accept(new RadioStation(title, genre, location, 
+					toInt(bitRate), toInt(playCount), lastPlayed));
+		}
+		else if (entryType == EntryType.PODCAST_POST)
+		{
+			podcastEpisodes.accept(new PodcastEpisode(title, album, location, 
+					mountpoint, description, postTime, toInt(duration)));
+		}
+		start(EntryType.OTHER);
+	}
+
+	private static long parseNumber(String text)
+	{
+		try
+		{
+			return text.isEmpty() ? 0 : Long.parseLong(text.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+	private static int toInt(long value)
+	{
+		return (int) value == value ? (int) value : 0;
+	}
+}
@@ -0,0 +1,82 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.HashMap;
+
+/**
+ * The types of the entries in a Rhythmbox XML library, which are given by 
+ * the type attribute of their entry elements.
+ */
+public enum EntryType 
+{
+	/** A song in the library. */
+	SONG("song"),
+	/** An internet radio station. */
+	IRADIO("iradio"),
+	/** An episode of a podcast. */
+	PODCAST_POST("podcast-post"),
+	/** A podcast that is subscribed to. */
+	PODCAST_FEED("podcast-feed"),
+	/** A file that Rhythmbox found but does not play. */
+	IGNORE("ignore"),
+	/** An entry with any other type, or no type. */
+	OTHER(null);
+
+	private static final HashMap<String, EntryType> BY_TYPE = 
+			new HashMap<String, EntryType>();
+
+	static
+	{
+		for (EntryType entryType : values())
+		{
+			if (entryType.type != null)
+			{
+				BY_TYPE.put(entryType.type, entryType);
+			}
+		}
+	}
+
+	//The value of the type attribute of the entries, or null for OTHER.
+	private final String type;
+
+	private EntryType(String type)
+	{
+		this.type = type;
+	}
+
+	/**
+	 * @param type the value of an entry's type attribute, or null if it has
+	 * none
+	 * @return the type of the entry, which is OTHER for unknown types
+	 */
+	public static EntryType forType(String type)
+	{
+		EntryType entryType = type == null ? null : BY_TYPE.get(type);
+		return entryType == null ? OTHER : entryType;
+	}
+
+	/**
+	 * @return The value of the type attribute of these entries, or null for
+	 * OTHER.
+	 */
+	public String getType()
+	{
+		return type;
+	}
+}
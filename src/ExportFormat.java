@@ -0,0 +1,52 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * The formats that a {@link SongExporter} can write songs in. Every format 
+ * has the fields of a song in the order of {@link SongField}.
+ */
+public enum ExportFormat 
+{
+	/**
+	 * Comma-separated values with a header row of the fields' tag names, as 
+	 * described in RFC 4180. Values that contain commas, quotes or line 
+	 * breaks are quoted, and lines end with CRLF.
+	 */
+	CSV,
+
+	/**
+	 * Tab-separated values with a header row of the fields' tag names. Tabs,
+	 * line breaks and backslashes in values are written as \t, \n, \r and 
+	 * \\.
+	 */
+	TSV,
+
+	/**
+	 * One JSON object per line, keyed by the fields' tag names, with the 
+	 * numeric fields as numbers.
+	 */
+	JSON_LINES,
+
+	/**
+	 * The human-readable format of {@link 
+	 * RhythmboxXMLLibraryParser#printLibrary()}: one line per field and a 
+	 * blank line after each song.
+	 */
+	TEXT
+}
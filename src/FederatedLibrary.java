@@ -0,0 +1,133 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The songs of several Rhythmbox libraries parsed by a {@link 
+ * LibraryFederation}, merged into one {@link LibraryVersion} that searches 
+ * and indexes all of them, along with the library that each song came from 
+ * and the libraries that could not be parsed. A federated library never 
+ * changes, so any number of threads can read it.
+ */
+public class FederatedLibrary 
+{
+	//The songs of each library that was parsed, in the order that the 
+	//libraries were given.
+	private final LinkedHashMap<String, List<Song>> librarySongs;
+	//The library that each song came from.
+	private final IdentityHashMap<Song, String> songLibraries;
+	//Why each library that could not be parsed failed.
+	private final LinkedHashMap<String, Exception> failures;
+	//The songs of every library and their indexes.
+	private final LibraryVersion merged;
+
+	/**
+	 * @param librarySongs the songs of each library that was parsed, in order
+	 * @param failures why each library that could not be parsed failed
+	 * @param executor the executor that builds the indexes of the merged 
+	 * songs, all at the same time
+	 * @throws InterruptedException if the thread was interrupted while the 
+	 * indexes were built
+	 */
+	FederatedLibrary(LinkedHashMap<String, List<Song>> librarySongs, 
+			LinkedHashMap<String, Exception> failures, ExecutorService executor)
+		throws InterruptedException
+	{
+		this.librarySongs = librarySongs;
+		this.failures = failures;
+		songLibraries = new IdentityHashMap<Song, String>();
+		ArrayList<Song> songs = new ArrayList<Song>();
+		for (Map.Entry<String, List<Song>> library : librarySongs.entrySet())
+		{
+			for (Song song : library.getValue())
+			{
+				songLibraries.put(song, library.getKey());
+			}
+			songs.addAll(library.getValue());
+		}
+		merged = new LibraryVersion(1, songs, executor);
+	}
+
+	/**
+	 * @return The locations of the libraries that were parsed, in the order 
+	 * that they were given.
+	 */
+	public Set<String> getLibraries()
+	{
+		return Collections.unmodifiableSet(librarySongs.keySet());
+	}
+
+	/**
+	 * @param libLocation the location of a library that was parsed
+	 * @return The songs of the library in library order, or an empty list if
+	 * it was not parsed.
+	 */
+	public List<Song> getSongs(String libLocation)
+	{
+		List<Song> songs = librarySongs.get(libLocation);
+		return songs == null ? Collections.<Song>emptyList() : 
+			Collections.unmodifiableList(songs);
+	}
+
+	/**
+	 * @param song a song of this federated library
+	 * @return The location of the library that the song came from, or null if
+	 * the song is not from this federated library. Songs are matched by 
+	 * identity, so equal songs from two libraries are told apart.
+	 */
+	public String getLibrary(Song song)
+	{
+		return songLibraries.get(song);
+	}
+
+	/**
+	 * @return Why each library that could not be parsed failed, keyed by 
+	 * its location.
+	 */
+	public Map<String, Exception> getFailures()
+	{
+		return Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * @return The songs of every library, one library after another, with 
+	 * indexes that find, search and query all of them.
+	 */
+	public LibraryVersion getMerged()
+	{
+		return merged;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return librarySongs.size() + " libraries (" + merged.size() + 
+				" songs), " + failures.size() + " failed";
+	}
+}
@@ -0,0 +1,386 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.xml.sax.SAXException;
+
+/**
+ * The songs of a Rhythmbox XML library, read only when they are accessed. 
+ * The library is memory-mapped and scanned once for the position and length
+ * of each song's entry, its title and its location, which are kept in 
+ * arrays. A full {@link Song} is materialized by reading just its entry 
+ * again, and the songs that were accessed most recently are kept in a 
+ * bounded cache. This suits browsing, which touches few of the songs in a 
+ * library, while {@link RhythmboxXMLLibraryParser#parseLibrary()} builds 
+ * every song up front.
+ * <p>
+ * The file must not be modified in place while the library is used; 
+ * replacing it, as {@link LibraryRewriter} does, leaves the mapped bytes 
+ * unchanged. A lazy library is thread safe.
+ */
+public class LazyLibrary 
+{
+	//The number of songs that are cached by default.
+	public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+	//Reads single entries to materialize songs.
+	private MappedLibraryScanner scanner;
+	//The number of songs.
+	private int size;
+	//The position and length of each song's entry.
+	private int[] offsets;
+	private int[] lengths;
+	//The titles and locations of the songs.
+	private String[] titles;
+	private String[] locations;
+	//The rows of the songs sorted by location, or null until a song is 
+	//first looked up by location.
+	private int[] byLocation;
+	//The materialized songs by row, in order of access.
+	private LinkedHashMap<Integer, Song> cache;
+	private int cacheCapacity;
+	//How well the cache has worked.
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Memory-maps a library and scans it for the entries of its songs.
+	 * @param libLocation the location of the Rhythmbox XML library
+	 * @throws IOException if the file cannot be read or is larger than 2 GB
+	 * @throws SAXException if the library is not well-formed
+	 */
+	public LazyLibrary(String libLocation) throws IOException, SAXException
+	{
+		this(MappedLibraryScanner.map(libLocation));
+	}
+
+	/**
+	 * Scans the bytes of a library for the entries of its songs.
+	 * @param buffer the bytes of a Rhythmbox XML library, which must not be 
+	 * modified while the library is used
+	 * @throws SAXException if the library is not well-formed
+	 */
+	public LazyLibrary(ByteBuffer buffer) throws SAXException
+	{
+		offsets = new int[1024];
+		lengths = new int[1024];
+		titles = new String[1024];
+		locations = new String[1024];
+		new MappedLibraryScanner(buffer, null, null, 
+				EnumSet.of(SongField.TITLE, SongField.LOCATION))
+				.scanEntries(0, buffer.limit(), this::add);
+		offsets = Arrays.copyOf(offsets, size);
+		lengths = Arrays.copyOf(lengths, size);
+		titles = Arrays.copyOf(titles, size);
+		locations = Arrays.copyOf(locations, size);
+
+		scanner = new MappedLibraryScanner(buffer);
+		cache = new LinkedHashMap<Integer, Song>(16, 0.75f, true);
+		cacheCapacity = DEFAULT_CACHE_CAPACITY;
+	}
+
+	/**
+	 * Records a song found by the first scan.
+	 */
+	private void add(Song song, int offset, int length)
+	{
+		if (size == offsets.length)
+		{
+			int capacity = size * 2;
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			titles = Arrays.copyOf(titles, capacity);
+			locations = Arrays.copyOf(locations, capacity);
+		}
+		offsets[size] = offset;
+		lengths[size] = length;
+		titles[size] = song.getTitle();
+		locations[size] = song.getLocation();
+		size++;
+	}
+
+	/**
+	 * @return The number of songs in the library.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns a song, reading its entry from the library unless it is cached.
+	 * @param row the number of the song, in the order of the library
+	 * @return the song
+	 * @throws LibraryParseException if the song's entry can no longer be 
+	 * read
+	 */
+	public synchronized Song get(int row)
+	{
+		checkRow(row);
+		Song song = cache.get(row);
+		if (song != null)
+		{
+			hits++;
+			return song;
+		}
+		misses++;
+		try
+		{
+			song = scanner.readEntry(offsets[row]);
+		}
+		catch (SAXException e)
+		{
+			throw new LibraryParseException("Could not read song " + row, e);
+		}
+		if (song == null)
+		{
+			throw new LibraryParseException("Could not read song " + row, 
+					new SAXException("The entry at byte " + offsets[row] + 
+							" is no longer a song"));
+		}
+		if (cacheCapacity > 0)
+		{
+			cache.put(row, song);
+			trimCache();
+		}
+		return song;
+	}
+
+	/**
+	 * @return A read-only list of the songs, which are materialized when 
+	 * they are accessed.
+	 */
+	public List<Song> asList()
+	{
+		return new AbstractList<Song>()
+		{
+			public Song get(int row)
+			{
+				return LazyLibrary.this.get(row);
+			}
+
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @return The title of a song, without materializing it.
+	 */
+	public String getTitle(int row)
+	{
+		checkRow(row);
+		return titles[row];
+	}
+
+	/**
+	 * @return The location of a song, without materializing it.
+	 */
+	public String getLocation(int row)
+	{
+		checkRow(row);
+		return locations[row];
+	}
+
+	/**
+	 * @return The position of a song's entry in the library.
+	 */
+	public int getOffset(int row)
+	{
+		checkRow(row);
+		return offsets[row];
+	}
+
+	/**
+	 * @return The number of bytes in a song's entry.
+	 */
+	public int getLength(int row)
+	{
+		checkRow(row);
+		return lengths[row];
+	}
+
+	/**
+	 * Finds the song with a location. The songs are sorted by location the 
+	 * first time that this is called.
+	 * @param location the location of the song's file
+	 * @return the row of the first song with the location, or -1 if there is
+	 * none
+	 */
+	public int indexOfLocation(String location)
+	{
+		int[] rows = sortedByLocation();
+		int low = 0;
+		int high = rows.length;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (locations[rows[middle]].compareTo(location) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low < rows.length && locations[rows[low]].equals(location) ? 
+				rows[low] : -1;
+	}
+
+	/**
+	 * Materializes the song with a location.
+	 * @param location the location of the song's file
+	 * @return the first song with the location, or null if there is none
+	 */
+	public Song findByLocation(String location)
+	{
+		int row = indexOfLocation(location);
+		return row < 0 ? null : get(row);
+	}
+
+	/**
+	 * Materializes the songs with a title, ignoring case. Only the songs that
+	 * match are read from the library.
+	 * @param title the title to look for
+	 * @return the songs with the title, in the order of the library
+	 */
+	public List<Song> findByTitle(String title)
+	{
+		ArrayList<Song> songs = new ArrayList<Song>();
+		for (int row = 0; row < size; row++)
+		{
+			if (titles[row].equalsIgnoreCase(title))
+			{
+				songs.add(get(row));
+			}
+		}
+		return songs;
+	}
+
+	/**
+	 * Sets the most songs that are kept materialized, removing the songs 
+	 * that were accessed least recently if there are more. A capacity of 0 
+	 * turns off caching.
+	 * @param cacheCapacity the most songs to cache
+	 */
+	public synchronized void setCacheCapacity(int cacheCapacity)
+	{
+		if (cacheCapacity < 0)
+		{
+			throw new IllegalArgumentException("The cache capacity must not " +
+					"be negative: " + cacheCapacity);
+		}
+		this.cacheCapacity = cacheCapacity;
+		trimCache();
+	}
+
+	/**
+	 * @return The most songs that are kept materialized.
+	 */
+	public synchronized int getCacheCapacity()
+	{
+		return cacheCapacity;
+	}
+
+	/**
+	 * @return How well the cache has worked since the library was scanned or
+	 * the statistics were reset.
+	 */
+	public synchronized CacheStatistics getCacheStatistics()
+	{
+		return new CacheStatistics(hits, misses, evictions, cache.size(), 
+				cacheCapacity);
+	}
+
+	/**
+	 * Starts counting hits, misses and evictions from zero, keeping the 
+	 * cached songs.
+	 */
+	public synchronized void resetCacheStatistics()
+	{
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Removes the songs that were accessed least recently until the cache is
+	 * within its capacity.
+	 */
+	private void trimCache()
+	{
+		Iterator<Integer> rows = cache.keySet().iterator();
+		while (cache.size() > cacheCapacity)
+		{
+			rows.next();
+			rows.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * @return the rows of the songs sorted by location, sorting them if this
+	 * is the first time
+	 */
+	private synchronized int[] sortedByLocation()
+	{
+		if (byLocation == null)
+		{
+			Integer[] rows = new Integer[size];
+			for (int row = 0; row < size; row++)
+			{
+				rows[row] = row;
+			}
+			Arrays.sort(rows, (a, b) -> locations[a].compareTo(locations[b]));
+			byLocation = new int[size];
+			for (int i = 0; i < size; i++)
+			{
+				byLocation[i] = rows[i];
+			}
+		}
+		return byLocation;
+	}
+
+	private void checkRow(int row)
+	{
+		if (row < 0 || row >= size)
+		{
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return size + " songs, " + getCacheStatistics();
+	}
+}
@@ -0,0 +1,158 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The songs that were added to, removed from or modified in a Rhythmbox 
+ * library between two times that it was parsed. Songs are matched by their 
+ * location; if several songs have the same location, they are matched in the
+ * order that they appear in the library.
+ */
+public class LibraryChange 
+{
+	//The songs in the new version of the library, reusing the Song objects
+	//from the old version for songs that did not change.
+	private List<Song> library;
+	//The songs that are only in the new version.
+	private List<Song> addedSongs;
+	//The songs that are only in the old version.
+	private List<Song> removedSongs;
+	//The new versions of the songs that were modified, and their old versions
+	//(indexed the same way).
+	private List<Song> modifiedSongs;
+	private List<Song> previousSongs;
+
+	private LibraryChange(List<Song> library)
+	{
+		this.library = library;
+		addedSongs = new ArrayList<Song>();
+		removedSongs = new ArrayList<Song>();
+		modifiedSongs = new ArrayList<Song>();
+		previousSongs = new ArrayList<Song>();
+	}
+
+	/**
+	 * Finds the changes between two versions of a library.
+	 * @param oldSongs the songs in the old version of the library
+	 * @param newSongs the songs in the new version of the library
+	 * @return the changes
+	 */
+	public static LibraryChange between(List<Song> oldSongs, List<Song> newSongs)
+	{
+		LinkedHashMap<String, Song> oldByKey = new LinkedHashMap<String, Song>();
+		HashMap<String, Integer> occurrences = new HashMap<String, Integer>();
+		for (Song song : oldSongs)
+		{
+			oldByKey.put(key(song, occurrences), song);
+		}
+
+		LibraryChange change = new LibraryChange(new ArrayList<Song>(
+				newSongs.size()));
+		occurrences.clear();
+		for (Song song : newSongs)
+		{
+			Song oldSong = oldByKey.remove(key(song, occurrences));
+			if (oldSong == null)
+			{
+				change.addedSongs.add(song);
+				change.library.add(song);
+			}
+			else if (!oldSong.equals(song))
+			{
+				change.modifiedSongs.add(song);
+				change.previousSongs.add(oldSong);
+				change.library.add(song);
+			}
+			else
+			{
+				change.library.add(oldSong);
+			}
+		}
+		change.removedSongs.addAll(oldByKey.values());
+		return change;
+	}
+
+	/**
+	 * @return The songs in the new version of the library, in library order.
+	 * Songs that did not change are the same objects as in the old version.
+	 */
+	public List<Song> getLibrary()
+	{
+		return Collections.unmodifiableList(library);
+	}
+
+	/**
+	 * @return The songs that were added to the library.
+	 */
+	public List<Song> getAddedSongs()
+	{
+		return Collections.unmodifiableList(addedSongs);
+	}
+
+	/**
+	 * @return The songs that were removed from the library.
+	 */
+	public List<Song> getRemovedSongs()
+	{
+		return Collections.unmodifiableList(removedSongs);
+	}
+
+	/**
+	 * @return The new versions of the songs that were modified.
+	 */
+	public List<Song> getModifiedSongs()
+	{
+		return Collections.unmodifiableList(modifiedSongs);
+	}
+
+	/**
+	 * @return The old versions of the songs that were modified, in the same
+	 * order as {@link #getModifiedSongs()}.
+	 */
+	public List<Song> getPreviousSongs()
+	{
+		return Collections.unmodifiableList(previousSongs);
+	}
+
+	/**
+	 * @return Whether nothing was added, removed or modified.
+	 */
+	public boolean isEmpty()
+	{
+		return addedSongs.isEmpty() && removedSongs.isEmpty() && 
+				modifiedSongs.isEmpty();
+	}
+
+	/**
+	 * Returns the key that a song is matched by: its location, and how many
+	 * songs before it had the same location.
+	 */
+	private static String key(Song song, HashMap<String, Integer> occurrences)
+	{
+		String location = song.getLocation();
+		Integer count = occurrences.get(location);
+		occurrences.put(location, count == null ? 1 : count + 1);
+		return count == null ? location : location + '\u0000' + count;
+	}
+}
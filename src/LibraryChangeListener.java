@@ -0,0 +1,41 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * Receives the changes that a {@link LibraryWatcher} applies to a library
+ * when its file changes.
+ */
+public interface LibraryChangeListener 
+{
+	/**
+	 * Called after changes to the library have been applied.
+	 * @param change the songs that were added, removed or modified
+	 */
+	void libraryChanged(LibraryChange change);
+
+	/**
+	 * Called when the library changed but could not be parsed again, for 
+	 * example while it is only partly written. The songs are left as they 
+	 * were, and the library is parsed again on its next change.
+	 * @param e the reason that the library could not be parsed
+	 */
+	default void libraryUpdateFailed(Exception e)
+	{
+	}
+}
@@ -0,0 +1,637 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.xml.sax.SAXException;
+
+/**
+ * Finds the songs that were added to, removed from or modified in a Rhythmbox
+ * library between two versions of its file, and writes them as JSON lines 
+ * (see {@link #writeChanges(Writer)}). Songs are matched by their location 
+ * like {@link LibraryChange#between(List, List)} does, but neither version 
+ * is held in memory: each file is memory-mapped and scanned for a 64-bit 
+ * hash of the location of every song and a 64-bit fingerprint of the bytes 
+ * of its entry, along with the position of the entry, which takes 20 bytes 
+ * per song. Only the location of a song is decoded while scanning, and the 
+ * files are scanned in chunks on several threads. The entries whose 
+ * fingerprints differ are then parsed and their songs compared, so changes 
+ * to elements that are not kept in songs are not written. Entries with 
+ * equal fingerprints are taken to be unchanged; the chance that a modified
+ * entry has the same fingerprint is about one in 2^64.
+ */
+public class LibraryDiff 
+{
+	//Each file is split into about this many chunks per thread.
+	private static final int CHUNKS_PER_THREAD = 4;
+	//The seeds of the hashes of locations and of fingerprints, so that a 
+	//location's hash is not its song's fingerprint.
+	private static final long KEY_SEED = 0x2545f4914f6cdd1dL;
+	private static final long PRINT_SEED = 0x7c15e3b0a4d2f961L;
+	//The element that is left out of fingerprints, since Rhythmbox updates
+	//it whenever it sees the file of a song.
+	private static final byte[] LAST_SEEN = "last-seen>".getBytes(
+			StandardCharsets.US_ASCII);
+
+	//The bytes of the old and new versions of the library.
+	private ByteBuffer oldLibrary;
+	private ByteBuffer newLibrary;
+	//The number of threads that the files are scanned on.
+	private int parallelism;
+	//The number of changes of each kind that the last diff found.
+	private long addedCount;
+	private long removedCount;
+	private long modifiedCount;
+
+	/**
+	 * Memory-maps two versions of a library.
+	 * @param oldLocation the location of the old version
+	 * @param newLocation the location of the new version
+	 * @throws IOException if a file cannot be read or is larger than 2 GB
+	 */
+	public LibraryDiff(String oldLocation, String newLocation) throws 
+		IOException
+	{
+		this(MappedLibraryScanner.map(oldLocation), 
+				MappedLibraryScanner.map(newLocation));
+	}
+
+	/**
+	 * @param oldLibrary the bytes of the old version of a library
+	 * @param newLibrary the bytes of the new version of the library, which 
+	 * must not be modified while the diff runs
+	 */
+	public LibraryDiff(ByteBuffer oldLibrary, ByteBuffer newLibrary)
+	{
+		this.oldLibrary = oldLibrary;
+		this.newLibrary = newLibrary;
+		parallelism = Runtime.getRuntime().availableProcessors();
+		addedCount = 0;
+		removedCount = 0;
+		modifiedCount = 0;
+	}
+
+	/**
+	 * Writes the changes between two library files from the command line:
+	 * LibraryDiff old new [output]. Without an output file, the changes are 
+	 * written to standard output.
+	 * @param args the old and new library files and optionally the output 
+	 * file
+	 * @throws IllegalArgumentException with the usage if there are too few
+	 * or too many arguments
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	public static void main(String[] args) throws IOException, SAXException
+	{
+		if (args.length < 2 || args.length > 3)
+		{
+			throw new IllegalArgumentException("Usage: LibraryDiff old new " +
+					"[output]");
+		}
+		LibraryDiff diff = new LibraryDiff(args[0], args[1]);
+		if (args.length == 3)
+		{
+			try (OutputStream out = Files.newOutputStream(Paths.get(args[2])))
+			{
+				diff.writeChanges(out);
+			}
+		}
+		else
+		{
+			diff.writeChanges(System.out);
+		}
+		System.err.println(diff.getAddedCount() + " added, " + 
+				diff.getRemovedCount() + " removed, " + diff.getModifiedCount() + 
+				" modified");
+	}
+
+	/**
+	 * Sets the number of threads that the files are scanned on, which 
+	 * defaults to the number of processors.
+	 * @param parallelism the number of threads, where 1 scans the files on 
+	 * the calling thread
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return The number of threads that the files are scanned on.
+	 */
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Writes the changes between the two versions, one JSON object per line:
+	 * {"change":"added","song":{...}} for the songs that are only in the new
+	 * version, {"change":"modified","song":{...},"changed":{...}} for the 
+	 * songs whose fields changed, both in the order of the new version, and 
+	 * then {"change":"removed","song":{...}} for the songs that are only in 
+	 * the old version, in its order. Songs are written in the format of 
+	 * {@link ExportFormat#JSON_LINES}, and "changed" holds 
+	 * {"from":old,"to":new} for each modified field, keyed by its tag name.
+	 * @param out where the changes are written to, which is flushed but not 
+	 * closed
+	 * @return the number of changes
+	 * @throws IOException 
+	 * @throws SAXException if a version of the library is not well-formed
+	 */
+	public long writeChanges(Writer out) throws IOException, SAXException
+	{
+		addedCount = 0;
+		removedCount = 0;
+		modifiedCount = 0;
+		Fingerprints[] versions = fingerprint();
+		Fingerprints before = versions[0];
+		Fingerprints after = versions[1];
+
+		//An open-addressing table of the old rows by the hashes of their 
+		//locations. Rows with the same location are inserted in library 
+		//order, so they are probed in that order too.
+		int capacity = Integer.highestOneBit(Math.max(1, before.size) * 2 - 1)
+				<< 1;
+		int mask = capacity - 1;
+		int[] table = new int[capacity];
+		for (int row = 0; row < before.size; row++)
+		{
+			int slot = (int) before.keys[row] & mask;
+			while (table[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = row + 1;
+		}
+
+		MappedLibraryScanner oldScanner = new MappedLibraryScanner(
+				oldLibrary.duplicate());
+		MappedLibraryScanner newScanner = new MappedLibraryScanner(
+				newLibrary.duplicate());
+		SongExporter exporter = new SongExporter(out, ExportFormat.JSON_LINES);
+		BitSet matched = new BitSet(before.size);
+		for (int row = 0; row < after.size; row++)
+		{
+			long key = after.keys[row];
+			Song song = null;
+			int match = -1;
+			for (int slot = (int) key & mask; table[slot] != 0 && match < 0; 
+					slot = (slot + 1) & mask)
+			{
+				int oldRow = table[slot] - 1;
+				if (before.keys[oldRow] != key || matched.get(oldRow))
+				{
+					continue;
+				}
+				if (before.prints[oldRow] == after.prints[row])
+				{
+					match = oldRow;
+					continue;
+				}
+				//The entry changed, but its song was only modified if a field
+				//that it keeps changed and another location does not have the
+				//same hash.
+				if (song == null)
+				{
+					song = newScanner.readEntry(after.offsets[row]);
+				}
+				Song previous = oldScanner.readEntry(before.offsets[oldRow]);
+				if (previous.getLocation().equals(song.getLocation()))
+				{
+					match = oldRow;
+					if (!previous.equals(song))
+					{
+						exporter.exportChange("modified", song, previous);
+						modifiedCount++;
+					}
+				}
+			}
+			if (match >= 0)
+			{
+				matched.set(match);
+			}
+			else
+			{
+				if (song == null)
+				{
+					song = newScanner.readEntry(after.offsets[row]);
+				}
+				exporter.exportChange("added", song, null);
+				addedCount++;
+			}
+		}
+		for (int row = matched.nextClearBit(0); row < before.size; 
+				row = matched.nextClearBit(row + 1))
+		{
+			exporter.exportChange("removed", 
+					oldScanner.readEntry(before.offsets[row]), null);
+			removedCount++;
+		}
+		exporter.flush();
+		return exporter.getSongCount();
+	}
+
+	/**
+	 * Writes the changes between the two versions as UTF-8, like {@link 
+	 * #writeChanges(Writer)}.
+	 * @param out where the changes are written to, which is flushed but not 
+	 * closed
+	 * @return the number of changes
+	 * @throws IOException 
+	 * @throws SAXException if a version of the library is not well-formed
+	 */
+	public long writeChanges(OutputStream out) throws IOException, 
+		SAXException
+	{
+		return writeChanges(new BufferedWriter(new OutputStreamWriter(out, 
+				StandardCharsets.UTF_8), 1 << 16));
+	}
+
+	/**
+	 * @return The number of songs that the last diff found were added.
+	 */
+	public long getAddedCount()
+	{
+		return addedCount;
+	}
+
+	/**
+	 * @return The number of songs that the last diff found were removed.
+	 */
+	public long getRemovedCount()
+	{
+		return removedCount;
+	}
+
+	/**
+	 * @return The number of songs that the last diff found were modified.
+	 */
+	public long getModifiedCount()
+	{
+		return modifiedCount;
+	}
+
+	/**
+	 * Scans both versions for the fingerprints of their songs, in chunks on
+	 * a ForkJoinPool unless they are too small to be worth splitting.
+	 * @return the fingerprints of the old version and of the new version
+	 */
+	private Fingerprints[] fingerprint() throws SAXException
+	{
+		ByteBuffer[] libraries = {oldLibrary, newLibrary};
+		List<List<FingerprintTask>> tasks = new ArrayList<List<FingerprintTask>>();
+		for (ByteBuffer library : libraries)
+		{
+			int size = library.limit();
+			int chunkCount = parallelism == 1 ? 1 : (int) Math.max(1, Math.min(
+					(long) parallelism * CHUNKS_PER_THREAD, 
+					size / ParallelLibraryScanner.MIN_CHUNK_SIZE));
+			//Every chunk after the first starts at an entry, so that no 
+			//entry is split between two chunks.
+			int[] bounds = new int[chunkCount + 1];
+			for (int i = 1; i < chunkCount; i++)
+			{
+				int from = Math.max(bounds[i - 1], 
+						(int) ((long) size * i / chunkCount));
+				bounds[i] = MappedLibraryScanner.nextEntry(library, from);
+			}
+			bounds[chunkCount] = size;
+			List<FingerprintTask> chunks = new ArrayList<FingerprintTask>();
+			for (int i = 0; i < chunkCount; i++)
+			{
+				chunks.add(new FingerprintTask(library, bounds[i], bounds[i + 1]));
+			}
+			tasks.add(chunks);
+		}
+
+		Fingerprints[] versions = new Fingerprints[libraries.length];
+		ForkJoinPool pool = parallelism == 1 ? null : 
+			new ForkJoinPool(parallelism);
+		try
+		{
+			for (List<FingerprintTask> chunks : tasks)
+			{
+				if (pool == null)
+				{
+					chunks.forEach(FingerprintTask::invoke);
+				}
+				else
+				{
+					chunks.forEach(pool::execute);
+				}
+			}
+			for (int i = 0; i < libraries.length; i++)
+			{
+				versions[i] = Fingerprints.join(tasks.get(i));
+			}
+			return versions;
+		}
+		catch (LibraryParseException e)
+		{
+			//The exception may have been wrapped again when it was rethrown
+			//by another thread.
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof SAXException)
+				{
+					throw (SAXException) cause;
+				}
+			}
+			throw e;
+		}
+		finally
+		{
+			if (pool != null)
+			{
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Mixes a value into a hash.
+	 */
+	private static long hash(long hash, long value)
+	{
+		hash ^= value * 0x9e3779b97f4a7c15L;
+		return Long.rotateLeft(hash, 27) * 0x94d049bb133111ebL;
+	}
+
+	/**
+	 * Mixes a string and its length into a hash, four characters at a time.
+	 */
+	private static long hash(long hash, String s)
+	{
+		int length = s.length();
+		hash = hash(hash, length);
+		int i = 0;
+		for (; i + 4 <= length; i += 4)
+		{
+			hash = hash(hash, s.charAt(i) | (long) s.charAt(i + 1) << 16 | 
+					(long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48);
+		}
+		long rest = 0;
+		for (; i < length; i++)
+		{
+			rest = rest << 16 | s.charAt(i);
+		}
+		return hash(hash, rest);
+	}
+
+	/**
+	 * Hashes the bytes of an entry, apart from its last-seen element.
+	 * @param library the bytes of a library
+	 * @param start the position of the entry's start tag
+	 * @param end the position after the entry's end tag
+	 * @return the fingerprint of the entry
+	 */
+	private static long fingerprint(ByteBuffer library, int start, int end)
+	{
+		int skipStart = lastSeen(library, start, end);
+		int skipEnd = skipStart;
+		if (skipStart < end)
+		{
+			//Skip to the end of the element's end tag.
+			for (int tags = 0; skipEnd < end && tags < 2; skipEnd++)
+			{
+				if (library.get(skipEnd) == '>')
+				{
+					tags++;
+				}
+			}
+		}
+		return finish(hash(hash(PRINT_SEED, library, start, skipStart), 
+				library, skipEnd, end));
+	}
+
+	/**
+	 * Finds the last-seen element of an entry, looking for its '<' eight 
+	 * bytes at a time.
+	 * @return the position of the element's start tag, or the end of the 
+	 * entry if it has none
+	 */
+	private static int lastSeen(ByteBuffer library, int start, int end)
+	{
+		int last = end - LAST_SEEN.length - 1;
+		int pos = start;
+		for (; pos + 8 <= last; pos += 8)
+		{
+			//Sets the high bit of the bytes that are '<', and possibly of 
+			//some bytes before them, which are then checked one by one.
+			long word = library.getLong(pos) ^ 0x3c3c3c3c3c3c3c3cL;
+			long found = (word - 0x0101010101010101L) & ~word & 
+					0x8080808080808080L;
+			while (found != 0)
+			{
+				int tag = pos + 7 - (Long.numberOfTrailingZeros(found) >>> 3);
+				if (library.get(tag) == '<' && matches(library, tag + 1, LAST_SEEN))
+				{
+					return tag;
+				}
+				found &= found - 1;
+			}
+		}
+		for (; pos <= last; pos++)
+		{
+			if (library.get(pos) == '<' && matches(library, pos + 1, LAST_SEEN))
+			{
+				return pos;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Mixes bytes into a hash, eight at a time.
+	 */
+	private static long hash(long hash, ByteBuffer library, int start, int end)
+	{
+		hash = hash(hash, end - start);
+		int pos = start;
+		for (; pos + 8 <= end; pos += 8)
+		{
+			hash = hash(hash, library.getLong(pos));
+		}
+		long rest = 0;
+		for (; pos < end; pos++)
+		{
+			rest = rest << 8 | (library.get(pos) & 0xff);
+		}
+		return hash(hash, rest);
+	}
+
+	/**
+	 * @return whether bytes of a library are equal to some ASCII ones
+	 */
+	private static boolean matches(ByteBuffer library, int pos, byte[] bytes)
+	{
+		for (int i = 0; i < bytes.length; i++)
+		{
+			if (library.get(pos + i) != bytes[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Spreads the bits of a hash, so that its low bits can index a table.
+	 */
+	private static long finish(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		return hash ^ hash >>> 33;
+	}
+
+	/**
+	 * The hashes of the locations and the fingerprints of the songs of a 
+	 * library, and the positions of their entries, by row.
+	 */
+	private static class Fingerprints 
+	{
+		//The bytes of the library.
+		private ByteBuffer library;
+		private int size;
+		private long[] keys;
+		private long[] prints;
+		private int[] offsets;
+
+		public Fingerprints(ByteBuffer library, int capacity)
+		{
+			this.library = library;
+			size = 0;
+			keys = new long[capacity];
+			prints = new long[capacity];
+			offsets = new int[capacity];
+		}
+
+		/**
+		 * Records a song and the position of its entry.
+		 */
+		public void add(Song song, int offset, int length)
+		{
+			if (size == keys.length)
+			{
+				int capacity = Math.max(16, size * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				prints = Arrays.copyOf(prints, capacity);
+				offsets = Arrays.copyOf(offsets, capacity);
+			}
+			keys[size] = finish(hash(KEY_SEED, song.getLocation()));
+			prints[size] = fingerprint(library, offset, offset + length);
+			offsets[size] = offset;
+			size++;
+		}
+
+		/**
+		 * Joins the fingerprints of the chunks of a library in order.
+		 */
+		public static Fingerprints join(List<FingerprintTask> chunks)
+		{
+			if (chunks.size() == 1)
+			{
+				return chunks.get(0).join();
+			}
+			int size = 0;
+			for (FingerprintTask chunk : chunks)
+			{
+				size += chunk.join().size;
+			}
+			Fingerprints joined = new Fingerprints(chunks.get(0).library, size);
+			for (FingerprintTask chunk : chunks)
+			{
+				Fingerprints part = chunk.join();
+				System.arraycopy(part.keys, 0, joined.keys, joined.size, part.size);
+				System.arraycopy(part.prints, 0, joined.prints, joined.size, 
+						part.size);
+				System.arraycopy(part.offsets, 0, joined.offsets, joined.size, 
+						part.size);
+				joined.size += part.size;
+			}
+			return joined;
+		}
+	}
+
+	/**
+	 * Fingerprints the songs in one chunk of a library.
+	 */
+	@SuppressWarnings("serial")
+	private static class FingerprintTask extends RecursiveTask<Fingerprints>
+	{
+		//The bytes of the library.
+		private ByteBuffer library;
+		//The position of the chunk's first byte and the position after its 
+		//last byte.
+		private int start;
+		private int end;
+
+		public FingerprintTask(ByteBuffer library, int start, int end)
+		{
+			this.library = library;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		protected Fingerprints compute()
+		{
+			//Songs take up about 600 bytes of a library.
+			Fingerprints fingerprints = new Fingerprints(library, 
+					(end - start) / 512 + 16);
+			try
+			{
+				new MappedLibraryScanner(library.duplicate(), null, null, 
+						EnumSet.of(SongField.LOCATION))
+						.scanEntries(start, end, fingerprints::add);
+			}
+			catch (SAXException e)
+			{
+				throw new LibraryParseException("Could not parse the library", 
+						e);
+			}
+			return fingerprints;
+		}
+	}
+}
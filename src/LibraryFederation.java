@@ -0,0 +1,166 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses many Rhythmbox libraries, such as those of different users, at the
+ * same time on a bounded number of threads, and merges them into a {@link 
+ * FederatedLibrary}. A library that cannot be parsed is reported with the 
+ * exception that it failed with, and the others are still merged.
+ */
+public class LibraryFederation 
+{
+	//The most libraries that are parsed at once.
+	private int parallelism;
+	//The engine that each library is parsed with.
+	private ParseEngine parseEngine;
+
+	public LibraryFederation()
+	{
+		parallelism = Runtime.getRuntime().availableProcessors();
+		parseEngine = ParseEngine.SAX;
+	}
+
+	/**
+	 * Sets the most libraries that are parsed at once, which defaults to 
+	 * the number of processors.
+	 * @param parallelism the number of threads
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return The most libraries that are parsed at once.
+	 */
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Sets the engine that each library is parsed with. The default is 
+	 * {@link ParseEngine#SAX}. Each library is read by one thread, since the
+	 * libraries already keep every thread busy, so {@link 
+	 * ParseEngine#PARALLEL} reads like {@link ParseEngine#MAPPED}.
+	 * @param parseEngine the engine
+	 */
+	public void setParseEngine(ParseEngine parseEngine)
+	{
+		if (parseEngine == null)
+		{
+			throw new IllegalArgumentException("The parse engine cannot be null");
+		}
+		this.parseEngine = parseEngine;
+	}
+
+	/**
+	 * @return The engine that each library is parsed with.
+	 */
+	public ParseEngine getParseEngine()
+	{
+		return parseEngine;
+	}
+
+	/**
+	 * Parses libraries at the same time and merges their songs. Each 
+	 * location is only parsed once.
+	 * @param libLocations the locations of the libraries
+	 * @return the songs of the libraries that were parsed, and the reasons
+	 * that the others failed
+	 * @throws InterruptedException if the thread was interrupted while the 
+	 * libraries were parsed or merged, in which case the parsing is stopped
+	 */
+	public FederatedLibrary parseLibraries(Collection<String> libLocations) 
+		throws InterruptedException
+	{
+		List<String> locations = new ArrayList<String>(
+				new LinkedHashSet<String>(libLocations));
+		List<Callable<List<Song>>> tasks = 
+				new ArrayList<Callable<List<Song>>>(locations.size());
+		for (String libLocation : locations)
+		{
+			tasks.add(() -> parse(libLocation));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(parallelism, locations.size())), task ->
+		{
+			Thread thread = new Thread(task, "LibraryFederation parser");
+			thread.setDaemon(true);
+			return thread;
+		});
+		LinkedHashMap<String, List<Song>> librarySongs = 
+				new LinkedHashMap<String, List<Song>>();
+		LinkedHashMap<String, Exception> failures = 
+				new LinkedHashMap<String, Exception>();
+		try
+		{
+			List<Future<List<Song>>> results = executor.invokeAll(tasks);
+			for (int i = 0; i < locations.size(); i++)
+			{
+				try
+				{
+					librarySongs.put(locations.get(i), results.get(i).get());
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					failures.put(locations.get(i), cause instanceof Exception ? 
+							(Exception) cause : e);
+				}
+			}
+			//The threads that parsed the libraries build the merged indexes.
+			return new FederatedLibrary(librarySongs, failures, executor);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Parses one library on a thread of the executor.
+	 */
+	private List<Song> parse(String libLocation) throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(libLocation);
+		parser.setParseEngine(parseEngine);
+		parser.setParallelism(1);
+		parser.parseLibrary();
+		return parser.returnSongs();
+	}
+}
@@ -0,0 +1,352 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates synthetic Rhythmbox XML libraries with the same layout as the 
+ * ones that Rhythmbox writes: song entries with some optional elements 
+ * missing, along with ignore, podcast-post and iradio entries. The same seed
+ * always generates the same library, so the libraries can be used to compare
+ * parse engines and to benchmark them.
+ */
+public class LibraryGenerator 
+{
+	//Words that titles, artists and albums are made from. Some of them need
+	//to be escaped or are not ASCII, so that decoding is exercised.
+	private static final String[] WORDS = {"Love", "Night", "Blue", "Rock", 
+		"Girl", "Heart", "Road", "Fire", "Dream", "Time", "Rain", "Song", 
+		"Life", "Summer", "Wild", "Day", "Light", "Gold", "River", "Home", 
+		"Crazy", "Little", "Ocean", "Moon", "Sweet", "Black", "Rose", "Run",
+		"Rock & Roll", "Caf\u00e9", "\u00dcber", "Sigur R\u00f3s", 
+		"Mot\u00f6rhead", "<Live>", "\"Quoted\"", "It's"};
+	private static final String[] GENRES = {"Rock", "Classic Rock", "Pop", 
+		"Jazz", "Blues", "Electronic", "Hip-Hop", "Folk", "Country", "Metal",
+		"Punk", "Soul", "R&B", "Reggae", "Classical", "Alternative", "Indie",
+		"Soundtrack", "Ambient", "Funk"};
+
+	//Generates the contents of the library.
+	private Random random;
+	//The fractions of the entries that are not songs.
+	private double ignoreFraction;
+	private double podcastFraction;
+	private double radioFraction;
+	//The number of distinct artists, albums per artist and tracks per album.
+	private int artistCount;
+
+	/**
+	 * @param seed the seed that the library is generated from
+	 */
+	public LibraryGenerator(long seed)
+	{
+		random = new Random(seed);
+		ignoreFraction = 0.1;
+		podcastFraction = 0.05;
+		radioFraction = 0.01;
+		artistCount = 500;
+	}
+
+	/**
+	 * Sets the fractions of the generated entries that are not songs.
+	 * @param ignore the fraction of ignore entries
+	 * @param podcast the fraction of podcast-post entries
+	 * @param radio the fraction of iradio entries
+	 */
+	public void setEntryFractions(double ignore, double podcast, double radio)
+	{
+		if (ignore < 0 || podcast < 0 || radio < 0 || 
+				ignore + podcast + radio > 1)
+		{
+			throw new IllegalArgumentException("Invalid entry fractions");
+		}
+		ignoreFraction = ignore;
+		podcastFraction = podcast;
+		radioFraction = radio;
+	}
+
+	/**
+	 * Sets the number of distinct artists that songs are generated for.
+	 * @param artistCount the number of artists
+	 */
+	public void setArtistCount(int artistCount)
+	{
+		if (artistCount < 1)
+		{
+			throw new IllegalArgumentException("There must be an artist");
+		}
+		this.artistCount = artistCount;
+	}
+
+	/**
+	 * Writes a generated library to a file.
+	 * @param libLocation the location of the file
+	 * @param entries the number of entries in the library
+	 * @throws IOException 
+	 */
+	public void generate(String libLocation, int entries) throws IOException
+	{
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				Files.newOutputStream(Paths.get(libLocation)), 
+				StandardCharsets.UTF_8), 1 << 16))
+		{
+			generate(out, entries);
+		}
+	}
+
+	/**
+	 * Writes a generated library.
+	 * @param out where the library is written to
+	 * @param entries the number of entries in the library
+	 * @throws IOException 
+	 */
+	public void generate(Writer out, int entries) throws IOException
+	{
+		out.write("<?xml version=\"1.0\" standalone=\"yes\"?>\n");
+		out.write("<rhythmdb version=\"1.7\">\n");
+		for (int i = 0; i < entries; i++)
+		{
+			double kind = random.nextDouble();
+			if (kind < ignoreFraction)
+			{
+				writeIgnore(out, i);
+			}
+			else if (kind < ignoreFraction + podcastFraction)
+			{
+				writePodcast(out, i);
+			}
+			else if (kind < ignoreFraction + podcastFraction + radioFraction)
+			{
+				writeRadio(out, i);
+			}
+			else
+			{
+				writeSong(out, i);
+			}
+		}
+		out.write("</rhythmdb>\n");
+	}
+
+	private void writeSong(Writer out, int id) throws IOException
+	{
+		int artistId = random.nextInt(artistCount);
+		String artist = words(artistId, 2);
+		int albumId = random.nextInt(4);
+		String album = words(artistId * 7 + albumId + 1, 3);
+		String title = words(random.nextInt(1 << 20), 1 + random.nextInt(4));
+		int trackNum = 1 + random.nextInt(15);
+		int duration = 60 + random.nextInt(480);
+		int bitRate = random.nextInt(10) == 0 ? 128 : 320;
+
+		out.write("  <entry type=\"song\">\n");
+		element(out, "title", title);
+		element(out, "genre", GENRES[(artistId + albumId) % GENRES.length]);
+		element(out, "artist", artist);
+		element(out, "album", album);
+		if (random.nextInt(10) != 0)
+		{
+			element(out, "track-number", trackNum);
+		}
+		if (random.nextInt(3) == 0)
+		{
+			element(out, "disc-number", 1 + random.nextInt(2));
+		}
+		element(out, "duration", duration);
+		element(out, "file-size", duration * bitRate * 125);
+		element(out, "location", "file:///mnt/music/" + encode(artist) + "/" + 
+				encode(album) + "/" + trackNum + "%20" + encode(title) + ".mp3");
+		element(out, "mtime", 1200000000 + random.nextInt(100000000));
+		element(out, "first-seen", 1300000000 + random.nextInt(10000000));
+		element(out, "last-seen", 1314394401);
+		if (random.nextInt(5) == 0)
+		{
+			element(out, "rating", 1 + random.nextInt(5));
+		}
+		if (random.nextInt(3) == 0)
+		{
+			element(out, "play-count", 1 + random.nextInt(100));
+			element(out, "last-played", 1310000000 + random.nextInt(4000000));
+		}
+		if (random.nextInt(20) != 0)
+		{
+			element(out, "bitrate", bitRate);
+		}
+		element(out, "date", 700000 + random.nextInt(40000));
+		element(out, "mimetype", "application/x-id3");
+		if (random.nextInt(20) == 0)
+		{
+			element(out, "comment", "Comment " + id + " & more");
+		}
+		if (random.nextInt(5) < 3)
+		{
+			element(out, "album-artist", artist);
+		}
+		if (random.nextInt(20) == 0)
+		{
+			element(out, "beats-per-minute", 60 + random.nextInt(140));
+		}
+		out.write("  </entry>\n");
+	}
+
+	private void writeIgnore(Writer out, int id) throws IOException
+	{
+		out.write("  <entry type=\"ignore\">\n");
+		element(out, "title", "");
+		element(out, "genre", "");
+		element(out, "artist", "");
+		element(out, "album", "");
+		element(out, "location", "file:///mnt/music/cover" + id + ".jpg");
+		element(out, "mountpoint", "file:///mnt/music");
+		element(out, "mtime", 1200000000 + random.nextInt(100000000));
+		element(out, "last-seen", 1314394401);
+		element(out, "date", 0);
+		element(out, "mimetype", "application/octet-stream");
+		out.write("  </entry>\n");
+	}
+
+	private void writePodcast(Writer out, int id) throws IOException
+	{
+		String feed = words(random.nextInt(50), 2);
+		out.write("  <entry type=\"podcast-post\">\n");
+		element(out, "title", "Episode " + id);
+		element(out, "genre", "Podcast");
+		element(out, "artist", feed);
+		element(out, "album", feed);
+		element(out, "duration", 600 + random.nextInt(3600));
+		element(out, "location", "http://podcasts.example.com/" + encode(feed) +
+				"/" + id + ".mp3");
+		element(out, "mountpoint", "file:///mnt/podcasts/" + id + ".mp3");
+		element(out, "last-seen", 1314394401);
+		element(out, "date", 0);
+		element(out, "status", 100);
+		element(out, "description", "The " + id + "th episode of <" + feed + 
+				">");
+		element(out, "post-time", 1310000000 + random.nextInt(4000000));
+		element(out, "mimetype", "audio/mpeg");
+		out.write("  </entry>\n");
+	}
+
+	private void writeRadio(Writer out, int id) throws IOException
+	{
+		out.write("  <entry type=\"iradio\">\n");
+		element(out, "title", words(id, 2) + " Radio");
+		element(out, "genre", GENRES[id % GENRES.length]);
+		element(out, "artist", "");
+		element(out, "album", "");
+		element(out, "location", "http://radio.example.com/" + id + ".pls");
+		if (random.nextInt(2) == 0)
+		{
+			element(out, "play-count", 1 + random.nextInt(20));
+			element(out, "last-played", 1310000000 + random.nextInt(4000000));
+		}
+		element(out, "bitrate", 128);
+		element(out, "date", 0);
+		element(out, "mimetype", "application/octet-stream");
+		out.write("  </entry>\n");
+	}
+
+	/**
+	 * @return some words chosen by a number, so the same number always 
+	 * gives the same words
+	 */
+	private static String words(int n, int count)
+	{
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < count; i++)
+		{
+			if (i > 0)
+			{
+				result.append(' ');
+			}
+			result.append(WORDS[n % WORDS.length]);
+			n = n / WORDS.length + i * 7;
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return the text percent-encoded in the same way that Rhythmbox 
+	 * encodes locations
+	 */
+	private static String encode(String text)
+	{
+		StringBuilder result = new StringBuilder();
+		for (byte b : text.getBytes(StandardCharsets.UTF_8))
+		{
+			if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || 
+					(b >= '0' && b <= '9') || b == '-' || b == '_' || b == '.')
+			{
+				result.append((char) b);
+			}
+			else
+			{
+				result.append('%').append(String.format("%02X", b & 0xff));
+			}
+		}
+		return result.toString();
+	}
+
+	private static void element(Writer out, String name, int value) throws 
+		IOException
+	{
+		element(out, name, Integer.toString(value));
+	}
+
+	private static void element(Writer out, String name, String text) throws 
+		IOException
+	{
+		out.write("    <");
+		out.write(name);
+		if (text.isEmpty())
+		{
+			out.write("/>\n");
+			return;
+		}
+		out.write('>');
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '&')
+			{
+				out.write("&amp;");
+			}
+			else if (c == '<')
+			{
+				out.write("&lt;");
+			}
+			else if (c == '>')
+			{
+				out.write("&gt;");
+			}
+			else
+			{
+				out.write(c);
+			}
+		}
+		out.write("</");
+		out.write(name);
+		out.write(">\n");
+	}
+}
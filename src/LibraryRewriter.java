@@ -0,0 +1,758 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Writes new ratings, play counts, times last played and comments back into
+ * a Rhythmbox XML library, without parsing it into songs or holding it in 
+ * memory. The library is read through a small window and only scanned for 
+ * the start, end and location of each entry; the song entries whose 
+ * locations have updates are rewritten, and the bytes between them are 
+ * copied as they are, with long runs copied by the operating system without
+ * being read at all. Entries of other types are never changed. The new library is written to a temporary file next to its 
+ * destination, which then replaces the destination in one step, so readers 
+ * never see a half-written library.
+ */
+public class LibraryRewriter 
+{
+	//The starts of the tags that are looked for, which may be followed by
+	//whitespace before the tag ends, as in the parse engines.
+	private static final byte[] ENTRY = ascii("<entry");
+	private static final byte[] END_ENTRY = ascii("</entry");
+	private static final byte[] LOCATION = ascii("<location");
+	private static final byte[] END_LOCATION = ascii("</location");
+	private static final byte[] TYPE = ascii("type");
+	private static final byte[] SONG = ascii("song");
+	//The start of the start tag and the end tag of each field's element.
+	private static final byte[][] START_TAGS = 
+			new byte[SongField.values().length][];
+	private static final byte[][] END_TAGS = 
+			new byte[SongField.values().length][];
+	//Runs of unchanged bytes up to this long are batched with the rewritten
+	//entries; longer ones are copied straight from the library.
+	private static final int BATCHED_RUN = 1 << 13;
+	//The batched bytes are written once there are this many.
+	private static final int BATCH_SIZE = 1 << 16;
+	//The library is read through a window of this many bytes, which starts
+	//this far before the byte that moved it.
+	private static final int WINDOW_SIZE = 1 << 20;
+	private static final int WINDOW_BACK = 1 << 12;
+
+	static
+	{
+		for (SongField field : SongField.values())
+		{
+			START_TAGS[field.ordinal()] = ascii("<" + field.getElementName());
+			END_TAGS[field.ordinal()] = ascii("</" + field.getElementName());
+		}
+	}
+
+	//The location of the library that is read.
+	private String libLocation;
+	//The library and its size while it is rewritten.
+	private FileChannel source;
+	private int size;
+	//The bytes of the library between two positions.
+	private byte[] window;
+	private int windowStart;
+	private int windowEnd;
+	//The rewritten entries and the short runs of bytes between them that 
+	//have not been written yet.
+	private ByteArrayOutputStream batch;
+	//Builds each element that is written.
+	private StringBuilder element;
+
+	/**
+	 * @param libLocation the location of the Rhythmbox XML library
+	 */
+	public LibraryRewriter(String libLocation)
+	{
+		this.libLocation = libLocation;
+		source = null;
+		size = 0;
+		window = new byte[WINDOW_SIZE];
+		windowStart = 0;
+		windowEnd = 0;
+		batch = new ByteArrayOutputStream(BATCH_SIZE * 2);
+		element = new StringBuilder();
+	}
+
+	/**
+	 * Applies updates to the library in place.
+	 * @param updates the updates of the entries, by location
+	 * @return the number of entries that were updated
+	 * @throws IOException if the library cannot be read or written, or is 
+	 * larger than 2 GB
+	 * @throws SAXException if an entry is not terminated, in which case the 
+	 * library is left as it was
+	 */
+	public int rewrite(Map<String, SongUpdate> updates) throws IOException, 
+		SAXException
+	{
+		return rewrite(updates, libLocation);
+	}
+
+	/**
+	 * Writes a copy of the library with updates applied.
+	 * @param updates the updates of the entries, by location
+	 * @param outLocation where the new library is written, which may be the
+	 * library itself
+	 * @return the number of entries that were updated
+	 * @throws IOException if the library cannot be read or written, or is 
+	 * larger than 2 GB
+	 * @throws SAXException if an entry is not terminated, in which case 
+	 * nothing is written
+	 */
+	public int rewrite(Map<String, SongUpdate> updates, String outLocation) 
+		throws IOException, SAXException
+	{
+		Path target = Paths.get(outLocation).toAbsolutePath();
+		Path temp = Files.createTempFile(target.getParent(), 
+				target.getFileName() + ".", ".tmp");
+		boolean replaced = false;
+		try (FileChannel in = FileChannel.open(Paths.get(libLocation), 
+				StandardOpenOption.READ))
+		{
+			if (in.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException(libLocation + " is too large to be " +
+						"rewritten");
+			}
+			source = in;
+			size = (int) in.size();
+			int updated;
+			try (FileChannel channel = FileChannel.open(temp, 
+					StandardOpenOption.WRITE, 
+					StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				updated = copy(updates, channel);
+				channel.force(true);
+			}
+			if (Files.exists(target))
+			{
+				try
+				{
+					Files.setPosixFilePermissions(temp, 
+							Files.getPosixFilePermissions(target));
+				}
+				catch (UnsupportedOperationException e)
+				{
+					//The file system has no POSIX permissions to keep.
+				}
+			}
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, 
+					StandardCopyOption.ATOMIC_MOVE);
+			replaced = true;
+			return updated;
+		}
+		finally
+		{
+			source = null;
+			windowStart = 0;
+			windowEnd = 0;
+			batch.reset();
+			if (!replaced)
+			{
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * Copies the library to a channel, rewriting the entries that have 
+	 * updates.
+	 * @return the number of entries that were updated
+	 */
+	private int copy(Map<String, SongUpdate> updates, FileChannel channel) 
+		throws IOException, SAXException
+	{
+		int copied = 0;
+		int updated = 0;
+		OutputStream out = Channels.newOutputStream(channel);
+		//A location without references can only have an update if it is as 
+		//long as the UTF-8 of a location that does, so the others are not 
+		//decoded.
+		BitSet lengths = new BitSet();
+		for (String key : updates.keySet())
+		{
+			lengths.set(key.getBytes(StandardCharsets.UTF_8).length);
+		}
+		//The bytes are scanned once, looking only at the start of each tag.
+		int pos = updates.isEmpty() ? -1 : indexOf('<', 0, size);
+		int entry = -1;
+		String location = null;
+		while (pos >= 0)
+		{
+			byte next = pos + 1 < size ? byteAt(pos + 1) : 0;
+			if (next == 'e' && isTag(pos, ENTRY))
+			{
+				//Only song entries are rewritten, and an empty entry has 
+				//nothing to rewrite.
+				int tagEnd = endOfTag(pos);
+				entry = byteAt(tagEnd - 1) != '/' && isSongEntry(pos, tagEnd) ? 
+						pos : -1;
+				location = null;
+				pos = tagEnd;
+			}
+			else if (next == 'l' && entry >= 0 && isTag(pos, LOCATION))
+			{
+				int tagEnd = endOfTag(pos);
+				if (byteAt(tagEnd - 1) == '/')
+				{
+					location = "";
+					pos = tagEnd;
+				}
+				else
+				{
+					int textStart = tagEnd + 1;
+					pos = indexOf('<', textStart, size);
+					if (pos < 0 || afterEndTag(pos, END_LOCATION) < 0)
+					{
+						throw malformed("unterminated location", textStart);
+					}
+					location = lengths.get(pos - textStart) || 
+							indexOf('&', textStart, pos) >= 0 || 
+							indexOf('\r', textStart, pos) >= 0 ? 
+									decode(textStart, pos) : null;
+				}
+			}
+			else if (next == '/' && entry >= 0 && 
+					afterEndTag(pos, END_ENTRY) >= 0)
+			{
+				int end = afterEndTag(pos, END_ENTRY);
+				SongUpdate update = location == null ? null : 
+					updates.get(location);
+				//An update without values leaves its entry as it is.
+				if (update != null && !update.getValues().isEmpty())
+				{
+					write(out, channel, copied, entry);
+					rewriteEntry(entry, pos, end, update);
+					if (batch.size() >= BATCH_SIZE)
+					{
+						flush(out);
+					}
+					copied = end;
+					updated++;
+				}
+				entry = -1;
+			}
+			pos = indexOf('<', pos + 1, size);
+		}
+		if (entry >= 0)
+		{
+			throw malformed("unterminated entry", entry);
+		}
+		write(out, channel, copied, size);
+		flush(out);
+		return updated;
+	}
+
+	/**
+	 * Writes the bytes of the library between two positions, as they are. A 
+	 * short run is added to the batch, and a long one is copied from the 
+	 * library by the operating system after the batch is written.
+	 */
+	private void write(OutputStream out, FileChannel channel, int start, 
+			int end) throws IOException
+	{
+		if (end - start <= BATCHED_RUN)
+		{
+			copyBytes(start, end);
+			return;
+		}
+		flush(out);
+		long pos = start;
+		while (pos < end)
+		{
+			pos += source.transferTo(pos, end - pos, channel);
+		}
+	}
+
+	/**
+	 * Writes the batched bytes.
+	 */
+	private void flush(OutputStream out) throws IOException
+	{
+		batch.writeTo(out);
+		batch.reset();
+	}
+
+	/**
+	 * Rewrites an entry into the batch. The elements of the fields that are
+	 * updated are replaced where they are, and those that the entry does not
+	 * have are added at its end, indented like its other elements.
+	 * @param start the position of the entry's start tag
+	 * @param endTag the position of the entry's end tag
+	 * @param end the position after the entry's end tag
+	 */
+	private void rewriteEntry(int start, int endTag, int end, 
+			SongUpdate update) throws IOException, SAXException
+	{
+		Map<SongField, String> values = update.getValues();
+		EnumSet<SongField> added = EnumSet.copyOf(values.keySet());
+		int p = start;
+		int pos = indexOf('<', endOfTag(start) + 1, endTag);
+		while (pos >= 0 && !added.isEmpty())
+		{
+			SongField field = matchField(pos, added);
+			if (field != null)
+			{
+				int elementEnd = elementEnd(pos, field, endTag);
+				copyBytes(p, pos);
+				writeElement(field, values.get(field));
+				added.remove(field);
+				p = elementEnd;
+				pos = elementEnd - 1;
+			}
+			pos = indexOf('<', pos + 1, endTag);
+		}
+		if (!added.isEmpty())
+		{
+			//A new element goes on its own line before the end tag if the 
+			//end tag is on its own line, and right before it otherwise.
+			int lineStart = endTag;
+			while (lineStart > p && isBlank(byteAt(lineStart - 1)))
+			{
+				lineStart--;
+			}
+			boolean ownLine = lineStart > p && byteAt(lineStart - 1) == '\n';
+			int insert = ownLine ? lineStart : endTag;
+			copyBytes(p, insert);
+			int[] indent = indent(start, endTag);
+			for (SongField field : added)
+			{
+				if (ownLine)
+				{
+					copyBytes(indent[0], indent[1]);
+				}
+				writeElement(field, values.get(field));
+				if (ownLine)
+				{
+					batch.write('\n');
+				}
+			}
+			p = insert;
+		}
+		copyBytes(p, end);
+	}
+
+	/**
+	 * @return The field, out of some fields, whose element starts at a 
+	 * position, or null if none does.
+	 */
+	private SongField matchField(int pos, EnumSet<SongField> fields) throws 
+		IOException
+	{
+		for (SongField field : fields)
+		{
+			byte[] tag = START_TAGS[field.ordinal()];
+			int after = pos + tag.length;
+			if (after < size && isTag(pos, tag))
+			{
+				return field;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the end of the element of a field.
+	 * @param pos the position of the element's start tag
+	 * @return the position after the element
+	 * @throws SAXException if the element is not terminated
+	 */
+	private int elementEnd(int pos, SongField field, int end) throws 
+		IOException, SAXException
+	{
+		int tagEnd = endOfTag(pos);
+		if (tagEnd >= end)
+		{
+			throw malformed("unterminated " + field.getElementName(), pos);
+		}
+		if (byteAt(tagEnd - 1) == '/')
+		{
+			return tagEnd + 1;
+		}
+		byte[] endTag = END_TAGS[field.ordinal()];
+		int close = indexOf(endTag, tagEnd + 1, end);
+		while (close >= 0)
+		{
+			int after = afterEndTag(close, endTag);
+			if (after >= 0 && after <= end)
+			{
+				return after;
+			}
+			close = indexOf(endTag, close + 1, end);
+		}
+		throw malformed("unterminated " + field.getElementName(), pos);
+	}
+
+	/**
+	 * Finds the whitespace that the first element of an entry is indented 
+	 * with.
+	 * @return the start and end of the whitespace, which are equal if the 
+	 * element is not on its own line
+	 */
+	private int[] indent(int start, int endTag) throws IOException, 
+		SAXException
+	{
+		int first = indexOf('<', endOfTag(start) + 1, endTag);
+		int lineStart = first < 0 ? endTag : first;
+		int indentEnd = lineStart;
+		while (lineStart > start && isBlank(byteAt(lineStart - 1)))
+		{
+			lineStart--;
+		}
+		if (lineStart == 0 || byteAt(lineStart - 1) != '\n')
+		{
+			return new int[] {indentEnd, indentEnd};
+		}
+		return new int[] {lineStart, indentEnd};
+	}
+
+	/**
+	 * Writes the element of a field with its new value into the batch, 
+	 * escaping it as XML.
+	 */
+	private void writeElement(SongField field, String value)
+	{
+		String name = field.getElementName();
+		element.setLength(0);
+		element.append('<').append(name);
+		if (value.isEmpty())
+		{
+			element.append("/>");
+		}
+		else
+		{
+			element.append('>');
+			for (int i = 0; i < value.length(); i++)
+			{
+				char c = value.charAt(i);
+				if (c == '&')
+				{
+					element.append("&amp;");
+				}
+				else if (c == '<')
+				{
+					element.append("&lt;");
+				}
+				else if (c == '>')
+				{
+					element.append("&gt;");
+				}
+				else if (c == '\r')
+				{
+					element.append("&#13;");
+				}
+				else
+				{
+					element.append(c);
+				}
+			}
+			element.append("</").append(name).append('>');
+		}
+		byte[] bytes = element.toString().getBytes(StandardCharsets.UTF_8);
+		batch.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Copies the bytes of the library between two positions into the batch.
+	 */
+	private void copyBytes(int start, int end) throws IOException
+	{
+		int pos = start;
+		while (pos < end)
+		{
+			byteAt(pos);
+			int length = Math.min(end, windowEnd) - pos;
+			batch.write(window, pos - windowStart, length);
+			pos += length;
+		}
+	}
+
+	/**
+	 * Decodes the text of an element between two positions.
+	 * @throws SAXException if the text has an invalid reference
+	 */
+	private String decode(int start, int end) throws IOException, 
+		SAXException
+	{
+		if (start < windowStart || end > windowEnd)
+		{
+			if (end - start > window.length)
+			{
+				window = new byte[end - start];
+			}
+			moveWindow(start);
+		}
+		int offset = start - windowStart;
+		boolean plain = true;
+		for (int i = offset; i < end - windowStart; i++)
+		{
+			plain &= window[i] != '&' && window[i] != '\r';
+		}
+		String text = new String(window, offset, end - start, 
+				StandardCharsets.UTF_8);
+		return plain ? text : MappedLibraryScanner.unescape(text, start);
+	}
+
+	/**
+	 * @param tag the start of a start tag, up to the end of its name
+	 * @return Whether the start tag is at a position.
+	 */
+	private boolean isTag(int pos, byte[] tag) throws IOException
+	{
+		if (!regionEquals(pos, tag))
+		{
+			return false;
+		}
+		byte b = byteAt(pos + tag.length);
+		return isWhitespace(b) || b == '>' || b == '/';
+	}
+
+	/**
+	 * @param endTag the start of an end tag, up to the end of its name
+	 * @return The position after the end tag at a position, or -1 if there
+	 * is none.
+	 */
+	private int afterEndTag(int pos, byte[] endTag) throws IOException
+	{
+		if (!regionEquals(pos, endTag))
+		{
+			return -1;
+		}
+		int end = pos + endTag.length;
+		while (isWhitespace(byteAt(end)))
+		{
+			end++;
+		}
+		return byteAt(end) == '>' ? end + 1 : -1;
+	}
+
+	/**
+	 * Finds the '>' that ends a tag, ignoring any inside of attribute values.
+	 * @param pos the position of the tag's '<'
+	 * @return the position of the '>'
+	 * @throws SAXException if the tag is not terminated
+	 */
+	private int endOfTag(int pos) throws IOException, SAXException
+	{
+		for (int p = pos + 1; p < size; p++)
+		{
+			byte b = byteAt(p);
+			if (b == '>')
+			{
+				return p;
+			}
+			if (b == '"' || b == '\'')
+			{
+				p = indexOf(b, p + 1, size);
+				if (p < 0)
+				{
+					break;
+				}
+			}
+		}
+		throw malformed("unterminated tag", pos);
+	}
+
+	/**
+	 * @param pos the position of an entry's start tag
+	 * @param tagEnd the position of the '>' that ends it
+	 * @return Whether the entry's type attribute is song.
+	 */
+	private boolean isSongEntry(int pos, int tagEnd) throws IOException
+	{
+		int p = pos + ENTRY.length;
+		while (p < tagEnd)
+		{
+			while (p < tagEnd && isWhitespace(byteAt(p)))
+			{
+				p++;
+			}
+			int nameStart = p;
+			while (p < tagEnd && !isWhitespace(byteAt(p)) && byteAt(p) != '=')
+			{
+				p++;
+			}
+			int nameEnd = p;
+			while (p < tagEnd && byteAt(p) != '"' && byteAt(p) != '\'')
+			{
+				p++;
+			}
+			if (p >= tagEnd)
+			{
+				return false;
+			}
+			int valueStart = p + 1;
+			p = indexOf(byteAt(p), valueStart, tagEnd);
+			if (p < 0)
+			{
+				return false;
+			}
+			if (nameEnd - nameStart == TYPE.length && 
+					regionEquals(nameStart, TYPE))
+			{
+				return p - valueStart == SONG.length && 
+						regionEquals(valueStart, SONG);
+			}
+			p++;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The first position of a byte between two positions, or -1.
+	 */
+	private int indexOf(int b, int from, int end) throws IOException
+	{
+		int pos = Math.max(from, 0);
+		while (pos < end)
+		{
+			byteAt(pos);
+			int offset = windowStart;
+			int last = Math.min(end, windowEnd) - offset;
+			for (int i = pos - offset; i < last; i++)
+			{
+				if (window[i] == b)
+				{
+					return i + offset;
+				}
+			}
+			pos = last + offset;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The first position of some bytes between two positions, or -1.
+	 */
+	private int indexOf(byte[] bytes, int from, int end) throws IOException
+	{
+		int last = end - bytes.length;
+		int pos = indexOf(bytes[0], from, last + 1);
+		while (pos >= 0)
+		{
+			if (regionEquals(pos, bytes))
+			{
+				return pos;
+			}
+			pos = indexOf(bytes[0], pos + 1, last + 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Whether the library has some bytes at a position.
+	 */
+	private boolean regionEquals(int pos, byte[] bytes) throws IOException
+	{
+		if (pos + bytes.length > size)
+		{
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++)
+		{
+			if (byteAt(pos + i) != bytes[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The byte at a position, moving the window to it if needed, or 
+	 * 0 past the end of the library.
+	 */
+	private byte byteAt(int pos) throws IOException
+	{
+		if (pos >= size)
+		{
+			return 0;
+		}
+		if (pos < windowStart || pos >= windowEnd)
+		{
+			//The window starts a little before the position, since entries 
+			//are looked back into after they are scanned.
+			moveWindow(Math.max(0, pos - WINDOW_BACK));
+		}
+		return window[pos - windowStart];
+	}
+
+	/**
+	 * Reads the bytes of the library from a position into the window.
+	 */
+	private void moveWindow(int start) throws IOException
+	{
+		windowStart = start;
+		windowEnd = Math.min(size, start + window.length);
+		ByteBuffer bytes = ByteBuffer.wrap(window, 0, windowEnd - start);
+		while (bytes.hasRemaining())
+		{
+			if (source.read(bytes, start + bytes.position()) < 0)
+			{
+				throw new IOException(libLocation + " was truncated while it " +
+						"was rewritten");
+			}
+		}
+	}
+
+	/**
+	 * @return Whether a byte is whitespace other than a line feed.
+	 */
+	private static boolean isBlank(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b == '\n' || isBlank(b);
+	}
+
+	private static byte[] ascii(String s)
+	{
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static SAXException malformed(String problem, int pos)
+	{
+		return new SAXException("Malformed Rhythmbox library: " + problem + 
+				" at byte " + pos);
+	}
+}
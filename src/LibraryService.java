@@ -0,0 +1,205 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares a parsed Rhythmbox library between any number of threads. Readers 
+ * get the current {@link LibraryVersion}, which holds the songs and their 
+ * indexes and never changes, so reading never blocks and never sees a 
+ * library that is half parsed. {@link #reload()} parses the library again in
+ * the background (on a virtual thread when the JVM has them) and then swaps 
+ * the new version in at once; readers that are still using the old version
+ * are not affected.
+ * <p>
+ * The service takes over its parser, which should not be used anywhere else.
+ * Only one reload runs at a time, and reloads that are requested while 
+ * another one is waiting to start share it.
+ */
+public class LibraryService implements Closeable
+{
+	//Parses the library. It is only used while the load lock is held.
+	private RhythmboxXMLLibraryParser parser;
+	//Makes sure that only one reload runs at a time.
+	private ReentrantLock loadLock;
+	//Runs the reloads.
+	private ExecutorService loader;
+	//The version that readers get.
+	private volatile LibraryVersion current;
+	//The reload that has been requested but has not started yet, or null.
+	private CompletableFuture<LibraryVersion> pending;
+	//Whether the service was closed.
+	private boolean closed;
+
+	/**
+	 * Creates a service for the library at a location, parsed with the 
+	 * default settings.
+	 * @param libLocation the location of the Rhythmbox XML library
+	 */
+	public LibraryService(String libLocation)
+	{
+		this(new RhythmboxXMLLibraryParser(libLocation));
+	}
+
+	/**
+	 * Creates a service that parses its library with a parser, whose engine,
+	 * projection and other settings are kept. No library is loaded until 
+	 * {@link #reload()} is called; until then the current version is empty.
+	 * @param parser the parser, which should not be used anywhere else
+	 */
+	public LibraryService(RhythmboxXMLLibraryParser parser)
+	{
+		this.parser = parser;
+		loadLock = new ReentrantLock();
+		loader = newLoader();
+		current = new LibraryVersion(0, Collections.<Song>emptyList());
+		pending = null;
+		closed = false;
+	}
+
+	/**
+	 * @return The version of the library that was loaded last, or an empty 
+	 * version if none has been loaded yet. This never blocks.
+	 */
+	public LibraryVersion current()
+	{
+		return current;
+	}
+
+	/**
+	 * Parses the library again in the background and publishes it as the 
+	 * new current version once it and its indexes are built.
+	 * @return completes with the new version, or exceptionally if the 
+	 * library could not be parsed, in which case the current version is kept
+	 * @throws IllegalStateException if the service was closed
+	 */
+	public synchronized CompletableFuture<LibraryVersion> reload()
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("The service was closed");
+		}
+		if (pending == null)
+		{
+			CompletableFuture<LibraryVersion> reload = 
+					new CompletableFuture<LibraryVersion>();
+			pending = reload;
+			try
+			{
+				loader.execute(() -> load(reload));
+			}
+			catch (RejectedExecutionException e)
+			{
+				pending = null;
+				throw new IllegalStateException("The service was closed", e);
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Stops the service. A reload that is running is finished, but reloads 
+	 * that have not started are cancelled. The current version can still be
+	 * read.
+	 * @see java.io.Closeable#close()
+	 */
+	public synchronized void close()
+	{
+		if (!closed)
+		{
+			closed = true;
+			loader.shutdown();
+			if (pending != null)
+			{
+				pending.cancel(false);
+				pending = null;
+			}
+		}
+	}
+
+	/**
+	 * Parses the library and publishes it, on a thread of the loader.
+	 * @param reload the request that is completed
+	 */
+	private void load(CompletableFuture<LibraryVersion> reload)
+	{
+		loadLock.lock();
+		try
+		{
+			synchronized (this)
+			{
+				//Requests from now on need another reload, since this one may
+				//already have read the library that they want.
+				if (pending == reload)
+				{
+					pending = null;
+				}
+				if (reload.isDone())
+				{
+					return;
+				}
+			}
+			parser.parseLibrary();
+			LibraryVersion version = new LibraryVersion(current.getNumber() + 1, 
+					parser.returnSongs());
+			//The parser's own songs are not needed once they are copied.
+			parser.returnSongs().clear();
+			current = version;
+			reload.complete(version);
+		}
+		catch (Throwable e)
+		{
+			reload.completeExceptionally(e);
+		}
+		finally
+		{
+			loadLock.unlock();
+		}
+	}
+
+	/**
+	 * @return an executor that starts a virtual thread for each reload if 
+	 * the JVM has them, or else runs the reloads on one daemon thread
+	 */
+	private static ExecutorService newLoader()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newSingleThreadExecutor(task -> 
+			{
+				Thread thread = new Thread(task, "LibraryService loader");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
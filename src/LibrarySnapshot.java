@@ -0,0 +1,342 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves the songs parsed from a Rhythmbox XML library in a compact binary 
+ * snapshot, so that they can be loaded again without parsing the library. A
+ * snapshot holds a table of the distinct strings in the library followed by 
+ * a fixed-width record of string numbers and numeric fields for each song.
+ * It is keyed by the size, modification time and file key (such as the 
+ * inode) of the library that it was made from, and optionally by a checksum
+ * of the whole library, and ends with a checksum of its own contents, so a 
+ * snapshot that is stale or corrupted is not loaded.
+ */
+class LibrarySnapshot 
+{
+	//Identifies a snapshot file, and the version of its layout.
+	private static final int MAGIC = 0x52425853;
+	private static final int VERSION = 3;
+	//The numbers of int and long values in a song's record.
+	private static final int RECORD_INTS = 14;
+	private static final int RECORD_LONGS = 4;
+
+	//The size, modification time and file key of a library, and its 
+	//checksum, or 0 if it was not checksummed.
+	private long sourceSize;
+	private long sourceModified;
+	private long sourceFileKey;
+	private long sourceChecksum;
+
+	private LibrarySnapshot(long sourceSize, long sourceModified, 
+			long sourceFileKey, long sourceChecksum)
+	{
+		this.sourceSize = sourceSize;
+		this.sourceModified = sourceModified;
+		this.sourceFileKey = sourceFileKey;
+		this.sourceChecksum = sourceChecksum;
+	}
+
+	/**
+	 * Finds the key of the snapshots of a Rhythmbox XML library from its 
+	 * attributes, without reading it unless it is checksummed.
+	 * @param libLocation the location of the library
+	 * @param checksummed whether the whole library is read for a checksum, 
+	 * so that a snapshot is not used for a library that was changed without
+	 * changing its size or modification time
+	 * @return the key that the library's snapshots are saved with
+	 * @throws IOException 
+	 */
+	public static LibrarySnapshot keyOf(String libLocation, 
+			boolean checksummed) throws IOException
+	{
+		Path path = new File(libLocation).toPath();
+		BasicFileAttributes attributes = Files.readAttributes(path, 
+				BasicFileAttributes.class);
+		//The file key identifies the file on file systems that have one, 
+		//such as the device and inode on Unix, so that a library that was 
+		//replaced by another file is noticed.
+		Object fileKey = attributes.fileKey();
+		long size = attributes.size();
+		long checksum = 0;
+		if (checksummed)
+		{
+			CRC32 crc = new CRC32();
+			size = 0;
+			try (FileChannel channel = FileChannel.open(path, 
+					StandardOpenOption.READ))
+			{
+				ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+				while (channel.read(buffer) >= 0)
+				{
+					buffer.flip();
+					size += buffer.remaining();
+					crc.update(buffer);
+					buffer.clear();
+				}
+			}
+			checksum = crc.getValue();
+		}
+		return new LibrarySnapshot(size, 
+				attributes.lastModifiedTime().toMillis(), 
+				fileKey == null ? 0 : fileKey.toString().hashCode(), checksum);
+	}
+
+	/**
+	 * Returns the file that the snapshot of a library is saved in.
+	 * @param cacheDirectory the directory that snapshots are saved in
+	 * @param libLocation the location of the library
+	 * @return the snapshot's file
+	 */
+	public static File snapshotFile(File cacheDirectory, String libLocation)
+	{
+		String path = new File(libLocation).getAbsolutePath();
+		return new File(cacheDirectory, "rhythmdb-" + 
+				Integer.toHexString(path.hashCode()) + ".snapshot");
+	}
+
+	/**
+	 * Saves a snapshot of a library's songs. The snapshot is written to a 
+	 * temporary file that then replaces the snapshot file, so a snapshot that
+	 * is being written is never read.
+	 * @param file the snapshot file
+	 * @param songs the songs that were parsed from the library
+	 * @throws IOException 
+	 */
+	public void write(File file, List<Song> songs) throws IOException
+	{
+		File directory = file.getAbsoluteFile().getParentFile();
+		Files.createDirectories(directory.toPath());
+		Path temp = Files.createTempFile(directory.toPath(), file.getName(), 
+				".tmp");
+		try
+		{
+			try (OutputStream out = Files.newOutputStream(temp))
+			{
+				writeTo(out, songs);
+			}
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Loads the songs from a snapshot if it was made from the library that 
+	 * this key belongs to.
+	 * @param file the snapshot file
+	 * @return the songs, or null if there is no snapshot, or it is stale or
+	 * corrupted
+	 */
+	public List<Song> read(File file)
+	{
+		if (!file.isFile())
+		{
+			return null;
+		}
+		try (InputStream in = Files.newInputStream(file.toPath()))
+		{
+			return readFrom(in, file.length());
+		}
+		catch (IOException | RuntimeException e)
+		{
+			//A snapshot that cannot be read is treated as if it was missing.
+			return null;
+		}
+	}
+
+	private void writeTo(OutputStream stream, List<Song> songs) throws 
+		IOException
+	{
+		CheckedOutputStream checked = new CheckedOutputStream(
+				new BufferedOutputStream(stream, 1 << 16), new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(sourceSize);
+		out.writeLong(sourceModified);
+		out.writeLong(sourceFileKey);
+		out.writeLong(sourceChecksum);
+
+		//Every distinct string is numbered in the order that it first 
+		//appears.
+		HashMap<String, Integer> stringIds = new HashMap<String, Integer>();
+		ArrayList<String> strings = new ArrayList<String>();
+		int[] records = new int[songs.size() * RECORD_INTS];
+		long[] times = new long[songs.size() * RECORD_LONGS];
+		int r = 0;
+		int t = 0;
+		for (Song song : songs)
+		{
+			records[r++] = stringId(song.getTitle(), stringIds, strings);
+			records[r++] = stringId(song.getArtist(), stringIds, strings);
+			records[r++] = stringId(song.getAlbum(), stringIds, strings);
+			records[r++] = stringId(song.getLocation(), stringIds, strings);
+			records[r++] = stringId(song.getGenre(), stringIds, strings);
+			records[r++] = song.getTrackNumber();
+			records[r++] = song.getRating();
+			records[r++] = song.getDiscNumber();
+			records[r++] = song.getBitRate();
+			records[r++] = stringId(song.getAlbumArtist(), stringIds, strings);
+			records[r++] = stringId(song.getComments(), stringIds, strings);
+			records[r++] = song.getBPM();
+			records[r++] = song.getDuration();
+			records[r++] = song.getPlayCount();
+			times[t++] = song.getFileSize();
+			times[t++] = song.getLastPlayed();
+			times[t++] = song.getFirstSeen();
+			times[t++] = song.getModificationTime();
+		}
+
+		out.writeInt(strings.size());
+		for (String string : strings)
+		{
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.writeInt(songs.size());
+		for (int i = 0; i < songs.size(); i++)
+		{
+			for (r = i * RECORD_INTS; r < (i + 1) * RECORD_INTS; r++)
+			{
+				out.writeInt(records[r]);
+			}
+			for (t = i * RECORD_LONGS; t < (i + 1) * RECORD_LONGS; t++)
+			{
+				out.writeLong(times[t]);
+			}
+		}
+		out.flush();
+		out.writeLong(checked.getChecksum().getValue());
+		out.flush();
+	}
+
+	private List<Song> readFrom(InputStream stream, long fileSize) throws 
+		IOException
+	{
+		CheckedInputStream checked = new CheckedInputStream(
+				new BufferedInputStream(stream, 1 << 16), new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		if (in.readInt() != MAGIC || in.readInt() != VERSION || 
+				in.readLong() != sourceSize || in.readLong() != sourceModified ||
+				in.readLong() != sourceFileKey || in.readLong() != sourceChecksum)
+		{
+			return null;
+		}
+
+		//The counts are checked against the size of the file, so that a 
+		//corrupted count cannot cause a huge allocation.
+		int stringCount = in.readInt();
+		if (stringCount < 0 || stringCount > fileSize / 4)
+		{
+			return null;
+		}
+		String[] strings = new String[stringCount];
+		byte[] bytes = new byte[256];
+		for (int i = 0; i < strings.length; i++)
+		{
+			int length = in.readInt();
+			if (length < 0 || length > fileSize)
+			{
+				return null;
+			}
+			if (length > bytes.length)
+			{
+				bytes = new byte[Math.max(length, bytes.length * 2)];
+			}
+			in.readFully(bytes, 0, length);
+			strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+
+		int count = in.readInt();
+		if (count < 0 || 
+				count > fileSize / (RECORD_INTS * 4 + RECORD_LONGS * 8))
+		{
+			return null;
+		}
+		ArrayList<Song> songs = new ArrayList<Song>(count);
+		for (int i = 0; i < count; i++)
+		{
+			String title = strings[in.readInt()];
+			String artist = strings[in.readInt()];
+			String album = strings[in.readInt()];
+			String location = strings[in.readInt()];
+			String genre = strings[in.readInt()];
+			int trackNum = in.readInt();
+			int rating = in.readInt();
+			int discNum = in.readInt();
+			int bitRate = in.readInt();
+			String albumArtist = strings[in.readInt()];
+			String comments = strings[in.readInt()];
+			int bpm = in.readInt();
+			int duration = in.readInt();
+			int playCount = in.readInt();
+			songs.add(new Song(title, artist, album, location, genre, trackNum, 
+					rating, discNum, bitRate, albumArtist, comments, bpm, 
+					duration, in.readLong(), playCount, in.readLong(), 
+					in.readLong(), in.readLong()));
+		}
+
+		long expected = checked.getChecksum().getValue();
+		if (in.readLong() != expected || in.read() != -1)
+		{
+			return null;
+		}
+		return songs;
+	}
+
+	private static int stringId(String string, HashMap<String, Integer> ids, 
+			ArrayList<String> strings)
+	{
+		Integer id = ids.get(string);
+		if (id == null)
+		{
+			id = strings.size();
+			ids.put(string, id);
+			strings.add(string);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,250 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * {@link SongStatistics} about every song in a library, and about the songs 
+ * with each value of some text fields, such as each artist, album or genre.
+ * Songs are added one at a time, so the statistics can be computed while a 
+ * library is parsed, and the statistics of different parts of a library can
+ * be merged, so that they can be computed in parallel with {@link 
+ * #compute(List, int, SongField...)}. Statistics are not thread safe.
+ */
+public class LibraryStatistics implements Consumer<Song>
+{
+	//A part of a list of songs with fewer songs than this is not split 
+	//between threads.
+	private static final int SPLIT_SIZE = 1 << 13;
+
+	//The statistics about every song.
+	private SongStatistics total;
+	//The statistics about the songs with each value of each field that songs
+	//are grouped by.
+	private EnumMap<SongField, HashMap<String, SongStatistics>> groups;
+	//The fields that songs are grouped by.
+	private SongField[] groupBy;
+
+	/**
+	 * @param groupBy the text fields that songs are grouped by
+	 * @throws IllegalArgumentException if a field is numeric
+	 */
+	public LibraryStatistics(SongField... groupBy)
+	{
+		total = new SongStatistics();
+		groups = new EnumMap<SongField, HashMap<String, SongStatistics>>(
+				SongField.class);
+		for (SongField field : groupBy)
+		{
+			if (field.isNumeric())
+			{
+				throw new IllegalArgumentException("Songs cannot be grouped by " +
+						"the numeric field " + field);
+			}
+			groups.put(field, new HashMap<String, SongStatistics>());
+		}
+		this.groupBy = groups.keySet().toArray(new SongField[0]);
+	}
+
+	/**
+	 * Computes the statistics about a list of songs on several threads. The 
+	 * list is split into parts whose statistics are computed separately and 
+	 * then merged.
+	 * @param songs the songs, which should not change while they are read
+	 * @param parallelism the number of threads, where 1 reads the songs on 
+	 * the calling thread
+	 * @param groupBy the text fields that songs are grouped by
+	 * @return the statistics
+	 */
+	public static LibraryStatistics compute(List<Song> songs, int parallelism,
+			SongField... groupBy)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1");
+		}
+		AggregateTask task = new AggregateTask(songs, 0, songs.size(), groupBy);
+		if (parallelism == 1 || songs.size() < SPLIT_SIZE)
+		{
+			return task.compute();
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			return pool.invoke(task);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Adds a song to the statistics.
+	 * @param song the song
+	 */
+	public void add(Song song)
+	{
+		total.add(song);
+		for (SongField field : groupBy)
+		{
+			HashMap<String, SongStatistics> values = groups.get(field);
+			String value = field.getText(song);
+			SongStatistics statistics = values.get(value);
+			if (statistics == null)
+			{
+				statistics = new SongStatistics();
+				values.put(value, statistics);
+			}
+			statistics.add(song);
+		}
+	}
+
+	/**
+	 * Adds a song to the statistics, so that the statistics can receive the
+	 * songs of a parse.
+	 * @see #add(Song)
+	 */
+	@Override
+	public void accept(Song song)
+	{
+		add(song);
+	}
+
+	/**
+	 * Adds the songs of other statistics to these statistics, as if each of 
+	 * them had been added. Both must group songs by the same fields.
+	 * @param other the other statistics, which should not be used afterwards
+	 */
+	public void merge(LibraryStatistics other)
+	{
+		if (!groups.keySet().equals(other.groups.keySet()))
+		{
+			throw new IllegalArgumentException("The statistics group songs by " +
+					"different fields");
+		}
+		total.merge(other.total);
+		for (SongField field : groupBy)
+		{
+			HashMap<String, SongStatistics> values = groups.get(field);
+			for (Map.Entry<String, SongStatistics> entry : 
+				other.groups.get(field).entrySet())
+			{
+				SongStatistics statistics = values.putIfAbsent(entry.getKey(), 
+						entry.getValue());
+				if (statistics != null)
+				{
+					statistics.merge(entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The statistics about every song.
+	 */
+	public SongStatistics getTotal()
+	{
+		return total;
+	}
+
+	/**
+	 * @param field a field that songs are grouped by
+	 * @return The statistics about the songs with each value of the field, 
+	 * keyed by the value, as it appears in the library.
+	 * @throws IllegalArgumentException if songs are not grouped by the field
+	 */
+	public Map<String, SongStatistics> getGroups(SongField field)
+	{
+		HashMap<String, SongStatistics> values = groups.get(field);
+		if (values == null)
+		{
+			throw new IllegalArgumentException("Songs are not grouped by " + 
+					field);
+		}
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * @param field a field that songs are grouped by
+	 * @param value a value of the field
+	 * @return The statistics about the songs with the value, or null if there
+	 * are none.
+	 * @throws IllegalArgumentException if songs are not grouped by the field
+	 */
+	public SongStatistics getGroup(SongField field, String value)
+	{
+		return getGroups(field).get(value);
+	}
+
+	/**
+	 * Computes the statistics about a range of a list of songs, splitting it
+	 * in half until the parts are small enough.
+	 */
+	@SuppressWarnings("serial")
+	private static class AggregateTask extends RecursiveTask<LibraryStatistics>
+	{
+		//The songs, and the range of them that this task reads.
+		private List<Song> songs;
+		private int start;
+		private int end;
+		//The fields that songs are grouped by.
+		private SongField[] groupBy;
+
+		public AggregateTask(List<Song> songs, int start, int end, 
+				SongField[] groupBy)
+		{
+			this.songs = songs;
+			this.start = start;
+			this.end = end;
+			this.groupBy = groupBy;
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		protected LibraryStatistics compute()
+		{
+			if (end - start < SPLIT_SIZE || getPool() == null)
+			{
+				LibraryStatistics statistics = new LibraryStatistics(groupBy);
+				for (int i = start; i < end; i++)
+				{
+					statistics.add(songs.get(i));
+				}
+				return statistics;
+			}
+			int middle = (start + end) >>> 1;
+			AggregateTask second = new AggregateTask(songs, middle, end, groupBy);
+			second.fork();
+			LibraryStatistics statistics = new AggregateTask(songs, start, 
+					middle, groupBy).compute();
+			statistics.merge(second.join());
+			return statistics;
+		}
+	}
+}
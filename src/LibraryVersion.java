@@ -0,0 +1,222 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * One parsed version of a Rhythmbox library, as published by a {@link 
+ * LibraryService}: its songs together with the indexes that look them up, 
+ * which are all built before the version is published. A version never 
+ * changes, so any number of threads can read it without locking.
+ */
+public class LibraryVersion 
+{
+	//The number of the version, counting from 1 for the first library that 
+	//was loaded, or 0 for the empty version before it.
+	private final long number;
+	//When the version was published, in milliseconds since the epoch.
+	private final long loadedAt;
+	//The songs of the library.
+	private final List<Song> songs;
+	//Look the songs up by their text fields, by partial text and by 
+	//queries, and list them in sorted orders.
+	private final SongIndex songIndex;
+	private final SongSearch songSearch;
+	private final SongQueryEngine queryEngine;
+	private final SongSortIndex sortIndex;
+
+	/**
+	 * Builds a version and all of its indexes.
+	 * @param number the number of the version
+	 * @param songs the songs of the library, which are copied
+	 */
+	LibraryVersion(long number, List<Song> songs)
+	{
+		this.number = number;
+		this.songs = Collections.unmodifiableList(new ArrayList<Song>(songs));
+		songIndex = new SongIndex(this.songs);
+		songSearch = new SongSearch(this.songs);
+		queryEngine = new SongQueryEngine(this.songs);
+		sortIndex = new SongSortIndex(this.songs);
+		loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Builds a version, building its indexes at the same time on the 
+	 * threads of an executor.
+	 * @param number the number of the version
+	 * @param songs the songs of the library, which are copied
+	 * @param executor the executor that builds the indexes
+	 * @throws InterruptedException if the thread was interrupted while the 
+	 * indexes were built, in which case they are cancelled
+	 */
+	LibraryVersion(long number, List<Song> songs, ExecutorService executor) 
+		throws InterruptedException
+	{
+		this.number = number;
+		List<Song> copy = Collections.unmodifiableList(
+				new ArrayList<Song>(songs));
+		this.songs = copy;
+		Future<SongIndex> index = executor.submit(() -> new SongIndex(copy));
+		Future<SongSearch> search = executor.submit(() -> new SongSearch(copy));
+		Future<SongQueryEngine> query = executor.submit(() -> 
+			new SongQueryEngine(copy));
+		Future<SongSortIndex> sort = executor.submit(() -> 
+			new SongSortIndex(copy));
+		try
+		{
+			songIndex = index.get();
+			songSearch = search.get();
+			queryEngine = query.get();
+			sortIndex = sort.get();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		finally
+		{
+			index.cancel(true);
+			search.cancel(true);
+			query.cancel(true);
+			sort.cancel(true);
+		}
+		loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return The number of the version, which is 0 for the empty version 
+	 * that a service starts with and increases by 1 with every reload.
+	 */
+	public long getNumber()
+	{
+		return number;
+	}
+
+	/**
+	 * @return When the version was built, in milliseconds since the epoch.
+	 */
+	public long getLoadedAt()
+	{
+		return loadedAt;
+	}
+
+	/**
+	 * @return The songs of the library in library order, which cannot be 
+	 * modified.
+	 */
+	public List<Song> getSongs()
+	{
+		return songs;
+	}
+
+	/**
+	 * @return The number of songs.
+	 */
+	public int size()
+	{
+		return songs.size();
+	}
+
+	/**
+	 * Returns every song with a value of a field, in the same way as {@link 
+	 * SongIndex#find(SongField, String)}.
+	 * @param field one of title, artist, album, album artist, genre or 
+	 * location
+	 * @param value the value to look for
+	 * @return the songs in library order, which may be empty
+	 */
+	public List<Song> find(SongField field, String value)
+	{
+		return songIndex.find(field, value);
+	}
+
+	/**
+	 * Returns the location of the first song with a title, ignoring case.
+	 * @param title a song's title
+	 * @return the song's location
+	 * @throws SongNotFoundException if no song has the title
+	 */
+	public String searchForSongByTitle(String title) throws 
+		SongNotFoundException
+	{
+		List<Song> found = find(SongField.TITLE, title);
+		if (found.isEmpty())
+		{
+			throw new SongNotFoundException();
+		}
+		return found.get(0).getLocation();
+	}
+
+	/**
+	 * Returns the songs whose title, artist or album best match a query, as
+	 * {@link RhythmboxXMLLibraryParser#searchSongs(String, int)} does.
+	 * @param query the text to search for
+	 * @param limit the most results to return
+	 * @return the best matches, best first
+	 */
+	public List<SearchResult> searchSongs(String query, int limit)
+	{
+		return songSearch.search(query, limit);
+	}
+
+	/**
+	 * @param query a query
+	 * @return the songs that match the query, in library order
+	 */
+	public List<Song> querySongs(SongQuery query)
+	{
+		return queryEngine.find(query);
+	}
+
+	/**
+	 * Returns one page of the songs in a sorted order, as {@link 
+	 * SongSortIndex#page(SongOrder, int, int)} does.
+	 * @param order the order of the songs
+	 * @param offset the position of the first song of the page in the order
+	 * @param limit the most songs to return
+	 * @return the songs of the page, which is empty past the last song
+	 */
+	public List<Song> page(SongOrder order, int offset, int limit)
+	{
+		return sortIndex.page(order, offset, limit);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return "version " + number + " (" + songs.size() + " songs)";
+	}
+}
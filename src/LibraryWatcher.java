@@ -0,0 +1,221 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the file of a Rhythmbox XML library and updates a parser's songs
+ * whenever Rhythmbox rewrites it, using 
+ * {@link RhythmboxXMLLibraryParser#updateLibrary()} so that only the songs 
+ * that changed are applied. Rhythmbox often writes its library several times
+ * in a row, so the library is only parsed again once it has not changed for 
+ * a short time. The parser is updated and the listeners are called on the 
+ * watcher's own thread. Other threads can go on reading the parser's songs 
+ * and indexes meanwhile, since an update replaces them all at once, but 
+ * should not parse the library with the same parser while it is watched.
+ */
+public class LibraryWatcher implements Closeable
+{
+	//The parser whose library is watched.
+	private RhythmboxXMLLibraryParser parser;
+	//The listeners that are told about changes.
+	private CopyOnWriteArrayList<LibraryChangeListener> listeners;
+	//How long the library must not change for before it is parsed again.
+	private long debounceMillis;
+	//Receives the changes to the library's directory.
+	private WatchService watchService;
+	//The thread that waits for changes.
+	private Thread thread;
+
+	/**
+	 * @param parser the parser whose library is watched, which should 
+	 * already have parsed it
+	 */
+	public LibraryWatcher(RhythmboxXMLLibraryParser parser)
+	{
+		this.parser = parser;
+		listeners = new CopyOnWriteArrayList<LibraryChangeListener>();
+		debounceMillis = 500;
+		watchService = null;
+		thread = null;
+	}
+
+	/**
+	 * Sets how long the library must not change for before it is parsed 
+	 * again. The default is half a second.
+	 * @param debounceMillis the time in milliseconds
+	 */
+	public void setDebounceMillis(long debounceMillis)
+	{
+		if (debounceMillis < 0)
+		{
+			throw new IllegalArgumentException("The debounce time cannot be " +
+					"negative");
+		}
+		this.debounceMillis = debounceMillis;
+	}
+
+	/**
+	 * @param listener a listener that is told about every change that is 
+	 * applied to the library
+	 */
+	public void addListener(LibraryChangeListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener a listener that should no longer be told about changes
+	 */
+	public void removeListener(LibraryChangeListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Starts watching the library on a daemon thread.
+	 * @throws IOException if the library's directory cannot be watched
+	 */
+	public synchronized void start() throws IOException
+	{
+		if (watchService != null)
+		{
+			throw new IllegalStateException("The watcher has already started");
+		}
+		Path library = new File(parser.getLibLocation()).getAbsoluteFile().toPath();
+		Path directory = library.getParent();
+		Path fileName = library.getFileName();
+		watchService = directory.getFileSystem().newWatchService();
+		//Rhythmbox replaces its library by renaming a new file over it, so
+		//new files are watched for as well as changes.
+		directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+
+		thread = new Thread(() -> watch(fileName), "LibraryWatcher " + library);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the library.
+	 * @see java.io.Closeable#close()
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (watchService != null)
+		{
+			watchService.close();
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Waits for changes to the library until the watcher is closed.
+	 * @param fileName the name of the library's file in its directory
+	 */
+	private void watch(Path fileName)
+	{
+		try
+		{
+			while (true)
+			{
+				if (!isLibraryEvent(watchService.take(), fileName))
+				{
+					continue;
+				}
+
+				//Events keep being collected until none have come in for the
+				//library for the debounce time. Events for other files in the
+				//directory do not postpone the update.
+				long lastEvent = System.nanoTime();
+				long remaining = debounceMillis;
+				while (remaining > 0)
+				{
+					WatchKey key = watchService.poll(remaining, 
+							TimeUnit.MILLISECONDS);
+					if (key != null && isLibraryEvent(key, fileName))
+					{
+						lastEvent = System.nanoTime();
+					}
+					remaining = debounceMillis - TimeUnit.NANOSECONDS.toMillis(
+							System.nanoTime() - lastEvent);
+				}
+				update();
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e)
+		{
+			//The watcher was closed.
+		}
+	}
+
+	/**
+	 * Parses the library again and tells the listeners about the changes.
+	 */
+	private void update()
+	{
+		try
+		{
+			LibraryChange change = parser.updateLibrary();
+			if (!change.isEmpty())
+			{
+				for (LibraryChangeListener listener : listeners)
+				{
+					listener.libraryChanged(change);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			for (LibraryChangeListener listener : listeners)
+			{
+				listener.libraryUpdateFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether any of the events of a watch key are for the library, 
+	 * and resets the key so that it receives more events.
+	 */
+	private static boolean isLibraryEvent(WatchKey key, Path fileName)
+	{
+		boolean libraryEvent = false;
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || 
+					fileName.equals(event.context()))
+			{
+				libraryEvent = true;
+			}
+		}
+		key.reset();
+		return libraryEvent;
+	}
+}
@@ -0,0 +1,1019 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads song entries directly from the UTF-8 bytes of a memory-mapped 
+ * Rhythmbox XML library. Only the text of the elements that are kept in a 
+ * {@link Song} is decoded, and entries that are not songs are skipped in one 
+ * search for their end tag. See {@link ParseEngine#MAPPED} for the limits of
+ * this engine. A scanner is not thread safe, but several scanners can share
+ * the same buffer.
+ */
+class MappedLibraryScanner 
+{
+	//The number of bytes that are read between two checks of a parse's 
+	//progress.
+	static final int PROGRESS_STEP = 256 * 1024;
+	//The fields of a song, and the names of their tags encoded in UTF-8 
+	//(indexed the same way).
+	private static final SongField[] FIELDS = SongField.values();
+	private static final byte[][] FIELD_NAMES = new byte[FIELDS.length][];
+	//The parts of an entry that are looked for.
+	private static final byte[] ENTRY = ascii("entry");
+	//The start of an entry's end tag, which may have whitespace before its 
+	//'>'.
+	private static final byte[] END_ENTRY = ascii("</entry");
+	private static final byte[] TYPE = ascii("type");
+	private static final byte[] SONG = ascii("song");
+	//The types of entries, and the values of their type attributes encoded
+	//in UTF-8 (indexed the same way).
+	private static final EntryType[] ENTRY_TYPES = EntryType.values();
+	private static final byte[][] ENTRY_TYPE_NAMES = 
+			new byte[ENTRY_TYPES.length][];
+
+	static
+	{
+		for (int i = 0; i < FIELDS.length; i++)
+		{
+			FIELD_NAMES[i] = ascii(FIELDS[i].getElementName());
+		}
+		for (int i = 0; i < ENTRY_TYPES.length; i++)
+		{
+			String type = ENTRY_TYPES[i].getType();
+			ENTRY_TYPE_NAMES[i] = type == null ? null : ascii(type);
+		}
+	}
+
+	//The bytes of the library, read with absolute gets.
+	private ByteBuffer buffer;
+	//A view of the same bytes used to copy the text of an element.
+	private ByteBuffer view;
+	//Holds the bytes of the text that is currently decoded.
+	private byte[] textBytes;
+	//Builds the song that is currently read.
+	private SongBuilder songBuilder;
+	//Collects the metrics of the parse, or null if they are not collected.
+	private ParseMetricsCollector metrics;
+	//Reads the entries that are not songs into records, or null if they are
+	//all skipped.
+	private EntryRecordBuilder records;
+	//The number of fields that are projected when only some of them are, or
+	//0 when every field is read, and the number read from the current entry.
+	private int projectedFields;
+	private int fieldsRead;
+	//The song that was read from the last entry, or null if it was not a 
+	//song, when entries are read one at a time.
+	private Song entrySong;
+	private Consumer<Song> entrySongs;
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library, which are not 
+	 * modified
+	 */
+	public MappedLibraryScanner(ByteBuffer buffer)
+	{
+		this(buffer, null);
+	}
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library, which are not 
+	 * modified
+	 * @param deduplicator shares the strings of fields with few distinct 
+	 * values between songs, or null if they should not be shared
+	 */
+	public MappedLibraryScanner(ByteBuffer buffer, 
+			StringDeduplicator deduplicator)
+	{
+		this(buffer, deduplicator, null, null);
+	}
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library, which are not 
+	 * modified
+	 * @param deduplicator shares the strings of fields with few distinct 
+	 * values between songs, or null if they should not be shared
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 */
+	public MappedLibraryScanner(ByteBuffer buffer, 
+			StringDeduplicator deduplicator, ParseMetricsCollector metrics, 
+			Set<SongField> projection)
+	{
+		this(buffer, deduplicator, metrics, projection, null);
+	}
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library, which are not 
+	 * modified
+	 * @param deduplicator shares the strings of fields with few distinct 
+	 * values between songs, or null if they should not be shared
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 * @param records reads the entries that are not songs into records, or 
+	 * null to skip them all
+	 */
+	public MappedLibraryScanner(ByteBuffer buffer, 
+			StringDeduplicator deduplicator, ParseMetricsCollector metrics, 
+			Set<SongField> projection, EntryRecordBuilder records)
+	{
+		this.buffer = buffer;
+		view = buffer.duplicate();
+		textBytes = new byte[256];
+		songBuilder = new SongBuilder(deduplicator, metrics, projection);
+		projectedFields = projection == null ? 0 : projection.size();
+		this.metrics = metrics;
+		this.records = records;
+		entrySongs = song -> entrySong = song;
+	}
+
+	/**
+	 * Memory-maps a Rhythmbox XML library. The file is not locked and can be
+	 * closed as soon as this method returns.
+	 * @param libLocation the location of the Rhythmbox XML library
+	 * @return the bytes of the library
+	 * @throws IOException if the file cannot be read or is larger than 2 GB
+	 */
+	public static MappedByteBuffer map(String libLocation) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(Paths.get(libLocation), 
+				StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new IOException(libLocation + " is too large to be " +
+						"memory-mapped");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	/**
+	 * Reads every entry that starts between two positions in the library, and
+	 * passes the songs to a consumer in the order that they appear.
+	 * @param start the position to start looking for entries at, which must
+	 * not be inside of a tag
+	 * @param end the position after which no more entries are started
+	 * @param songs receives the songs that are read
+	 * @throws SAXException if an entry is not well-formed
+	 */
+	public void scan(int start, int end, Consumer<Song> songs) throws 
+		SAXException
+	{
+		int pos = indexOf('<', start);
+		while (pos >= 0 && pos < end)
+		{
+			if (isTag(pos + 1, ENTRY))
+			{
+				pos = scanEntry(pos, songs);
+			}
+			else
+			{
+				pos = skipMarkup(pos);
+			}
+			pos = indexOf('<', pos);
+		}
+	}
+
+	/**
+	 * Reads every entry that starts between two positions in the library like
+	 * {@link #scan(int, int, Consumer)}, in steps of a few hundred kilobytes 
+	 * between which the bytes that were read are counted and cancellation is
+	 * checked.
+	 * @param start the position to start looking for entries at, which must
+	 * not be inside of a tag
+	 * @param end the position after which no more entries are started
+	 * @param songs receives the songs that are read
+	 * @param progress follows the parse, or null if it is not followed
+	 * @throws SAXException if an entry is not well-formed
+	 * @throws java.util.concurrent.CancellationException if the parse was 
+	 * cancelled
+	 */
+	public void scan(int start, int end, Consumer<Song> songs, 
+			ParseProgressTracker progress) throws SAXException
+	{
+		if (progress == null)
+		{
+			scan(start, end, songs);
+			return;
+		}
+		int from = start;
+		while (from < end)
+		{
+			progress.checkCancelled();
+			//Every step after the first starts at an entry, so that no entry
+			//is split between two steps.
+			int to = end - from <= PROGRESS_STEP ? end : 
+				Math.min(end, nextEntry(buffer, from + PROGRESS_STEP));
+			scan(from, to, songs);
+			progress.bytesRead(to - from);
+			from = to;
+		}
+	}
+
+	/**
+	 * Reads every entry that starts between two positions in the library like
+	 * {@link #scan(int, int, Consumer)}, also passing the position and length 
+	 * of each song's entry so that it can be read again with {@link 
+	 * #readEntry(int)}.
+	 * @param start the position to start looking for entries at, which must
+	 * not be inside of a tag
+	 * @param end the position after which no more entries are started
+	 * @param songs receives the songs that are read and their entries
+	 * @throws SAXException if an entry is not well-formed
+	 */
+	public void scanEntries(int start, int end, EntryConsumer songs) throws 
+		SAXException
+	{
+		int pos = indexOf('<', start);
+		while (pos >= 0 && pos < end)
+		{
+			if (isTag(pos + 1, ENTRY))
+			{
+				entrySong = null;
+				int entryEnd = scanEntry(pos, entrySongs);
+				if (entrySong != null)
+				{
+					songs.accept(entrySong, pos, entryEnd - pos);
+				}
+				pos = entryEnd;
+			}
+			else
+			{
+				pos = skipMarkup(pos);
+			}
+			pos = indexOf('<', pos);
+		}
+	}
+
+	/**
+	 * Reads the one entry that starts at a position in the library.
+	 * @param pos the position of the entry's start tag
+	 * @return the song, or null if the entry is not a song
+	 * @throws SAXException if there is no entry at the position or it is not
+	 * well-formed
+	 */
+	public Song readEntry(int pos) throws SAXException
+	{
+		if (byteAt(pos) != '<' || !isTag(pos + 1, ENTRY))
+		{
+			throw malformed("no entry", pos);
+		}
+		entrySong = null;
+		scanEntry(pos, entrySongs);
+		return entrySong;
+	}
+
+	/**
+	 * Finds the first entry that starts at or after a position in a library.
+	 * @param buffer the bytes of a Rhythmbox XML library
+	 * @param from the position to start looking at
+	 * @return the position of the entry's start tag, or the end of the 
+	 * library if there are no more entries
+	 */
+	public static int nextEntry(ByteBuffer buffer, int from)
+	{
+		MappedLibraryScanner scanner = new MappedLibraryScanner(buffer);
+		int pos = scanner.indexOf('<', from);
+		while (pos >= 0)
+		{
+			if (scanner.isTag(pos + 1, ENTRY))
+			{
+				return pos;
+			}
+			pos = scanner.indexOf('<', pos + 1);
+		}
+		return buffer.limit();
+	}
+
+	/**
+	 * Reads one entry, passing it to the consumer if it is a song, or to its 
+	 * handler if it is another type of entry that is read.
+	 * @param pos the position of the entry's start tag
+	 * @param songs receives the song that is read
+	 * @return the position after the entry's end tag
+	 * @throws SAXException 
+	 */
+	private int scanEntry(int pos, Consumer<Song> songs) throws SAXException
+	{
+		//The attributes of the entry are read to find its type.
+		boolean readSong = false;
+		EntryType entryType = EntryType.OTHER;
+		int limit = buffer.limit();
+		int p = skipWhitespace(pos + 1 + ENTRY.length);
+		while (byteAt(p) != '>' && byteAt(p) != '/')
+		{
+			int nameStart = p;
+			while (p < limit && !isWhitespace(byteAt(p)) && byteAt(p) != '=')
+			{
+				p++;
+			}
+			int nameEnd = p;
+			p = skipWhitespace(p);
+			if (byteAt(p) != '=')
+			{
+				throw malformed("attribute without a value", p);
+			}
+			p = skipWhitespace(p + 1);
+			byte quote = byteAt(p);
+			if (quote != '"' && quote != '\'')
+			{
+				throw malformed("unquoted attribute", p);
+			}
+			int valueStart = p + 1;
+			p = indexOf(quote, valueStart);
+			if (p < 0)
+			{
+				throw malformed("unterminated attribute", valueStart);
+			}
+			if (regionEquals(nameStart, nameEnd, TYPE))
+			{
+				readSong = regionEquals(valueStart, p, SONG);
+				if (readSong)
+				{
+					entryType = EntryType.SONG;
+				}
+				else if (metrics != null || records != null)
+				{
+					entryType = entryType(valueStart, p);
+				}
+			}
+			p = skipWhitespace(p + 1);
+		}
+		if (metrics != null)
+		{
+			metrics.entrySeen(entryType);
+		}
+
+		boolean readRecord = !readSong && records != null && 
+				records.isRead(entryType);
+		if (readRecord)
+		{
+			records.start(entryType);
+		}
+
+		//An empty entry has nothing else to read.
+		if (byteAt(p) == '/')
+		{
+			if (readSong)
+			{
+				songs.accept(songBuilder.build());
+			}
+			else if (readRecord)
+			{
+				records.end();
+			}
+			return p + 2;
+		}
+
+		//Entries that are not read are skipped in one search for their end 
+		//tag, without looking at their elements.
+		if (!readSong && !readRecord)
+		{
+			int end = indexOfEndEntry(p);
+			if (end < 0)
+			{
+				throw malformed("unterminated entry", pos);
+			}
+			return afterEndEntry(end);
+		}
+
+		p++;
+		fieldsRead = 0;
+		while (true)
+		{
+			p = indexOf('<', p);
+			if (p < 0)
+			{
+				throw malformed("unterminated entry", pos);
+			}
+			//Once every projected field of a song has been read, the rest of 
+			//the entry is skipped, as Rhythmbox writes each field once.
+			if (readSong && fieldsRead == projectedFields && 
+					projectedFields > 0)
+			{
+				p = indexOfEndEntry(p);
+				if (p < 0)
+				{
+					throw malformed("unterminated entry", pos);
+				}
+			}
+			byte next = byteAt(p + 1);
+			if (next == '/')
+			{
+				int end = afterEndEntry(p);
+				if (end < 0)
+				{
+					throw malformed("unexpected end tag", p);
+				}
+				if (readSong)
+				{
+					songs.accept(songBuilder.build());
+				}
+				else
+				{
+					records.end();
+				}
+				return end;
+			}
+			if (next == '!' || next == '?')
+			{
+				p = skipMarkup(p);
+				continue;
+			}
+			p = readSong ? scanElement(p) : scanRecordElement(p);
+		}
+	}
+
+	/**
+	 * @param start the position of the first byte of a type attribute's value
+	 * @param end the position after its last byte
+	 * @return the type of the entry
+	 */
+	private EntryType entryType(int start, int end)
+	{
+		for (int i = 0; i < ENTRY_TYPES.length; i++)
+		{
+			if (ENTRY_TYPE_NAMES[i] != null && 
+					regionEquals(start, end, ENTRY_TYPE_NAMES[i]))
+			{
+				return ENTRY_TYPES[i];
+			}
+		}
+		return EntryType.OTHER;
+	}
+
+	/**
+	 * Reads one element inside of a song entry, setting the song's field if
+	 * the element is kept in a Song object and its field is projected.
+	 * @param pos the position of the element's start tag
+	 * @return the position after the element's end tag
+	 * @throws SAXException 
+	 */
+	private int scanElement(int pos) throws SAXException
+	{
+		int nameStart = pos + 1;
+		int nameEnd = nameStart;
+		byte b = byteAt(nameEnd);
+		while (b != 0 && !isWhitespace(b) && b != '>' && b != '/')
+		{
+			b = byteAt(++nameEnd);
+		}
+		SongField field = matchField(nameStart, nameEnd);
+		if (field != null && !songBuilder.isProjected(field))
+		{
+			field = null;
+		}
+		if (field != null)
+		{
+			fieldsRead++;
+		}
+		int tagEnd = endOfTag(nameEnd);
+
+		//An empty element has empty text.
+		if (byteAt(tagEnd - 1) == '/')
+		{
+			if (field != null)
+			{
+				songBuilder.set(field, "");
+			}
+			return tagEnd + 1;
+		}
+
+		if (field == null)
+		{
+			return skipElement(tagEnd + 1);
+		}
+
+		int textStart = tagEnd + 1;
+		int textEnd = indexOf('<', textStart);
+		if (textEnd < 0 || byteAt(textEnd + 1) != '/' || 
+				!regionEquals(textEnd + 2, textEnd + 2 + (nameEnd - nameStart), 
+						FIELD_NAMES[field.ordinal()]) || 
+				!isNameEnd(textEnd + 2 + (nameEnd - nameStart)))
+		{
+			throw malformed("unexpected markup in <" + field.getElementName() + 
+					">", textStart);
+		}
+		if (field.isNumeric())
+		{
+			setNumber(field, textStart, textEnd);
+		}
+		else if (copyText(textStart, textEnd))
+		{
+			songBuilder.set(field, textBytes, 0, textEnd - textStart);
+		}
+		else
+		{
+			songBuilder.set(field, decode(textStart, textEnd));
+		}
+		return endOfTag(textEnd + 2) + 1;
+	}
+
+	/**
+	 * Reads one element inside of an entry that is read into a record.
+	 * @param pos the position of the element's start tag
+	 * @return the position after the element's end tag
+	 * @throws SAXException 
+	 */
+	private int scanRecordElement(int pos) throws SAXException
+	{
+		int nameStart = pos + 1;
+		int nameEnd = nameStart;
+		byte b = byteAt(nameEnd);
+		while (b != 0 && !isWhitespace(b) && b != '>' && b != '/')
+		{
+			b = byteAt(++nameEnd);
+		}
+		String name = decode(nameStart, nameEnd);
+		int tagEnd = endOfTag(nameEnd);
+		if (byteAt(tagEnd - 1) == '/')
+		{
+			records.set(name, "");
+			return tagEnd + 1;
+		}
+
+		int textStart = tagEnd + 1;
+		int textEnd = indexOf('<', textStart);
+		if (textEnd < 0 || byteAt(textEnd + 1) != '/' || 
+				!regionEquals(textEnd + 2, nameStart, nameEnd - nameStart) || 
+				!isNameEnd(textEnd + 2 + (nameEnd - nameStart)))
+		{
+			throw malformed("unexpected markup in <" + name + ">", textStart);
+		}
+		records.set(name, decode(textStart, textEnd));
+		return endOfTag(textEnd + 2) + 1;
+	}
+
+	/**
+	 * Sets a numeric field, parsing plain digits directly from the library's
+	 * bytes and anything else the same way as the other engines.
+	 * @throws SAXException 
+	 */
+	private void setNumber(SongField field, int start, int end) throws 
+		SAXException
+	{
+		if (end > start && end - start <= 18)
+		{
+			long value = 0;
+			int p = start;
+			while (p < end)
+			{
+				int digit = byteAt(p) - '0';
+				if (digit < 0 || digit > 9)
+				{
+					break;
+				}
+				value = value * 10 + digit;
+				p++;
+			}
+			if (p == end)
+			{
+				songBuilder.setNumber(field, value);
+				return;
+			}
+		}
+		songBuilder.set(field, decode(start, end));
+	}
+
+	/**
+	 * Decodes the UTF-8 text between two positions, replacing character and
+	 * entity references and normalizing line endings as an XML parser would.
+	 * @throws SAXException 
+	 */
+	private String decode(int start, int end) throws SAXException
+	{
+		boolean plain = copyText(start, end);
+		String text = new String(textBytes, 0, end - start, 
+				StandardCharsets.UTF_8);
+		return plain ? text : unescape(text, start);
+	}
+
+	/**
+	 * Copies the bytes between two positions into the text buffer.
+	 * @return whether the bytes are plain text, with no references or 
+	 * carriage returns to replace
+	 */
+	private boolean copyText(int start, int end)
+	{
+		int length = end - start;
+		if (length > textBytes.length)
+		{
+			textBytes = new byte[Math.max(length, textBytes.length * 2)];
+		}
+		view.position(start);
+		view.get(textBytes, 0, length);
+
+		for (int i = 0; i < length; i++)
+		{
+			if (textBytes[i] == '&' || textBytes[i] == '\r')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return How well strings have been deduplicated so far, or null if 
+	 * they are not deduplicated.
+	 */
+	public DedupStatistics getDedupStatistics()
+	{
+		return songBuilder.getDedupStatistics();
+	}
+
+	/**
+	 * Replaces the references in a piece of text with the characters that 
+	 * they stand for, and line endings with a single line feed.
+	 * @throws SAXException 
+	 */
+	static String unescape(String text, int pos) throws SAXException
+	{
+		StringBuilder result = new StringBuilder(text.length());
+		int i = 0;
+		while (i < text.length())
+		{
+			char c = text.charAt(i);
+			if (c == '\r')
+			{
+				result.append('\n');
+				i += (i + 1 < text.length() && text.charAt(i + 1) == '\n') ? 2 : 1;
+			}
+			else if (c == '&')
+			{
+				int semicolon = text.indexOf(';', i);
+				if (semicolon < 0)
+				{
+					throw malformed("unterminated reference", pos);
+				}
+				String name = text.substring(i + 1, semicolon);
+				if (name.equals("amp"))
+				{
+					result.append('&');
+				}
+				else if (name.equals("lt"))
+				{
+					result.append('<');
+				}
+				else if (name.equals("gt"))
+				{
+					result.append('>');
+				}
+				else if (name.equals("quot"))
+				{
+					result.append('"');
+				}
+				else if (name.equals("apos"))
+				{
+					result.append('\'');
+				}
+				else if (name.startsWith("#"))
+				{
+					try
+					{
+						int codePoint = name.startsWith("#x") ? 
+								Integer.parseInt(name.substring(2), 16) : 
+								Integer.parseInt(name.substring(1));
+						result.appendCodePoint(codePoint);
+					}
+					catch (IllegalArgumentException e)
+					{
+						throw malformed("invalid character reference &" + name + 
+								";", pos);
+					}
+				}
+				else
+				{
+					throw malformed("undeclared entity &" + name + ";", pos);
+				}
+				i = semicolon + 1;
+			}
+			else
+			{
+				result.append(c);
+				i++;
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Skips the content and end tag of an element that is not kept in a 
+	 * Song object, along with any elements nested in it.
+	 * @param pos the position after the element's start tag
+	 * @return the position after the element's end tag
+	 * @throws SAXException 
+	 */
+	private int skipElement(int pos) throws SAXException
+	{
+		int depth = 1;
+		int p = pos;
+		while (depth > 0)
+		{
+			p = indexOf('<', p);
+			if (p < 0)
+			{
+				throw malformed("unterminated element", pos);
+			}
+			byte next = byteAt(p + 1);
+			if (next == '!' || next == '?')
+			{
+				p = skipMarkup(p);
+				continue;
+			}
+			int tagEnd = endOfTag(p + 1);
+			if (next == '/')
+			{
+				depth--;
+			}
+			else if (byteAt(tagEnd - 1) != '/')
+			{
+				depth++;
+			}
+			p = tagEnd + 1;
+		}
+		return p;
+	}
+
+	/**
+	 * Skips a declaration, comment, processing instruction or a tag that is 
+	 * not part of an entry.
+	 * @param pos the position of the markup's '<'
+	 * @return the position after the markup
+	 * @throws SAXException 
+	 */
+	private int skipMarkup(int pos) throws SAXException
+	{
+		int end;
+		if (byteAt(pos + 1) == '!' && byteAt(pos + 2) == '-' && 
+				byteAt(pos + 3) == '-')
+		{
+			end = indexOf(ascii("-->"), pos + 4);
+			return end < 0 ? fail("unterminated comment", pos) : end + 3;
+		}
+		if (byteAt(pos + 1) == '?')
+		{
+			end = indexOf(ascii("?>"), pos + 2);
+			return end < 0 ? fail("unterminated declaration", pos) : end + 2;
+		}
+		return endOfTag(pos + 1) + 1;
+	}
+
+	/**
+	 * Finds the '>' that ends a tag, ignoring any inside of attribute values.
+	 * @param pos a position inside of the tag
+	 * @return the position of the '>'
+	 * @throws SAXException 
+	 */
+	private int endOfTag(int pos) throws SAXException
+	{
+		int limit = buffer.limit();
+		for (int p = pos; p < limit; p++)
+		{
+			byte b = buffer.get(p);
+			if (b == '>')
+			{
+				return p;
+			}
+			if (b == '"' || b == '\'')
+			{
+				p = indexOf(b, p + 1);
+				if (p < 0)
+				{
+					break;
+				}
+			}
+		}
+		return fail("unterminated tag", pos);
+	}
+
+	/**
+	 * Returns the song field whose tag name is between two positions, 
+	 * without decoding the name.
+	 */
+	private SongField matchField(int start, int end)
+	{
+		int length = end - start;
+		for (int i = 0; i < FIELD_NAMES.length; i++)
+		{
+			if (FIELD_NAMES[i].length == length && 
+					regionEquals(start, end, FIELD_NAMES[i]))
+			{
+				return FIELDS[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the position of the next entry end tag, or -1
+	 */
+	private int indexOfEndEntry(int from)
+	{
+		int p = indexOf(END_ENTRY, from);
+		while (p >= 0 && afterEndEntry(p) < 0)
+		{
+			p = indexOf(END_ENTRY, p + 1);
+		}
+		return p;
+	}
+
+	/**
+	 * @param pos a position in the library
+	 * @return the position after the entry end tag at the position, or -1 
+	 * if there is none
+	 */
+	private int afterEndEntry(int pos)
+	{
+		if (!regionEquals(pos, pos + END_ENTRY.length, END_ENTRY))
+		{
+			return -1;
+		}
+		int end = skipWhitespace(pos + END_ENTRY.length);
+		return byteAt(end) == '>' ? end + 1 : -1;
+	}
+
+	/**
+	 * Checks whether a tag with the given name starts at a position.
+	 */
+	private boolean isTag(int pos, byte[] name)
+	{
+		if (!regionEquals(pos, pos + name.length, name))
+		{
+			return false;
+		}
+		byte after = byteAt(pos + name.length);
+		return isWhitespace(after) || after == '>' || after == '/';
+	}
+
+	/**
+	 * @return whether the name in an end tag stops before a position
+	 */
+	private boolean isNameEnd(int pos)
+	{
+		byte after = byteAt(pos);
+		return isWhitespace(after) || after == '>';
+	}
+
+	/**
+	 * @return whether the bytes at two positions are the same for a length
+	 */
+	private boolean regionEquals(int start, int other, int length)
+	{
+		if (start + length > buffer.limit())
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			if (buffer.get(start + i) != buffer.get(other + i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the bytes between two positions are the same as the 
+	 * given bytes.
+	 */
+	private boolean regionEquals(int start, int end, byte[] bytes)
+	{
+		if (end - start != bytes.length || end > buffer.limit())
+		{
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++)
+		{
+			if (buffer.get(start + i) != bytes[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the position of the next occurrence of a byte, or -1
+	 */
+	private int indexOf(int b, int from)
+	{
+		int limit = buffer.limit();
+		for (int p = from; p < limit; p++)
+		{
+			if (buffer.get(p) == b)
+			{
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the position of the next occurrence of a sequence of bytes, 
+	 * or -1
+	 */
+	private int indexOf(byte[] bytes, int from)
+	{
+		int last = buffer.limit() - bytes.length;
+		int p = indexOf(bytes[0], from);
+		while (p >= 0 && p <= last)
+		{
+			if (regionEquals(p, p + bytes.length, bytes))
+			{
+				return p;
+			}
+			p = indexOf(bytes[0], p + 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the position of the next byte that is not whitespace
+	 */
+	private int skipWhitespace(int pos)
+	{
+		while (isWhitespace(byteAt(pos)))
+		{
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return the byte at a position, or 0 past the end of the library
+	 */
+	private byte byteAt(int pos)
+	{
+		return pos < buffer.limit() ? buffer.get(pos) : 0;
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+	}
+
+	private static byte[] ascii(String s)
+	{
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static SAXException malformed(String problem, int pos)
+	{
+		return new SAXException("Malformed Rhythmbox library: " + problem + 
+				" at byte " + pos);
+	}
+
+	private static int fail(String problem, int pos) throws SAXException
+	{
+		throw malformed(problem, pos);
+	}
+
+	/**
+	 * Receives the songs read by {@link MappedLibraryScanner#scanEntries(int, 
+	 * int, EntryConsumer)} along with the positions of their entries.
+	 */
+	interface EntryConsumer
+	{
+		/**
+		 * @param song the song that was read
+		 * @param offset the position of the entry's start tag
+		 * @param length the number of bytes in the entry, up to and including
+		 * its end tag
+		 */
+		void accept(Song song, int offset, int length);
+	}
+}
@@ -0,0 +1,304 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads a memory-mapped Rhythmbox XML library on several cores. The library
+ * is split into chunks that start at entry start tags, each chunk is read by
+ * a {@link MappedLibraryScanner} on a ForkJoinPool, and the songs of the 
+ * chunks are joined in the order that they appear in the library. Libraries
+ * that are too small to be worth splitting are read sequentially.
+ */
+class ParallelLibraryScanner 
+{
+	//Libraries are not split into chunks smaller than this many bytes.
+	static final int MIN_CHUNK_SIZE = 1 << 20;
+	//The number of chunks per thread, so that threads that finish early can
+	//take over the remaining work.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	//The bytes of the library.
+	private ByteBuffer buffer;
+	//The number of threads that read the library.
+	private int parallelism;
+	//The capacity of the string deduplicator of each chunk, or 0 if strings
+	//are not deduplicated.
+	private int dedupCapacity;
+	//Collects the metrics of the parse, or null if they are not collected.
+	private ParseMetricsCollector metrics;
+	//The fields that are read, or null if every field is read.
+	private Set<SongField> projection;
+	//Reads the entries that are not songs into records, or null if they are
+	//all skipped.
+	private EntryRecordBuilder records;
+	//Follows the parse, or null if it is not followed.
+	private ParseProgressTracker progress;
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library
+	 * @param parallelism the number of threads that read the library
+	 * @param dedupCapacity the capacity of the string deduplicator that each
+	 * chunk is read with, or 0 to not deduplicate strings
+	 */
+	public ParallelLibraryScanner(ByteBuffer buffer, int parallelism, 
+			int dedupCapacity)
+	{
+		this(buffer, parallelism, dedupCapacity, null, null);
+	}
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library
+	 * @param parallelism the number of threads that read the library
+	 * @param dedupCapacity the capacity of the string deduplicator that each
+	 * chunk is read with, or 0 to not deduplicate strings
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 */
+	public ParallelLibraryScanner(ByteBuffer buffer, int parallelism, 
+			int dedupCapacity, ParseMetricsCollector metrics, 
+			Set<SongField> projection)
+	{
+		this(buffer, parallelism, dedupCapacity, metrics, projection, null);
+	}
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library
+	 * @param parallelism the number of threads that read the library
+	 * @param dedupCapacity the capacity of the string deduplicator that each
+	 * chunk is read with, or 0 to not deduplicate strings
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 * @param records reads the entries that are not songs into records, or 
+	 * null to skip them all. Each type of record is passed on in library 
+	 * order.
+	 */
+	public ParallelLibraryScanner(ByteBuffer buffer, int parallelism, 
+			int dedupCapacity, ParseMetricsCollector metrics, 
+			Set<SongField> projection, EntryRecordBuilder records)
+	{
+		this(buffer, parallelism, dedupCapacity, metrics, projection, records,
+				null);
+	}
+
+	/**
+	 * @param buffer the bytes of a Rhythmbox XML library
+	 * @param parallelism the number of threads that read the library
+	 * @param dedupCapacity the capacity of the string deduplicator that each
+	 * chunk is read with, or 0 to not deduplicate strings
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 * @param records reads the entries that are not songs into records, or 
+	 * null to skip them all. Each type of record is passed on in library 
+	 * order.
+	 * @param progress follows the parse, or null if it is not followed
+	 */
+	public ParallelLibraryScanner(ByteBuffer buffer, int parallelism, 
+			int dedupCapacity, ParseMetricsCollector metrics, 
+			Set<SongField> projection, EntryRecordBuilder records, 
+			ParseProgressTracker progress)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1");
+		}
+		this.buffer = buffer;
+		this.parallelism = parallelism;
+		this.dedupCapacity = dedupCapacity;
+		this.metrics = metrics;
+		this.projection = projection;
+		this.records = records;
+		this.progress = progress;
+	}
+
+	/**
+	 * Reads every song in the library.
+	 * @param songs receives the songs in the order that they appear in the 
+	 * library
+	 * @return how well strings were deduplicated, or null if they were not
+	 * @throws SAXException if an entry is not well-formed
+	 * @throws java.util.concurrent.CancellationException if the parse was 
+	 * cancelled
+	 */
+	public DedupStatistics scan(Consumer<Song> songs) throws SAXException
+	{
+		int size = buffer.limit();
+		int chunkCount = (int) Math.min((long) parallelism * CHUNKS_PER_THREAD, 
+				size / MIN_CHUNK_SIZE);
+		if (parallelism == 1 || chunkCount <= 1)
+		{
+			MappedLibraryScanner scanner = new MappedLibraryScanner(buffer, 
+					newDeduplicator(), metrics, projection, records);
+			scanner.scan(0, size, songs, progress);
+			return scanner.getDedupStatistics();
+		}
+
+		//Every chunk after the first starts at an entry, so that no entry is
+		//split between two chunks.
+		int[] bounds = new int[chunkCount + 1];
+		for (int i = 1; i < chunkCount; i++)
+		{
+			int from = Math.max(bounds[i - 1], (int) ((long) size * i / chunkCount));
+			bounds[i] = MappedLibraryScanner.nextEntry(buffer, from);
+		}
+		bounds[chunkCount] = size;
+
+		List<ChunkTask> tasks = new ArrayList<ChunkTask>(chunkCount);
+		for (int i = 0; i < chunkCount; i++)
+		{
+			tasks.add(new ChunkTask(bounds[i], bounds[i + 1]));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			for (ChunkTask task : tasks)
+			{
+				pool.execute(task);
+			}
+			DedupStatistics statistics = null;
+			for (ChunkTask task : tasks)
+			{
+				task.join().forEach(songs);
+				if (records != null)
+				{
+					task.forwardRecords();
+				}
+				if (task.metrics != null)
+				{
+					metrics.merge(task.metrics);
+				}
+				if (task.statistics != null)
+				{
+					statistics = statistics == null ? task.statistics : 
+						statistics.plus(task.statistics);
+				}
+			}
+			return statistics;
+		}
+		catch (LibraryParseException e)
+		{
+			//The exception may have been wrapped again when it was rethrown
+			//by another thread.
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof SAXException)
+				{
+					throw (SAXException) cause;
+				}
+			}
+			throw e;
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	private StringDeduplicator newDeduplicator()
+	{
+		return dedupCapacity == 0 ? null : new StringDeduplicator(dedupCapacity);
+	}
+
+	/**
+	 * Reads the songs in one chunk of the library.
+	 */
+	@SuppressWarnings("serial")
+	private class ChunkTask extends RecursiveTask<ArrayList<Song>>
+	{
+		//The position of the chunk's first byte and the position after its 
+		//last byte.
+		private int start;
+		private int end;
+		//How well the chunk's strings were deduplicated.
+		private DedupStatistics statistics;
+		//The metrics of the chunk, or null if they are not collected.
+		private ParseMetricsCollector metrics;
+		//The records that were read from the chunk.
+		private ArrayList<RadioStation> radioStations;
+		private ArrayList<PodcastEpisode> podcastEpisodes;
+
+		public ChunkTask(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+			metrics = ParallelLibraryScanner.this.metrics == null ? null : 
+				new ParseMetricsCollector(ParseEngine.PARALLEL);
+			radioStations = new ArrayList<RadioStation>();
+			podcastEpisodes = new ArrayList<PodcastEpisode>();
+		}
+
+		/**
+		 * Passes the records that were read from the chunk to their handlers.
+		 */
+		public void forwardRecords()
+		{
+			if (records.getRadioStations() != null)
+			{
+				radioStations.forEach(records.getRadioStations());
+			}
+			if (records.getPodcastEpisodes() != null)
+			{
+				podcastEpisodes.forEach(records.getPodcastEpisodes());
+			}
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveTask#compute()
+		 */
+		protected ArrayList<Song> compute()
+		{
+			ArrayList<Song> songs = new ArrayList<Song>();
+			try
+			{
+				EntryRecordBuilder chunkRecords = records == null ? null : 
+					new EntryRecordBuilder(
+							records.getRadioStations() == null ? null : 
+								radioStations::add, 
+							records.getPodcastEpisodes() == null ? null : 
+								podcastEpisodes::add);
+				MappedLibraryScanner scanner = new MappedLibraryScanner(
+						buffer.duplicate(), newDeduplicator(), metrics, projection,
+						chunkRecords);
+				scanner.scan(start, end, songs::add, progress);
+				statistics = scanner.getDedupStatistics();
+			}
+			catch (SAXException e)
+			{
+				throw new LibraryParseException("Could not parse the library", 
+						e);
+			}
+			return songs;
+		}
+	}
+}
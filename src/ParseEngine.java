@@ -0,0 +1,50 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * The engines that a {@link RhythmboxXMLLibraryParser} can use to read a 
+ * Rhythmbox XML library. Every engine produces the same {@link Song} objects.
+ */
+public enum ParseEngine 
+{
+	/**
+	 * The JAXP SAX2 parser. It accepts any well-formed XML document, and is
+	 * the reference that the other engines are checked against.
+	 */
+	SAX,
+
+	/**
+	 * A scanner that memory-maps the library and looks for the tags of a 
+	 * Rhythmbox library directly in its UTF-8 bytes, decoding only the text 
+	 * of the elements that are kept in a {@link Song}. It relies on the flat 
+	 * layout that Rhythmbox writes (no CDATA sections or nested elements 
+	 * inside the fields of a song), and cannot read libraries larger than 
+	 * 2 GB.
+	 */
+	MAPPED,
+
+	/**
+	 * The {@link #MAPPED} engine run on several cores. The library is split
+	 * into chunks at entry boundaries and the chunks are read on a 
+	 * ForkJoinPool, while the songs stay in the order that they appear in the
+	 * library. Libraries smaller than a few megabytes are read sequentially.
+	 * @see RhythmboxXMLLibraryParser#setParallelism(int)
+	 */
+	PARALLEL
+}
@@ -0,0 +1,226 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * What happened while a Rhythmbox XML library was parsed: how much was read,
+ * how many entries of each type were seen and where the time went. The time
+ * is split into phases:
+ * <ul>
+ * <li>I/O: reading or memory-mapping the library file,</li>
+ * <li>song construction: creating Song objects from the fields that were 
+ * read,</li>
+ * <li>delivery: handing the songs to the library and, when it is updated,
+ * finding what changed and updating the indexes,</li>
+ * <li>other: the time that is not in these phases, which is mostly finding
+ * the elements and converting their text.</li>
+ * </ul>
+ * The parallel engine adds up the time of its threads, so its phases can 
+ * take longer than the parse.
+ */
+public class ParseMetrics 
+{
+	private ParseEngine parseEngine;
+	private long bytesRead;
+	private EnumMap<EntryType, Long> entries;
+	private long songsEmitted;
+	private long numericFieldFailures;
+	private long ioNanos;
+	private long otherNanos;
+	private long songConstructionNanos;
+	private long deliveryNanos;
+	private long totalNanos;
+
+	ParseMetrics(ParseEngine parseEngine, long bytesRead, 
+			Map<EntryType, Long> entries, long songsEmitted, 
+			long numericFieldFailures, long ioNanos, long songConstructionNanos,
+			long deliveryNanos, long totalNanos)
+	{
+		this.parseEngine = parseEngine;
+		this.bytesRead = bytesRead;
+		this.entries = new EnumMap<EntryType, Long>(EntryType.class);
+		for (EntryType entryType : EntryType.values())
+		{
+			Long count = entries.get(entryType);
+			this.entries.put(entryType, count == null ? 0 : count);
+		}
+		this.songsEmitted = songsEmitted;
+		this.numericFieldFailures = numericFieldFailures;
+		this.ioNanos = ioNanos;
+		this.songConstructionNanos = songConstructionNanos;
+		this.deliveryNanos = deliveryNanos;
+		this.totalNanos = totalNanos;
+		otherNanos = Math.max(0, 
+				totalNanos - ioNanos - songConstructionNanos - deliveryNanos);
+	}
+
+	/**
+	 * @return The engine that parsed the library.
+	 */
+	public ParseEngine getParseEngine()
+	{
+		return parseEngine;
+	}
+
+	/**
+	 * @return The number of bytes of the library that were read.
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * @param entryType a type of entry
+	 * @return The number of entries of the type that were seen.
+	 */
+	public long getEntries(EntryType entryType)
+	{
+		return entries.get(entryType);
+	}
+
+	/**
+	 * @return The number of entries of every type that were seen.
+	 */
+	public long getEntries()
+	{
+		long total = 0;
+		for (long count : entries.values())
+		{
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * @return The number of song entries that were seen.
+	 */
+	public long getSongEntries()
+	{
+		return getEntries(EntryType.SONG);
+	}
+
+	/**
+	 * @return The number of iradio entries that were seen.
+	 */
+	public long getRadioEntries()
+	{
+		return getEntries(EntryType.IRADIO);
+	}
+
+	/**
+	 * @return The number of podcast-post and podcast-feed entries that were
+	 * seen.
+	 */
+	public long getPodcastEntries()
+	{
+		return getEntries(EntryType.PODCAST_POST) + 
+				getEntries(EntryType.PODCAST_FEED);
+	}
+
+	/**
+	 * @return The number of ignore entries that were seen.
+	 */
+	public long getIgnoreEntries()
+	{
+		return getEntries(EntryType.IGNORE);
+	}
+
+	/**
+	 * @return The number of Song objects that were created.
+	 */
+	public long getSongsEmitted()
+	{
+		return songsEmitted;
+	}
+
+	/**
+	 * @return The number of numeric fields whose text was not a number, and
+	 * which were left at 0.
+	 */
+	public long getNumericFieldFailures()
+	{
+		return numericFieldFailures;
+	}
+
+	/**
+	 * @return The nanoseconds spent reading or mapping the library file.
+	 */
+	public long getIoNanos()
+	{
+		return ioNanos;
+	}
+
+	/**
+	 * @return The nanoseconds that are not in the other phases, which are 
+	 * mostly spent finding elements and converting their text.
+	 */
+	public long getOtherNanos()
+	{
+		return otherNanos;
+	}
+
+	/**
+	 * @return The nanoseconds spent creating Song objects.
+	 */
+	public long getSongConstructionNanos()
+	{
+		return songConstructionNanos;
+	}
+
+	/**
+	 * @return The nanoseconds spent handing the songs to the library and 
+	 * updating its indexes.
+	 */
+	public long getDeliveryNanos()
+	{
+		return deliveryNanos;
+	}
+
+	/**
+	 * @return The nanoseconds that the parse took.
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	/**
+	 * @return The number of entries of every type that were parsed per second.
+	 */
+	public double getEntriesPerSecond()
+	{
+		return totalNanos == 0 ? 0 : getEntries() * 1e9 / totalNanos;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s parse: %d bytes, %d entries %s, %d songs, " +
+				"%d numeric field failures, %.1f ms (I/O %.1f ms, song " +
+				"construction %.1f ms, delivery %.1f ms, other %.1f ms), " +
+				"%.0f entries/s", parseEngine, bytesRead, getEntries(), 
+				entries, songsEmitted, numericFieldFailures, totalNanos / 1e6, 
+				ioNanos / 1e6, songConstructionNanos / 1e6, 
+				deliveryNanos / 1e6, otherNanos / 1e6, 
+				getEntriesPerSecond());
+	}
+}
@@ -0,0 +1,169 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.function.Consumer;
+
+/**
+ * Collects the metrics of one parse of a Rhythmbox XML library. The parse 
+ * engines are given a collector only when someone listens for metrics, and
+ * otherwise skip collecting them. A collector is not thread safe, so the 
+ * threads of the parallel engine each use their own, which are merged.
+ */
+class ParseMetricsCollector 
+{
+	private ParseEngine parseEngine;
+	//When the parse started.
+	private long startNanos;
+	private long bytesRead;
+	private long[] entries;
+	private long songsEmitted;
+	private long numericFieldFailures;
+	private long ioNanos;
+	private long songConstructionNanos;
+	private long deliveryNanos;
+
+	/**
+	 * Starts collecting the metrics of a parse.
+	 * @param parseEngine the engine that parses the library
+	 */
+	public ParseMetricsCollector(ParseEngine parseEngine)
+	{
+		this.parseEngine = parseEngine;
+		startNanos = System.nanoTime();
+		bytesRead = 0;
+		entries = new long[EntryType.values().length];
+		songsEmitted = 0;
+		numericFieldFailures = 0;
+		ioNanos = 0;
+		songConstructionNanos = 0;
+		deliveryNanos = 0;
+	}
+
+	public void entrySeen(EntryType entryType)
+	{
+		entries[entryType.ordinal()]++;
+	}
+
+	public void numericFieldFailed()
+	{
+		numericFieldFailures++;
+	}
+
+	public void bytesRead(long bytes, long nanos)
+	{
+		bytesRead += bytes;
+		ioNanos += nanos;
+	}
+
+	public void songConstructed(long nanos)
+	{
+		songConstructionNanos += nanos;
+	}
+
+	public void delivered(long nanos)
+	{
+		deliveryNanos += nanos;
+	}
+
+	/**
+	 * Counts the songs that a consumer receives, and the time that it takes
+	 * as delivery.
+	 * @param songs the consumer of the parsed songs
+	 * @return a consumer that passes the songs on
+	 */
+	public Consumer<Song> countSongs(Consumer<Song> songs)
+	{
+		return song ->
+		{
+			long start = System.nanoTime();
+			songs.accept(song);
+			deliveryNanos += System.nanoTime() - start;
+			songsEmitted++;
+		};
+	}
+
+	/**
+	 * Counts the bytes read from a stream, and the time that it takes as I/O.
+	 * @param in the stream that the library is read from
+	 * @return a stream that reads from it
+	 */
+	public InputStream countBytes(InputStream in)
+	{
+		return new FilterInputStream(in)
+		{
+			@Override
+			public int read() throws IOException
+			{
+				long start = System.nanoTime();
+				int b = super.read();
+				bytesRead(b < 0 ? 0 : 1, System.nanoTime() - start);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				long start = System.nanoTime();
+				int read = super.read(b, off, len);
+				bytesRead(Math.max(read, 0), System.nanoTime() - start);
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * Adds the metrics of a part of the parse that another thread collected.
+	 * @param other the metrics that the other thread collected
+	 */
+	public void merge(ParseMetricsCollector other)
+	{
+		bytesRead += other.bytesRead;
+		for (int i = 0; i < entries.length; i++)
+		{
+			entries[i] += other.entries[i];
+		}
+		songsEmitted += other.songsEmitted;
+		numericFieldFailures += other.numericFieldFailures;
+		ioNanos += other.ioNanos;
+		songConstructionNanos += other.songConstructionNanos;
+		deliveryNanos += other.deliveryNanos;
+	}
+
+	/**
+	 * Stops collecting the metrics.
+	 * @return the metrics of the parse
+	 */
+	public ParseMetrics finish()
+	{
+		EnumMap<EntryType, Long> entryCounts = 
+				new EnumMap<EntryType, Long>(EntryType.class);
+		for (EntryType entryType : EntryType.values())
+		{
+			entryCounts.put(entryType, entries[entryType.ordinal()]);
+		}
+		return new ParseMetrics(parseEngine, bytesRead, entryCounts, 
+				songsEmitted, numericFieldFailures, ioNanos, 
+				songConstructionNanos, deliveryNanos, 
+				System.nanoTime() - startNanos);
+	}
+}
@@ -0,0 +1,76 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * Keeps the metrics of the parses of a library for JMX.
+ */
+class ParseMetricsMonitor implements ParseMetricsMXBean, ParseMetricsListener
+{
+	private String libLocation;
+	private volatile long parseCount;
+	private volatile ParseMetrics lastParse;
+	private volatile long numericFieldFailures;
+
+	public ParseMetricsMonitor(String libLocation)
+	{
+		this.libLocation = libLocation;
+		parseCount = 0;
+		lastParse = null;
+		numericFieldFailures = 0;
+	}
+
+	@Override
+	public synchronized void libraryParsed(ParseMetrics metrics)
+	{
+		parseCount++;
+		numericFieldFailures += metrics.getNumericFieldFailures();
+		lastParse = metrics;
+	}
+
+	@Override
+	public String getLibLocation()
+	{
+		return libLocation;
+	}
+
+	@Override
+	public long getParseCount()
+	{
+		return parseCount;
+	}
+
+	@Override
+	public ParseMetrics getLastParse()
+	{
+		return lastParse;
+	}
+
+	@Override
+	public double getLastEntriesPerSecond()
+	{
+		ParseMetrics metrics = lastParse;
+		return metrics == null ? 0 : metrics.getEntriesPerSecond();
+	}
+
+	@Override
+	public long getNumericFieldFailures()
+	{
+		return numericFieldFailures;
+	}
+}
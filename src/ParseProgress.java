@@ -0,0 +1,93 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+/**
+ * How far a parse of a Rhythmbox XML library has got: how many bytes of the 
+ * file have been consumed and how many songs have been parsed so far.
+ */
+public class ParseProgress 
+{
+	//The number of bytes of the library that have been consumed, and the 
+	//size of the library.
+	private long bytesRead;
+	private long totalBytes;
+	//The number of songs that have been parsed.
+	private long songsParsed;
+	//The time since the parse started, in nanoseconds.
+	private long elapsedNanos;
+
+	public ParseProgress(long bytesRead, long totalBytes, long songsParsed, 
+			long elapsedNanos)
+	{
+		this.bytesRead = bytesRead;
+		this.totalBytes = totalBytes;
+		this.songsParsed = songsParsed;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return The number of bytes of the library that have been consumed.
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * @return The size of the library in bytes.
+	 */
+	public long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * @return The fraction of the library that has been consumed, from 0 to
+	 * 1.
+	 */
+	public double getFraction()
+	{
+		return totalBytes == 0 ? 1 : Math.min(1, (double) bytesRead / totalBytes);
+	}
+
+	/**
+	 * @return The number of songs that have been parsed.
+	 */
+	public long getSongsParsed()
+	{
+		return songsParsed;
+	}
+
+	/**
+	 * @return The time since the parse started, in nanoseconds.
+	 */
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return String.format("%.1f%% of %d KB, %d songs in %d ms", 
+				getFraction() * 100, totalBytes / 1024, songsParsed, 
+				elapsedNanos / 1000000);
+	}
+}
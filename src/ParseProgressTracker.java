@@ -0,0 +1,214 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Follows one parse of a Rhythmbox XML library: counts the bytes that the 
+ * engine consumes and the songs that it parses, tells the {@link 
+ * ParseProgressListener}s about them at most once per interval, and stops 
+ * the parse once it is cancelled by throwing a CancellationException from 
+ * the next place that is checked. Bytes can be counted on any thread, but 
+ * the listeners are only told on the threads that receive the songs or read
+ * the library's stream.
+ */
+class ParseProgressTracker 
+{
+	//The listeners that are told about the progress.
+	private List<ParseProgressListener> listeners;
+	//The least time between two reports, in nanoseconds.
+	private long intervalNanos;
+	//The size of the library, and the number of its bytes consumed so far.
+	private long totalBytes;
+	private AtomicLong bytesRead;
+	//The number of songs parsed so far.
+	private long songsParsed;
+	//When the parse started and when the listeners were last told.
+	private long startTime;
+	private long lastReport;
+	//Whether the parse was cancelled.
+	private volatile boolean cancelled;
+
+	/**
+	 * @param listeners the listeners that are told about the progress
+	 * @param intervalMillis the least time between two reports in 
+	 * milliseconds
+	 */
+	public ParseProgressTracker(List<ParseProgressListener> listeners, 
+			long intervalMillis)
+	{
+		this.listeners = listeners;
+		intervalNanos = intervalMillis * 1000000;
+		totalBytes = 0;
+		bytesRead = new AtomicLong();
+		songsParsed = 0;
+		startTime = System.nanoTime();
+		lastReport = startTime;
+		cancelled = false;
+	}
+
+	/**
+	 * Starts counting a parse again from the beginning.
+	 * @param totalBytes the size of the library
+	 * @throws CancellationException if the parse was cancelled
+	 */
+	public void start(long totalBytes)
+	{
+		checkCancelled();
+		this.totalBytes = totalBytes;
+		bytesRead.set(0);
+		songsParsed = 0;
+		startTime = System.nanoTime();
+		lastReport = startTime;
+	}
+
+	/**
+	 * Stops the parse at the next place that is checked.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/**
+	 * @return Whether the parse was cancelled.
+	 */
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * @throws CancellationException if the parse was cancelled
+	 */
+	public void checkCancelled()
+	{
+		if (cancelled)
+		{
+			throw new CancellationException("The parse was cancelled");
+		}
+	}
+
+	/**
+	 * Counts bytes of the library that were consumed. This can be called on 
+	 * any thread.
+	 * @param bytes the number of bytes
+	 * @throws CancellationException if the parse was cancelled
+	 */
+	public void bytesRead(long bytes)
+	{
+		bytesRead.addAndGet(bytes);
+		checkCancelled();
+	}
+
+	/**
+	 * Counts the songs that are passed to a consumer.
+	 * @param songs the consumer of the songs
+	 * @return a consumer that counts the songs and then passes them on
+	 */
+	public Consumer<Song> countSongs(Consumer<Song> songs)
+	{
+		return song ->
+		{
+			checkCancelled();
+			songs.accept(song);
+			songsParsed++;
+			reportIfDue();
+		};
+	}
+
+	/**
+	 * Counts the bytes read from a stream.
+	 * @param in the stream that the library is read from
+	 * @return a stream that reads from it, and that throws a 
+	 * CancellationException once the parse is cancelled
+	 */
+	public InputStream countBytes(InputStream in)
+	{
+		return new FilterInputStream(in)
+		{
+			@Override
+			public int read() throws IOException
+			{
+				checkCancelled();
+				int b = super.read();
+				if (b >= 0)
+				{
+					bytesRead.incrementAndGet();
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				checkCancelled();
+				int read = super.read(b, off, len);
+				if (read > 0)
+				{
+					bytesRead.addAndGet(read);
+					reportIfDue();
+				}
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * Tells the listeners that the whole library has been read.
+	 */
+	public void finish()
+	{
+		bytesRead.set(totalBytes);
+		report(System.nanoTime());
+	}
+
+	/**
+	 * Tells the listeners about the progress if the interval has passed 
+	 * since they were last told.
+	 */
+	private void reportIfDue()
+	{
+		if (listeners.isEmpty())
+		{
+			return;
+		}
+		long now = System.nanoTime();
+		if (now - lastReport >= intervalNanos)
+		{
+			report(now);
+		}
+	}
+
+	private void report(long now)
+	{
+		lastReport = now;
+		ParseProgress progress = new ParseProgress(bytesRead.get(), totalBytes,
+				songsParsed, now - startTime);
+		for (ParseProgressListener listener : listeners)
+		{
+			listener.progressMade(progress);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * An episode of a podcast in a Rhythmbox XML library, read from an entry 
+ * with the type podcast-post when a parser is asked for them with {@link 
+ * RhythmboxXMLLibraryParser#setPodcastEpisodeHandler(java.util.function.Consumer)}.
+ */
+public class PodcastEpisode 
+{
+	//The episode's title.
+	private String title;
+	//The title of the podcast that the episode belongs to.
+	private String feed;
+	//The location that the episode is downloaded from.
+	private String location;
+	//The location of the downloaded episode, or "" if it was not downloaded.
+	private String mountpoint;
+	//The episode's description.
+	private String description;
+	//When the episode was posted, in seconds since the epoch.
+	private long postTime;
+	//The episode's duration in seconds.
+	private int duration;
+
+	public PodcastEpisode(String title, String feed, String location, 
+			String mountpoint, String description, long postTime, int duration)
+	{
+		this.title = title;
+		this.feed = feed;
+		this.location = location;
+		this.mountpoint = mountpoint;
+		this.description = description;
+		this.postTime = postTime;
+		this.duration = duration;
+	}
+
+	/**
+	 * @return An episode's title.
+	 */
+	public String getTitle()
+	{
+		return title;
+	}
+
+	/**
+	 * @return The title of the podcast that an episode belongs to.
+	 */
+	public String getFeed()
+	{
+		return feed;
+	}
+
+	/**
+	 * @return The location that an episode is downloaded from.
+	 */
+	public String getLocation()
+	{
+		return location;
+	}
+
+	/**
+	 * @return The location of the downloaded episode, or "" if it was not 
+	 * downloaded.
+	 */
+	public String getMountpoint()
+	{
+		return mountpoint;
+	}
+
+	/**
+	 * @return An episode's description.
+	 */
+	public String getDescription()
+	{
+		return description;
+	}
+
+	/**
+	 * @return When an episode was posted, in seconds since the epoch.
+	 */
+	public long getPostTime()
+	{
+		return postTime;
+	}
+
+	/**
+	 * @return An episode's duration in seconds, or 0 if it is not known.
+	 */
+	public int getDuration()
+	{
+		return duration;
+	}
+
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+		if (!(obj instanceof PodcastEpisode))
+		{
+			return false;
+		}
+		PodcastEpisode other = (PodcastEpisode) obj;
+		return title.equals(other.title) && feed.equals(other.feed) &&
+				location.equals(other.location) && 
+				mountpoint.equals(other.mountpoint) &&
+				description.equals(other.description) && 
+				postTime == other.postTime && duration == other.duration;
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode()
+	{
+		return 31 * title.hashCode() + location.hashCode();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return title + " - " + feed;
+	}
+}
@@ -0,0 +1,134 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * An internet radio station in a Rhythmbox XML library, read from an entry 
+ * with the type iradio when a parser is asked for them with {@link 
+ * RhythmboxXMLLibraryParser#setRadioStationHandler(java.util.function.Consumer)}.
+ */
+public class RadioStation 
+{
+	//The station's name.
+	private String title;
+	//The station's genre.
+	private String genre;
+	//The location of the station's stream or playlist.
+	private String location;
+	//The station's bit rate.
+	private int bitRate;
+	//The number of times that the station was played.
+	private int playCount;
+	//When the station was last played, in seconds since the epoch.
+	private long lastPlayed;
+
+	public RadioStation(String title, String genre, String location, 
+			int bitRate, int playCount, long lastPlayed)
+	{
+		this.title = title;
+		this.genre = genre;
+		this.location = location;
+		this.bitRate = bitRate;
+		this.playCount = playCount;
+		this.lastPlayed = lastPlayed;
+	}
+
+	/**
+	 * @return A station's name.
+	 */
+	public String getTitle()
+	{
+		return title;
+	}
+
+	/**
+	 * @return A station's genre.
+	 */
+	public String getGenre()
+	{
+		return genre;
+	}
+
+	/**
+	 * @return The location of a station's stream or playlist.
+	 */
+	public String getLocation()
+	{
+		return location;
+	}
+
+	/**
+	 * @return A station's bit rate, or 0 if it is not known.
+	 */
+	public int getBitRate()
+	{
+		return bitRate;
+	}
+
+	/**
+	 * @return The number of times that a station was played.
+	 */
+	public int getPlayCount()
+	{
+		return playCount;
+	}
+
+	/**
+	 * @return When a station was last played, in seconds since the epoch, or
+	 * 0 if it was never played.
+	 */
+	public long getLastPlayed()
+	{
+		return lastPlayed;
+	}
+
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+		if (!(obj instanceof RadioStation))
+		{
+			return false;
+		}
+		RadioStation other = (RadioStation) obj;
+		return title.equals(other.title) && genre.equals(other.genre) &&
+				location.equals(other.location) && bitRate == other.bitRate &&
+				playCount == other.playCount && lastPlayed == other.lastPlayed;
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode()
+	{
+		return 31 * title.hashCode() + location.hashCode();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return title + " (" + location + ")";
+	}
+}
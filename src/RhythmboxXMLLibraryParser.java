@@ -17,37 +17,109 @@
 //IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
 //CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * The RhythmboxXMLLibraryParser class handles everything that is required to
- * parse a Rhythmbox XML library.
+ * parse a Rhythmbox XML library. A parser is not thread safe; a {@link 
+ * LibraryService} shares a parsed library between threads. The one 
+ * exception is {@link #updateLibrary()}, which may run on another thread, as
+ * a {@link LibraryWatcher} does, while the songs are read: it builds the 
+ * updated songs to the side and replaces the array list of songs and the 
+ * indexes at once, so a reader sees either the old library or the new one.
  */
 public class RhythmboxXMLLibraryParser 
 {
-	//An array list of Song objects that will hold information about every
-	//song in a Rhythmbox library.
-	private ArrayList<Song> songLibrary;
+	//The songs in the Rhythmbox library and the indexes over them, which are
+	//replaced rather than changed when the library is parsed or updated.
+	private volatile ParsedLibrary library;
 	//The location of the user's Rhythmbox XML library.
 	private String libLocation;
-	//The modified SAX2 handler that will be used to parse the library.
-	private RhythmboxLibraryHandler handler;
+	//The engine that is used to parse the library.
+	private ParseEngine parseEngine;
+	//The number of threads that the parallel engine uses.
+	private int parallelism;
+	//The directory that snapshots of the parsed library are saved in, or 
+	//null if snapshots are not used.
+	private File cacheDirectory;
+	//Whether snapshots are also keyed by a checksum of the whole library.
+	private boolean snapshotChecksummed;
+	//Whether the songs were last loaded from a snapshot instead of parsed.
+	private boolean loadedFromSnapshot;
+	//The number of strings that are kept for deduplication while parsing,
+	//or 0 if strings are not deduplicated.
+	private int dedupCapacity;
+	//How well strings were deduplicated the last time the library was 
+	//parsed, or null if they were not.
+	private DedupStatistics dedupStatistics;
+	//The fields of the songs that are read, or null if every field is read.
+	private EnumSet<SongField> projection;
+	//Receive the radio stations and podcast episodes of every parse, or null
+	//if those entries are skipped.
+	private Consumer<RadioStation> radioStationHandler;
+	private Consumer<PodcastEpisode> podcastEpisodeHandler;
+	//The listeners that are told the metrics of every parse. Metrics are
+	//only collected while there are listeners.
+	private CopyOnWriteArrayList<ParseMetricsListener> metricsListeners;
+	//The metrics of the last parse, or null if they were not collected.
+	private volatile ParseMetrics parseMetrics;
+	//The MBean that shows the metrics over JMX and its name, or null if it
+	//is not registered.
+	private ParseMetricsMonitor metricsMonitor;
+	private ObjectName mbeanName;
+	//The listeners that are told how far each parse has got, and the least 
+	//time between two reports.
+	private CopyOnWriteArrayList<ParseProgressListener> progressListeners;
+	private long progressIntervalMillis;
+	//The parse started by parseLibraryAsync() that has not finished yet, or 
+	//null, and the lock that makes asynchronous parses run one at a time.
+	private AsyncParse asyncParse;
+	private ReentrantLock asyncLock;
 
 	public RhythmboxXMLLibraryParser()
 	{
 		//The default location of a Rhythmbox XML library is used to obtain
 		//the Rhythmbox library that will be parsed.
-		libLocation = System.getProperty("user.home") + 
-				"/.local/share/rhythmbox/rhythmdb.xml";
-		handler = new RhythmboxLibraryHandler();
-		songLibrary = new ArrayList<Song>();
+		this(System.getProperty("user.home") + 
+				"/.local/share/rhythmbox/rhythmdb.xml");
 	}
 
 	/**
@@ -58,12 +130,30 @@ public class RhythmboxXMLLibraryParser
 	public RhythmboxXMLLibraryParser(String loc)
 	{
 		libLocation = loc;
-		handler = new RhythmboxLibraryHandler();
-		songLibrary = new ArrayList<Song>();
+		library = new ParsedLibrary(new ArrayList<Song>());
+		parseEngine = ParseEngine.SAX;
+		parallelism = Runtime.getRuntime().availableProcessors();
+		cacheDirectory = null;
+		snapshotChecksummed = false;
+		loadedFromSnapshot = false;
+		dedupCapacity = StringDeduplicator.DEFAULT_CAPACITY;
+		dedupStatistics = null;
+		projection = null;
+		radioStationHandler = null;
+		podcastEpisodeHandler = null;
+		metricsListeners = new CopyOnWriteArrayList<ParseMetricsListener>();
+		parseMetrics = null;
+		metricsMonitor = null;
+		mbeanName = null;
+		progressListeners = new CopyOnWriteArrayList<ParseProgressListener>();
+		progressIntervalMillis = 100;
+		asyncParse = null;
+		asyncLock = new ReentrantLock();
 	}
 
 	/**
-	 * Parses the user's Rhythmbox XML library so that it can be searched.
+	 * Parses the user's Rhythmbox XML library so that it can be searched. The
+	 * songs from any previous parse are replaced.
 	 * @throws SAXException 
 	 * @throws ParserConfigurationException 
 	 * @throws IOException 
@@ -71,75 +161,1148 @@ public class RhythmboxXMLLibraryParser
 	public void parseLibrary() throws ParserConfigurationException, SAXException, 
 		IOException
 	{
-		SAXParserFactory factory = SAXParserFactory.newInstance();
-		SAXParser parser = factory.newSAXParser();
-		parser.parse(libLocation, handler);
+		parseLibrary(newProgressTracker());
+	}
+
+	/**
+	 * Parses the library, replacing the songs from any previous parse.
+	 * @param progress follows the parse, or null if it is not followed
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	private void parseLibrary(ParseProgressTracker progress) throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		library = new ParsedLibrary(new ArrayList<Song>());
+		loadedFromSnapshot = false;
+		dedupStatistics = null;
+		parseMetrics = null;
+
+		LibrarySnapshot snapshot = null;
+		File snapshotFile = null;
+		if (cacheDirectory != null && projection == null && 
+				newRecordBuilder() == null)
+		{
+			snapshot = LibrarySnapshot.keyOf(libLocation, snapshotChecksummed);
+			snapshotFile = LibrarySnapshot.snapshotFile(cacheDirectory, 
+					libLocation);
+			List<Song> savedSongs = snapshot.read(snapshotFile);
+			if (savedSongs != null)
+			{
+				ArrayList<Song> songs = new ArrayList<Song>(savedSongs.size());
+				if (progress == null)
+				{
+					songs.addAll(savedSongs);
+				}
+				else
+				{
+					progress.start(new File(libLocation).length());
+					savedSongs.forEach(progress.countSongs(songs::add));
+					progress.finish();
+				}
+				library = new ParsedLibrary(songs);
+				loadedFromSnapshot = true;
+				return;
+			}
+		}
+
+		ParseMetricsCollector metrics = newMetricsCollector();
+		ArrayList<Song> songs = new ArrayList<Song>();
+		dedupStatistics = readLibrary(songs::add, metrics, projection, 
+				progress);
+		library = new ParsedLibrary(songs);
+		publishMetrics(metrics);
+
+		if (snapshot != null)
+		{
+			try
+			{
+				snapshot.write(snapshotFile, songs);
+			}
+			catch (IOException e)
+			{
+				//The library was parsed, so a snapshot that cannot be saved 
+				//only means that it will be parsed again next time.
+			}
+		}
+	}
+
+	/**
+	 * Parses the user's Rhythmbox XML library on another thread, so that the 
+	 * calling thread is not blocked. Calls that are made while a parse is 
+	 * running share it and get the same future. The progress listeners are 
+	 * told how far the parse has got, and cancelling the future stops the 
+	 * parse at the next block of the file or song that is read, closes the 
+	 * file and leaves the array list of songs empty. With the {@link 
+	 * ParseEngine#MAPPED} and {@link ParseEngine#PARALLEL} engines, the file
+	 * is closed as soon as it is mapped, but it stays mapped until the 
+	 * mapping is garbage collected, which on some systems, such as Windows,
+	 * keeps the file from being deleted or replaced. Cancelling it stops 
+	 * the parse for every caller that shares it; futures made from it with 
+	 * thenApply() and similar methods do not pass cancellation on. The 
+	 * parser's other methods should not be used until the future is done.
+	 * @return completes with the songs in the library, which are also in the
+	 * array list of songs, or exceptionally if the library could not be 
+	 * parsed
+	 */
+	public CompletableFuture<List<Song>> parseLibraryAsync()
+	{
+		return parseLibraryAsync(null);
+	}
+
+	/**
+	 * Parses the user's Rhythmbox XML library with an executor, so that the 
+	 * calling thread is not blocked. See {@link #parseLibraryAsync()}.
+	 * @param executor runs the parse, or null to run it on a new daemon 
+	 * thread
+	 * @return completes with the songs in the library, or exceptionally if 
+	 * the library could not be parsed
+	 * @throws RejectedExecutionException if the executor does not accept 
+	 * the parse
+	 */
+	public synchronized CompletableFuture<List<Song>> parseLibraryAsync(
+			Executor executor)
+	{
+		if (asyncParse == null)
+		{
+			AsyncParse parse = new AsyncParse(new ParseProgressTracker(
+					progressListeners, progressIntervalMillis));
+			asyncParse = parse;
+			Runnable task = () -> runAsyncParse(parse);
+			try
+			{
+				if (executor == null)
+				{
+					Thread thread = new Thread(task, 
+							"RhythmboxXMLLibraryParser " + libLocation);
+					thread.setDaemon(true);
+					thread.start();
+				}
+				else
+				{
+					executor.execute(task);
+				}
+			}
+			catch (RejectedExecutionException e)
+			{
+				asyncParse = null;
+				throw e;
+			}
+		}
+		return asyncParse;
+	}
+
+	/**
+	 * Runs a parse that was started by {@link #parseLibraryAsync(Executor)}.
+	 * @param parse the parse that is completed
+	 */
+	private void runAsyncParse(AsyncParse parse)
+	{
+		List<Song> songs = null;
+		Throwable failure = null;
+		//A parse that was cancelled may still be stopping, so this one waits
+		//for it to leave the array list of songs.
+		asyncLock.lock();
+		try
+		{
+			if (!parse.isDone())
+			{
+				parseLibrary(parse.progress);
+				songs = Collections.unmodifiableList(
+						new ArrayList<Song>(library.songs));
+			}
+		}
+		catch (Throwable e)
+		{
+			failure = e;
+			if (parse.progress.isCancelled())
+			{
+				library = new ParsedLibrary(new ArrayList<Song>());
+			}
+		}
+		finally
+		{
+			asyncLock.unlock();
+			synchronized (this)
+			{
+				if (asyncParse == parse)
+				{
+					asyncParse = null;
+				}
+			}
+		}
+		if (failure != null)
+		{
+			parse.completeExceptionally(failure);
+		}
+		else if (songs != null)
+		{
+			parse.complete(songs);
+		}
+	}
+
+	/**
+	 * Parses the user's Rhythmbox XML library again, and applies only the 
+	 * songs that were added, removed or modified since it was last parsed. 
+	 * Songs are matched by their location, and songs that did not change keep
+	 * the same Song objects. Snapshots are not used. If anything changed, a 
+	 * new array list of songs replaces the old one along with the indexes, 
+	 * so lists that were returned before keep the songs that they had. This 
+	 * may run on another thread while the songs and indexes are read, but 
+	 * not at the same time as another parse of this parser.
+	 * @return the changes that were applied
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	public LibraryChange updateLibrary() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		ParseMetricsCollector metrics = newMetricsCollector();
+		ArrayList<Song> newSongs = new ArrayList<Song>();
+		readLibrary(newSongs::add, metrics);
+
+		long deliveryStart = System.nanoTime();
+		ParsedLibrary current = library;
+		LibraryChange change = LibraryChange.between(current.songs, newSongs);
+		if (!change.isEmpty())
+		{
+			ParsedLibrary updated = new ParsedLibrary(
+					new ArrayList<Song>(change.getLibrary()));
+			//The index is rebuilt in library order if it was in use, and the
+			//others when they are next needed.
+			if (current.songIndex != null)
+			{
+				updated.songIndex();
+			}
+			library = updated;
+		}
+		if (metrics != null)
+		{
+			metrics.delivered(System.nanoTime() - deliveryStart);
+			publishMetrics(metrics);
+		}
+		return change;
+	}
+
+	/**
+	 * Reads the songs in the library with the selected engine.
+	 * @param songs receives the songs in library order
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @return how well strings were deduplicated, or null if they were not
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	private DedupStatistics readLibrary(Consumer<Song> songs, 
+			ParseMetricsCollector metrics) throws ParserConfigurationException,
+		SAXException, IOException
+	{
+		return readLibrary(songs, metrics, projection, newProgressTracker());
+	}
+
+	/**
+	 * Reads the songs in the library with the selected engine.
+	 * @param songs receives the songs in library order
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 * @return how well strings were deduplicated, or null if they were not
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	private DedupStatistics readLibrary(Consumer<Song> songs, 
+			ParseMetricsCollector metrics, Set<SongField> projection) throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		return readLibrary(songs, metrics, projection, newProgressTracker());
+	}
+
+	/**
+	 * Reads the songs in the library with the selected engine.
+	 * @param songs receives the songs in library order
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 * @param progress follows the parse, or null if it is not followed
+	 * @return how well strings were deduplicated, or null if they were not
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 * @throws CancellationException if the parse was cancelled
+	 */
+	private DedupStatistics readLibrary(Consumer<Song> songs, 
+			ParseMetricsCollector metrics, Set<SongField> projection, 
+			ParseProgressTracker progress) throws ParserConfigurationException,
+		SAXException, IOException
+	{
+		if (metrics != null)
+		{
+			songs = metrics.countSongs(songs);
+		}
+		if (progress != null)
+		{
+			songs = progress.countSongs(songs);
+		}
+
+		DedupStatistics statistics;
+
+		if (parseEngine == ParseEngine.MAPPED || 
+				parseEngine == ParseEngine.PARALLEL)
+		{
+			long mapStart = System.nanoTime();
+			MappedByteBuffer buffer = MappedLibraryScanner.map(libLocation);
+			if (metrics != null)
+			{
+				metrics.bytesRead(buffer.limit(), System.nanoTime() - mapStart);
+			}
+			if (progress != null)
+			{
+				progress.start(buffer.limit());
+			}
+			if (parseEngine == ParseEngine.PARALLEL)
+			{
+				statistics = new ParallelLibraryScanner(buffer, parallelism, 
+						dedupCapacity, metrics, projection, newRecordBuilder(), 
+						progress).scan(songs);
+			}
+			else
+			{
+				MappedLibraryScanner scanner = new MappedLibraryScanner(buffer, 
+						newDeduplicator(), metrics, projection, 
+						newRecordBuilder());
+				scanner.scan(0, buffer.limit(), songs, progress);
+				statistics = scanner.getDedupStatistics();
+			}
+		}
+		else
+		{
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			SAXParser parser = factory.newSAXParser();
+			SongBuilder songBuilder = new SongBuilder(newDeduplicator(), metrics,
+					projection);
+			File library = new File(libLocation);
+			if (progress != null)
+			{
+				progress.start(library.length());
+			}
+			try (InputStream in = new FileInputStream(library))
+			{
+				InputStream counted = progress == null ? in : 
+					progress.countBytes(in);
+				InputSource source = new InputSource(metrics == null ? counted : 
+					metrics.countBytes(counted));
+				source.setSystemId(library.toURI().toString());
+				parser.parse(source, new RhythmboxLibraryHandler(songs, 
+						songBuilder, metrics, newRecordBuilder()));
+			}
+			statistics = songBuilder.getDedupStatistics();
+		}
+		if (progress != null)
+		{
+			progress.finish();
+		}
+		return statistics;
+	}
+
+	/**
+	 * Sets the fields of the songs that are read from the library. The 
+	 * elements of the other fields are skipped without creating Strings or
+	 * parsing numbers, and the songs return "" or 0 for them, so reading only
+	 * the fields that are needed makes parsing faster and the songs smaller.
+	 * Snapshots are only used while every field is read, and {@link 
+	 * #updateLibrary()} matches songs by their location, so it should be 
+	 * read when the library is updated.
+	 * @param fields the fields to read, or null to read every field, which 
+	 * is the default
+	 */
+	public void setProjection(Set<SongField> fields)
+	{
+		if (fields == null || fields.containsAll(EnumSet.allOf(SongField.class)))
+		{
+			projection = null;
+		}
+		else
+		{
+			projection = fields.isEmpty() ? EnumSet.noneOf(SongField.class) : 
+				EnumSet.copyOf(fields);
+		}
+	}
+
+	/**
+	 * @return The fields of the songs that are read from the library.
+	 */
+	public Set<SongField> getProjection()
+	{
+		return Collections.unmodifiableSet(projection == null ? 
+				EnumSet.allOf(SongField.class) : projection);
+	}
+
+	/**
+	 * Sets a handler that receives a {@link RadioStation} for each iradio 
+	 * entry, in library order, every time that the library is parsed. The 
+	 * entries are skipped without looking at their elements while there is 
+	 * no handler, which is the default. Snapshots are not used while there 
+	 * is a handler, and iterateLibrary() always skips these entries.
+	 * @param handler receives the radio stations, or null to skip them
+	 */
+	public void setRadioStationHandler(Consumer<RadioStation> handler)
+	{
+		radioStationHandler = handler;
+	}
+
+	/**
+	 * Sets a handler that receives a {@link PodcastEpisode} for each 
+	 * podcast-post entry, in library order, every time that the library is 
+	 * parsed, in the same way as {@link #setRadioStationHandler(Consumer)}.
+	 * @param handler receives the podcast episodes, or null to skip them
+	 */
+	public void setPodcastEpisodeHandler(Consumer<PodcastEpisode> handler)
+	{
+		podcastEpisodeHandler = handler;
+	}
+
+	/**
+	 * @return a builder that reads the entries that have a handler, or null 
+	 * if every entry that is not a song is skipped
+	 */
+	private EntryRecordBuilder newRecordBuilder()
+	{
+		return radioStationHandler == null && podcastEpisodeHandler == null ?
+				null : new EntryRecordBuilder(radioStationHandler, 
+						podcastEpisodeHandler);
+	}
+
+	/**
+	 * @return a tracker for the progress of a parse, or null if no one 
+	 * listens for it
+	 */
+	private ParseProgressTracker newProgressTracker()
+	{
+		return progressListeners.isEmpty() ? null : 
+			new ParseProgressTracker(progressListeners, progressIntervalMillis);
+	}
+
+	/**
+	 * @return a collector for the metrics of a parse, or null if no one 
+	 * listens for them
+	 */
+	private ParseMetricsCollector newMetricsCollector()
+	{
+		return metricsListeners.isEmpty() ? null : 
+			new ParseMetricsCollector(parseEngine);
+	}
+
+	/**
+	 * Tells the listeners the metrics of a parse.
+	 * @param metrics the collector of the metrics, or null if they were not
+	 * collected
+	 */
+	private void publishMetrics(ParseMetricsCollector metrics)
+	{
+		if (metrics == null)
+		{
+			parseMetrics = null;
+			return;
+		}
+		parseMetrics = metrics.finish();
+		for (ParseMetricsListener listener : metricsListeners)
+		{
+			listener.libraryParsed(parseMetrics);
+		}
+	}
+
+	/**
+	 * Adds a listener that is told the metrics of every parse of the library,
+	 * including by {@link #updateLibrary()} and {@link 
+	 * #parseLibraryIntoTable()}. Metrics are only collected while there are
+	 * listeners, so that parses are not slowed down otherwise.
+	 * @param listener the listener to add
+	 */
+	public void addMetricsListener(ParseMetricsListener listener)
+	{
+		metricsListeners.add(listener);
+	}
+
+	/**
+	 * @param listener the listener to remove
+	 */
+	public void removeMetricsListener(ParseMetricsListener listener)
+	{
+		metricsListeners.remove(listener);
+	}
+
+	/**
+	 * Adds a listener that is told how far every parse of the library has 
+	 * got: the bytes of the file that were consumed and the songs that were
+	 * parsed. Progress is only followed while there are listeners, except by
+	 * {@link #parseLibraryAsync()}, which follows it to be cancelled.
+	 * @param listener the listener to add
+	 */
+	public void addProgressListener(ParseProgressListener listener)
+	{
+		progressListeners.add(listener);
+	}
+
+	/**
+	 * @param listener the listener to remove
+	 */
+	public void removeProgressListener(ParseProgressListener listener)
+	{
+		progressListeners.remove(listener);
+	}
+
+	/**
+	 * Sets the least time between two reports to the progress listeners 
+	 * during a parse. The default is a tenth of a second.
+	 * @param progressIntervalMillis the time in milliseconds
+	 */
+	public void setProgressIntervalMillis(long progressIntervalMillis)
+	{
+		if (progressIntervalMillis < 0)
+		{
+			throw new IllegalArgumentException("The progress interval cannot " +
+					"be negative");
+		}
+		this.progressIntervalMillis = progressIntervalMillis;
+	}
+
+	/**
+	 * @return The least time between two reports to the progress listeners,
+	 * in milliseconds.
+	 */
+	public long getProgressIntervalMillis()
+	{
+		return progressIntervalMillis;
+	}
+
+	/**
+	 * @return The metrics of the last parse of the library, or null if no one
+	 * listened for them or the songs were loaded from a snapshot.
+	 */
+	public ParseMetrics returnParseMetrics()
+	{
+		return parseMetrics;
+	}
+
+	/**
+	 * Registers an MXBean with the platform MBean server that shows the 
+	 * metrics of the parses of the library, named
+	 * RhythmboxXMLLibraryParser:type=ParseMetrics,library="[location]".
+	 * @return the name of the MBean
+	 * @throws JMException if the MBean cannot be registered, for example 
+	 * because a parser of the same library already registered one
+	 */
+	public synchronized ObjectName registerMBean() throws JMException
+	{
+		if (mbeanName == null)
+		{
+			ObjectName name = new ObjectName("RhythmboxXMLLibraryParser:" +
+					"type=ParseMetrics,library=" + ObjectName.quote(libLocation));
+			ParseMetricsMonitor monitor = new ParseMetricsMonitor(libLocation);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, 
+					name);
+			addMetricsListener(monitor);
+			metricsMonitor = monitor;
+			mbeanName = name;
+		}
+		return mbeanName;
+	}
+
+	/**
+	 * Unregisters the MBean that was registered by {@link #registerMBean()},
+	 * if any.
+	 * @throws JMException 
+	 */
+	public synchronized void unregisterMBean() throws JMException
+	{
+		if (mbeanName != null)
+		{
+			removeMetricsListener(metricsMonitor);
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+			metricsMonitor = null;
+			mbeanName = null;
+		}
+	}
+
+	private StringDeduplicator newDeduplicator()
+	{
+		return dedupCapacity == 0 ? null : new StringDeduplicator(dedupCapacity);
+	}
+
+	/**
+	 * Sets how many distinct strings are kept while parsing so that songs 
+	 * with the same artist, album, genre, album artist or comments share one
+	 * String object. The default is 16384.
+	 * @param dedupCapacity the number of strings, or 0 to give every song its
+	 * own strings
+	 */
+	public void setDedupCapacity(int dedupCapacity)
+	{
+		if (dedupCapacity < 0)
+		{
+			throw new IllegalArgumentException("The capacity cannot be " +
+					"negative");
+		}
+		this.dedupCapacity = dedupCapacity;
+	}
+
+	/**
+	 * @return How well strings were deduplicated the last time that the 
+	 * library was parsed, or null if they were not deduplicated or the songs
+	 * were loaded from a snapshot.
+	 */
+	public DedupStatistics returnDedupStatistics()
+	{
+		return dedupStatistics;
+	}
+
+	/**
+	 * @return The location of the user's Rhythmbox XML library.
+	 */
+	public String getLibLocation()
+	{
+		return libLocation;
+	}
+
+	/**
+	 * Sets a directory that a binary snapshot of the parsed library is saved
+	 * in. When the library has not changed since its snapshot was saved, 
+	 * {@link #parseLibrary()} loads the songs from the snapshot instead of 
+	 * parsing the library. Snapshots are not used by default.
+	 * @param cacheDirectory the directory that snapshots are saved in, or 
+	 * null to not use snapshots
+	 */
+	public void setCacheDirectory(File cacheDirectory)
+	{
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * @return The directory that snapshots of the parsed library are saved 
+	 * in, or null if snapshots are not used.
+	 */
+	public File getCacheDirectory()
+	{
+		return cacheDirectory;
+	}
+
+	/**
+	 * Sets whether a snapshot is only loaded when a checksum of the whole 
+	 * library matches the one that it was saved with. By default, snapshots
+	 * are keyed by the size, modification time and file key (such as the 
+	 * inode) of the library, so that loading one does not read the library.
+	 * Checksums also catch a library that was changed without changing its 
+	 * size or modification time, at the cost of reading it on every parse.
+	 * @param checksummed whether snapshots are checksummed
+	 */
+	public void setSnapshotChecksummed(boolean checksummed)
+	{
+		snapshotChecksummed = checksummed;
+	}
+
+	/**
+	 * @return Whether snapshots are only loaded when a checksum of the whole
+	 * library matches.
+	 */
+	public boolean isSnapshotChecksummed()
+	{
+		return snapshotChecksummed;
+	}
+
+	/**
+	 * @return Whether the songs were loaded from a snapshot the last time 
+	 * that the library was parsed.
+	 */
+	public boolean wasLoadedFromSnapshot()
+	{
+		return loadedFromSnapshot;
+	}
+
+	/**
+	 * Parses the user's Rhythmbox XML library into a columnar {@link 
+	 * SongTable}, which uses much less memory than the array list of songs.
+	 * The songs are not added to the array list of songs, and snapshots are
+	 * not used.
+	 * @return the songs in the library
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	public SongTable parseLibraryIntoTable() throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		ParseMetricsCollector metrics = newMetricsCollector();
+		SongTable.Builder table = new SongTable.Builder();
+		readLibrary(table::add, metrics);
+		publishMetrics(metrics);
+		return table.build();
+	}
+
+	/**
+	 * Scans the user's Rhythmbox XML library once for the entries of its 
+	 * songs, and returns a {@link LazyLibrary} that reads each song from the
+	 * memory-mapped file only when it is accessed. This is much faster than 
+	 * parsing the library when only a few songs are used, as when browsing.
+	 * The songs are not added to the array list of songs.
+	 * @return the songs in the library
+	 * @throws SAXException 
+	 * @throws IOException 
+	 */
+	public LazyLibrary parseLibraryLazily() throws SAXException, IOException
+	{
+		return new LazyLibrary(libLocation);
+	}
+
+	/**
+	 * Sets the engine that {@link #parseLibrary()} uses to read the library.
+	 * The SAX engine is used by default.
+	 * @param parseEngine the engine to use
+	 */
+	public void setParseEngine(ParseEngine parseEngine)
+	{
+		this.parseEngine = parseEngine;
+	}
+
+	/**
+	 * @return The engine that {@link #parseLibrary()} uses to read the 
+	 * library.
+	 */
+	public ParseEngine getParseEngine()
+	{
+		return parseEngine;
+	}
+
+	/**
+	 * Sets the number of threads that the {@link ParseEngine#PARALLEL} engine
+	 * uses. By default, one thread is used per available processor.
+	 * @param parallelism the number of threads, where 1 reads the library
+	 * sequentially
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return The number of threads that the {@link ParseEngine#PARALLEL} 
+	 * engine uses.
+	 */
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Opens the user's Rhythmbox XML library for reading one song at a time,
+	 * without adding the songs to the array list of songs. Songs are read 
+	 * lazily as the iterator advances, so a library of any size can be 
+	 * processed in constant memory. Only the fields of the projection are 
+	 * read. The iterator should be closed when it is not read to the end.
+	 * @return an iterator over the songs in the library
+	 * @throws IOException 
+	 * @throws XMLStreamException 
+	 */
+	public SongIterator iterateLibrary() throws IOException, XMLStreamException
+	{
+		return new SongIterator(libLocation, projection);
+	}
+
+	/**
+	 * Opens the user's Rhythmbox XML library as a sequential stream of songs
+	 * that are read lazily, as with {@link #iterateLibrary()}. The stream 
+	 * should be closed, for example with try-with-resources, so that the 
+	 * library file is released.
+	 * @return a stream of the songs in the library
+	 * @throws IOException 
+	 * @throws XMLStreamException 
+	 */
+	public Stream<Song> streamLibrary() throws IOException, XMLStreamException
+	{
+		SongIterator songs = iterateLibrary();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(songs, 
+				Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() ->
+				{
+					try
+					{
+						songs.close();
+					}
+					catch (IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+				});
 	}
 
 	/**
 	 * Returns the array list of songs in a Rhythmbox XML library obtained by 
-	 * parsing it.
+	 * parsing it. Parsing or updating the library again replaces the list 
+	 * rather than changing it.
 	 * @return array list of songs.
 	 */
 	public ArrayList<Song> returnSongs()
 	{
-		return songLibrary;
+		return library.songs;
 	}
 
 	/**
 	 * Prints out all of the songs that were read from a Rhythmbox XML library 
 	 * and their information by traversing the array list of songs. Useful 
-	 * for debugging purposes.
+	 * for debugging purposes. The songs are written to System.out in large 
+	 * blocks rather than a line at a time.
 	 */
 	public void printLibrary()
 	{
-		for (int i = 0; i < songLibrary.size(); i++)
+		Writer console = new Writer()
+		{
+			@Override
+			public void write(char[] cbuf, int off, int len)
+			{
+				System.out.append(CharBuffer.wrap(cbuf, off, len));
+			}
+
+			@Override
+			public void flush()
+			{
+				System.out.flush();
+			}
+
+			@Override
+			public void close()
+			{
+				flush();
+			}
+		};
+		try
 		{
-			Song tempSong = songLibrary.get(i);
-			System.out.println("Song title: " + tempSong.getTitle());
-			System.out.println("Song artist: " + tempSong.getArtist());
-			System.out.println("Song album: " + tempSong.getAlbum());
-			System.out.println("Song location: " + tempSong.getLocation());
-			System.out.println("Song genre: " + tempSong.getGenre());
-			System.out.println("Song track number: " + tempSong.getTrackNumber());
-			System.out.println("Song rating: " + tempSong.getRating());
-			System.out.println("Song disc number: " + tempSong.getDiscNumber());
-			System.out.println("Song bit rate: " + tempSong.getBitRate());
-			System.out.println("Song album artist: " + tempSong.getAlbumArtist());
-			System.out.println("Song comments: " + tempSong.getComments());
-			System.out.println("Song BPM: " + tempSong.getBPM());
-			System.out.println();
+			exportLibrary(console, ExportFormat.TEXT);
+		}
+		catch (IOException e)
+		{
+			//The console does not throw IOExceptions.
+			throw new UncheckedIOException(e);
 		}
 	}
 
 	/**
-	 * Sequentially searches for a song in the user's Rhythmbox library and
-	 * returns its location.
-	 * @param title a song's title
-	 * @return a song's location
+	 * Writes the songs in the array list of songs in a format. The Writer is 
+	 * flushed but not closed.
+	 * @param out where the songs are written to
+	 * @param format the format that the songs are written in
+	 * @throws IOException 
 	 */
-	public String searchForSongByTitle(String title) throws SongNotFoundException
+	public void exportLibrary(Writer out, ExportFormat format) throws 
+		IOException
+	{
+		SongExporter exporter = new SongExporter(out, format);
+		exporter.exportAll(library.songs);
+		exporter.flush();
+	}
+
+	/**
+	 * Writes the songs in the array list of songs in a format, encoded in 
+	 * UTF-8. The stream is flushed but not closed.
+	 * @param out where the songs are written to
+	 * @param format the format that the songs are written in
+	 * @throws IOException 
+	 */
+	public void exportLibrary(OutputStream out, ExportFormat format) throws 
+		IOException
 	{
-		String locationToReturn = "";
-		boolean songFound = false;
+		exportLibrary(new OutputStreamWriter(out, StandardCharsets.UTF_8), 
+				format);
+	}
 
-		for (int i = 0; i < songLibrary.size(); i++)
+	/**
+	 * Parses the user's Rhythmbox XML library with the selected engine and 
+	 * writes each song in a format as soon as it is read, without adding the
+	 * songs to the array list of songs, so that a library of any size can be
+	 * exported. (The {@link ParseEngine#PARALLEL} engine still holds the songs
+	 * of the chunks that it reads at once.) The Writer is flushed but not 
+	 * closed.
+	 * @param out where the songs are written to
+	 * @param format the format that the songs are written in
+	 * @return the number of songs that were written
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	public long parseLibraryTo(Writer out, ExportFormat format) throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		SongExporter exporter = new SongExporter(out, format);
+		ParseMetricsCollector metrics = newMetricsCollector();
+		try
 		{
-			if (songLibrary.get(i).getTitle().equalsIgnoreCase(title))
+			readLibrary(song ->
 			{
-				locationToReturn = songLibrary.get(i).getLocation();
-				songFound = true;
-				break;
-			}
+				try
+				{
+					exporter.export(song);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}, metrics);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
 		}
+		exporter.flush();
+		publishMetrics(metrics);
+		return exporter.getSongCount();
+	}
+
+	/**
+	 * Parses the user's Rhythmbox XML library and writes each song in a 
+	 * format, encoded in UTF-8, as with {@link #parseLibraryTo(Writer, 
+	 * ExportFormat)}. The stream is flushed but not closed.
+	 * @param out where the songs are written to
+	 * @param format the format that the songs are written in
+	 * @return the number of songs that were written
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	public long parseLibraryTo(OutputStream out, ExportFormat format) throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		return parseLibraryTo(new OutputStreamWriter(out, 
+				StandardCharsets.UTF_8), format);
+	}
+
+	/**
+	 * Parses the user's Rhythmbox XML library with the selected engine and 
+	 * adds each song to statistics as soon as it is read, without adding the
+	 * songs to the array list of songs. Only the fields that the statistics 
+	 * use are read, whatever the projection is.
+	 * @param groupBy the text fields that songs are grouped by, such as 
+	 * {@link SongField#ARTIST}
+	 * @return the statistics about the library's songs
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 * @throws IOException 
+	 */
+	public LibraryStatistics aggregateLibrary(SongField... groupBy) throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		LibraryStatistics statistics = new LibraryStatistics(groupBy);
+		ParseMetricsCollector metrics = newMetricsCollector();
+		EnumSet<SongField> fields = EnumSet.copyOf(SongStatistics.FIELDS);
+		fields.addAll(Arrays.asList(groupBy));
+		readLibrary(statistics, metrics, fields);
+		publishMetrics(metrics);
+		return statistics;
+	}
+
+	/**
+	 * Computes statistics about the songs that were parsed, splitting the 
+	 * songs between as many threads as the {@link #setParallelism(int) 
+	 * parallelism}.
+	 * @param groupBy the text fields that songs are grouped by, such as 
+	 * {@link SongField#ARTIST}
+	 * @return the statistics about the parsed songs
+	 */
+	public LibraryStatistics aggregateSongs(SongField... groupBy)
+	{
+		return LibraryStatistics.compute(library.songs, parallelism, groupBy);
+	}
+
+	/**
+	 * Finds the songs that were parsed that are copies of the same track, 
+	 * such as a song that was ripped twice at different bit rates, on as 
+	 * many threads as the {@link #setParallelism(int) parallelism}. A 
+	 * {@link DuplicateFinder} can change how copies are matched.
+	 * @return the groups of copies, with the copy that is suggested to be 
+	 * kept, in library order
+	 */
+	public List<DuplicateCluster> findDuplicates()
+	{
+		DuplicateFinder finder = new DuplicateFinder();
+		finder.setParallelism(parallelism);
+		return finder.findDuplicates(library.songs);
+	}
+
+	/**
+	 * Searches for a song in the user's Rhythmbox library and returns its 
+	 * location. If several songs have the title, the first one in the library
+	 * is used.
+	 * @param title a song's title, which is matched ignoring case
+	 * @return a song's location
+	 */
+	public String searchForSongByTitle(String title) throws SongNotFoundException
+	{
+		List<Song> songs = searchForSongsByTitle(title);
 
 		//If the song is not found, then a SongNotFoundException is thrown.
-		if (!songFound)
+		if (songs.isEmpty())
 		{
 			throw new SongNotFoundException();
 		}
 
-		return locationToReturn;
+		return songs.get(0).getLocation();
+	}
+
+	/**
+	 * Returns every song with a title, ignoring case.
+	 * @param title a song's title
+	 * @return the songs in library order, which may be empty
+	 */
+	public List<Song> searchForSongsByTitle(String title)
+	{
+		return returnSongIndex().find(SongField.TITLE, title);
+	}
+
+	/**
+	 * Returns every song by an artist, ignoring case.
+	 * @param artist a song's artist
+	 * @return the songs in library order, which may be empty
+	 */
+	public List<Song> searchForSongsByArtist(String artist)
+	{
+		return returnSongIndex().find(SongField.ARTIST, artist);
+	}
+
+	/**
+	 * Returns every song on an album, ignoring case.
+	 * @param album a song's album
+	 * @return the songs in library order, which may be empty
+	 */
+	public List<Song> searchForSongsByAlbum(String album)
+	{
+		return returnSongIndex().find(SongField.ALBUM, album);
+	}
+
+	/**
+	 * Returns every song with an album artist, ignoring case.
+	 * @param albumArtist a song's album artist
+	 * @return the songs in library order, which may be empty
+	 */
+	public List<Song> searchForSongsByAlbumArtist(String albumArtist)
+	{
+		return returnSongIndex().find(SongField.ALBUM_ARTIST, albumArtist);
+	}
+
+	/**
+	 * Returns every song in a genre, ignoring case.
+	 * @param genre a song's genre
+	 * @return the songs in library order, which may be empty
+	 */
+	public List<Song> searchForSongsByGenre(String genre)
+	{
+		return returnSongIndex().find(SongField.GENRE, genre);
+	}
+
+	/**
+	 * Returns every song at a location, which must match exactly.
+	 * @param location a song's location
+	 * @return the songs in library order, which may be empty
+	 */
+	public List<Song> searchForSongsByLocation(String location)
+	{
+		return returnSongIndex().find(SongField.LOCATION, location);
+	}
+
+	/**
+	 * Returns the indexes over the songs in the library, building them the 
+	 * first time that they are needed after the library is parsed. If the 
+	 * array list of songs is modified, the indexes will not reflect it until
+	 * the library is parsed again.
+	 * @return the indexes over the songs in the library
+	 */
+	public SongIndex returnSongIndex()
+	{
+		return library.songIndex();
+	}
+
+	/**
+	 * Searches the titles, artists and albums of the songs in the library for
+	 * partial or misspelled text.
+	 * @param query the text to search for
+	 * @param limit the most songs to return
+	 * @return the songs that match best, best first
+	 * @see SongSearch
+	 */
+	public List<SearchResult> searchSongs(String query, int limit)
+	{
+		return returnSongSearch().search(query, limit);
+	}
+
+	/**
+	 * Returns the search over the titles, artists and albums of the songs in
+	 * the library, building it the first time that it is needed after the 
+	 * library changes.
+	 * @return the search over the songs in the library
+	 */
+	public SongSearch returnSongSearch()
+	{
+		return library.songSearch();
+	}
+
+	/**
+	 * Returns the songs in the library that match a query, such as:
+	 * <pre>
+	 * parser.querySongs(SongQuery.and(SongQuery.eq(SongField.GENRE, "Rock"),
+	 *     SongQuery.atLeast(SongField.RATING, 4)));
+	 * </pre>
+	 * @param query the query
+	 * @return the songs that match, in library order
+	 * @see SongQueryEngine
+	 */
+	public List<Song> querySongs(SongQuery query)
+	{
+		return returnQueryEngine().find(query);
+	}
+
+	/**
+	 * Returns the query indexes over the songs in the library, building them
+	 * the first time that they are needed after the library changes.
+	 * @return the query indexes over the songs in the library
+	 */
+	public SongQueryEngine returnQueryEngine()
+	{
+		return library.queryEngine();
+	}
+
+	/**
+	 * Returns the index over the paths of the songs' files, building it the
+	 * first time that it is needed after the library changes. It finds the 
+	 * songs of a file, in a directory or under a directory, and the songs 
+	 * whose files are missing:
+	 * <pre>
+	 * parser.returnPathIndex().findUnder("/mnt/music/The Beatles");
+	 * </pre>
+	 * @return the index over the paths of the songs' files
+	 */
+	public SongPathIndex returnPathIndex()
+	{
+		return library.pathIndex();
+	}
+
+	/**
+	 * Returns the songs sorted in every {@link SongOrder}, sorting them the 
+	 * first time that they are needed after the library changes. A page of 
+	 * a sorted listing then takes time that depends only on its size:
+	 * <pre>
+	 * parser.returnSortIndex().page(SongOrder.ARTIST, 200, 50);
+	 * </pre>
+	 * @return the songs in sorted orders
+	 */
+	public SongSortIndex returnSortIndex()
+	{
+		return library.sortIndex();
 	}
 
 	/**
@@ -147,63 +1310,47 @@ public class RhythmboxXMLLibraryParser
 	 */
 	private class RhythmboxLibraryHandler extends DefaultHandler
 	{
-		//Temporary variables that will be used to hold information about the
-		//song that is currently read from a Rhythmbox XML library.
-		private String tempSongTitle;
-		private String tempSongArtist;
-		private String tempSongAlbum;
-		private String tempSongLocation;
-		private String tempSongGenre;
-		private int tempSongTrackNumber;
-		private int tempSongRating;
-		private int tempSongDiscNumber;
-		private int tempSongBitRate;
-		private String tempSongAlbumArtist;
-		private String tempSongComments;
-		private int tempSongBPM;
-		//Booleans stating whether a particular element of a Rhythmbox XML 
-		//library (its start tag) has been read.
+		//Receives the songs that are read.
+		private Consumer<Song> songs;
+		//Builds the Song object for the song entry that is currently read.
+		private SongBuilder songBuilder;
+		//Reads the entries that are not songs into records, or null if they 
+		//are all skipped.
+		private EntryRecordBuilder records;
+		//The element of a song entry whose text is currently read, or null if
+		//the element is not kept in a Song object.
+		private SongField readField;
+		//The element of a record whose text is currently read, or null.
+		private String recordElement;
+		//The text of the element that is currently read, since SAX can report
+		//it in several chunks.
+		private char[] fieldText;
+		private int fieldLength;
+		//The depth of the element that is currently read, where the root 
+		//element is at 1, the entries are at 2 and their elements at 3.
+		private int depth;
+		//Whether the entry that is currently read is a song, or is read into
+		//a record.
 		private boolean readSong;
-		private boolean readSongTitle;
-		private boolean readSongArtist;
-		private boolean readSongAlbum;
-		private boolean readSongLocation;
-		private boolean readSongGenre;
-		private boolean readSongTrackNumber;
-		private boolean readSongRating;
-		private boolean readSongDiscNumber;
-		private boolean readSongBitRate;
-		private boolean readSongAlbumArtist;
-		private boolean readSongComments;
-		private boolean readSongBPM;
-
-		public RhythmboxLibraryHandler()
+		private boolean readRecord;
+		//Collects the metrics of the parse, or null if they are not collected.
+		private ParseMetricsCollector metrics;
+
+		public RhythmboxLibraryHandler(Consumer<Song> songs, 
+				SongBuilder songBuilder, ParseMetricsCollector metrics, 
+				EntryRecordBuilder records)
 		{
+			this.songs = songs;
+			this.songBuilder = songBuilder;
+			this.metrics = metrics;
+			this.records = records;
+			readField = null;
+			recordElement = null;
+			fieldText = new char[256];
+			fieldLength = 0;
+			depth = 0;
 			readSong = false;
-			readSongTitle = false;
-			readSongArtist = false;
-			readSongAlbum = false;
-			readSongLocation = false;
-			readSongGenre = false;
-			readSongTrackNumber = false;
-			readSongRating = false;
-			readSongDiscNumber = false;
-			readSongBitRate = false;
-			readSongAlbumArtist = false;
-			readSongComments = false;
-			readSongBPM = false;
-			tempSongTitle = "";
-			tempSongArtist = "";
-			tempSongAlbum = "";
-			tempSongLocation = "";
-			tempSongGenre = "";
-			tempSongTrackNumber = 0;
-			tempSongRating = 0;
-			tempSongDiscNumber = 0;
-			tempSongBitRate = 0;
-			tempSongAlbumArtist = "";
-			tempSongComments = "";
-			tempSongBPM = 0;
+			readRecord = false;
 		}
 
 		/**
@@ -213,65 +1360,46 @@ public class RhythmboxXMLLibraryParser
 		public void startElement(String uri, String localName,String qName, 
 				Attributes attributes) throws SAXException 
 		{
-			//Checks to see if the entry that was read is a song.
-			if (qName.equals("entry") && attributes.getValue("type").equals("song"))
+			depth++;
+			//The type of an entry is found once, and the elements of entries
+			//that are not read are only counted.
+			if (depth == 2)
 			{
-				readSong = true;
+				if (qName.equals("entry"))
+				{
+					String type = attributes.getValue("type");
+					readSong = "song".equals(type);
+					EntryType entryType = readSong ? EntryType.SONG : 
+						metrics != null || records != null ? 
+								EntryType.forType(type) : EntryType.OTHER;
+					readRecord = records != null && records.isRead(entryType);
+					if (readRecord)
+					{
+						records.start(entryType);
+					}
+					if (metrics != null)
+					{
+						metrics.entrySeen(entryType);
+					}
+				}
 			}
-
 			//The song elements are only processed if an entry is a song in the
-			//Rhythmbox XML library.
-			if (readSong)
+			//Rhythmbox XML library and their field is read.
+			else if (depth == 3)
 			{
-				//Checks to see which element start tag from a song entry is read.
-				if (qName.equals("title"))
-				{
-					readSongTitle = true;
-				}
-				else if (qName.equals("artist"))
-				{
-					readSongArtist = true;
-				}
-				else if (qName.equals("album"))
-				{
-					readSongAlbum = true;
-				}
-				else if (qName.equals("location"))
-				{
-					readSongLocation = true;
-				}
-				else if (qName.equals("genre"))
-				{
-					readSongGenre = true;
-				}
-				else if (qName.equals("track-number"))
-				{
-					readSongTrackNumber = true;
-				}
-				else if (qName.equals("rating"))
-				{
-					readSongRating = true;
-				}
-				else if (qName.equals("disc-number"))
-				{
-					readSongDiscNumber = true;
-				}
-				else if (qName.equals("bitrate"))
-				{
-					readSongBitRate = true;
-				}
-				else if (qName.equals("album-artist"))
-				{
-					readSongAlbumArtist = true;
-				}
-				else if (qName.equals("comment"))
+				if (readSong)
 				{
-					readSongComments = true;
+					readField = SongField.forElement(qName);
+					if (readField != null && !songBuilder.isProjected(readField))
+					{
+						readField = null;
+					}
 				}
-				else if (qName.equals("beats-per-minute"))
+				else if (readRecord)
 				{
-					readSongBPM = true;
+					recordElement = qName;
 				}
+				fieldLength = 0;
 			}
 		}
 
@@ -282,108 +1410,172 @@ public class RhythmboxXMLLibraryParser
 		public void characters(char ch[], int start, int length) throws 
 			SAXException
 		{
-			//The appropriate variables are set depending on what was read from
-			//the XML file.
-			if (readSongTitle)
-			{
-				tempSongTitle = new String(ch, start, length);
-				readSongTitle = false;
-			}
-			else if (readSongArtist)
-			{
-				tempSongArtist = new String(ch, start, length);
-				readSongArtist = false;
-			}
-			else if (readSongAlbum)
-			{
-				tempSongAlbum = new String(ch, start, length);
-				readSongAlbum = false;
-			}
-			else if (readSongLocation)
-			{
-				tempSongLocation = new String(ch, start, length);
-				readSongLocation = false;
-			}
-			else if (readSongGenre)
+			if (readField != null || recordElement != null)
 			{
-				tempSongGenre = new String(ch, start, length);
-				readSongGenre = false;
+				if (fieldLength + length > fieldText.length)
+				{
+					fieldText = Arrays.copyOf(fieldText, Math.max(
+							fieldLength + length, fieldText.length * 2));
+				}
+				System.arraycopy(ch, start, fieldText, fieldLength, length);
+				fieldLength += length;
 			}
-			else if (readSongTrackNumber)
+		}
+
+		/**
+		 * @see org.xml.sax.helpers.DefaultHandler#endElement(String uri,
+		 * String localName, String qName)
+		 */
+		public void endElement(String uri, String localName,
+				String qName) throws SAXException 
+		{
+			//The field is set once all of its element's text has been read.
+			if (depth == 3)
 			{
-				tempSongTrackNumber = Integer.parseInt(new String(ch, start, length));
-				readSongTrackNumber = false;
+				if (readField != null)
+				{
+					songBuilder.set(readField, fieldText, 0, fieldLength);
+					readField = null;
+				}
+				else if (recordElement != null)
+				{
+					records.set(recordElement, 
+							new String(fieldText, 0, fieldLength));
+					recordElement = null;
+				}
 			}
-			else if (readSongRating)
+			//A song is processed when the end of its entry in a Rhythmbox
+			//library is reached, and it is added to the array list of songs.
+			else if (depth == 2)
 			{
-				tempSongRating = Integer.parseInt(new String(ch, start, length));
-				readSongRating = false;
+				if (readSong)
+				{
+					songs.accept(songBuilder.build());
+					readSong = false;
+				}
+				else if (readRecord)
+				{
+					records.end();
+					readRecord = false;
+				}
 			}
-			else if (readSongDiscNumber)
+			depth--;
+		}
+	}
+
+	/**
+	 * The songs of one parse or update of the library and the indexes over 
+	 * them, which are built the first time that they are needed. It is 
+	 * replaced rather than changed, so a thread that reads it sees indexes
+	 * that were built from its songs.
+	 */
+	private static class ParsedLibrary
+	{
+		private final ArrayList<Song> songs;
+		//The indexes, or null until they are needed.
+		private volatile SongIndex songIndex;
+		private volatile SongSearch songSearch;
+		private volatile SongQueryEngine queryEngine;
+		private volatile SongPathIndex pathIndex;
+		private volatile SongSortIndex sortIndex;
+
+		public ParsedLibrary(ArrayList<Song> songs)
+		{
+			this.songs = songs;
+			songIndex = null;
+			songSearch = null;
+			queryEngine = null;
+			pathIndex = null;
+			sortIndex = null;
+		}
+
+		public SongIndex songIndex()
+		{
+			SongIndex index = songIndex;
+			if (index == null)
 			{
-				tempSongDiscNumber = Integer.parseInt(new String(ch, start, length));
-				readSongDiscNumber = false;
+				index = new SongIndex(songs);
+				songIndex = index;
 			}
-			else if (readSongBitRate)
+			return index;
+		}
+
+		public SongSearch songSearch()
+		{
+			SongSearch search = songSearch;
+			if (search == null)
 			{
-				tempSongBitRate = Integer.parseInt(new String(ch, start, length));
-				readSongBitRate = false;
+				search = new SongSearch(songs);
+				songSearch = search;
 			}
-			else if (readSongAlbumArtist)
+			return search;
+		}
+
+		public SongQueryEngine queryEngine()
+		{
+			SongQueryEngine engine = queryEngine;
+			if (engine == null)
 			{
-				tempSongAlbumArtist = new String(ch, start, length);
-				readSongAlbumArtist = false;
+				engine = new SongQueryEngine(songs);
+				queryEngine = engine;
 			}
-			else if (readSongComments)
+			return engine;
+		}
+
+		public SongPathIndex pathIndex()
+		{
+			SongPathIndex index = pathIndex;
+			if (index == null)
 			{
-				tempSongComments = new String(ch, start, length);
-				readSongComments = false;
+				index = new SongPathIndex(songs);
+				pathIndex = index;
 			}
-			else if (readSongBPM)
+			return index;
+		}
+
+		public SongSortIndex sortIndex()
+		{
+			SongSortIndex index = sortIndex;
+			if (index == null)
 			{
-				tempSongBPM = Integer.parseInt(new String(ch, start, length));
-				readSongBPM = false;
+				index = new SongSortIndex(songs);
+				sortIndex = index;
 			}
+			return index;
+		}
+	}
+
+	/**
+	 * A parse started by {@link RhythmboxXMLLibraryParser#parseLibraryAsync(
+	 * Executor)}, which stops the parse when it is cancelled.
+	 */
+	private class AsyncParse extends CompletableFuture<List<Song>>
+	{
+		//Follows the parse and stops it.
+		private ParseProgressTracker progress;
+
+		public AsyncParse(ParseProgressTracker progress)
+		{
+			this.progress = progress;
 		}
 
 		/**
-		 * @see org.xml.sax.helpers.DefaultHandler#endElement(String uri,
-		 * String localName, String qName)
+		 * @see java.util.concurrent.CompletableFuture#cancel(boolean)
 		 */
-		public void endElement(String uri, String localName,
-				String qName) throws SAXException 
+		public boolean cancel(boolean mayInterruptIfRunning)
 		{
-			//A song is processed when the end of its entry in a Rhythmbox
-			//library is reached.
-			if (qName.equals("entry") && readSong)
+			progress.cancel();
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			//Calls from now on start a new parse, which waits for this one 
+			//to stop.
+			synchronized (RhythmboxXMLLibraryParser.this)
 			{
-				//A Song object is created with all of a song's information
-				//that was read, and it is added to the array list of songs.
-				Song tempSong = new Song(tempSongTitle, tempSongArtist,
-						tempSongAlbum, tempSongLocation, tempSongGenre, 
-						tempSongTrackNumber, tempSongRating, tempSongDiscNumber,
-						tempSongBitRate, tempSongAlbumArtist, tempSongComments, 
-						tempSongBPM);
-				songLibrary.add(tempSong);
-
-				//The temporary variables are reinitialized.
-				tempSongTitle = "";
-				tempSongArtist = "";
-				tempSongAlbum = "";
-				tempSongLocation = "";
-				tempSongGenre = "";
-				tempSongTrackNumber = 0;
-				tempSongRating = 0;
-				tempSongDiscNumber = 0;
-				tempSongBitRate = 0;
-				tempSongAlbumArtist = "";
-				tempSongComments = "";
-				tempSongBPM = 0;
-				readSong = false;
+				if (asyncParse == this)
+				{
+					asyncParse = null;
+				}
 			}
+			return cancelled;
 		}
 	}
 }
-
-
-
@@ -0,0 +1,72 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/**
+ * A song that matched a {@link SongSearch} query, with how well it matched.
+ */
+public class SearchResult 
+{
+	//The song that matched.
+	private Song song;
+	//How well the song matched, from 0 to 1.
+	private double score;
+	//The field of the song that matched best.
+	private SongField field;
+
+	public SearchResult(Song song, double score, SongField field)
+	{
+		this.song = song;
+		this.score = score;
+		this.field = field;
+	}
+
+	/**
+	 * @return The song that matched.
+	 */
+	public Song getSong()
+	{
+		return song;
+	}
+
+	/**
+	 * @return How well the song matched, from 0 to 1, where 1 is an exact 
+	 * match of the title.
+	 */
+	public double getScore()
+	{
+		return score;
+	}
+
+	/**
+	 * @return The field of the song that matched best: its title, artist or
+	 * album.
+	 */
+	public SongField getField()
+	{
+		return field;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return String.format("%s (%s, %.3f)", song, field, score);
+	}
+}
@@ -17,6 +17,8 @@
 //IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
 //CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
+import java.util.Objects;
+
 /**
  * A class to create a Song object that will hold a song's information such as 
  * title, artist, album, bitrate, and its location when parsing song entries 
@@ -48,10 +50,32 @@ public class Song
 	private String comments;
 	//The song's BPM (beats per minute).
 	private int bpm;
+	//The song's duration in seconds.
+	private int duration;
+	//The size of the song's file in bytes.
+	private long fileSize;
+	//The number of times that the song was played.
+	private int playCount;
+	//When the song was last played, in seconds since the epoch.
+	private long lastPlayed;
+	//When Rhythmbox first found the song, in seconds since the epoch.
+	private long firstSeen;
+	//When the song's file was last modified, in seconds since the epoch.
+	private long mtime;
 	
 	public Song(String title, String artist, String album, String location, 
 			String genre, int trackNum, int rating, int discNum, int bitRate,
 			String albumArtist, String comments, int bpm)
+	{
+		this(title, artist, album, location, genre, trackNum, rating, discNum,
+				bitRate, albumArtist, comments, bpm, 0, 0, 0, 0, 0, 0);
+	}
+
+	public Song(String title, String artist, String album, String location, 
+			String genre, int trackNum, int rating, int discNum, int bitRate,
+			String albumArtist, String comments, int bpm, int duration, 
+			long fileSize, int playCount, long lastPlayed, long firstSeen, 
+			long mtime)
 	{
 		this.title = title;
 		this.artist = artist;
@@ -65,6 +89,20 @@ public class Song
 		this.albumArtist = albumArtist;
 		this.comments = comments;
 		this.bpm = bpm;
+		this.duration = duration;
+		this.fileSize = fileSize;
+		this.playCount = playCount;
+		this.lastPlayed = lastPlayed;
+		this.firstSeen = firstSeen;
+		this.mtime = mtime;
+	}
+
+	/**
+	 * Creates a song that holds no information of its own, for subclasses 
+	 * that override every getter to read the information from elsewhere.
+	 */
+	protected Song()
+	{
 	}
 	
 	/**
@@ -162,4 +200,112 @@ public class Song
 	{
 		return bpm;
 	}
+
+	/**
+	 * @return A song's duration in seconds.
+	 */
+	public int getDuration()
+	{
+		return duration;
+	}
+
+	/**
+	 * @return The size of a song's file in bytes.
+	 */
+	public long getFileSize()
+	{
+		return fileSize;
+	}
+
+	/**
+	 * @return The number of times that a song was played.
+	 */
+	public int getPlayCount()
+	{
+		return playCount;
+	}
+
+	/**
+	 * @return When a song was last played, in seconds since the epoch, or 0 
+	 * if it was never played.
+	 */
+	public long getLastPlayed()
+	{
+		return lastPlayed;
+	}
+
+	/**
+	 * @return When Rhythmbox first found a song, in seconds since the epoch.
+	 */
+	public long getFirstSeen()
+	{
+		return firstSeen;
+	}
+
+	/**
+	 * @return When a song's file was last modified, in seconds since the 
+	 * epoch.
+	 */
+	public long getModificationTime()
+	{
+		return mtime;
+	}
+
+	/**
+	 * Two songs are equal if all of their information is the same, including
+	 * any fields that are null in both.
+	 * @see java.lang.Object#equals(Object)
+	 */
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+		if (!(obj instanceof Song))
+		{
+			return false;
+		}
+		Song other = (Song) obj;
+		return Objects.equals(getTitle(), other.getTitle()) && 
+				Objects.equals(getArtist(), other.getArtist()) &&
+				Objects.equals(getAlbum(), other.getAlbum()) && 
+				Objects.equals(getLocation(), other.getLocation()) &&
+				Objects.equals(getGenre(), other.getGenre()) && 
+				getTrackNumber() == other.getTrackNumber() &&
+				getRating() == other.getRating() && 
+				getDiscNumber() == other.getDiscNumber() &&
+				getBitRate() == other.getBitRate() && 
+				Objects.equals(getAlbumArtist(), other.getAlbumArtist()) &&
+				Objects.equals(getComments(), other.getComments()) && 
+				getBPM() == other.getBPM() &&
+				getDuration() == other.getDuration() &&
+				getFileSize() == other.getFileSize() &&
+				getPlayCount() == other.getPlayCount() &&
+				getLastPlayed() == other.getLastPlayed() &&
+				getFirstSeen() == other.getFirstSeen() &&
+				getModificationTime() == other.getModificationTime();
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode()
+	{
+		int hash = Objects.hashCode(getTitle());
+		hash = 31 * hash + Objects.hashCode(getArtist());
+		hash = 31 * hash + Objects.hashCode(getAlbum());
+		hash = 31 * hash + Objects.hashCode(getLocation());
+		hash = 31 * hash + getTrackNumber();
+		hash = 31 * hash + getDiscNumber();
+		return hash;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return getTitle() + " - " + getArtist() + " (" + getAlbum() + ")";
+	}
 }
@@ -0,0 +1,328 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Collects the information about a song entry as its elements are read from a
+ * Rhythmbox XML library, and creates a {@link Song} object from it when the 
+ * end of the entry is reached. Every parse engine uses a SongBuilder, so they 
+ * all produce the same Song objects.
+ */
+class SongBuilder 
+{
+	//Temporary variables that will be used to hold information about the
+	//song that is currently read from a Rhythmbox XML library.
+	private String title;
+	private String artist;
+	private String album;
+	private String location;
+	private String genre;
+	private int trackNum;
+	private int rating;
+	private int discNum;
+	private int bitRate;
+	private String albumArtist;
+	private String comments;
+	private int bpm;
+	private int duration;
+	private long fileSize;
+	private int playCount;
+	private long lastPlayed;
+	private long firstSeen;
+	private long mtime;
+	//Shares the strings of fields with few distinct values between songs, 
+	//or null if they are not shared.
+	private StringDeduplicator deduplicator;
+	//Collects the metrics of the parse, or null if they are not collected.
+	private ParseMetricsCollector metrics;
+	//Whether each field is read, indexed by the fields' ordinals.
+	private boolean[] projected;
+
+	public SongBuilder()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param deduplicator shares the strings of fields with few distinct 
+	 * values between songs, or null if they should not be shared
+	 */
+	public SongBuilder(StringDeduplicator deduplicator)
+	{
+		this(deduplicator, null, null);
+	}
+
+	/**
+	 * @param deduplicator shares the strings of fields with few distinct 
+	 * values between songs, or null if they should not be shared
+	 * @param metrics collects the metrics of the parse, or null if they are
+	 * not collected
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 */
+	public SongBuilder(StringDeduplicator deduplicator, 
+			ParseMetricsCollector metrics, Set<SongField> projection)
+	{
+		this.deduplicator = deduplicator;
+		this.metrics = metrics;
+		projected = new boolean[SongField.values().length];
+		for (SongField field : SongField.values())
+		{
+			projected[field.ordinal()] = projection == null || 
+					projection.contains(field);
+		}
+		reset();
+	}
+
+	/**
+	 * @param field a field of a song
+	 * @return Whether the field is read. The elements of fields that are not
+	 * read should be skipped without passing their text to this builder, and
+	 * they are left at their defaults of "" or 0.
+	 */
+	public boolean isProjected(SongField field)
+	{
+		return projected[field.ordinal()];
+	}
+
+	/**
+	 * Sets a field of the song that is currently read to the text of its 
+	 * element, given as characters. No String is created for numeric fields,
+	 * or for deduplicated fields whose string is already known.
+	 * @param field the field that was read
+	 * @param chars holds the text of the field's element
+	 * @param start the position of the text's first character
+	 * @param length the number of characters in the text
+	 */
+	public void set(SongField field, char[] chars, int start, int length)
+	{
+		if (field.isNumeric())
+		{
+			long value = 0;
+			int i = 0;
+			while (i < length && i < 18 && chars[start + i] >= '0' && 
+					chars[start + i] <= '9')
+			{
+				value = value * 10 + chars[start + i] - '0';
+				i++;
+			}
+			if (i == length && length > 0)
+			{
+				setNumber(field, value);
+				return;
+			}
+		}
+		else if (deduplicator != null && field.isDeduplicated())
+		{
+			set(field, deduplicator.deduplicate(chars, start, length));
+			return;
+		}
+		set(field, new String(chars, start, length));
+	}
+
+	/**
+	 * Sets a text field of the song that is currently read to the text of its
+	 * element, given as UTF-8 bytes with no references to replace. No String
+	 * is created for deduplicated fields whose string is already known.
+	 * @param field the text field that was read
+	 * @param utf8 holds the text of the field's element
+	 * @param start the position of the text's first byte
+	 * @param length the number of bytes in the text
+	 */
+	public void set(SongField field, byte[] utf8, int start, int length)
+	{
+		if (deduplicator != null && field.isDeduplicated())
+		{
+			set(field, deduplicator.deduplicate(utf8, start, length));
+		}
+		else
+		{
+			set(field, new String(utf8, start, length, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * @return How well strings have been deduplicated so far, or null if 
+	 * they are not deduplicated.
+	 */
+	public DedupStatistics getDedupStatistics()
+	{
+		return deduplicator == null ? null : deduplicator.getStatistics();
+	}
+
+	/**
+	 * Sets a field of the song that is currently read to the text of its 
+	 * element. Numeric fields are left at 0 when their element is empty or
+	 * is not a number.
+	 * @param field the field that was read
+	 * @param text the text of the field's element
+	 */
+	public void set(SongField field, String text)
+	{
+		if (field.isNumeric())
+		{
+			if (text.length() > 0)
+			{
+				try
+				{
+					setNumber(field, Long.parseLong(text.trim()));
+				}
+				catch (NumberFormatException e)
+				{
+					if (metrics != null)
+					{
+						metrics.numericFieldFailed();
+					}
+				}
+			}
+			return;
+		}
+
+		switch (field)
+		{
+			case TITLE:
+				title = text;
+				break;
+			case ARTIST:
+				artist = text;
+				break;
+			case ALBUM:
+				album = text;
+				break;
+			case LOCATION:
+				location = text;
+				break;
+			case GENRE:
+				genre = text;
+				break;
+			case ALBUM_ARTIST:
+				albumArtist = text;
+				break;
+			case COMMENTS:
+				comments = text;
+				break;
+			default:
+				throw new IllegalArgumentException(field + " is not a text field");
+		}
+	}
+
+	/**
+	 * Sets a numeric field of the song that is currently read. A value that
+	 * is too large for a field that is not {@link SongField#isLong() long} 
+	 * leaves the field at 0, like text that is not a number.
+	 * @param field the numeric field that was read
+	 * @param value the value of the field
+	 */
+	public void setNumber(SongField field, long value)
+	{
+		if (!field.isLong() && (int) value != value)
+		{
+			if (metrics != null)
+			{
+				metrics.numericFieldFailed();
+			}
+			return;
+		}
+
+		switch (field)
+		{
+			case TRACK_NUMBER:
+				trackNum = (int) value;
+				break;
+			case RATING:
+				rating = (int) value;
+				break;
+			case DISC_NUMBER:
+				discNum = (int) value;
+				break;
+			case BIT_RATE:
+				bitRate = (int) value;
+				break;
+			case BPM:
+				bpm = (int) value;
+				break;
+			case DURATION:
+				duration = (int) value;
+				break;
+			case FILE_SIZE:
+				fileSize = value;
+				break;
+			case PLAY_COUNT:
+				playCount = (int) value;
+				break;
+			case LAST_PLAYED:
+				lastPlayed = value;
+				break;
+			case FIRST_SEEN:
+				firstSeen = value;
+				break;
+			case MTIME:
+				mtime = value;
+				break;
+			default:
+				throw new IllegalArgumentException(field + " is not a numeric field");
+		}
+	}
+
+	/**
+	 * Creates a Song object with all of the information that was read, and
+	 * reinitializes the builder for the next song entry.
+	 * @return the song that was read
+	 */
+	public Song build()
+	{
+		long start = metrics == null ? 0 : System.nanoTime();
+		Song song = new Song(title, artist, album, location, genre, trackNum, 
+				rating, discNum, bitRate, albumArtist, comments, bpm, duration, 
+				fileSize, playCount, lastPlayed, firstSeen, mtime);
+		reset();
+		if (metrics != null)
+		{
+			metrics.songConstructed(System.nanoTime() - start);
+		}
+		return song;
+	}
+
+	/**
+	 * Reinitializes the temporary variables.
+	 */
+	public void reset()
+	{
+		title = "";
+		artist = "";
+		album = "";
+		location = "";
+		genre = "";
+		trackNum = 0;
+		rating = 0;
+		discNum = 0;
+		bitRate = 0;
+		albumArtist = "";
+		comments = "";
+		bpm = 0;
+		duration = 0;
+		fileSize = 0;
+		playCount = 0;
+		lastPlayed = 0;
+		firstSeen = 0;
+		mtime = 0;
+	}
+}
@@ -0,0 +1,486 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Writes songs to a Writer in one of the {@link ExportFormat}s. The songs are
+ * formatted into one reusable character buffer that is written out whenever
+ * it fills up, so exporting creates no strings and the songs can come from a
+ * parse that is still running. An exporter is not thread safe.
+ */
+public class SongExporter implements Closeable, Flushable
+{
+	//The fields in the order that they are written.
+	private static final SongField[] FIELDS = SongField.values();
+	//The labels of the fields in the TEXT format (indexed the same way).
+	private static final String[] LABELS = {"Song title: ", "Song artist: ",
+		"Song album: ", "Song location: ", "Song genre: ", 
+		"Song track number: ", "Song rating: ", "Song disc number: ", 
+		"Song bit rate: ", "Song album artist: ", "Song comments: ", 
+		"Song BPM: ", "Song duration: ", "Song file size: ", 
+		"Song play count: ", "Song last played: ", "Song first seen: ", 
+		"Song modification time: "};
+	//The buffer is written out once it holds this many characters.
+	private static final int FLUSH_SIZE = 1 << 13;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	//Where the songs are written to.
+	private Writer out;
+	private ExportFormat format;
+	//The line separator of the TEXT format.
+	private String lineSeparator;
+	//The formatted characters that have not been written out yet.
+	private char[] buffer;
+	private int length;
+	//The number of songs that have been exported.
+	private long songCount;
+
+	/**
+	 * @param out where the songs are written to, which is closed when the 
+	 * exporter is
+	 * @param format the format that the songs are written in
+	 */
+	public SongExporter(Writer out, ExportFormat format)
+	{
+		this.out = out;
+		this.format = format;
+		lineSeparator = System.lineSeparator();
+		buffer = new char[FLUSH_SIZE * 2];
+		length = 0;
+		songCount = 0;
+		writeHeader();
+	}
+
+	/**
+	 * @param out where the songs are written to as UTF-8, which is closed 
+	 * when the exporter is
+	 * @param format the format that the songs are written in
+	 */
+	public SongExporter(OutputStream out, ExportFormat format)
+	{
+		this(new OutputStreamWriter(out, StandardCharsets.UTF_8), format);
+	}
+
+	/**
+	 * Exports a song.
+	 * @param song the song to export
+	 * @throws IOException 
+	 */
+	public void export(Song song) throws IOException
+	{
+		switch (format)
+		{
+			case CSV:
+			case TSV:
+				char separator = format == ExportFormat.CSV ? ',' : '\t';
+				for (int i = 0; i < FIELDS.length; i++)
+				{
+					if (i > 0)
+					{
+						append(separator);
+					}
+					if (FIELDS[i].isNumeric())
+					{
+						append(FIELDS[i].getNumber(song));
+					}
+					else if (format == ExportFormat.CSV)
+					{
+						appendCsv(FIELDS[i].getText(song));
+					}
+					else
+					{
+						appendTsv(FIELDS[i].getText(song));
+					}
+				}
+				if (format == ExportFormat.CSV)
+				{
+					append('\r');
+				}
+				append('\n');
+				break;
+			case JSON_LINES:
+				appendJsonObject(song);
+				append('\n');
+				break;
+			default:
+				for (int i = 0; i < FIELDS.length; i++)
+				{
+					append(LABELS[i]);
+					if (FIELDS[i].isNumeric())
+					{
+						append(FIELDS[i].getNumber(song));
+					}
+					else
+					{
+						append(FIELDS[i].getText(song));
+					}
+					append(lineSeparator);
+				}
+				append(lineSeparator);
+		}
+		songCount++;
+		if (length >= FLUSH_SIZE)
+		{
+			writeBuffer();
+		}
+	}
+
+	/**
+	 * Exports a change to a song as a JSON object on its own line: 
+	 * {"change":change,"song":{...}}, where the song is in the format of 
+	 * {@link ExportFormat#JSON_LINES}. If the song was modified, a "changed"
+	 * object also holds {"from":old,"to":new} for each field that differs 
+	 * from its previous version. The exporter must be in the JSON_LINES 
+	 * format.
+	 * @param change the kind of change, such as "added"
+	 * @param song the song
+	 * @param previous the previous version of the song, or null if the song
+	 * was not modified
+	 * @throws IOException 
+	 */
+	void exportChange(String change, Song song, Song previous) throws 
+		IOException
+	{
+		if (format != ExportFormat.JSON_LINES)
+		{
+			throw new IllegalStateException("Changes are only exported as " +
+					"JSON lines");
+		}
+		append("{\"change\":");
+		appendJson(change);
+		append(",\"song\":");
+		appendJsonObject(song);
+		if (previous != null)
+		{
+			append(",\"changed\":{");
+			boolean first = true;
+			for (SongField field : FIELDS)
+			{
+				if (field.isNumeric() ? field.getNumber(song) == 
+						field.getNumber(previous) : 
+						field.getText(song).equals(field.getText(previous)))
+				{
+					continue;
+				}
+				if (!first)
+				{
+					append(',');
+				}
+				first = false;
+				appendJson(field.getElementName());
+				append(":{\"from\":");
+				appendJsonValue(field, previous);
+				append(",\"to\":");
+				appendJsonValue(field, song);
+				append('}');
+			}
+			append('}');
+		}
+		append('}');
+		append('\n');
+		songCount++;
+		if (length >= FLUSH_SIZE)
+		{
+			writeBuffer();
+		}
+	}
+
+	/**
+	 * Exports every song that an iterator returns.
+	 * @param songs the songs to export
+	 * @throws IOException 
+	 */
+	public void exportAll(Iterator<? extends Song> songs) throws IOException
+	{
+		while (songs.hasNext())
+		{
+			export(songs.next());
+		}
+	}
+
+	/**
+	 * Exports every song in a collection.
+	 * @param songs the songs to export
+	 * @throws IOException 
+	 */
+	public void exportAll(Iterable<? extends Song> songs) throws IOException
+	{
+		exportAll(songs.iterator());
+	}
+
+	/**
+	 * @return The number of songs that have been exported.
+	 */
+	public long getSongCount()
+	{
+		return songCount;
+	}
+
+	/**
+	 * Writes out the songs that have been exported and flushes the Writer.
+	 * @see java.io.Flushable#flush()
+	 */
+	public void flush() throws IOException
+	{
+		writeBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes out the songs that have been exported and closes the Writer.
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			writeBuffer();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private void writeHeader()
+	{
+		if (format != ExportFormat.CSV && format != ExportFormat.TSV)
+		{
+			return;
+		}
+		for (int i = 0; i < FIELDS.length; i++)
+		{
+			if (i > 0)
+			{
+				append(format == ExportFormat.CSV ? ',' : '\t');
+			}
+			append(FIELDS[i].getElementName());
+		}
+		append(format == ExportFormat.CSV ? "\r\n" : "\n");
+	}
+
+	private void writeBuffer() throws IOException
+	{
+		if (length > 0)
+		{
+			out.write(buffer, 0, length);
+			length = 0;
+		}
+	}
+
+	/**
+	 * Makes room for more characters in the buffer.
+	 * @param needed the number of characters that will be appended
+	 */
+	private void reserve(int needed)
+	{
+		if (length + needed > buffer.length)
+		{
+			char[] larger = new char[Math.max(length + needed, buffer.length * 2)];
+			System.arraycopy(buffer, 0, larger, 0, length);
+			buffer = larger;
+		}
+	}
+
+	private void append(char c)
+	{
+		reserve(1);
+		buffer[length++] = c;
+	}
+
+	private void append(String s)
+	{
+		reserve(s.length());
+		s.getChars(0, s.length(), buffer, length);
+		length += s.length();
+	}
+
+	/**
+	 * Appends the digits of a number without creating a String.
+	 */
+	private void append(long value)
+	{
+		if (value == Long.MIN_VALUE)
+		{
+			append(Long.toString(value));
+			return;
+		}
+		reserve(20);
+		if (value < 0)
+		{
+			buffer[length++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value / 10; v > 0; v /= 10)
+		{
+			digits++;
+		}
+		for (int i = length + digits - 1; i >= length; i--)
+		{
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		length += digits;
+	}
+
+	/**
+	 * Appends a CSV value, quoting it if it contains a comma, a quote or a 
+	 * line break.
+	 */
+	private void appendCsv(String s)
+	{
+		boolean quote = false;
+		for (int i = 0; i < s.length() && !quote; i++)
+		{
+			char c = s.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote)
+		{
+			append(s);
+			return;
+		}
+		reserve(s.length() * 2 + 2);
+		buffer[length++] = '"';
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '"')
+			{
+				buffer[length++] = '"';
+			}
+			buffer[length++] = c;
+		}
+		buffer[length++] = '"';
+	}
+
+	/**
+	 * Appends a TSV value, escaping tabs, line breaks and backslashes.
+	 */
+	private void appendTsv(String s)
+	{
+		reserve(s.length() * 2);
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			char escaped = c == '\t' ? 't' : c == '\n' ? 'n' : c == '\r' ? 'r' : 
+				c == '\\' ? '\\' : 0;
+			if (escaped != 0)
+			{
+				buffer[length++] = '\\';
+				buffer[length++] = escaped;
+			}
+			else
+			{
+				buffer[length++] = c;
+			}
+		}
+	}
+
+	/**
+	 * Appends a song as a JSON object keyed by the fields' tag names.
+	 */
+	private void appendJsonObject(Song song)
+	{
+		append('{');
+		for (int i = 0; i < FIELDS.length; i++)
+		{
+			if (i > 0)
+			{
+				append(',');
+			}
+			appendJson(FIELDS[i].getElementName());
+			append(':');
+			appendJsonValue(FIELDS[i], song);
+		}
+		append('}');
+	}
+
+	/**
+	 * Appends the value of a field of a song as a JSON number or string.
+	 */
+	private void appendJsonValue(SongField field, Song song)
+	{
+		if (field.isNumeric())
+		{
+			append(field.getNumber(song));
+		}
+		else
+		{
+			appendJson(field.getText(song));
+		}
+	}
+
+	/**
+	 * Appends a quoted JSON string, escaping quotes, backslashes and control
+	 * characters.
+	 */
+	private void appendJson(String s)
+	{
+		reserve(s.length() * 6 + 2);
+		buffer[length++] = '"';
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				buffer[length++] = '\\';
+				buffer[length++] = c;
+			}
+			else if (c == '\n')
+			{
+				buffer[length++] = '\\';
+				buffer[length++] = 'n';
+			}
+			else if (c == '\r')
+			{
+				buffer[length++] = '\\';
+				buffer[length++] = 'r';
+			}
+			else if (c == '\t')
+			{
+				buffer[length++] = '\\';
+				buffer[length++] = 't';
+			}
+			else if (c < 0x20 || c == '\u2028' || c == '\u2029')
+			{
+				buffer[length++] = '\\';
+				buffer[length++] = 'u';
+				buffer[length++] = HEX[c >> 12];
+				buffer[length++] = HEX[(c >> 8) & 0xf];
+				buffer[length++] = HEX[(c >> 4) & 0xf];
+				buffer[length++] = HEX[c & 0xf];
+			}
+			else
+			{
+				buffer[length++] = c;
+			}
+		}
+		buffer[length++] = '"';
+	}
+}
@@ -0,0 +1,183 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.HashMap;
+
+/**
+ * The elements of a song entry in a Rhythmbox XML library that are kept in a
+ * {@link Song} object, along with the names of their tags.
+ */
+public enum SongField 
+{
+	TITLE("title", false, false),
+	ARTIST("artist", false, true),
+	ALBUM("album", false, true),
+	LOCATION("location", false, false),
+	GENRE("genre", false, true),
+	TRACK_NUMBER("track-number", true, false),
+	RATING("rating", true, false),
+	DISC_NUMBER("disc-number", true, false),
+	BIT_RATE("bitrate", true, false),
+	ALBUM_ARTIST("album-artist", false, true),
+	COMMENTS("comment", false, true),
+	BPM("beats-per-minute", true, false),
+	DURATION("duration", true, false),
+	FILE_SIZE("file-size", true, false),
+	PLAY_COUNT("play-count", true, false),
+	LAST_PLAYED("last-played", true, false),
+	FIRST_SEEN("first-seen", true, false),
+	MTIME("mtime", true, false);
+
+	//The fields keyed by the name of their tag in a Rhythmbox XML library.
+	private static final HashMap<String, SongField> byElementName = 
+			new HashMap<String, SongField>();
+
+	static
+	{
+		for (SongField field : values())
+		{
+			byElementName.put(field.elementName, field);
+		}
+	}
+
+	//The name of the field's tag in a Rhythmbox XML library.
+	private final String elementName;
+	//Whether the field holds a number rather than text.
+	private final boolean numeric;
+	//Whether the field has few distinct values, so that its strings are 
+	//shared between songs while parsing.
+	private final boolean deduplicated;
+
+	private SongField(String elementName, boolean numeric, 
+			boolean deduplicated)
+	{
+		this.elementName = elementName;
+		this.numeric = numeric;
+		this.deduplicated = deduplicated;
+	}
+
+	/**
+	 * @return The name of the field's tag in a Rhythmbox XML library.
+	 */
+	public String getElementName()
+	{
+		return elementName;
+	}
+
+	/**
+	 * @return Whether the field holds a number rather than text.
+	 */
+	public boolean isNumeric()
+	{
+		return numeric;
+	}
+
+	/**
+	 * @return Whether the field has few distinct values (such as artists and
+	 * genres), so that songs with the same value share one String object.
+	 */
+	public boolean isDeduplicated()
+	{
+		return deduplicated;
+	}
+
+	/**
+	 * @param song a song
+	 * @return The value of this text field in the song.
+	 * @throws IllegalArgumentException if this field is numeric
+	 */
+	public String getText(Song song)
+	{
+		switch (this)
+		{
+			case TITLE:
+				return song.getTitle();
+			case ARTIST:
+				return song.getArtist();
+			case ALBUM:
+				return song.getAlbum();
+			case LOCATION:
+				return song.getLocation();
+			case GENRE:
+				return song.getGenre();
+			case ALBUM_ARTIST:
+				return song.getAlbumArtist();
+			case COMMENTS:
+				return song.getComments();
+			default:
+				throw new IllegalArgumentException(this + " is not a text field");
+		}
+	}
+
+	/**
+	 * @return Whether this numeric field can hold values that do not fit in 
+	 * an int, such as file sizes and times.
+	 */
+	public boolean isLong()
+	{
+		return this == FILE_SIZE || this == LAST_PLAYED || this == FIRST_SEEN ||
+				this == MTIME;
+	}
+
+	/**
+	 * @param song a song
+	 * @return The value of this numeric field in the song.
+	 * @throws IllegalArgumentException if this field is not numeric
+	 */
+	public long getNumber(Song song)
+	{
+		switch (this)
+		{
+			case TRACK_NUMBER:
+				return song.getTrackNumber();
+			case RATING:
+				return song.getRating();
+			case DISC_NUMBER:
+				return song.getDiscNumber();
+			case BIT_RATE:
+				return song.getBitRate();
+			case BPM:
+				return song.getBPM();
+			case DURATION:
+				return song.getDuration();
+			case FILE_SIZE:
+				return song.getFileSize();
+			case PLAY_COUNT:
+				return song.getPlayCount();
+			case LAST_PLAYED:
+				return song.getLastPlayed();
+			case FIRST_SEEN:
+				return song.getFirstSeen();
+			case MTIME:
+				return song.getModificationTime();
+			default:
+				throw new IllegalArgumentException(this + " is not a numeric field");
+		}
+	}
+
+	/**
+	 * Returns the field that is stored in the tag with the given name.
+	 * @param elementName the name of a tag inside a song entry
+	 * @return the field, or null if the tag is not kept in a {@link Song}
+	 */
+	public static SongField forElement(String elementName)
+	{
+		return byElementName.get(elementName);
+	}
+}
@@ -0,0 +1,154 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hash indexes over the text fields of the songs in a parsed Rhythmbox 
+ * library, so that songs can be looked up by title, artist, album, album 
+ * artist, genre or location without searching every song. Titles, artists,
+ * albums, album artists and genres are matched ignoring case, in the same way
+ * as {@link String#equalsIgnoreCase(String)}; locations are matched exactly.
+ * An index does not change when the list of songs it was built from does, 
+ * so the lists that it returns never change either.
+ */
+public class SongIndex 
+{
+	//The fields that are indexed.
+	private static final SongField[] INDEXED_FIELDS = {SongField.TITLE, 
+		SongField.ARTIST, SongField.ALBUM, SongField.ALBUM_ARTIST, 
+		SongField.GENRE, SongField.LOCATION};
+
+	//The songs with each value of each indexed field, in library order.
+	private EnumMap<SongField, HashMap<String, List<Song>>> indexes;
+
+	/**
+	 * Builds the indexes in one pass over a list of songs.
+	 * @param songs the songs to index
+	 */
+	public SongIndex(List<Song> songs)
+	{
+		indexes = new EnumMap<SongField, HashMap<String, List<Song>>>(
+				SongField.class);
+		for (SongField field : INDEXED_FIELDS)
+		{
+			indexes.put(field, new HashMap<String, List<Song>>());
+		}
+
+		for (SongField field : INDEXED_FIELDS)
+		{
+			HashMap<String, List<Song>> index = indexes.get(field);
+			for (Song song : songs)
+			{
+				String key = key(field, field.getText(song));
+				List<Song> valueSongs = index.get(key);
+				//Most values only belong to one song, so a list is only 
+				//allocated once a second song is found.
+				if (valueSongs == null)
+				{
+					index.put(key, Collections.singletonList(song));
+				}
+				else if (!(valueSongs instanceof ArrayList))
+				{
+					ArrayList<Song> moreSongs = new ArrayList<Song>(4);
+					moreSongs.add(valueSongs.get(0));
+					moreSongs.add(song);
+					index.put(key, moreSongs);
+				}
+				else
+				{
+					valueSongs.add(song);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns every song whose field has the given value.
+	 * @param field one of title, artist, album, album artist, genre or 
+	 * location
+	 * @param value the value to look for
+	 * @return the matching songs in library order, which may be empty
+	 */
+	public List<Song> find(SongField field, String value)
+	{
+		HashMap<String, List<Song>> index = indexes.get(field);
+		if (index == null)
+		{
+			throw new IllegalArgumentException(field + " is not indexed");
+		}
+		List<Song> songs = index.get(key(field, value));
+		return songs == null ? Collections.<Song>emptyList() : 
+			Collections.unmodifiableList(songs);
+	}
+
+	/**
+	 * @param field one of title, artist, album, album artist, genre or 
+	 * location
+	 * @return The number of distinct values of a field, ignoring case where
+	 * the field is matched ignoring case.
+	 */
+	public int countDistinct(SongField field)
+	{
+		HashMap<String, List<Song>> index = indexes.get(field);
+		if (index == null)
+		{
+			throw new IllegalArgumentException(field + " is not indexed");
+		}
+		return index.size();
+	}
+
+	/**
+	 * Returns a string that is the same for every string that is equal to it 
+	 * ignoring case, using the same rules as 
+	 * {@link String#equalsIgnoreCase(String)}.
+	 * @param text the string to fold
+	 * @return the folded string
+	 */
+	public static String foldCase(String text)
+	{
+		char[] folded = null;
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			char f = Character.toLowerCase(Character.toUpperCase(c));
+			if (f != c)
+			{
+				if (folded == null)
+				{
+					folded = text.toCharArray();
+				}
+				folded[i] = f;
+			}
+		}
+		return folded == null ? text : new String(folded);
+	}
+
+	/**
+	 * @return the key that a value of a field is indexed by
+	 */
+	static String key(SongField field, String value)
+	{
+		return field == SongField.LOCATION ? value : foldCase(value);
+	}
+}
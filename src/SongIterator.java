@@ -0,0 +1,298 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Iterates over the songs in a Rhythmbox XML library while it is being read,
+ * using a StAX pull parser. Each {@link Song} is created when the end of its
+ * entry is reached, so only one song is held in memory at a time. The 
+ * iterator must be closed if it is not read to the end.
+ */
+public class SongIterator implements Iterator<Song>, Closeable
+{
+	//The file that the library is read from.
+	private InputStream input;
+	//The StAX reader that pulls elements from the library.
+	private XMLStreamReader reader;
+	//Builds the song that is currently read.
+	private SongBuilder songBuilder;
+	//The text of the element that is currently read.
+	private char[] fieldText;
+	private int fieldLength;
+	//The next song that will be returned, or null if it has not been read yet.
+	private Song nextSong;
+	//Whether the end of the library was reached or the iterator was closed.
+	private boolean closed;
+
+	/**
+	 * Opens a Rhythmbox XML library for iteration. No songs are read until 
+	 * {@link #hasNext()} or {@link #next()} is called.
+	 * @param libLocation the location of the Rhythmbox XML library
+	 * @throws IOException 
+	 * @throws XMLStreamException 
+	 */
+	public SongIterator(String libLocation) throws IOException, 
+		XMLStreamException
+	{
+		this(libLocation, null);
+	}
+
+	/**
+	 * Opens a Rhythmbox XML library for iteration, reading only some of the
+	 * fields of its songs. The other fields are left at "" or 0.
+	 * @param libLocation the location of the Rhythmbox XML library
+	 * @param projection the fields that are read, or null to read every 
+	 * field
+	 * @throws IOException 
+	 * @throws XMLStreamException 
+	 */
+	public SongIterator(String libLocation, Set<SongField> projection) throws
+		IOException, XMLStreamException
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, 
+				Boolean.FALSE);
+		input = new FileInputStream(libLocation);
+		try
+		{
+			reader = factory.createXMLStreamReader(input);
+		}
+		catch (XMLStreamException e)
+		{
+			input.close();
+			throw e;
+		}
+		songBuilder = new SongBuilder(new StringDeduplicator(
+				StringDeduplicator.DEFAULT_CAPACITY), null, projection);
+		fieldText = new char[256];
+		fieldLength = 0;
+		nextSong = null;
+		closed = false;
+	}
+
+	/**
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext()
+	{
+		if (nextSong == null && !closed)
+		{
+			try
+			{
+				nextSong = readNextSong();
+			}
+			catch (XMLStreamException e)
+			{
+				closeQuietly();
+				throw new LibraryParseException("Could not parse the library", e);
+			}
+		}
+		return nextSong != null;
+	}
+
+	/**
+	 * @see java.util.Iterator#next()
+	 */
+	public Song next()
+	{
+		if (!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		Song song = nextSong;
+		nextSong = null;
+		return song;
+	}
+
+	/**
+	 * Songs cannot be removed from a Rhythmbox library by an iterator.
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops reading the library and releases the file.
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException
+	{
+		if (!closed)
+		{
+			closed = true;
+			nextSong = null;
+			try
+			{
+				reader.close();
+			}
+			catch (XMLStreamException e)
+			{
+				throw new IOException(e);
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads elements from the library until the end of the next song entry.
+	 * @return the song that was read, or null if there are no more songs
+	 * @throws XMLStreamException 
+	 */
+	private Song readNextSong() throws XMLStreamException
+	{
+		//Whether the entry that is currently read is a song.
+		boolean readSong = false;
+
+		while (reader.hasNext())
+		{
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				String name = reader.getLocalName();
+				if (name.equals("entry"))
+				{
+					readSong = "song".equals(reader.getAttributeValue(null, "type"));
+					if (!readSong)
+					{
+						skipEntry();
+					}
+				}
+				else if (readSong)
+				{
+					SongField field = SongField.forElement(name);
+					if (field != null && songBuilder.isProjected(field))
+					{
+						readFieldText();
+						songBuilder.set(field, fieldText, 0, fieldLength);
+					}
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT && readSong &&
+					reader.getLocalName().equals("entry"))
+			{
+				return songBuilder.build();
+			}
+		}
+
+		closeQuietly();
+		return null;
+	}
+
+	/**
+	 * Skips the rest of an entry that is not a song, looking only at the 
+	 * types of the events up to the entry's end tag.
+	 * @throws XMLStreamException 
+	 */
+	private void skipEntry() throws XMLStreamException
+	{
+		int depth = 1;
+		while (depth > 0)
+		{
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Reads the text of the current element up to its end tag, copying the 
+	 * characters without creating a String.
+	 * @throws XMLStreamException 
+	 */
+	private void readFieldText() throws XMLStreamException
+	{
+		fieldLength = 0;
+		while (true)
+		{
+			int event = reader.next();
+			if (event == XMLStreamConstants.CHARACTERS || 
+					event == XMLStreamConstants.CDATA || 
+					event == XMLStreamConstants.SPACE)
+			{
+				int length = reader.getTextLength();
+				if (fieldLength + length > fieldText.length)
+				{
+					fieldText = Arrays.copyOf(fieldText, Math.max(
+							fieldLength + length, fieldText.length * 2));
+				}
+				System.arraycopy(reader.getTextCharacters(), 
+						reader.getTextStart(), fieldText, fieldLength, length);
+				fieldLength += length;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				return;
+			}
+			else if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				throw new XMLStreamException("Unexpected element <" + 
+						reader.getLocalName() + "> inside of a song field", 
+						reader.getLocation());
+			}
+		}
+	}
+
+	/**
+	 * @return How well the strings of the songs that have been read so far 
+	 * were deduplicated.
+	 */
+	public DedupStatistics getDedupStatistics()
+	{
+		return songBuilder.getDedupStatistics();
+	}
+
+	/**
+	 * Closes the iterator from a place that cannot throw an IOException.
+	 */
+	private void closeQuietly()
+	{
+		try
+		{
+			close();
+		}
+		catch (IOException e)
+		{
+			//Nothing else can be done if the file cannot be closed.
+		}
+	}
+}
@@ -0,0 +1,51 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+/**
+ * The orders that a {@link SongSortIndex} keeps the songs of a library in, 
+ * as the browsers of music players list them. Each order sorts by its 
+ * fields in turn, with text compared by collation so that case is ignored,
+ * and keeps songs that are equal in every field in library order.
+ */
+public enum SongOrder 
+{
+	ARTIST(SongField.ARTIST, SongField.ALBUM, SongField.DISC_NUMBER, 
+			SongField.TRACK_NUMBER),
+	ALBUM_ARTIST(SongField.ALBUM_ARTIST, SongField.ALBUM, 
+			SongField.DISC_NUMBER, SongField.TRACK_NUMBER),
+	ALBUM(SongField.ALBUM, SongField.DISC_NUMBER, SongField.TRACK_NUMBER),
+	GENRE(SongField.GENRE, SongField.ARTIST, SongField.ALBUM, 
+			SongField.DISC_NUMBER, SongField.TRACK_NUMBER),
+	TITLE(SongField.TITLE, SongField.ARTIST, SongField.ALBUM);
+
+	//The fields that are sorted by, from the most significant.
+	private final SongField[] fields;
+
+	private SongOrder(SongField... fields)
+	{
+		this.fields = fields;
+	}
+
+	/**
+	 * @return The fields that are sorted by, from the most significant.
+	 */
+	public SongField[] getFields()
+	{
+		return fields.clone();
+	}
+}
@@ -0,0 +1,450 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the songs of a parsed Rhythmbox library by the paths of their files.
+ * Rhythmbox stores locations as percent-encoded file:// URIs, which are 
+ * decoded once when the index is built. The songs are then sorted by 
+ * directory and file name, so that the songs in a directory, the songs 
+ * anywhere under a directory and the songs of one file are each a range 
+ * that is found with binary searches. Directories are shared between their 
+ * songs. Songs whose locations are not file:// URIs are not indexed. An 
+ * index does not change when the list of songs it was built from does.
+ */
+public class SongPathIndex 
+{
+	private static final String FILE_SCHEME = "file://";
+	//The existence of files is checked in batches of this many.
+	private static final int CHECK_BATCH = 256;
+
+	//The songs, whose positions in this list are their rows.
+	private List<Song> songs;
+	//The directory, ending with a slash, and the file name of each indexed
+	//song, and its row, sorted by directory and then file name.
+	private String[] directories;
+	private String[] names;
+	private int[] rows;
+
+	/**
+	 * Decodes the locations of songs and sorts them.
+	 * @param songs the songs, which should not change while the index is 
+	 * built
+	 */
+	public SongPathIndex(List<Song> songs)
+	{
+		this.songs = songs;
+		int size = songs.size();
+		//Each distinct directory is given an id, and only the directories 
+		//are sorted, since there are far fewer of them than songs.
+		HashMap<String, Integer> directoryIds = new HashMap<String, Integer>();
+		List<String> distinct = new ArrayList<String>();
+		int[] directoryOf = new int[size];
+		String[] nameOf = new String[size];
+		int count = 0;
+		for (int row = 0; row < size; row++)
+		{
+			String path = decode(songs.get(row).getLocation());
+			if (path == null)
+			{
+				directoryOf[row] = -1;
+				continue;
+			}
+			int slash = path.lastIndexOf('/') + 1;
+			String directory = path.substring(0, slash);
+			Integer id = directoryIds.get(directory);
+			if (id == null)
+			{
+				id = distinct.size();
+				directoryIds.put(directory, id);
+				distinct.add(directory);
+			}
+			directoryOf[row] = id;
+			nameOf[row] = path.substring(slash);
+			count++;
+		}
+		Integer[] byName = new Integer[distinct.size()];
+		for (int id = 0; id < byName.length; id++)
+		{
+			byName[id] = id;
+		}
+		Arrays.sort(byName, (a, b) -> distinct.get(a).compareTo(distinct.get(b)));
+		int[] rank = new int[byName.length];
+		for (int i = 0; i < byName.length; i++)
+		{
+			rank[byName[i]] = i;
+		}
+
+		//The rows are put in order of their directories with a counting sort,
+		//and then the rows of each directory are sorted by file name.
+		int[] starts = new int[byName.length + 1];
+		for (int row = 0; row < size; row++)
+		{
+			if (directoryOf[row] >= 0)
+			{
+				starts[rank[directoryOf[row]] + 1]++;
+			}
+		}
+		for (int i = 0; i < byName.length; i++)
+		{
+			starts[i + 1] += starts[i];
+		}
+		Integer[] order = new Integer[count];
+		int[] next = Arrays.copyOf(starts, byName.length);
+		for (int row = 0; row < size; row++)
+		{
+			if (directoryOf[row] >= 0)
+			{
+				order[next[rank[directoryOf[row]]]++] = row;
+			}
+		}
+		for (int i = 0; i < byName.length; i++)
+		{
+			if (starts[i + 1] - starts[i] > 1)
+			{
+				Arrays.sort(order, starts[i], starts[i + 1], (a, b) -> 
+				{
+					int compare = nameOf[a].compareTo(nameOf[b]);
+					return compare != 0 ? compare : Integer.compare(a, b);
+				});
+			}
+		}
+
+		directories = new String[count];
+		names = new String[count];
+		rows = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			int row = order[i];
+			directories[i] = distinct.get(directoryOf[row]);
+			names[i] = nameOf[row];
+			rows[i] = row;
+		}
+	}
+
+	/**
+	 * Decodes the location of a song into the path of its file.
+	 * @param location a file:// URI, such as 
+	 * file:///mnt/music/Sigur%20R%C3%B3s/Takk.mp3
+	 * @return the path, such as /mnt/music/Sigur R\u00f3s/Takk.mp3, or null 
+	 * if the location is not a local file:// URI
+	 */
+	public static String decode(String location)
+	{
+		if (!location.startsWith(FILE_SCHEME))
+		{
+			return null;
+		}
+		int start = location.indexOf('/', FILE_SCHEME.length());
+		if (start < 0)
+		{
+			return null;
+		}
+		String host = location.substring(FILE_SCHEME.length(), start);
+		if (!host.isEmpty() && !host.equals("localhost"))
+		{
+			return null;
+		}
+		int percent = location.indexOf('%', start);
+		if (percent < 0)
+		{
+			return location.substring(start);
+		}
+
+		//Escapes are the bytes of UTF-8 characters, so the whole path is 
+		//decoded from bytes. No character takes more than three bytes.
+		byte[] bytes = new byte[(location.length() - start) * 3];
+		int length = 0;
+		int i = start;
+		while (i < location.length())
+		{
+			char c = location.charAt(i);
+			int high = c == '%' && i + 2 < location.length() ? 
+					Character.digit(location.charAt(i + 1), 16) : -1;
+			int low = high < 0 ? -1 : Character.digit(location.charAt(i + 2), 16);
+			if (low >= 0)
+			{
+				bytes[length++] = (byte) (high << 4 | low);
+				i += 3;
+			}
+			else if (c < 0x80)
+			{
+				bytes[length++] = (byte) c;
+				i++;
+			}
+			else
+			{
+				int end = i + Character.charCount(location.codePointAt(i));
+				byte[] character = location.substring(i, end)
+						.getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(character, 0, bytes, length, character.length);
+				length += character.length;
+				i = end;
+			}
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return The number of songs that are indexed.
+	 */
+	public int size()
+	{
+		return rows.length;
+	}
+
+	/**
+	 * Finds the songs of a file.
+	 * @param path the path of the file, or its file:// URI
+	 * @return the songs, in library order
+	 */
+	public List<Song> find(String path)
+	{
+		String decoded = toPath(path);
+		int slash = decoded.lastIndexOf('/') + 1;
+		String directory = decoded.substring(0, slash);
+		String name = decoded.substring(slash);
+		int start = lowerBound(directory, name);
+		int end = start;
+		while (end < rows.length && directories[end].equals(directory) && 
+				names[end].equals(name))
+		{
+			end++;
+		}
+		return songs(start, end);
+	}
+
+	/**
+	 * @param path the path of a file, or its file:// URI
+	 * @return Whether any song is of the file.
+	 */
+	public boolean contains(String path)
+	{
+		return !find(path).isEmpty();
+	}
+
+	/**
+	 * Finds the songs whose files are directly in a directory.
+	 * @param directory the path of the directory, or its file:// URI
+	 * @return the songs, ordered by file name
+	 */
+	public List<Song> findIn(String directory)
+	{
+		String decoded = toDirectory(directory);
+		return songs(lowerBound(decoded, ""), lowerBound(decoded, null));
+	}
+
+	/**
+	 * @param directory the path of a directory, or its file:// URI
+	 * @return The number of songs whose files are directly in the directory.
+	 */
+	public int countIn(String directory)
+	{
+		String decoded = toDirectory(directory);
+		return lowerBound(decoded, null) - lowerBound(decoded, "");
+	}
+
+	/**
+	 * Finds the songs whose files are anywhere under a directory.
+	 * @param directory the path of the directory, or its file:// URI
+	 * @return the songs, ordered by directory and then file name
+	 */
+	public List<Song> findUnder(String directory)
+	{
+		String decoded = toDirectory(directory);
+		return songs(lowerBound(decoded, ""), lowerBound(after(decoded), ""));
+	}
+
+	/**
+	 * @param directory the path of a directory, or its file:// URI
+	 * @return The number of songs whose files are anywhere under the 
+	 * directory.
+	 */
+	public int countUnder(String directory)
+	{
+		String decoded = toDirectory(directory);
+		return lowerBound(after(decoded), "") - lowerBound(decoded, "");
+	}
+
+	/**
+	 * Finds the songs whose files do not exist, checking the files on a 
+	 * bounded number of threads, since checking them waits on the disk 
+	 * rather than the processor.
+	 * @param concurrency the most files that are checked at once
+	 * @return the songs whose files are missing, in library order
+	 * @throws InterruptedException if the thread was interrupted while the 
+	 * files were checked, in which case the checks are stopped
+	 */
+	public List<Song> findMissing(int concurrency) throws InterruptedException
+	{
+		if (concurrency < 1)
+		{
+			throw new IllegalArgumentException("The concurrency must be at " +
+					"least 1");
+		}
+		List<Callable<BitSet>> checks = new ArrayList<Callable<BitSet>>();
+		for (int start = 0; start < rows.length; start += CHECK_BATCH)
+		{
+			int first = start;
+			int last = Math.min(rows.length, start + CHECK_BATCH);
+			checks.add(() -> 
+			{
+				BitSet missing = new BitSet();
+				for (int i = first; i < last; i++)
+				{
+					if (!new File(directories[i] + names[i]).exists())
+					{
+						missing.set(rows[i]);
+					}
+				}
+				return missing;
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(concurrency, checks.size())), task ->
+		{
+			Thread thread = new Thread(task, "SongPathIndex file check");
+			thread.setDaemon(true);
+			return thread;
+		});
+		BitSet missing = new BitSet(songs.size());
+		try
+		{
+			for (Future<BitSet> check : executor.invokeAll(checks))
+			{
+				missing.or(check.get());
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("A file could not be checked", 
+					e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		List<Song> result = new ArrayList<Song>(missing.cardinality());
+		for (int row = missing.nextSetBit(0); row >= 0; 
+				row = missing.nextSetBit(row + 1))
+		{
+			result.add(songs.get(row));
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the first position whose directory and file name are at least 
+	 * the given ones.
+	 * @param name the file name, or null for the position after every file 
+	 * in the directory
+	 */
+	private int lowerBound(String directory, String name)
+	{
+		int low = 0;
+		int high = rows.length;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			int compare = directories[middle].compareTo(directory);
+			if (compare == 0)
+			{
+				compare = name == null ? -1 : names[middle].compareTo(name);
+			}
+			if (compare < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return The songs at a range of positions, in the order of the rows.
+	 */
+	private List<Song> songs(int start, int end)
+	{
+		if (start >= end)
+		{
+			return Collections.emptyList();
+		}
+		List<Song> result = new ArrayList<Song>(end - start);
+		for (int i = start; i < end; i++)
+		{
+			result.add(songs.get(rows[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * @return A path, decoding it if it is a file:// URI.
+	 */
+	private static String toPath(String path)
+	{
+		if (path.startsWith(FILE_SCHEME))
+		{
+			String decoded = decode(path);
+			if (decoded == null)
+			{
+				throw new IllegalArgumentException(path + " is not a local " +
+						"file URI");
+			}
+			return decoded;
+		}
+		return path;
+	}
+
+	/**
+	 * @return The path of a directory, ending with a slash.
+	 */
+	private static String toDirectory(String directory)
+	{
+		String decoded = toPath(directory);
+		return decoded.endsWith("/") ? decoded : decoded + "/";
+	}
+
+	/**
+	 * @return The first directory after every directory under a directory,
+	 * which is the directory with its last slash replaced by the character
+	 * after a slash.
+	 */
+	private static String after(String directory)
+	{
+		return directory.substring(0, directory.length() - 1) + 
+				(char) ('/' + 1);
+	}
+}
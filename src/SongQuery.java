@@ -0,0 +1,543 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * A condition on the fields of a song, which can be run against a parsed 
+ * library by a {@link SongQueryEngine}. Queries are built from equality and 
+ * range predicates combined with {@link #and}, {@link #or} and {@link #not}:
+ * <pre>
+ * SongQuery.and(SongQuery.eq(SongField.GENRE, "Rock"),
+ *     SongQuery.atLeast(SongField.RATING, 4),
+ *     SongQuery.atLeast(SongField.BIT_RATE, 256))
+ * </pre>
+ * Text is compared the same way as in a {@link SongIndex}: ignoring case, 
+ * except for locations. Queries are immutable.
+ */
+public abstract class SongQuery 
+{
+	SongQuery()
+	{
+	}
+
+	/**
+	 * @param field a text field
+	 * @param value a value of the field
+	 * @return a query for the songs whose field has the value
+	 */
+	public static SongQuery eq(SongField field, String value)
+	{
+		if (field.isNumeric())
+		{
+			throw new IllegalArgumentException(field + " is not a text field");
+		}
+		return new Equals(field, value);
+	}
+
+	/**
+	 * @param field a numeric field
+	 * @param value a value of the field
+	 * @return a query for the songs whose field has the value
+	 */
+	public static SongQuery eq(SongField field, long value)
+	{
+		return range(field, value, value);
+	}
+
+	/**
+	 * @param field a numeric field
+	 * @param min the smallest value that matches
+	 * @param max the largest value that matches
+	 * @return a query for the songs whose field is between two values
+	 */
+	public static SongQuery range(SongField field, long min, long max)
+	{
+		if (!field.isNumeric())
+		{
+			throw new IllegalArgumentException(field + " is not a numeric field");
+		}
+		return new Range(field, min, max);
+	}
+
+	/**
+	 * @param field a numeric field
+	 * @param min the smallest value that matches
+	 * @return a query for the songs whose field is at least a value
+	 */
+	public static SongQuery atLeast(SongField field, long min)
+	{
+		return range(field, min, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param field a numeric field
+	 * @param max the largest value that matches
+	 * @return a query for the songs whose field is at most a value
+	 */
+	public static SongQuery atMost(SongField field, long max)
+	{
+		return range(field, Long.MIN_VALUE, max);
+	}
+
+	/**
+	 * @param queries the queries that must all match
+	 * @return a query for the songs that match every query
+	 */
+	public static SongQuery and(SongQuery... queries)
+	{
+		return new And(queries);
+	}
+
+	/**
+	 * @param queries the queries of which at least one must match
+	 * @return a query for the songs that match any of the queries
+	 */
+	public static SongQuery or(SongQuery... queries)
+	{
+		return new Or(queries);
+	}
+
+	/**
+	 * @param query a query that must not match
+	 * @return a query for the songs that do not match the query
+	 */
+	public static SongQuery not(SongQuery query)
+	{
+		return new Not(query);
+	}
+
+	/**
+	 * Checks a song against the query directly, without any index.
+	 * @param song a song
+	 * @return whether the song matches the query
+	 */
+	public abstract boolean matches(Song song);
+
+	/**
+	 * @return About how many songs match the query, which is used to decide
+	 * the order that the parts of a query are run in.
+	 */
+	abstract int estimate(SongQueryEngine engine);
+
+	/**
+	 * @return Whether the query is run with indexes rather than by checking
+	 * every song.
+	 */
+	abstract boolean isIndexed(SongQueryEngine engine);
+
+	/**
+	 * @return The rows of the songs that match the query.
+	 */
+	abstract BitSet evaluate(SongQueryEngine engine);
+
+	/**
+	 * Describes how the query is run.
+	 * @param plan receives the description
+	 */
+	abstract void explain(SongQueryEngine engine, StringBuilder plan);
+
+	/**
+	 * A text field that has a value.
+	 */
+	private static class Equals extends SongQuery
+	{
+		private SongField field;
+		private String key;
+
+		public Equals(SongField field, String value)
+		{
+			this.field = field;
+			key = SongIndex.key(field, value);
+		}
+
+		@Override
+		public boolean matches(Song song)
+		{
+			return key.equals(SongIndex.key(field, field.getText(song)));
+		}
+
+		@Override
+		int estimate(SongQueryEngine engine)
+		{
+			return engine.isBitmapIndexed(field) ? engine.count(field, key) : 
+				engine.size();
+		}
+
+		@Override
+		boolean isIndexed(SongQueryEngine engine)
+		{
+			return engine.isBitmapIndexed(field);
+		}
+
+		@Override
+		BitSet evaluate(SongQueryEngine engine)
+		{
+			return engine.isBitmapIndexed(field) ? engine.bitmap(field, key) : 
+				engine.scan(this, null);
+		}
+
+		@Override
+		void explain(SongQueryEngine engine, StringBuilder plan)
+		{
+			plan.append(this).append(engine.isBitmapIndexed(field) ? 
+					" [bitmap ~" + estimate(engine) + "]" : " [scan]");
+		}
+
+		@Override
+		public String toString()
+		{
+			return field.getElementName() + " = \"" + key + "\"";
+		}
+	}
+
+	/**
+	 * A numeric field that is between two values.
+	 */
+	private static class Range extends SongQuery
+	{
+		private SongField field;
+		private long min;
+		private long max;
+
+		public Range(SongField field, long min, long max)
+		{
+			this.field = field;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public boolean matches(Song song)
+		{
+			long value = field.getNumber(song);
+			return value >= min && value <= max;
+		}
+
+		@Override
+		int estimate(SongQueryEngine engine)
+		{
+			return engine.countRange(field, min, max);
+		}
+
+		@Override
+		boolean isIndexed(SongQueryEngine engine)
+		{
+			return true;
+		}
+
+		@Override
+		BitSet evaluate(SongQueryEngine engine)
+		{
+			return engine.range(field, min, max);
+		}
+
+		@Override
+		void explain(SongQueryEngine engine, StringBuilder plan)
+		{
+			plan.append(this).append(engine.isBitmapIndexed(field) ? 
+					" [bitmap ~" : " [sorted ~").append(estimate(engine))
+				.append(']');
+		}
+
+		@Override
+		public String toString()
+		{
+			String name = field.getElementName();
+			if (min == max)
+			{
+				return name + " = " + min;
+			}
+			else if (max == Long.MAX_VALUE)
+			{
+				return name + " >= " + min;
+			}
+			else if (min == Long.MIN_VALUE)
+			{
+				return name + " <= " + max;
+			}
+			return min + " <= " + name + " <= " + max;
+		}
+	}
+
+	/**
+	 * Songs that match every one of several queries. The most selective 
+	 * query is run first, and each of the others either intersects its rows 
+	 * with the songs found so far or, when few songs are left, checks those
+	 * songs directly.
+	 */
+	private static class And extends SongQuery
+	{
+		private SongQuery[] queries;
+
+		public And(SongQuery[] queries)
+		{
+			this.queries = queries.clone();
+		}
+
+		@Override
+		public boolean matches(Song song)
+		{
+			for (SongQuery query : queries)
+			{
+				if (!query.matches(song))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		int estimate(SongQueryEngine engine)
+		{
+			int estimate = engine.size();
+			for (SongQuery query : queries)
+			{
+				estimate = Math.min(estimate, query.estimate(engine));
+			}
+			return estimate;
+		}
+
+		@Override
+		boolean isIndexed(SongQueryEngine engine)
+		{
+			return allIndexed(queries, engine);
+		}
+
+		/**
+		 * @return the queries in the order that they are run: the queries 
+		 * that use indexes from the most to the least selective, then the 
+		 * ones that have to check every song
+		 */
+		private SongQuery[] plan(SongQueryEngine engine)
+		{
+			SongQuery[] plan = queries.clone();
+			Arrays.sort(plan, Comparator.comparing((SongQuery query) -> 
+				!query.isIndexed(engine)).thenComparingInt(query -> 
+				query.estimate(engine)));
+			return plan;
+		}
+
+		@Override
+		BitSet evaluate(SongQueryEngine engine)
+		{
+			if (queries.length == 0)
+			{
+				BitSet all = new BitSet(engine.size());
+				all.set(0, engine.size());
+				return all;
+			}
+			SongQuery[] plan = plan(engine);
+			BitSet rows = plan[0].evaluate(engine);
+			for (int i = 1; i < plan.length && !rows.isEmpty(); i++)
+			{
+				SongQuery query = plan[i];
+				if (!query.isIndexed(engine) || 
+						engine.shouldScan(rows.cardinality(), query.estimate(engine)))
+				{
+					rows = engine.scan(query, rows);
+				}
+				else
+				{
+					rows.and(query.evaluate(engine));
+				}
+			}
+			return rows;
+		}
+
+		@Override
+		void explain(SongQueryEngine engine, StringBuilder plan)
+		{
+			plan.append('(');
+			SongQuery[] order = plan(engine);
+			for (int i = 0; i < order.length; i++)
+			{
+				if (i > 0)
+				{
+					plan.append(" AND ");
+				}
+				order[i].explain(engine, plan);
+			}
+			plan.append(')');
+		}
+
+		@Override
+		public String toString()
+		{
+			return join(queries, " AND ");
+		}
+	}
+
+	/**
+	 * Songs that match any of several queries.
+	 */
+	private static class Or extends SongQuery
+	{
+		private SongQuery[] queries;
+
+		public Or(SongQuery[] queries)
+		{
+			this.queries = queries.clone();
+		}
+
+		@Override
+		public boolean matches(Song song)
+		{
+			for (SongQuery query : queries)
+			{
+				if (query.matches(song))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		int estimate(SongQueryEngine engine)
+		{
+			long estimate = 0;
+			for (SongQuery query : queries)
+			{
+				estimate += query.estimate(engine);
+			}
+			return (int) Math.min(estimate, engine.size());
+		}
+
+		@Override
+		boolean isIndexed(SongQueryEngine engine)
+		{
+			return allIndexed(queries, engine);
+		}
+
+		@Override
+		BitSet evaluate(SongQueryEngine engine)
+		{
+			BitSet rows = new BitSet(engine.size());
+			for (SongQuery query : queries)
+			{
+				rows.or(query.evaluate(engine));
+			}
+			return rows;
+		}
+
+		@Override
+		void explain(SongQueryEngine engine, StringBuilder plan)
+		{
+			plan.append('(');
+			for (int i = 0; i < queries.length; i++)
+			{
+				if (i > 0)
+				{
+					plan.append(" OR ");
+				}
+				queries[i].explain(engine, plan);
+			}
+			plan.append(')');
+		}
+
+		@Override
+		public String toString()
+		{
+			return join(queries, " OR ");
+		}
+	}
+
+	/**
+	 * Songs that do not match a query.
+	 */
+	private static class Not extends SongQuery
+	{
+		private SongQuery query;
+
+		public Not(SongQuery query)
+		{
+			this.query = query;
+		}
+
+		@Override
+		public boolean matches(Song song)
+		{
+			return !query.matches(song);
+		}
+
+		@Override
+		int estimate(SongQueryEngine engine)
+		{
+			return engine.size() - query.estimate(engine);
+		}
+
+		@Override
+		boolean isIndexed(SongQueryEngine engine)
+		{
+			return query.isIndexed(engine);
+		}
+
+		@Override
+		BitSet evaluate(SongQueryEngine engine)
+		{
+			BitSet rows = query.evaluate(engine);
+			rows.flip(0, engine.size());
+			return rows;
+		}
+
+		@Override
+		void explain(SongQueryEngine engine, StringBuilder plan)
+		{
+			plan.append("NOT ");
+			query.explain(engine, plan);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "NOT (" + query + ")";
+		}
+	}
+
+	private static boolean allIndexed(SongQuery[] queries, 
+			SongQueryEngine engine)
+	{
+		for (SongQuery query : queries)
+		{
+			if (!query.isIndexed(engine))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String join(SongQuery[] queries, String operator)
+	{
+		StringBuilder text = new StringBuilder("(");
+		for (int i = 0; i < queries.length; i++)
+		{
+			if (i > 0)
+			{
+				text.append(operator);
+			}
+			text.append(queries[i]);
+		}
+		return text.append(')').toString();
+	}
+}
@@ -0,0 +1,441 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs {@link SongQuery}s against the songs of a parsed Rhythmbox library 
+ * with two kinds of indexes, which are built in one pass over the songs:
+ * <ul>
+ * <li>Bitmaps of the songs with each value of the fields with few distinct 
+ * values (artist, album, album artist, genre, rating and disc number). A 
+ * value with few songs keeps a sorted array of their rows, and a value with
+ * many songs a BitSet, as roaring bitmaps do.</li>
+ * <li>The values of every numeric field in sorted order, next to the rows 
+ * that they belong to, so that a range of values is found with two binary 
+ * searches.</li>
+ * </ul>
+ * Matching rows are combined as BitSets. Titles, locations and comments are
+ * not indexed, so conditions on them are checked against the songs. An 
+ * engine does not change when the list of songs it was built from does.
+ */
+public class SongQueryEngine 
+{
+	//The fields that bitmaps are kept for.
+	private static final EnumSet<SongField> BITMAP_FIELDS = EnumSet.of(
+			SongField.ARTIST, SongField.ALBUM, SongField.ALBUM_ARTIST, 
+			SongField.GENRE, SongField.RATING, SongField.DISC_NUMBER);
+	//A value keeps a BitSet once at least 1 in this many songs have it.
+	private static final int DENSE_FRACTION = 32;
+	//A condition is checked against the songs found so far, rather than 
+	//intersected with its own rows, when it matches at least this many 
+	//times as many songs.
+	private static final int SCAN_RATIO = 8;
+
+	//The songs, whose positions in this list are their rows.
+	private List<Song> songs;
+	//The bitmaps of the values of the text fields, keyed by SongIndex.key().
+	private EnumMap<SongField, HashMap<String, Rows>> textBitmaps;
+	//The bitmaps of the values of the numeric fields, in order of value.
+	private EnumMap<SongField, TreeMap<Long, Rows>> numberBitmaps;
+	//The sorted values of the numeric fields without bitmaps.
+	private EnumMap<SongField, SortedColumn> sortedColumns;
+
+	/**
+	 * Builds the indexes over a list of songs.
+	 * @param songs the songs to query
+	 */
+	public SongQueryEngine(List<Song> songs)
+	{
+		this.songs = new ArrayList<Song>(songs);
+		int size = this.songs.size();
+		textBitmaps = new EnumMap<SongField, HashMap<String, Rows>>(
+				SongField.class);
+		numberBitmaps = new EnumMap<SongField, TreeMap<Long, Rows>>(
+				SongField.class);
+		sortedColumns = new EnumMap<SongField, SortedColumn>(SongField.class);
+
+		for (SongField field : SongField.values())
+		{
+			if (BITMAP_FIELDS.contains(field) && !field.isNumeric())
+			{
+				HashMap<String, IntList> rows = new HashMap<String, IntList>();
+				for (int row = 0; row < size; row++)
+				{
+					String key = SongIndex.key(field, 
+							field.getText(this.songs.get(row)));
+					rows.computeIfAbsent(key, k -> new IntList()).add(row);
+				}
+				HashMap<String, Rows> bitmaps = new HashMap<String, Rows>();
+				for (Map.Entry<String, IntList> entry : rows.entrySet())
+				{
+					bitmaps.put(entry.getKey(), new Rows(entry.getValue(), size));
+				}
+				textBitmaps.put(field, bitmaps);
+			}
+			else if (BITMAP_FIELDS.contains(field))
+			{
+				TreeMap<Long, IntList> rows = new TreeMap<Long, IntList>();
+				for (int row = 0; row < size; row++)
+				{
+					rows.computeIfAbsent(field.getNumber(this.songs.get(row)), 
+							k -> new IntList()).add(row);
+				}
+				TreeMap<Long, Rows> bitmaps = new TreeMap<Long, Rows>();
+				for (Map.Entry<Long, IntList> entry : rows.entrySet())
+				{
+					bitmaps.put(entry.getKey(), new Rows(entry.getValue(), size));
+				}
+				numberBitmaps.put(field, bitmaps);
+			}
+			else if (field.isNumeric())
+			{
+				sortedColumns.put(field, new SortedColumn(field, this.songs));
+			}
+		}
+	}
+
+	/**
+	 * @param query a query
+	 * @return the songs that match the query, in library order
+	 */
+	public List<Song> find(SongQuery query)
+	{
+		BitSet rows = query.evaluate(this);
+		List<Song> found = new ArrayList<Song>(rows.cardinality());
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1))
+		{
+			found.add(songs.get(row));
+		}
+		return found;
+	}
+
+	/**
+	 * @param query a query
+	 * @return the number of songs that match the query
+	 */
+	public int count(SongQuery query)
+	{
+		return query.evaluate(this).cardinality();
+	}
+
+	/**
+	 * Describes how a query is run: the order of the conditions that are 
+	 * combined with AND, which index each one uses and about how many songs
+	 * it matches.
+	 * @param query a query
+	 * @return the description
+	 */
+	public String explain(SongQuery query)
+	{
+		StringBuilder plan = new StringBuilder();
+		query.explain(this, plan);
+		return plan.toString();
+	}
+
+	/**
+	 * @return The number of songs.
+	 */
+	public int size()
+	{
+		return songs.size();
+	}
+
+	boolean isBitmapIndexed(SongField field)
+	{
+		return BITMAP_FIELDS.contains(field);
+	}
+
+	/**
+	 * @return the number of songs whose text field has a key
+	 */
+	int count(SongField field, String key)
+	{
+		Rows rows = textBitmaps.get(field).get(key);
+		return rows == null ? 0 : rows.size();
+	}
+
+	/**
+	 * @return the rows of the songs whose text field has a key
+	 */
+	BitSet bitmap(SongField field, String key)
+	{
+		Rows rows = textBitmaps.get(field).get(key);
+		BitSet bits = new BitSet(size());
+		if (rows != null)
+		{
+			rows.addTo(bits);
+		}
+		return bits;
+	}
+
+	/**
+	 * @return the number of songs whose numeric field is between two values
+	 */
+	int countRange(SongField field, long min, long max)
+	{
+		if (min > max)
+		{
+			return 0;
+		}
+		TreeMap<Long, Rows> bitmaps = numberBitmaps.get(field);
+		if (bitmaps != null)
+		{
+			int count = 0;
+			for (Rows rows : bitmaps.subMap(min, true, max, true).values())
+			{
+				count += rows.size();
+			}
+			return count;
+		}
+		SortedColumn column = sortedColumns.get(field);
+		return column.upperBound(max) - column.lowerBound(min);
+	}
+
+	/**
+	 * @return the rows of the songs whose numeric field is between two values
+	 */
+	BitSet range(SongField field, long min, long max)
+	{
+		BitSet bits = new BitSet(size());
+		if (min > max)
+		{
+			return bits;
+		}
+		TreeMap<Long, Rows> bitmaps = numberBitmaps.get(field);
+		if (bitmaps != null)
+		{
+			for (Rows rows : bitmaps.subMap(min, true, max, true).values())
+			{
+				rows.addTo(bits);
+			}
+			return bits;
+		}
+		SortedColumn column = sortedColumns.get(field);
+		for (int i = column.lowerBound(min), end = column.upperBound(max); 
+				i < end; i++)
+		{
+			bits.set(column.rows[i]);
+		}
+		return bits;
+	}
+
+	/**
+	 * Checks songs against a query directly.
+	 * @param query the query
+	 * @param candidates the rows of the songs to check, or null to check 
+	 * every song
+	 * @return the rows of the songs that match
+	 */
+	BitSet scan(SongQuery query, BitSet candidates)
+	{
+		BitSet bits = new BitSet(size());
+		if (candidates == null)
+		{
+			for (int row = 0; row < songs.size(); row++)
+			{
+				if (query.matches(songs.get(row)))
+				{
+					bits.set(row);
+				}
+			}
+		}
+		else
+		{
+			for (int row = candidates.nextSetBit(0); row >= 0; 
+					row = candidates.nextSetBit(row + 1))
+			{
+				if (query.matches(songs.get(row)))
+				{
+					bits.set(row);
+				}
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * @param candidates the number of songs found so far
+	 * @param estimate about how many songs the next condition matches
+	 * @return whether the songs found so far should be checked against the
+	 * condition instead of intersecting them with its rows
+	 */
+	boolean shouldScan(int candidates, int estimate)
+	{
+		return (long) candidates * SCAN_RATIO <= estimate;
+	}
+
+	/**
+	 * The rows of the songs with one value of a field.
+	 */
+	private static class Rows
+	{
+		//The rows in ascending order, or null if they are kept as a BitSet.
+		private int[] sparse;
+		private BitSet dense;
+		private int size;
+
+		public Rows(IntList rows, int songCount)
+		{
+			size = rows.size;
+			if ((long) size * DENSE_FRACTION >= songCount)
+			{
+				dense = new BitSet(songCount);
+				for (int i = 0; i < size; i++)
+				{
+					dense.set(rows.elements[i]);
+				}
+				sparse = null;
+			}
+			else
+			{
+				sparse = Arrays.copyOf(rows.elements, size);
+				dense = null;
+			}
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 * Sets the bits of these rows.
+		 */
+		public void addTo(BitSet bits)
+		{
+			if (dense != null)
+			{
+				bits.or(dense);
+			}
+			else
+			{
+				for (int row : sparse)
+				{
+					bits.set(row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The values of a numeric field in ascending order, and the rows of the 
+	 * songs that they belong to (indexed the same way).
+	 */
+	private static class SortedColumn
+	{
+		private long[] values;
+		private int[] rows;
+
+		public SortedColumn(SongField field, List<Song> songs)
+		{
+			//Values do not always fit in 32 bits, so each value is replaced 
+			//by its rank among the distinct values, and the rank is packed 
+			//with its row, so that sorting the longs sorts by value and then
+			//by row.
+			long[] distinct = new long[songs.size()];
+			for (int row = 0; row < distinct.length; row++)
+			{
+				distinct[row] = field.getNumber(songs.get(row));
+			}
+			long[] unsorted = distinct.clone();
+			Arrays.sort(distinct);
+			int distinctCount = 0;
+			for (int i = 0; i < distinct.length; i++)
+			{
+				if (i == 0 || distinct[i] != distinct[i - 1])
+				{
+					distinct[distinctCount++] = distinct[i];
+				}
+			}
+			long[] packed = new long[unsorted.length];
+			for (int row = 0; row < packed.length; row++)
+			{
+				long rank = Arrays.binarySearch(distinct, 0, distinctCount, 
+						unsorted[row]);
+				packed[row] = (rank << 32) | row;
+			}
+			Arrays.sort(packed);
+			values = new long[packed.length];
+			rows = new int[packed.length];
+			for (int i = 0; i < packed.length; i++)
+			{
+				values[i] = distinct[(int) (packed[i] >> 32)];
+				rows[i] = (int) packed[i];
+			}
+		}
+
+		/**
+		 * @return the position of the first value that is at least a value
+		 */
+		public int lowerBound(long value)
+		{
+			int low = 0;
+			int high = values.length;
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+				if (values[middle] < value)
+				{
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * @return the position after the last value that is at most a value
+		 */
+		public int upperBound(long value)
+		{
+			return value == Long.MAX_VALUE ? values.length : 
+				lowerBound(value + 1);
+		}
+	}
+
+	/**
+	 * A growable list of ints.
+	 */
+	private static class IntList
+	{
+		private int[] elements = new int[4];
+		private int size = 0;
+
+		public void add(int value)
+		{
+			if (size == elements.length)
+			{
+				elements = Arrays.copyOf(elements, size * 2);
+			}
+			elements[size++] = value;
+		}
+	}
+}
@@ -0,0 +1,718 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Searches the titles, artists and albums of the songs in a parsed library 
+ * for partial or misspelled text, as typed into a single search box. Text is
+ * compared ignoring case, accents and punctuation. A query matches a value 
+ * if the value starts with it, if every word of the query is a word of the 
+ * value (the last one only needing to be the start of a word), or, failing 
+ * that, if enough of their trigrams (runs of three characters) are the same.
+ * The best matches are returned with scores, exact titles first. Very short
+ * or common queries only consider the first few thousand matching values in
+ * alphabetical order, and misspelled queries only the first few thousand 
+ * values with each of their trigrams, rarest first, so that every query 
+ * stays fast whatever the size of the library. A search is safe to use from
+ * several threads, but does not change when the list of songs that it was 
+ * built from does.
+ */
+public class SongSearch 
+{
+	//The fields that are searched, and how much a match on each one counts.
+	private static final SongField[] SEARCHED_FIELDS = {SongField.TITLE, 
+		SongField.ARTIST, SongField.ALBUM};
+	private static final double[] FIELD_WEIGHTS = {1.0, 0.9, 0.8};
+	//How much each kind of match counts.
+	private static final double EXACT_SCORE = 1.0;
+	private static final double PREFIX_SCORE = 0.9;
+	private static final double WORD_PREFIX_SCORE = 0.8;
+	private static final double FUZZY_SCORE = 0.7;
+	//The fraction of trigrams that must be the same for a fuzzy match.
+	private static final double MIN_SIMILARITY = 0.45;
+	//The most values that are scored for a query, so that very short or 
+	//common queries stay fast.
+	static final int MAX_CANDIDATES = 4096;
+	//The working space of a query, which is reused between queries on the
+	//same thread by every search. It grows with the number of candidates of
+	//a query rather than with the size of a library.
+	private static final ThreadLocal<Candidates> CANDIDATES = 
+			ThreadLocal.withInitial(Candidates::new);
+
+	//The songs that are searched.
+	private List<Song> songs;
+	//The distinct normalized values of the searched fields in sorted order, 
+	//the field that each one belongs to (as a position in SEARCHED_FIELDS),
+	//and the positions of the songs that have it.
+	private String[] values;
+	private byte[] valueFields;
+	private int[][] valueSongs;
+	//The distinct words of the values in sorted order, and the values that
+	//contain each word.
+	private String[] words;
+	private int[][] wordValues;
+	//The values that contain each trigram, and the number of distinct 
+	//trigrams in each value.
+	private HashMap<Long, int[]> trigramValues;
+	private int[] valueTrigramCounts;
+
+	/**
+	 * Builds the search structures over a list of songs.
+	 * @param songs the songs to search
+	 */
+	public SongSearch(List<Song> songs)
+	{
+		this.songs = new ArrayList<Song>(songs);
+		buildValues();
+		buildWords();
+		buildTrigrams();
+	}
+
+	/**
+	 * Finds the songs whose title, artist or album best match a query.
+	 * @param query the text to search for
+	 * @param limit the most results to return
+	 * @return the best matches, best first; songs with the same score are 
+	 * in alphabetical order of the value that matched, then in library order
+	 */
+	public List<SearchResult> search(String query, int limit)
+	{
+		String normalized = normalize(query);
+		if (normalized.isEmpty() || limit <= 0)
+		{
+			return Collections.emptyList();
+		}
+
+		Candidates candidates = CANDIDATES.get();
+		try
+		{
+			matchPrefix(normalized, candidates.scores);
+			matchWords(normalized, candidates.scores);
+			if (candidates.scores.size() < limit)
+			{
+				matchTrigrams(normalized, candidates);
+			}
+			return bestSongs(candidates, limit);
+		}
+		finally
+		{
+			candidates.clear();
+		}
+	}
+
+	/**
+	 * Returns text with case, accents and punctuation removed, the way that
+	 * queries and values are compared.
+	 * @param text the text to normalize
+	 * @return the normalized text, as lower case words separated by single
+	 * spaces
+	 */
+	public static String normalize(String text)
+	{
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		StringBuilder result = new StringBuilder(decomposed.length());
+		for (int i = 0; i < decomposed.length(); i++)
+		{
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK || 
+					c == '\'' || c == '\u2019')
+			{
+				continue;
+			}
+			if (Character.isLetterOrDigit(c))
+			{
+				result.append(Character.toLowerCase(Character.toUpperCase(c)));
+			}
+			else if (result.length() > 0 && 
+					result.charAt(result.length() - 1) != ' ')
+			{
+				result.append(' ');
+			}
+		}
+		if (result.length() > 0 && result.charAt(result.length() - 1) == ' ')
+		{
+			result.setLength(result.length() - 1);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Scores the values that start with the query.
+	 */
+	private void matchPrefix(String query, IntTable valueScores)
+	{
+		int start = lowerBound(values, query);
+		int end = Math.min(values.length, start + MAX_CANDIDATES);
+		for (int v = start; v < end && values[v].startsWith(query); v++)
+		{
+			double score = values[v].length() == query.length() ? 
+					EXACT_SCORE : PREFIX_SCORE;
+			valueScores.max(v, score * FIELD_WEIGHTS[valueFields[v]]);
+		}
+	}
+
+	/**
+	 * Scores the values that contain every word of the query, where the last
+	 * word of the query only has to be the start of a word.
+	 */
+	private void matchWords(String query, IntTable valueScores)
+	{
+		String[] queryWords = query.split(" ");
+		String last = queryWords[queryWords.length - 1];
+		for (int w = lowerBound(words, last); w < words.length && 
+				words[w].startsWith(last); w++)
+		{
+			for (int v : wordValues[w])
+			{
+				if (valueScores.size() >= MAX_CANDIDATES)
+				{
+					return;
+				}
+				if (containsWords(values[v], queryWords, queryWords.length - 1))
+				{
+					valueScores.max(v, 
+							WORD_PREFIX_SCORE * FIELD_WEIGHTS[valueFields[v]]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scores the values that have enough trigrams in common with the query.
+	 * The trigrams are taken rarest first, and at most {@link 
+	 * #MAX_CANDIDATES} values are walked for each one; once that many values
+	 * have been counted, the rest of each trigram's values are only looked 
+	 * up for the values that are already counted.
+	 */
+	private void matchTrigrams(String query, Candidates candidates)
+	{
+		long[] queryTrigrams = trigrams(query);
+		int[][] postings = new int[queryTrigrams.length][];
+		int postingCount = 0;
+		for (long trigram : queryTrigrams)
+		{
+			int[] valueList = trigramValues.get(trigram);
+			if (valueList != null)
+			{
+				postings[postingCount++] = valueList;
+			}
+		}
+		Arrays.sort(postings, 0, postingCount, 
+				(a, b) -> Integer.compare(a.length, b.length));
+
+		IntTable overlaps = candidates.overlaps;
+		for (int p = 0; p < postingCount; p++)
+		{
+			int[] valueList = postings[p];
+			int walked = Math.min(valueList.length, MAX_CANDIDATES);
+			int i = 0;
+			for (; i < walked && overlaps.size() < MAX_CANDIDATES; i++)
+			{
+				overlaps.add(valueList[i], 1);
+			}
+			if (i < valueList.length)
+			{
+				//The values of a trigram are sorted, so the rest of them can
+				//be searched for each counted value.
+				for (int c = 0; c < overlaps.size(); c++)
+				{
+					int v = overlaps.keyAt(c);
+					if (Arrays.binarySearch(valueList, i, valueList.length, v) >= 0)
+					{
+						overlaps.add(v, 1);
+					}
+				}
+			}
+		}
+
+		for (int c = 0; c < overlaps.size(); c++)
+		{
+			int v = overlaps.keyAt(c);
+			double similarity = 2.0 * overlaps.valueAt(c) / 
+					(queryTrigrams.length + valueTrigramCounts[v]);
+			if (similarity >= MIN_SIMILARITY)
+			{
+				candidates.scores.max(v, FUZZY_SCORE * similarity * 
+						FIELD_WEIGHTS[valueFields[v]]);
+			}
+		}
+	}
+
+	/**
+	 * Takes songs from the best values until there are enough of them, so 
+	 * each song gets the best score of its values.
+	 */
+	private List<SearchResult> bestSongs(Candidates candidates, int limit)
+	{
+		//The values are sorted by score, then by value, by packing how far
+		//each score is below 1 and the value into a long.
+		IntTable valueScores = candidates.scores;
+		long[] order = new long[valueScores.size()];
+		for (int i = 0; i < order.length; i++)
+		{
+			long rank = Math.round((1 - valueScores.valueAt(i)) * 
+					Integer.MAX_VALUE);
+			order[i] = (rank << 32) | valueScores.keyAt(i);
+		}
+		Arrays.sort(order);
+
+		ArrayList<SearchResult> results = new ArrayList<SearchResult>(
+				Math.min(limit, order.length));
+		IntTable found = candidates.found;
+		for (long entry : order)
+		{
+			int v = (int) entry;
+			double score = valueScores.get(v);
+			for (int song : valueSongs[v])
+			{
+				if (found.get(song) == 0)
+				{
+					found.add(song, 1);
+					results.add(new SearchResult(songs.get(song), score, 
+							SEARCHED_FIELDS[valueFields[v]]));
+					if (results.size() == limit)
+					{
+						return results;
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	private void buildValues()
+	{
+		//The positions of the songs with each value of each field.
+		ArrayList<HashMap<String, IntList>> songsByValue = 
+				new ArrayList<HashMap<String, IntList>>();
+		int valueCount = 0;
+		for (int f = 0; f < SEARCHED_FIELDS.length; f++)
+		{
+			HashMap<String, IntList> byValue = new HashMap<String, IntList>();
+			HashMap<String, String> normalizedValues = 
+					new HashMap<String, String>();
+			for (int s = 0; s < this.songs.size(); s++)
+			{
+				String raw = fieldOf(this.songs.get(s), f);
+				String value = normalizedValues.get(raw);
+				if (value == null)
+				{
+					value = normalize(raw);
+					normalizedValues.put(raw, value);
+				}
+				if (!value.isEmpty())
+				{
+					IntList songList = byValue.get(value);
+					if (songList == null)
+					{
+						songList = new IntList();
+						byValue.put(value, songList);
+					}
+					songList.add(s);
+				}
+			}
+			songsByValue.add(byValue);
+			valueCount += byValue.size();
+		}
+
+		//The values are sorted by their text, then by their field.
+		Object[][] entries = new Object[valueCount][];
+		int e = 0;
+		for (int f = 0; f < SEARCHED_FIELDS.length; f++)
+		{
+			for (Map.Entry<String, IntList> entry : 
+				songsByValue.get(f).entrySet())
+			{
+				entries[e++] = new Object[] {entry.getKey(), f, entry.getValue()};
+			}
+		}
+		Arrays.sort(entries, (a, b) -> 
+		{
+			int byText = ((String) a[0]).compareTo((String) b[0]);
+			return byText != 0 ? byText : (Integer) a[1] - (Integer) b[1];
+		});
+
+		values = new String[valueCount];
+		valueFields = new byte[valueCount];
+		valueSongs = new int[valueCount][];
+		for (int v = 0; v < valueCount; v++)
+		{
+			values[v] = (String) entries[v][0];
+			valueFields[v] = (byte) (int) (Integer) entries[v][1];
+			valueSongs[v] = ((IntList) entries[v][2]).toArray();
+		}
+	}
+
+	private void buildWords()
+	{
+		HashMap<String, IntList> valuesByWord = new HashMap<String, IntList>();
+		for (int v = 0; v < values.length; v++)
+		{
+			String previous = null;
+			String[] valueWords = values[v].split(" ");
+			Arrays.sort(valueWords);
+			for (String word : valueWords)
+			{
+				if (!word.equals(previous))
+				{
+					IntList valueList = valuesByWord.get(word);
+					if (valueList == null)
+					{
+						valueList = new IntList();
+						valuesByWord.put(word, valueList);
+					}
+					valueList.add(v);
+					previous = word;
+				}
+			}
+		}
+
+		words = valuesByWord.keySet().toArray(new String[valuesByWord.size()]);
+		Arrays.sort(words);
+		wordValues = new int[words.length][];
+		for (int w = 0; w < words.length; w++)
+		{
+			wordValues[w] = valuesByWord.get(words[w]).toArray();
+		}
+	}
+
+	private void buildTrigrams()
+	{
+		HashMap<Long, IntList> valuesByTrigram = new HashMap<Long, IntList>();
+		valueTrigramCounts = new int[values.length];
+		for (int v = 0; v < values.length; v++)
+		{
+			long[] valueTrigrams = trigrams(values[v]);
+			valueTrigramCounts[v] = valueTrigrams.length;
+			for (long trigram : valueTrigrams)
+			{
+				IntList valueList = valuesByTrigram.get(trigram);
+				if (valueList == null)
+				{
+					valueList = new IntList();
+					valuesByTrigram.put(trigram, valueList);
+				}
+				valueList.add(v);
+			}
+		}
+
+		trigramValues = new HashMap<Long, int[]>(valuesByTrigram.size() * 2);
+		for (Map.Entry<Long, IntList> entry : valuesByTrigram.entrySet())
+		{
+			trigramValues.put(entry.getKey(), entry.getValue().toArray());
+		}
+	}
+
+	/**
+	 * Returns the distinct trigrams of normalized text, padded so that the 
+	 * start and end of the text count as well. Each trigram is packed into a
+	 * long.
+	 */
+	private static long[] trigrams(String text)
+	{
+		String padded = "  " + text + " ";
+		long[] result = new long[padded.length() - 2];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = ((long) padded.charAt(i) << 32) | 
+					((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+		}
+		Arrays.sort(result);
+		int distinct = 0;
+		for (int i = 0; i < result.length; i++)
+		{
+			if (i == 0 || result[i] != result[i - 1])
+			{
+				result[distinct++] = result[i];
+			}
+		}
+		return Arrays.copyOf(result, distinct);
+	}
+
+	/**
+	 * Checks whether the first words of a query are all words of a value.
+	 */
+	private static boolean containsWords(String value, String[] queryWords, 
+			int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			String word = queryWords[i];
+			int at = value.indexOf(word);
+			boolean found = false;
+			while (at >= 0 && !found)
+			{
+				int after = at + word.length();
+				found = (at == 0 || value.charAt(at - 1) == ' ') && 
+						(after == value.length() || value.charAt(after) == ' ');
+				at = value.indexOf(word, at + 1);
+			}
+			if (!found)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The position of the first string in a sorted array that is not
+	 * less than the key.
+	 */
+	private static int lowerBound(String[] sorted, String key)
+	{
+		int low = 0;
+		int high = sorted.length;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (sorted[middle].compareTo(key) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static String fieldOf(Song song, int field)
+	{
+		switch (SEARCHED_FIELDS[field])
+		{
+			case TITLE:
+				return song.getTitle();
+			case ARTIST:
+				return song.getArtist();
+			default:
+				return song.getAlbum();
+		}
+	}
+
+	/**
+	 * The working space of a query: the values that matched it and their 
+	 * best scores, the number of trigrams that values share with it, and the
+	 * songs that have been returned.
+	 */
+	private static class Candidates
+	{
+		private IntTable scores;
+		private IntTable overlaps;
+		private IntTable found;
+
+		public Candidates()
+		{
+			scores = new IntTable();
+			overlaps = new IntTable();
+			found = new IntTable();
+		}
+
+		public void clear()
+		{
+			scores.clear();
+			overlaps.clear();
+			found.clear();
+		}
+	}
+
+	/**
+	 * A growable open-addressing table from non-negative ints to doubles, 
+	 * which remembers the order that its keys were added in so that it can 
+	 * be iterated and cleared in time proportional to its size.
+	 */
+	private static class IntTable
+	{
+		//Tables that have grown larger than this are shrunk when cleared, so
+		//that one large query does not keep its space.
+		private static final int MAX_KEPT_CAPACITY = MAX_CANDIDATES * 4;
+
+		//The keys plus one, so that 0 marks an empty slot, and their values.
+		private int[] keys;
+		private double[] values;
+		//The slots of the keys in the order that they were added.
+		private int[] order;
+		private int size;
+
+		public IntTable()
+		{
+			keys = new int[64];
+			values = new double[64];
+			order = new int[32];
+			size = 0;
+		}
+
+		/**
+		 * @return the value of a key, or 0 if it has none
+		 */
+		public double get(int key)
+		{
+			int slot = slot(key);
+			return keys[slot] == 0 ? 0 : values[slot];
+		}
+
+		/**
+		 * Adds to the value of a key.
+		 */
+		public void add(int key, double amount)
+		{
+			int slot = insert(key);
+			values[slot] += amount;
+		}
+
+		/**
+		 * Raises the value of a key to a score if it is lower.
+		 */
+		public void max(int key, double score)
+		{
+			int slot = insert(key);
+			if (values[slot] < score)
+			{
+				values[slot] = score;
+			}
+		}
+
+		public int size()
+		{
+			return size;
+		}
+
+		/**
+		 * @return the key that was added at a position
+		 */
+		public int keyAt(int i)
+		{
+			return keys[order[i]] - 1;
+		}
+
+		/**
+		 * @return the value of the key that was added at a position
+		 */
+		public double valueAt(int i)
+		{
+			return values[order[i]];
+		}
+
+		public void clear()
+		{
+			if (keys.length > MAX_KEPT_CAPACITY)
+			{
+				keys = new int[64];
+				values = new double[64];
+				order = new int[32];
+			}
+			else
+			{
+				for (int i = 0; i < size; i++)
+				{
+					keys[order[i]] = 0;
+					values[order[i]] = 0;
+				}
+			}
+			size = 0;
+		}
+
+		/**
+		 * @return the slot of a key, or the empty slot where it would go
+		 */
+		private int slot(int key)
+		{
+			int mask = keys.length - 1;
+			int hash = key * 0x9e3779b9;
+			int slot = (hash ^ hash >>> 16) & mask;
+			while (keys[slot] != 0 && keys[slot] != key + 1)
+			{
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * @return the slot of a key, which is added if it is missing
+		 */
+		private int insert(int key)
+		{
+			int slot = slot(key);
+			if (keys[slot] != 0)
+			{
+				return slot;
+			}
+			if ((size + 1) * 2 > keys.length)
+			{
+				grow();
+				slot = slot(key);
+			}
+			keys[slot] = key + 1;
+			if (size == order.length)
+			{
+				order = Arrays.copyOf(order, size * 2);
+			}
+			order[size++] = slot;
+			return slot;
+		}
+
+		private void grow()
+		{
+			int[] oldKeys = keys;
+			double[] oldValues = values;
+			int[] oldOrder = order;
+			keys = new int[oldKeys.length * 2];
+			values = new double[oldKeys.length * 2];
+			order = new int[Math.max(oldOrder.length, keys.length / 2)];
+			for (int i = 0; i < size; i++)
+			{
+				int slot = slot(oldKeys[oldOrder[i]] - 1);
+				keys[slot] = oldKeys[oldOrder[i]];
+				values[slot] = oldValues[oldOrder[i]];
+				order[i] = slot;
+			}
+		}
+	}
+
+	/**
+	 * A growable list of ints.
+	 */
+	private static class IntList
+	{
+		private int[] elements = new int[2];
+		private int size = 0;
+
+		public void add(int element)
+		{
+			if (size == elements.length)
+			{
+				elements = Arrays.copyOf(elements, size * 2);
+			}
+			elements[size++] = element;
+		}
+
+		public int[] toArray()
+		{
+			return Arrays.copyOf(elements, size);
+		}
+	}
+}
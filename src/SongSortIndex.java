@@ -0,0 +1,403 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The songs of a library sorted in every {@link SongOrder}, so that sorted 
+ * listings are served a page at a time without sorting the songs again. 
+ * Each order is kept as the rows of the songs in sorted order. To build the
+ * orders, the distinct values of each text field are given a CollationKey 
+ * once and ranked by it, so that strings are not folded again for every 
+ * comparison, and each order then sorts longs that pack the ranks of its 
+ * fields. The fields and the orders are built on several threads. An index
+ * does not change when the list of songs it was built from does.
+ */
+public class SongSortIndex 
+{
+	//Lists of fewer songs than this are sorted on the calling thread.
+	private static final int PARALLEL_SIZE = 1 << 13;
+
+	//The songs, whose positions in this list are their rows.
+	private List<Song> songs;
+	//The rows of the songs in each order.
+	private EnumMap<SongOrder, int[]> orders;
+
+	/**
+	 * Sorts songs with the collation of the default locale, on as many 
+	 * threads as there are processors.
+	 * @param songs the songs to sort
+	 */
+	public SongSortIndex(List<Song> songs)
+	{
+		this(songs, Locale.getDefault(), 
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param songs the songs to sort
+	 * @param locale the locale whose collation text is compared with, 
+	 * ignoring case but not accents
+	 * @param parallelism the number of threads, where 1 sorts the songs on 
+	 * the calling thread
+	 */
+	public SongSortIndex(List<Song> songs, Locale locale, int parallelism)
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException("The parallelism must be at " +
+					"least 1");
+		}
+		this.songs = new ArrayList<Song>(songs);
+		Collator collator = Collator.getInstance(locale);
+		collator.setStrength(Collator.SECONDARY);
+		if (parallelism == 1 || this.songs.size() < PARALLEL_SIZE)
+		{
+			orders = build(collator);
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			orders = pool.invoke(ForkJoinTask.adapt(() -> build(collator)));
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The number of songs.
+	 */
+	public int size()
+	{
+		return songs.size();
+	}
+
+	/**
+	 * Returns one page of the songs in an order, in time that depends only on
+	 * the size of the page.
+	 * @param order the order of the songs
+	 * @param offset the position of the first song of the page in the order
+	 * @param limit the most songs to return
+	 * @return the songs of the page, which is empty past the last song
+	 */
+	public List<Song> page(SongOrder order, int offset, int limit)
+	{
+		if (offset < 0 || limit < 0)
+		{
+			throw new IllegalArgumentException("The offset and limit cannot be" +
+					" negative");
+		}
+		int[] rows = orders.get(order);
+		int end = (int) Math.min(rows.length, (long) offset + limit);
+		ArrayList<Song> page = new ArrayList<Song>(Math.max(0, end - offset));
+		for (int i = offset; i < end; i++)
+		{
+			page.add(songs.get(rows[i]));
+		}
+		return page;
+	}
+
+	/**
+	 * @param order the order of the songs
+	 * @return A read-only list of every song in the order.
+	 */
+	public List<Song> sorted(SongOrder order)
+	{
+		int[] rows = orders.get(order);
+		return new AbstractList<Song>()
+		{
+			public Song get(int position)
+			{
+				return songs.get(rows[position]);
+			}
+
+			public int size()
+			{
+				return rows.length;
+			}
+		};
+	}
+
+	/**
+	 * @param order the order of the songs
+	 * @param position a position in the order
+	 * @return the row in the list of songs of the song at the position
+	 */
+	public int rowAt(SongOrder order, int position)
+	{
+		return orders.get(order)[position];
+	}
+
+	/**
+	 * Ranks the values of every field that is sorted by, and then sorts the
+	 * songs in every order, splitting both steps between the threads of the
+	 * pool that it runs in, if any.
+	 */
+	private EnumMap<SongOrder, int[]> build(Collator collator)
+	{
+		EnumSet<SongField> fields = EnumSet.noneOf(SongField.class);
+		for (SongOrder order : SongOrder.values())
+		{
+			fields.addAll(Arrays.asList(order.getFields()));
+		}
+		EnumMap<SongField, ForkJoinTask<int[]>> rankTasks = 
+				new EnumMap<SongField, ForkJoinTask<int[]>>(SongField.class);
+		for (SongField field : fields)
+		{
+			//A Collator cannot be shared between threads.
+			Collator fieldCollator = (Collator) collator.clone();
+			rankTasks.put(field, ForkJoinTask.adapt(() -> field.isNumeric() ? 
+					numberRanks(field) : textRanks(field, fieldCollator)));
+		}
+		invokeAll(rankTasks.values());
+		EnumMap<SongField, int[]> ranks = 
+				new EnumMap<SongField, int[]>(SongField.class);
+		for (SongField field : fields)
+		{
+			ranks.put(field, rankTasks.get(field).join());
+		}
+
+		EnumMap<SongOrder, ForkJoinTask<int[]>> orderTasks = 
+				new EnumMap<SongOrder, ForkJoinTask<int[]>>(SongOrder.class);
+		for (SongOrder order : SongOrder.values())
+		{
+			orderTasks.put(order, ForkJoinTask.adapt(() -> sort(order, ranks)));
+		}
+		invokeAll(orderTasks.values());
+		EnumMap<SongOrder, int[]> sorted = 
+				new EnumMap<SongOrder, int[]>(SongOrder.class);
+		for (SongOrder order : SongOrder.values())
+		{
+			sorted.put(order, orderTasks.get(order).join());
+		}
+		return sorted;
+	}
+
+	/**
+	 * Sorts numbers on the threads of the pool that this runs in, or on the
+	 * calling thread.
+	 */
+	private static void parallelSort(long[] values)
+	{
+		if (ForkJoinTask.inForkJoinPool())
+		{
+			Arrays.parallelSort(values);
+		}
+		else
+		{
+			Arrays.sort(values);
+		}
+	}
+
+	/**
+	 * Sorts keys on the threads of the pool that this runs in, or on the 
+	 * calling thread.
+	 */
+	private static <T extends Comparable<? super T>> void parallelSort(
+			T[] values)
+	{
+		if (ForkJoinTask.inForkJoinPool())
+		{
+			Arrays.parallelSort(values);
+		}
+		else
+		{
+			Arrays.sort(values);
+		}
+	}
+
+	/**
+	 * Runs tasks on the threads of the pool that this runs in, or one after 
+	 * another on the calling thread.
+	 */
+	private static void invokeAll(Collection<? extends ForkJoinTask<?>> tasks)
+	{
+		if (ForkJoinTask.inForkJoinPool())
+		{
+			ForkJoinTask.invokeAll(tasks);
+		}
+		else
+		{
+			for (ForkJoinTask<?> task : tasks)
+			{
+				task.invoke();
+			}
+		}
+	}
+
+	/**
+	 * Ranks the values of a text field by collation, computing the 
+	 * CollationKey of each distinct value once.
+	 * @return the rank of each song's value, where values that collate the
+	 * same have the same rank
+	 */
+	private int[] textRanks(SongField field, Collator collator)
+	{
+		int size = songs.size();
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		ArrayList<String> values = new ArrayList<String>();
+		int[] rowIds = new int[size];
+		for (int row = 0; row < size; row++)
+		{
+			String value = field.getText(songs.get(row));
+			Integer id = ids.get(value);
+			if (id == null)
+			{
+				id = values.size();
+				ids.put(value, id);
+				values.add(value);
+			}
+			rowIds[row] = id;
+		}
+
+		//Collation keys are slow to make, so fields with many distinct 
+		//values, such as titles, make them on several threads.
+		CollationKey[] sorted = new CollationKey[values.size()];
+		ArrayList<ForkJoinTask<?>> keyTasks = new ArrayList<ForkJoinTask<?>>();
+		for (int start = 0; start < sorted.length; start += PARALLEL_SIZE)
+		{
+			int from = start;
+			int to = Math.min(sorted.length, start + PARALLEL_SIZE);
+			Collator partCollator = (Collator) collator.clone();
+			keyTasks.add(ForkJoinTask.adapt(() -> 
+			{
+				for (int id = from; id < to; id++)
+				{
+					sorted[id] = partCollator.getCollationKey(values.get(id));
+				}
+			}));
+		}
+		invokeAll(keyTasks);
+		parallelSort(sorted);
+		int[] idRanks = new int[sorted.length];
+		int rank = -1;
+		for (int i = 0; i < sorted.length; i++)
+		{
+			if (i == 0 || sorted[i].compareTo(sorted[i - 1]) != 0)
+			{
+				rank++;
+			}
+			idRanks[ids.get(sorted[i].getSourceString())] = rank;
+		}
+		int[] ranks = new int[size];
+		for (int row = 0; row < size; row++)
+		{
+			ranks[row] = idRanks[rowIds[row]];
+		}
+		return ranks;
+	}
+
+	/**
+	 * @return the rank of each song's value of a numeric field
+	 */
+	private int[] numberRanks(SongField field)
+	{
+		long[] values = new long[songs.size()];
+		for (int row = 0; row < values.length; row++)
+		{
+			values[row] = field.getNumber(songs.get(row));
+		}
+		return rank(values);
+	}
+
+	/**
+	 * Sorts the songs in an order. The songs are first sorted by the least 
+	 * significant field and then, for each field before it, by that field 
+	 * and their positions in the previous order, so that the last sort 
+	 * orders them by every field.
+	 * @return the rows of the songs in the order
+	 */
+	private int[] sort(SongOrder order, EnumMap<SongField, int[]> ranks)
+	{
+		int size = songs.size();
+		SongField[] fields = order.getFields();
+		//Packing the row last keeps equal songs in library order.
+		int[] last = ranks.get(fields[fields.length - 1]);
+		long[] packed = new long[size];
+		for (int row = 0; row < size; row++)
+		{
+			packed[row] = ((long) last[row] << 32) | row;
+		}
+		parallelSort(packed);
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			rows[i] = (int) packed[i];
+		}
+
+		int[] positions = new int[size];
+		for (int f = fields.length - 2; f >= 0; f--)
+		{
+			int[] major = ranks.get(fields[f]);
+			for (int i = 0; i < size; i++)
+			{
+				positions[rows[i]] = i;
+			}
+			for (int row = 0; row < size; row++)
+			{
+				packed[row] = ((long) major[row] << 32) | positions[row];
+			}
+			parallelSort(packed);
+			int[] previous = rows.clone();
+			for (int i = 0; i < size; i++)
+			{
+				rows[i] = previous[(int) packed[i]];
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * @param keys some numbers, which are not modified
+	 * @return the rank of each number among the distinct numbers, from 0
+	 */
+	private static int[] rank(long[] keys)
+	{
+		long[] distinct = keys.clone();
+		parallelSort(distinct);
+		int distinctCount = 0;
+		for (int i = 0; i < distinct.length; i++)
+		{
+			if (i == 0 || distinct[i] != distinct[i - 1])
+			{
+				distinct[distinctCount++] = distinct[i];
+			}
+		}
+		int[] ranks = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+		{
+			ranks[i] = Arrays.binarySearch(distinct, 0, distinctCount, keys[i]);
+		}
+		return ranks;
+	}
+}
@@ -0,0 +1,197 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Statistics about a group of songs, such as the songs by one artist: how 
+ * many there are, their average bit rate, how they are rated, and their total
+ * duration, file size and play count. The statistics are kept in primitive 
+ * counters that songs are added to one at a time, and the statistics of two 
+ * groups can be merged, so they can be computed in one pass over a library or
+ * in parallel. Statistics are not thread safe.
+ */
+public class SongStatistics 
+{
+	//The highest rating that Rhythmbox gives a song.
+	public static final int MAX_RATING = 5;
+	//The fields of the songs that the statistics use.
+	static final Set<SongField> FIELDS = Collections.unmodifiableSet(
+			EnumSet.of(SongField.RATING, SongField.BIT_RATE, SongField.DURATION,
+					SongField.FILE_SIZE, SongField.PLAY_COUNT, 
+					SongField.LAST_PLAYED));
+
+	//The number of songs.
+	private long trackCount;
+	//The sum and number of the bit rates of the songs whose bit rate is 
+	//known.
+	private long bitRateTotal;
+	private long bitRateCount;
+	//The number of songs with each rating, indexed by the rating.
+	private long[] ratingCounts;
+	//The sums of the songs' durations, file sizes and play counts.
+	private long totalDuration;
+	private long totalFileSize;
+	private long totalPlayCount;
+	//When one of the songs was last played, or 0 if none were played.
+	private long lastPlayed;
+
+	public SongStatistics()
+	{
+		trackCount = 0;
+		bitRateTotal = 0;
+		bitRateCount = 0;
+		ratingCounts = new long[MAX_RATING + 1];
+		totalDuration = 0;
+		totalFileSize = 0;
+		totalPlayCount = 0;
+		lastPlayed = 0;
+	}
+
+	/**
+	 * Adds a song to the statistics.
+	 * @param song the song
+	 */
+	public void add(Song song)
+	{
+		trackCount++;
+		if (song.getBitRate() > 0)
+		{
+			bitRateTotal += song.getBitRate();
+			bitRateCount++;
+		}
+		int rating = song.getRating();
+		if (rating >= 0 && rating <= MAX_RATING)
+		{
+			ratingCounts[rating]++;
+		}
+		totalDuration += song.getDuration();
+		totalFileSize += song.getFileSize();
+		totalPlayCount += song.getPlayCount();
+		lastPlayed = Math.max(lastPlayed, song.getLastPlayed());
+	}
+
+	/**
+	 * Adds the songs of other statistics to these statistics, as if each of 
+	 * them had been added.
+	 * @param other the other statistics, which are not changed
+	 */
+	public void merge(SongStatistics other)
+	{
+		trackCount += other.trackCount;
+		bitRateTotal += other.bitRateTotal;
+		bitRateCount += other.bitRateCount;
+		for (int i = 0; i < ratingCounts.length; i++)
+		{
+			ratingCounts[i] += other.ratingCounts[i];
+		}
+		totalDuration += other.totalDuration;
+		totalFileSize += other.totalFileSize;
+		totalPlayCount += other.totalPlayCount;
+		lastPlayed = Math.max(lastPlayed, other.lastPlayed);
+	}
+
+	/**
+	 * @return The number of songs.
+	 */
+	public long getTrackCount()
+	{
+		return trackCount;
+	}
+
+	/**
+	 * @return The average bit rate of the songs whose bit rate is known, or 0
+	 * if no bit rates are known.
+	 */
+	public double getAverageBitRate()
+	{
+		return bitRateCount == 0 ? 0 : (double) bitRateTotal / bitRateCount;
+	}
+
+	/**
+	 * @param rating a rating from 0 (not rated) to {@link #MAX_RATING}
+	 * @return The number of songs with the rating.
+	 */
+	public long getRatingCount(int rating)
+	{
+		if (rating < 0 || rating > MAX_RATING)
+		{
+			throw new IllegalArgumentException("A rating must be from 0 to " + 
+					MAX_RATING);
+		}
+		return ratingCounts[rating];
+	}
+
+	/**
+	 * @return The number of songs with each rating, indexed by the rating. 
+	 * Songs with a rating outside of 0 to {@link #MAX_RATING} are not 
+	 * counted.
+	 */
+	public long[] getRatingDistribution()
+	{
+		return ratingCounts.clone();
+	}
+
+	/**
+	 * @return The total duration of the songs in seconds.
+	 */
+	public long getTotalDuration()
+	{
+		return totalDuration;
+	}
+
+	/**
+	 * @return The total size of the songs' files in bytes.
+	 */
+	public long getTotalFileSize()
+	{
+		return totalFileSize;
+	}
+
+	/**
+	 * @return The number of times that the songs were played.
+	 */
+	public long getTotalPlayCount()
+	{
+		return totalPlayCount;
+	}
+
+	/**
+	 * @return When one of the songs was last played, in seconds since the 
+	 * epoch, or 0 if none of them were played.
+	 */
+	public long getLastPlayed()
+	{
+		return lastPlayed;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return String.format("%d tracks, %.0f kbps average, %d:%02d:%02d, " +
+				"%d MB, %d plays", trackCount, getAverageBitRate(), 
+				totalDuration / 3600, totalDuration / 60 % 60, 
+				totalDuration % 60, totalFileSize / (1024 * 1024), 
+				totalPlayCount);
+	}
+}
@@ -0,0 +1,643 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A columnar store for the songs in a Rhythmbox library, which uses much less
+ * memory than an array list of {@link Song} objects. The numeric fields are 
+ * kept in int arrays, the artists, albums, genres, album artists and 
+ * comments are kept as numbers into one dictionary of distinct strings, and
+ * only the titles and locations are kept as one string per song. Songs are 
+ * read through lightweight {@link SongView} objects that implement the Song 
+ * getters. A table cannot be modified once it is built.
+ */
+public class SongTable 
+{
+	//The sizes used to estimate memory usage, for a 64-bit JVM with 
+	//compressed references.
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+
+	//The number of songs.
+	private int size;
+	//The titles and locations of the songs.
+	private String[] titles;
+	private String[] locations;
+	//The distinct artists, albums, genres, album artists and comments, and 
+	//the numbers of each song's values in it.
+	private String[] dictionary;
+	private int[] artistIds;
+	private int[] albumIds;
+	private int[] genreIds;
+	private int[] albumArtistIds;
+	private int[] commentIds;
+	//The numeric fields of the songs.
+	private int[] trackNums;
+	private int[] ratings;
+	private int[] discNums;
+	private int[] bitRates;
+	private int[] bpms;
+	private int[] durations;
+	private long[] fileSizes;
+	private int[] playCounts;
+	private long[] lastPlayed;
+	private long[] firstSeen;
+	private long[] mtimes;
+
+	private SongTable()
+	{
+	}
+
+	/**
+	 * Builds a table that holds the same information as a list of songs.
+	 * @param songs the songs
+	 * @return the table
+	 */
+	public static SongTable of(List<Song> songs)
+	{
+		Builder builder = new Builder();
+		for (Song song : songs)
+		{
+			builder.add(song);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return The number of songs in the table.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns a view of a song in the table. Views are small objects that 
+	 * read the song's information from the table when their getters are 
+	 * called.
+	 * @param row the song's position in the table
+	 * @return a view of the song
+	 */
+	public SongView get(int row)
+	{
+		checkRow(row);
+		return new SongView(row);
+	}
+
+	/**
+	 * @return A read-only list of views of the songs in the table.
+	 */
+	public List<Song> asList()
+	{
+		return new AbstractList<Song>()
+		{
+			public Song get(int row)
+			{
+				return SongTable.this.get(row);
+			}
+
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's title.
+	 */
+	public String getTitle(int row)
+	{
+		return titles[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's artist.
+	 */
+	public String getArtist(int row)
+	{
+		return dictionary[artistIds[row]];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's album.
+	 */
+	public String getAlbum(int row)
+	{
+		return dictionary[albumIds[row]];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's hard drive location.
+	 */
+	public String getLocation(int row)
+	{
+		return locations[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's genre.
+	 */
+	public String getGenre(int row)
+	{
+		return dictionary[genreIds[row]];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's track number.
+	 */
+	public int getTrackNumber(int row)
+	{
+		return trackNums[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's rating.
+	 */
+	public int getRating(int row)
+	{
+		return ratings[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's disc number.
+	 */
+	public int getDiscNumber(int row)
+	{
+		return discNums[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's bit rate.
+	 */
+	public int getBitRate(int row)
+	{
+		return bitRates[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's album artist.
+	 */
+	public String getAlbumArtist(int row)
+	{
+		return dictionary[albumArtistIds[row]];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's comments.
+	 */
+	public String getComments(int row)
+	{
+		return dictionary[commentIds[row]];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's BPM (beats per minute).
+	 */
+	public int getBPM(int row)
+	{
+		return bpms[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The song's duration in seconds.
+	 */
+	public int getDuration(int row)
+	{
+		return durations[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The size of the song's file in bytes.
+	 */
+	public long getFileSize(int row)
+	{
+		return fileSizes[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return The number of times that the song was played.
+	 */
+	public int getPlayCount(int row)
+	{
+		return playCounts[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return When the song was last played, in seconds since the epoch.
+	 */
+	public long getLastPlayed(int row)
+	{
+		return lastPlayed[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return When Rhythmbox first found the song, in seconds since the 
+	 * epoch.
+	 */
+	public long getFirstSeen(int row)
+	{
+		return firstSeen[row];
+	}
+
+	/**
+	 * @param row a song's position in the table
+	 * @return When the song's file was last modified, in seconds since the 
+	 * epoch.
+	 */
+	public long getModificationTime(int row)
+	{
+		return mtimes[row];
+	}
+
+	/**
+	 * Estimates the number of bytes of heap that the table uses, including 
+	 * its strings.
+	 * @return the estimated size in bytes
+	 */
+	public long estimateMemoryUsage()
+	{
+		IdentityHashMap<String, Boolean> counted = 
+				new IdentityHashMap<String, Boolean>();
+		long bytes = align(OBJECT_HEADER + 4 + 19 * REFERENCE);
+		bytes += 2 * referenceArraySize(size) + 12 * intArraySize(size) + 
+				4 * longArraySize(size);
+		bytes += referenceArraySize(dictionary.length);
+		for (int i = 0; i < size; i++)
+		{
+			bytes += stringSize(titles[i], counted);
+			bytes += stringSize(locations[i], counted);
+		}
+		for (String value : dictionary)
+		{
+			bytes += stringSize(value, counted);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the number of bytes of heap that an array list of songs uses,
+	 * including its Song objects and their strings, for comparison with 
+	 * {@link #estimateMemoryUsage()}. Strings that are shared between songs 
+	 * are only counted once.
+	 * @param songs the songs
+	 * @return the estimated size in bytes
+	 */
+	public static long estimateMemoryUsage(List<Song> songs)
+	{
+		IdentityHashMap<String, Boolean> counted = 
+				new IdentityHashMap<String, Boolean>();
+		long songSize = align(OBJECT_HEADER + 7 * REFERENCE + 7 * 4 + 4 * 8);
+		long bytes = align(OBJECT_HEADER + 4 + 4 + REFERENCE) + 
+				referenceArraySize(songs.size());
+		for (Song song : songs)
+		{
+			bytes += songSize;
+			bytes += stringSize(song.getTitle(), counted);
+			bytes += stringSize(song.getArtist(), counted);
+			bytes += stringSize(song.getAlbum(), counted);
+			bytes += stringSize(song.getLocation(), counted);
+			bytes += stringSize(song.getGenre(), counted);
+			bytes += stringSize(song.getAlbumArtist(), counted);
+			bytes += stringSize(song.getComments(), counted);
+		}
+		return bytes;
+	}
+
+	private void checkRow(int row)
+	{
+		if (row < 0 || row >= size)
+		{
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+	}
+
+	private static long stringSize(String string, 
+			IdentityHashMap<String, Boolean> counted)
+	{
+		if (counted.put(string, Boolean.TRUE) != null)
+		{
+			return 0;
+		}
+		boolean latin1 = true;
+		for (int i = 0; i < string.length() && latin1; i++)
+		{
+			latin1 = string.charAt(i) <= 0xff;
+		}
+		long valueSize = align(ARRAY_HEADER + (long) string.length() * 
+				(latin1 ? 1 : 2));
+		return align(OBJECT_HEADER + REFERENCE + 4 + 2) + valueSize;
+	}
+
+	private static long referenceArraySize(int length)
+	{
+		return align(ARRAY_HEADER + (long) length * REFERENCE);
+	}
+
+	private static long intArraySize(int length)
+	{
+		return align(ARRAY_HEADER + (long) length * 4);
+	}
+
+	private static long longArraySize(int length)
+	{
+		return align(ARRAY_HEADER + (long) length * 8);
+	}
+
+	private static long align(long bytes)
+	{
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * A song in a table. A view can be moved to another row, so that one view
+	 * can be reused to read every song in a table without creating objects.
+	 */
+	public class SongView extends Song
+	{
+		//The song's position in the table.
+		private int row;
+
+		private SongView(int row)
+		{
+			this.row = row;
+		}
+
+		/**
+		 * @return The song's position in the table.
+		 */
+		public int getRow()
+		{
+			return row;
+		}
+
+		/**
+		 * Makes the view show another song in the table.
+		 * @param row the other song's position in the table
+		 */
+		public void moveTo(int row)
+		{
+			checkRow(row);
+			this.row = row;
+		}
+
+		public String getTitle()
+		{
+			return titles[row];
+		}
+
+		public String getArtist()
+		{
+			return dictionary[artistIds[row]];
+		}
+
+		public String getAlbum()
+		{
+			return dictionary[albumIds[row]];
+		}
+
+		public String getLocation()
+		{
+			return locations[row];
+		}
+
+		public String getGenre()
+		{
+			return dictionary[genreIds[row]];
+		}
+
+		public int getTrackNumber()
+		{
+			return trackNums[row];
+		}
+
+		public int getRating()
+		{
+			return ratings[row];
+		}
+
+		public int getDiscNumber()
+		{
+			return discNums[row];
+		}
+
+		public int getBitRate()
+		{
+			return bitRates[row];
+		}
+
+		public String getAlbumArtist()
+		{
+			return dictionary[albumArtistIds[row]];
+		}
+
+		public String getComments()
+		{
+			return dictionary[commentIds[row]];
+		}
+
+		public int getBPM()
+		{
+			return bpms[row];
+		}
+
+		public int getDuration()
+		{
+			return durations[row];
+		}
+
+		public long getFileSize()
+		{
+			return fileSizes[row];
+		}
+
+		public int getPlayCount()
+		{
+			return playCounts[row];
+		}
+
+		public long getLastPlayed()
+		{
+			return lastPlayed[row];
+		}
+
+		public long getFirstSeen()
+		{
+			return firstSeen[row];
+		}
+
+		public long getModificationTime()
+		{
+			return mtimes[row];
+		}
+	}
+
+	/**
+	 * Builds a table one song at a time, so that a library can be parsed 
+	 * into a table without keeping its Song objects.
+	 */
+	public static class Builder
+	{
+		//The table that is built.
+		private SongTable table;
+		//The numbers of the strings in the table's dictionary.
+		private HashMap<String, Integer> dictionaryIds;
+		//The strings in the table's dictionary, in the order they were added.
+		private String[] dictionary;
+
+		public Builder()
+		{
+			table = new SongTable();
+			table.size = 0;
+			int capacity = 1024;
+			table.titles = new String[capacity];
+			table.locations = new String[capacity];
+			table.artistIds = new int[capacity];
+			table.albumIds = new int[capacity];
+			table.genreIds = new int[capacity];
+			table.albumArtistIds = new int[capacity];
+			table.commentIds = new int[capacity];
+			table.trackNums = new int[capacity];
+			table.ratings = new int[capacity];
+			table.discNums = new int[capacity];
+			table.bitRates = new int[capacity];
+			table.bpms = new int[capacity];
+			table.durations = new int[capacity];
+			table.fileSizes = new long[capacity];
+			table.playCounts = new int[capacity];
+			table.lastPlayed = new long[capacity];
+			table.firstSeen = new long[capacity];
+			table.mtimes = new long[capacity];
+			dictionaryIds = new HashMap<String, Integer>();
+			dictionary = new String[256];
+		}
+
+		/**
+		 * Adds a song after the songs that were already added.
+		 * @param song the song to add
+		 */
+		public void add(Song song)
+		{
+			if (table == null)
+			{
+				throw new IllegalStateException("The table was already built");
+			}
+			if (table.size == table.titles.length)
+			{
+				resize(table.size * 2);
+			}
+			int row = table.size++;
+			table.titles[row] = song.getTitle();
+			table.locations[row] = song.getLocation();
+			table.artistIds[row] = dictionaryId(song.getArtist());
+			table.albumIds[row] = dictionaryId(song.getAlbum());
+			table.genreIds[row] = dictionaryId(song.getGenre());
+			table.albumArtistIds[row] = dictionaryId(song.getAlbumArtist());
+			table.commentIds[row] = dictionaryId(song.getComments());
+			table.trackNums[row] = song.getTrackNumber();
+			table.ratings[row] = song.getRating();
+			table.discNums[row] = song.getDiscNumber();
+			table.bitRates[row] = song.getBitRate();
+			table.bpms[row] = song.getBPM();
+			table.durations[row] = song.getDuration();
+			table.fileSizes[row] = song.getFileSize();
+			table.playCounts[row] = song.getPlayCount();
+			table.lastPlayed[row] = song.getLastPlayed();
+			table.firstSeen[row] = song.getFirstSeen();
+			table.mtimes[row] = song.getModificationTime();
+		}
+
+		/**
+		 * Finishes the table, trimming its columns to the number of songs.
+		 * The builder cannot be used after this.
+		 * @return the table
+		 */
+		public SongTable build()
+		{
+			SongTable result = table;
+			resize(result.size);
+			result.dictionary = Arrays.copyOf(dictionary, dictionaryIds.size());
+			table = null;
+			dictionaryIds = null;
+			dictionary = null;
+			return result;
+		}
+
+		private int dictionaryId(String value)
+		{
+			Integer id = dictionaryIds.get(value);
+			if (id == null)
+			{
+				id = dictionaryIds.size();
+				if (id == dictionary.length)
+				{
+					dictionary = Arrays.copyOf(dictionary, id * 2);
+				}
+				dictionary[id] = value;
+				dictionaryIds.put(value, id);
+			}
+			return id;
+		}
+
+		private void resize(int capacity)
+		{
+			table.titles = Arrays.copyOf(table.titles, capacity);
+			table.locations = Arrays.copyOf(table.locations, capacity);
+			table.artistIds = Arrays.copyOf(table.artistIds, capacity);
+			table.albumIds = Arrays.copyOf(table.albumIds, capacity);
+			table.genreIds = Arrays.copyOf(table.genreIds, capacity);
+			table.albumArtistIds = Arrays.copyOf(table.albumArtistIds, capacity);
+			table.commentIds = Arrays.copyOf(table.commentIds, capacity);
+			table.trackNums = Arrays.copyOf(table.trackNums, capacity);
+			table.ratings = Arrays.copyOf(table.ratings, capacity);
+			table.discNums = Arrays.copyOf(table.discNums, capacity);
+			table.bitRates = Arrays.copyOf(table.bitRates, capacity);
+			table.bpms = Arrays.copyOf(table.bpms, capacity);
+			table.durations = Arrays.copyOf(table.durations, capacity);
+			table.fileSizes = Arrays.copyOf(table.fileSizes, capacity);
+			table.playCounts = Arrays.copyOf(table.playCounts, capacity);
+			table.lastPlayed = Arrays.copyOf(table.lastPlayed, capacity);
+			table.firstSeen = Arrays.copyOf(table.firstSeen, capacity);
+			table.mtimes = Arrays.copyOf(table.mtimes, capacity);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The new values of some of the fields of a song that a {@link 
+ * LibraryRewriter} writes back into a library: its rating, play count, the 
+ * time it was last played and its comment. The fields that are not set keep
+ * the values that they have in the library. The setters return the update, 
+ * so that they can be chained:
+ * new SongUpdate().setRating(5).setPlayCount(12)
+ */
+public class SongUpdate 
+{
+	//The new text of each field that is set, in the order that the fields
+	//are declared.
+	private EnumMap<SongField, String> values;
+
+	public SongUpdate()
+	{
+		values = new EnumMap<SongField, String>(SongField.class);
+	}
+
+	/**
+	 * @param rating the new rating, from 0 to {@link 
+	 * SongStatistics#MAX_RATING}
+	 * @return this update
+	 */
+	public SongUpdate setRating(int rating)
+	{
+		if (rating < 0 || rating > SongStatistics.MAX_RATING)
+		{
+			throw new IllegalArgumentException("The rating must be from 0 to " +
+					SongStatistics.MAX_RATING);
+		}
+		values.put(SongField.RATING, Integer.toString(rating));
+		return this;
+	}
+
+	/**
+	 * @param playCount the new number of times that the song was played
+	 * @return this update
+	 */
+	public SongUpdate setPlayCount(int playCount)
+	{
+		if (playCount < 0)
+		{
+			throw new IllegalArgumentException("The play count cannot be " +
+					"negative");
+		}
+		values.put(SongField.PLAY_COUNT, Integer.toString(playCount));
+		return this;
+	}
+
+	/**
+	 * @param lastPlayed the new time that the song was last played, in 
+	 * seconds since the epoch
+	 * @return this update
+	 */
+	public SongUpdate setLastPlayed(long lastPlayed)
+	{
+		if (lastPlayed < 0)
+		{
+			throw new IllegalArgumentException("The time last played cannot " +
+					"be negative");
+		}
+		values.put(SongField.LAST_PLAYED, Long.toString(lastPlayed));
+		return this;
+	}
+
+	/**
+	 * @param comment the new comment, or "" to clear it, which cannot have 
+	 * characters that XML cannot hold, such as control characters other than
+	 * tabs and line breaks
+	 * @return this update
+	 */
+	public SongUpdate setComment(String comment)
+	{
+		if (comment == null)
+		{
+			throw new IllegalArgumentException("The comment cannot be null");
+		}
+		for (int i = 0; i < comment.length(); i++)
+		{
+			char c = comment.charAt(i);
+			boolean valid;
+			if (Character.isHighSurrogate(c))
+			{
+				valid = i + 1 < comment.length() && 
+						Character.isLowSurrogate(comment.charAt(++i));
+			}
+			else
+			{
+				valid = c >= 0x20 ? c < '\ufffe' && 
+						!Character.isLowSurrogate(c) : 
+							c == '\t' || c == '\n' || c == '\r';
+			}
+			if (!valid)
+			{
+				throw new IllegalArgumentException("The comment cannot be " +
+						"written to XML: it has an invalid character at " + i);
+			}
+		}
+		values.put(SongField.COMMENTS, comment);
+		return this;
+	}
+
+	/**
+	 * @return The new text of each field that is set.
+	 */
+	Map<SongField, String> getValues()
+	{
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString()
+	{
+		return "SongUpdate" + values;
+	}
+}
@@ -0,0 +1,197 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A bounded table of strings that is used while a library is parsed, so that
+ * songs with the same artist, album or genre share one String object instead
+ * of each having their own copy. Strings are looked up directly from the 
+ * characters or UTF-8 bytes that were read, so no String is created when the
+ * table already has one. The table has a fixed number of slots and a string 
+ * replaces whatever was in its slot, so it never grows no matter how many 
+ * distinct strings a library has. Unlike {@link String#intern()}, the strings 
+ * can be garbage collected along with the table once parsing is done. A 
+ * deduplicator is not thread safe.
+ */
+class StringDeduplicator 
+{
+	//The default number of slots.
+	static final int DEFAULT_CAPACITY = 1 << 14;
+
+	//The strings in each slot.
+	private String[] strings;
+	//The UTF-8 bytes of the strings in each slot, for strings that were 
+	//looked up by their bytes.
+	private byte[][] encoded;
+	//The estimated size in bytes of the string in each slot.
+	private int[] sizes;
+	//Picks a slot from a hash.
+	private int mask;
+	//The number of lookups that found a string, and those that did not.
+	private long hits;
+	private long misses;
+	//The estimated number of bytes that were not allocated because a string
+	//was found.
+	private long bytesSaved;
+
+	/**
+	 * @param capacity the number of strings that the table can hold, which 
+	 * is rounded up to a power of two
+	 */
+	public StringDeduplicator(int capacity)
+	{
+		if (capacity < 1 || capacity > 1 << 30)
+		{
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		}
+		int slots = Integer.highestOneBit(capacity);
+		if (slots < capacity)
+		{
+			slots <<= 1;
+		}
+		strings = new String[slots];
+		sizes = new int[slots];
+		mask = slots - 1;
+	}
+
+	/**
+	 * Returns a string with the given characters, which is the same String 
+	 * object as the last time that these characters were looked up if it is
+	 * still in the table.
+	 * @param chars holds the characters
+	 * @param start the position of the first character
+	 * @param length the number of characters
+	 * @return the string
+	 */
+	public String deduplicate(char[] chars, int start, int length)
+	{
+		if (length == 0)
+		{
+			return "";
+		}
+		int hash = 0;
+		for (int i = start; i < start + length; i++)
+		{
+			hash = 31 * hash + chars[i];
+		}
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		String string = strings[slot];
+		if (string != null && string.length() == length)
+		{
+			int i = 0;
+			while (i < length && string.charAt(i) == chars[start + i])
+			{
+				i++;
+			}
+			if (i == length)
+			{
+				return hit(slot);
+			}
+		}
+
+		string = new String(chars, start, length);
+		if (encoded != null)
+		{
+			encoded[slot] = null;
+		}
+		miss(slot, string);
+		return string;
+	}
+
+	/**
+	 * Returns a string decoded from the given UTF-8 bytes, which is the same
+	 * String object as the last time that these bytes were looked up if it is
+	 * still in the table.
+	 * @param utf8 holds the bytes
+	 * @param start the position of the first byte
+	 * @param length the number of bytes
+	 * @return the string
+	 */
+	public String deduplicate(byte[] utf8, int start, int length)
+	{
+		if (length == 0)
+		{
+			return "";
+		}
+		if (encoded == null)
+		{
+			encoded = new byte[strings.length][];
+		}
+		int hash = 0;
+		for (int i = start; i < start + length; i++)
+		{
+			hash = 31 * hash + utf8[i];
+		}
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		byte[] bytes = encoded[slot];
+		if (bytes != null && bytes.length == length)
+		{
+			int i = 0;
+			while (i < length && bytes[i] == utf8[start + i])
+			{
+				i++;
+			}
+			if (i == length)
+			{
+				return hit(slot);
+			}
+		}
+
+		bytes = new byte[length];
+		System.arraycopy(utf8, start, bytes, 0, length);
+		encoded[slot] = bytes;
+		String string = new String(bytes, StandardCharsets.UTF_8);
+		miss(slot, string);
+		return string;
+	}
+
+	/**
+	 * @return The number of lookups so far that found their string, and the 
+	 * bytes that were saved by them.
+	 */
+	public DedupStatistics getStatistics()
+	{
+		return new DedupStatistics(hits, misses, bytesSaved);
+	}
+
+	private String hit(int slot)
+	{
+		hits++;
+		bytesSaved += sizes[slot];
+		return strings[slot];
+	}
+
+	private void miss(int slot, String string)
+	{
+		misses++;
+		strings[slot] = string;
+		boolean latin1 = true;
+		for (int i = 0; i < string.length() && latin1; i++)
+		{
+			latin1 = string.charAt(i) <= 0xff;
+		}
+		//A String object and its array of bytes, which holds one byte per 
+		//character when every character is Latin-1 and two otherwise.
+		int valueSize = 16 + string.length() * (latin1 ? 1 : 2);
+		sizes[slot] = 24 + ((valueSize + 7) & ~7);
+	}
+}
@@ -0,0 +1,203 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that libraries are parsed in the background with progress reports, 
+ *that concurrent parses are shared and that a parse can be cancelled.
+ */
+public class TestAsyncParse 
+{
+	//Holds the generated library.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	//The location of a library of several megabytes, and its songs.
+	private String libLocation;
+	private ArrayList<Song> reference;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		File library = folder.newFile("generated.xml");
+		new LibraryGenerator(5).generate(library.getPath(), 20000);
+		libLocation = library.getPath();
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(libLocation);
+		parser.parseLibrary();
+		reference = parser.returnSongs();
+	}
+
+	/**
+	 * Reports progress that only grows and ends with the whole library, and
+	 * no more often than the interval.
+	 */
+	@Test
+	public void testProgress() throws Exception
+	{
+		long size = new File(libLocation).length();
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser parser = 
+					new RhythmboxXMLLibraryParser(libLocation);
+			parser.setParseEngine(engine);
+			List<ParseProgress> reports = new ArrayList<ParseProgress>();
+			parser.addProgressListener(reports::add);
+			parser.setProgressIntervalMillis(0);
+			parser.parseLibrary();
+			assertTrue(engine.toString(), reports.size() > 10);
+			for (int i = 1; i < reports.size(); i++)
+			{
+				assertTrue(reports.get(i).getBytesRead() >= 
+						reports.get(i - 1).getBytesRead());
+				assertTrue(reports.get(i).getSongsParsed() >= 
+						reports.get(i - 1).getSongsParsed());
+			}
+			ParseProgress last = reports.get(reports.size() - 1);
+			assertEquals(size, last.getTotalBytes());
+			assertEquals(size, last.getBytesRead());
+			assertEquals(1, last.getFraction(), 0);
+			assertEquals(reference.size(), last.getSongsParsed());
+
+			reports.clear();
+			parser.setProgressIntervalMillis(TimeUnit.HOURS.toMillis(1));
+			parser.parseLibrary();
+			assertEquals(1, reports.size());
+			assertEquals(reference.size(), reports.get(0).getSongsParsed());
+		}
+	}
+
+	/**
+	 * Parses the library in the background, sharing the parse between calls
+	 * that are made while it runs.
+	 */
+	@Test
+	public void testAsync() throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(libLocation);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		parser.addProgressListener(progress -> 
+		{
+			started.countDown();
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		});
+		CompletableFuture<List<Song>> first = parser.parseLibraryAsync();
+		started.await();
+		assertSame(first, parser.parseLibraryAsync());
+		release.countDown();
+		assertEquals(reference, first.get(30, TimeUnit.SECONDS));
+		assertEquals(reference, parser.returnSongs());
+
+		CompletableFuture<List<Song>> second = parser.parseLibraryAsync();
+		assertNotSame(first, second);
+		assertEquals(reference, second.get(30, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Stops a parse with every engine once it is cancelled, and parses the 
+	 * library again afterwards.
+	 */
+	@Test
+	public void testCancel() throws Exception
+	{
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser parser = 
+					new RhythmboxXMLLibraryParser(libLocation);
+			parser.setParseEngine(engine);
+			parser.setProgressIntervalMillis(0);
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch cancelled = new CountDownLatch(1);
+			List<ParseProgress> reports = 
+					new CopyOnWriteArrayList<ParseProgress>();
+			parser.addProgressListener(progress -> 
+			{
+				reports.add(progress);
+				started.countDown();
+				try
+				{
+					cancelled.await();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			});
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			CompletableFuture<List<Song>> parse = 
+					parser.parseLibraryAsync(executor);
+			started.await();
+			assertTrue(parse.cancel(true));
+			cancelled.countDown();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+			assertTrue(parse.isCancelled());
+			try
+			{
+				parse.get();
+				fail(engine + " parse was not cancelled");
+			}
+			catch (CancellationException e)
+			{
+				//The parse was cancelled.
+			}
+			ParseProgress last = reports.get(reports.size() - 1);
+			assertTrue(engine.toString(), last.getFraction() < 1);
+			assertTrue(engine.toString(), 
+					last.getSongsParsed() < reference.size());
+			assertTrue(parser.returnSongs().isEmpty());
+
+			CompletableFuture<List<Song>> again = parser.parseLibraryAsync();
+			assertNotSame(parse, again);
+			try
+			{
+				assertEquals(reference, again.get(30, TimeUnit.SECONDS));
+			}
+			catch (ExecutionException e)
+			{
+				throw new AssertionError(engine.toString(), e.getCause());
+			}
+		}
+	}
+}
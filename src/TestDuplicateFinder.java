@@ -0,0 +1,153 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that a {@link DuplicateFinder} groups copies of the same track and 
+ *nothing else, and that it finds the same copies on any number of threads.
+ */
+public class TestDuplicateFinder 
+{
+	//Holds the generated library.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Song song(String title, String artist, String album, 
+			String location, int bitRate, int duration, long fileSize)
+	{
+		return new Song(title, artist, album, location, "Rock", 1, 0, 1, 
+				bitRate, artist, "", 0, duration, fileSize, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Checks which songs are copies and which copy is kept.
+	 */
+	@Test
+	public void testClusters()
+	{
+		Song low = song("Hey Jude", "The Beatles", "1", "a.mp3", 128, 431, 
+				6896000);
+		Song high = song("hey jude!", "the beatles", "1", "b.mp3", 320, 430, 
+				17200000);
+		Song same = song("Hey Jude", "The Beatles", "1", "c.mp3", 128, 431, 
+				6900000);
+		Song longer = song("Hey Jude", "The Beatles", "1", "d.mp3", 128, 480, 
+				7680000);
+		Song otherAlbum = song("Hey Jude", "The Beatles", "Past Masters", 
+				"e.mp3", 128, 431, 6896000);
+		Song resized = song("Caf\u00e9", "Sigur R\u00f3s", "()", "f.mp3", 256, 
+				200, 6400000);
+		Song cafe = song("cafe", "Sigur Ros", "", "g.mp3", 256, 200, 8000000);
+		Song untitled = song("", "Nobody", "", "h.mp3", 128, 100, 1600000);
+		Song untitledCopy = song("", "Nobody", "", "i.mp3", 128, 100, 1600000);
+		List<Song> songs = Arrays.asList(low, high, same, longer, otherAlbum, 
+				resized, cafe, untitled, untitledCopy);
+
+		List<DuplicateCluster> clusters = 
+				new DuplicateFinder().findDuplicates(songs);
+		assertEquals(1, clusters.size());
+		DuplicateCluster cluster = clusters.get(0);
+		assertEquals(Arrays.asList(low, high, same), cluster.getSongs());
+		assertSame(high, cluster.getKeeper());
+		assertEquals(Arrays.asList(low, same), cluster.getDuplicates());
+
+		DuplicateFinder tolerant = new DuplicateFinder();
+		tolerant.setDurationTolerance(60);
+		tolerant.setFileSizeTolerance(0.5);
+		tolerant.setKeeperOrder(DuplicateFinder.BEST_QUALITY.reversed());
+		clusters = tolerant.findDuplicates(songs);
+		assertEquals(2, clusters.size());
+		assertEquals(Arrays.asList(low, high, same, longer), 
+				clusters.get(0).getSongs());
+		assertSame(low, clusters.get(0).getKeeper());
+		assertEquals(Arrays.asList(resized, cafe), clusters.get(1).getSongs());
+	}
+
+	/**
+	 * Adds lower bit rate copies of some of the songs of a generated library
+	 * and checks that they are found, with the same result on one thread as
+	 * on several.
+	 */
+	@Test
+	public void testGeneratedLibrary() throws Exception
+	{
+		File library = folder.newFile("rhythmdb.xml");
+		new LibraryGenerator(3).generate(library.getPath(), 30000);
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.setParseEngine(ParseEngine.MAPPED);
+		parser.parseLibrary();
+		List<Song> songs = new ArrayList<Song>(parser.returnSongs());
+		IdentityHashMap<Song, Song> copies = new IdentityHashMap<Song, Song>();
+		int size = songs.size();
+		for (int i = 0; i < size; i += 10)
+		{
+			Song original = songs.get(i);
+			if (original.getTitle().isEmpty() || original.getBitRate() <= 64)
+			{
+				continue;
+			}
+			Song copy = song(original.getTitle().toUpperCase(), 
+					original.getArtist(), original.getAlbum(), 
+					original.getLocation() + ".copy", 64, 
+					original.getDuration() + 1, 
+					(long) original.getDuration() * 64 * 125);
+			copies.put(copy, original);
+			songs.add(copy);
+		}
+
+		DuplicateFinder sequential = new DuplicateFinder();
+		sequential.setParallelism(1);
+		List<DuplicateCluster> expected = sequential.findDuplicates(songs);
+		DuplicateFinder parallel = new DuplicateFinder();
+		parallel.setParallelism(4);
+		List<DuplicateCluster> clusters = parallel.findDuplicates(songs);
+		assertEquals(expected.size(), clusters.size());
+		for (int i = 0; i < clusters.size(); i++)
+		{
+			assertEquals(expected.get(i).getSongs(), clusters.get(i).getSongs());
+			assertSame(expected.get(i).getKeeper(), clusters.get(i).getKeeper());
+		}
+
+		int found = 0;
+		for (DuplicateCluster cluster : clusters)
+		{
+			for (Song song : cluster.getSongs())
+			{
+				Song original = copies.get(song);
+				if (original != null)
+				{
+					assertTrue(cluster.getSongs().contains(original));
+					assertNotSame(song, cluster.getKeeper());
+					found++;
+				}
+			}
+		}
+		assertEquals(copies.size(), found);
+	}
+}
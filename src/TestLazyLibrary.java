@@ -0,0 +1,175 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+/**
+ *Tests that a {@link LazyLibrary} materializes the same songs as the parser,
+ *and that its cache keeps the songs that were accessed most recently.
+ */
+public class TestLazyLibrary 
+{
+	//Holds the generated libraries.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Parses a library into songs with the SAX engine.
+	 */
+	private ArrayList<Song> parse(String libLocation) throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(libLocation);
+		parser.parseLibrary();
+		return parser.returnSongs();
+	}
+
+	/**
+	 * Materializes every song of my condensed library and of a generated one.
+	 */
+	@Test
+	public void testSongs() throws ParserConfigurationException, SAXException,
+		IOException
+	{
+		File generated = folder.newFile("generated.xml");
+		new LibraryGenerator(7).generate(generated.getPath(), 3000);
+		for (String libLocation : new String[] {"testXMLlibrary", 
+				generated.getPath()})
+		{
+			ArrayList<Song> reference = parse(libLocation);
+			LazyLibrary library = 
+					new RhythmboxXMLLibraryParser(libLocation).parseLibraryLazily();
+			assertEquals(reference.size(), library.size());
+			byte[] bytes = Files.readAllBytes(new File(libLocation).toPath());
+			for (int row = library.size() - 1; row >= 0; row--)
+			{
+				assertEquals(reference.get(row).getTitle(), library.getTitle(row));
+				assertEquals(reference.get(row).getLocation(), 
+						library.getLocation(row));
+				assertEquals(reference.get(row), library.get(row));
+				String entry = new String(bytes, library.getOffset(row), 
+						library.getLength(row), StandardCharsets.UTF_8);
+				assertTrue(entry.startsWith("<entry"));
+				assertTrue(entry.endsWith("</entry>"));
+			}
+			assertEquals(reference, library.asList());
+		}
+	}
+
+	/**
+	 * Keeps the songs that were accessed most recently and counts the hits.
+	 */
+	@Test
+	public void testCache() throws IOException, SAXException
+	{
+		File generated = folder.newFile("generated.xml");
+		new LibraryGenerator(11).generate(generated.getPath(), 500);
+		LazyLibrary library = new LazyLibrary(generated.getPath());
+		library.setCacheCapacity(10);
+		for (int pass = 0; pass < 2; pass++)
+		{
+			for (int row = 0; row < 10; row++)
+			{
+				library.get(row);
+			}
+		}
+		CacheStatistics statistics = library.getCacheStatistics();
+		assertEquals(10, statistics.getMisses());
+		assertEquals(10, statistics.getHits());
+		assertEquals(0.5, statistics.getHitRatio(), 1e-9);
+		assertEquals(10, statistics.getSize());
+
+		//Row 0 was accessed least recently, so it is evicted for row 10.
+		Song first = library.get(1);
+		library.get(10);
+		assertSame(first, library.get(1));
+		library.get(0);
+		statistics = library.getCacheStatistics();
+		assertEquals(12, statistics.getMisses());
+		assertEquals(12, statistics.getHits());
+		assertEquals(2, statistics.getEvictions());
+		assertEquals(10, statistics.getSize());
+
+		library.setCacheCapacity(0);
+		library.resetCacheStatistics();
+		library.get(1);
+		statistics = library.getCacheStatistics();
+		assertEquals(0, statistics.getSize());
+		assertEquals(1, statistics.getMisses());
+		assertEquals(0, statistics.getHits());
+	}
+
+	/**
+	 * Finds songs by location and title, reading only the songs found.
+	 */
+	@Test
+	public void testLookups() throws IOException, SAXException
+	{
+		File generated = folder.newFile("generated.xml");
+		new LibraryGenerator(13).generate(generated.getPath(), 500);
+		LazyLibrary library = new LazyLibrary(generated.getPath());
+		int row = library.size() / 2;
+		String location = library.getLocation(row);
+		assertEquals(row, library.indexOfLocation(location));
+		assertEquals(location, library.findByLocation(location).getLocation());
+		assertEquals(-1, library.indexOfLocation(location + "x"));
+		assertNull(library.findByLocation("file:///nowhere.mp3"));
+
+		library.resetCacheStatistics();
+		String title = library.getTitle(row);
+		List<Song> songs = library.findByTitle(title.toUpperCase());
+		assertFalse(songs.isEmpty());
+		for (Song song : songs)
+		{
+			assertTrue(song.getTitle().equalsIgnoreCase(title));
+		}
+		//Only the song found by location was already materialized.
+		CacheStatistics statistics = library.getCacheStatistics();
+		assertEquals(1, statistics.getHits());
+		assertEquals(songs.size() - 1, statistics.getMisses());
+
+		//Every song of my condensed library has the same location.
+		library = new LazyLibrary("testXMLlibrary");
+		assertEquals(0, library.indexOfLocation("location"));
+	}
+
+	/**
+	 * Rejects a library with an unterminated entry.
+	 */
+	@Test(expected = SAXException.class)
+	public void testMalformed() throws IOException, SAXException
+	{
+		File library = folder.newFile("malformed.xml");
+		Files.write(library.toPath(), ("<?xml version=\"1.0\"?>\n<rhythmdb>" +
+				"<entry type=\"song\"><title>A</title>").getBytes(
+						StandardCharsets.UTF_8));
+		new LazyLibrary(library.getPath());
+	}
+}
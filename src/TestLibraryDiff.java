@@ -0,0 +1,219 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+/**
+ *Tests that a {@link LibraryDiff} writes the same changes between two 
+ *library files as {@link LibraryChange} finds between their parsed songs.
+ */
+public class TestLibraryDiff 
+{
+	private static final Pattern SONG_ENTRY = Pattern.compile(
+			"<entry type=\"song\">.*?</entry>\n?", Pattern.DOTALL);
+	private static final Pattern LOCATION = Pattern.compile(
+			"\"location\":\"([^\"]*)\"");
+
+	//Holds the generated libraries.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<Song> parse(File library) throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.parseLibrary();
+		return parser.returnSongs();
+	}
+
+	/**
+	 * Writes a new version of a library without some of its songs, with 
+	 * copies of some songs at new locations, with the ratings and play 
+	 * counts of some songs changed, and with elements that are not kept in
+	 * songs changed in others.
+	 */
+	private File change(File library) throws Exception
+	{
+		String xml = new String(Files.readAllBytes(library.toPath()), 
+				StandardCharsets.UTF_8);
+		StringBuffer changed = new StringBuffer();
+		Matcher entry = SONG_ENTRY.matcher(xml);
+		for (int i = 0; entry.find(); i++)
+		{
+			String replacement = entry.group();
+			if (i % 40 == 0)
+			{
+				replacement = "";
+			}
+			else if (i % 45 == 0)
+			{
+				replacement += replacement.replace("</location>", 
+						".copy</location>");
+			}
+			else if (i % 30 == 7)
+			{
+				replacement = replacement.replaceAll(
+						"<last-seen>\\d+</last-seen>", 
+						"<last-seen>1400000000</last-seen>");
+			}
+			else if (i % 30 == 8)
+			{
+				replacement = replacement.replace("application/x-id3", 
+						"audio/mpeg");
+			}
+			entry.appendReplacement(changed, Matcher.quoteReplacement(
+					replacement));
+		}
+		entry.appendTail(changed);
+		File next = folder.newFile("next.xml");
+		Files.write(next.toPath(), changed.toString().getBytes(
+				StandardCharsets.UTF_8));
+
+		Map<String, SongUpdate> updates = new HashMap<String, SongUpdate>();
+		List<Song> songs = parse(next);
+		for (int i = 1; i < songs.size(); i += 97)
+		{
+			updates.put(songs.get(i).getLocation(), 
+					new SongUpdate().setRating(5).setPlayCount(1000));
+		}
+		new LibraryRewriter(next.getPath()).rewrite(updates);
+		return next;
+	}
+
+	/**
+	 * @return the locations of the songs in the lines of a kind of change
+	 */
+	private static List<String> locations(String changes, String change)
+	{
+		List<String> locations = new ArrayList<String>();
+		for (String line : changes.split("\n"))
+		{
+			if (line.startsWith("{\"change\":\"" + change + "\""))
+			{
+				Matcher location = LOCATION.matcher(line);
+				assertTrue(line, location.find());
+				locations.add(location.group(1));
+			}
+		}
+		return locations;
+	}
+
+	private static List<String> locations(List<Song> songs)
+	{
+		List<String> locations = new ArrayList<String>();
+		for (Song song : songs)
+		{
+			locations.add(song.getLocation());
+		}
+		return locations;
+	}
+
+	/**
+	 * Writes the added, modified and removed songs of a generated library, 
+	 * scanned on one thread and in chunks on several.
+	 */
+	@Test
+	public void testChanges() throws Exception
+	{
+		File library = folder.newFile("rhythmdb.xml");
+		new LibraryGenerator(11).generate(library.getPath(), 10000);
+		File next = change(library);
+		LibraryChange expected = LibraryChange.between(parse(library), 
+				parse(next));
+		assertFalse(expected.getAddedSongs().isEmpty());
+		assertFalse(expected.getRemovedSongs().isEmpty());
+		assertFalse(expected.getModifiedSongs().isEmpty());
+
+		for (int parallelism : new int[] {1, 4})
+		{
+			LibraryDiff diff = new LibraryDiff(library.getPath(), next.getPath());
+			diff.setParallelism(parallelism);
+			StringWriter out = new StringWriter();
+			long changes = diff.writeChanges(out);
+			String lines = out.toString();
+
+			assertEquals(expected.getAddedSongs().size(), diff.getAddedCount());
+			assertEquals(expected.getRemovedSongs().size(), 
+					diff.getRemovedCount());
+			assertEquals(expected.getModifiedSongs().size(), 
+					diff.getModifiedCount());
+			assertEquals(changes, lines.split("\n").length);
+			assertEquals(locations(expected.getAddedSongs()), 
+					locations(lines, "added"));
+			assertEquals(locations(expected.getRemovedSongs()), 
+					locations(lines, "removed"));
+			assertEquals(locations(expected.getModifiedSongs()), 
+					locations(lines, "modified"));
+			for (String line : lines.split("\n"))
+			{
+				if (line.startsWith("{\"change\":\"modified\""))
+				{
+					assertTrue(line, line.contains(
+							"\"play-count\":{\"from\":"));
+					assertTrue(line, line.endsWith(",\"to\":1000}}}"));
+				}
+				else
+				{
+					assertFalse(line, line.contains("\"changed\""));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes nothing for a library that did not change, and fails on one that
+	 * is not well-formed.
+	 */
+	@Test
+	public void testUnchangedAndMalformed() throws Exception
+	{
+		LibraryDiff diff = new LibraryDiff("testXMLlibrary", "testXMLlibrary");
+		StringWriter out = new StringWriter();
+		assertEquals(0, diff.writeChanges(out));
+		assertEquals("", out.toString());
+
+		File broken = folder.newFile("broken.xml");
+		Files.write(broken.toPath(), ("<?xml version=\"1.0\"?>\n<rhythmdb>" +
+				"<entry type=\"song\"><title>Cut off").getBytes(
+						StandardCharsets.UTF_8));
+		try
+		{
+			new LibraryDiff("testXMLlibrary", broken.getPath()).writeChanges(
+					new StringWriter());
+			fail("A library that is not well-formed was diffed");
+		}
+		catch (SAXException e)
+		{
+			//The library is rejected.
+		}
+	}
+}
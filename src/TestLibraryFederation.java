@@ -0,0 +1,107 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that a {@link LibraryFederation} merges the libraries that it can 
+ *parse and reports the ones that it cannot.
+ */
+public class TestLibraryFederation 
+{
+	//Holds the generated libraries.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Parses several generated libraries, a missing one and a broken one.
+	 */
+	@Test(timeout = 120000)
+	public void testParseLibraries() throws Exception
+	{
+		List<String> libraries = new ArrayList<String>();
+		for (int i = 0; i < 4; i++)
+		{
+			File library = folder.newFile("rhythmdb" + i + ".xml");
+			new LibraryGenerator(i).generate(library.getPath(), 1000 + 500 * i);
+			libraries.add(library.getPath());
+		}
+		String missing = new File(folder.getRoot(), "missing.xml").getPath();
+		File broken = folder.newFile("broken.xml");
+		Files.write(broken.toPath(), "<rhythmdb><entry type=\"song\">"
+				.getBytes(StandardCharsets.UTF_8));
+		List<String> locations = new ArrayList<String>(libraries);
+		locations.add(1, missing);
+		locations.add(broken.getPath());
+		locations.add(libraries.get(0));
+
+		for (ParseEngine engine : Arrays.asList(ParseEngine.SAX, 
+				ParseEngine.MAPPED))
+		{
+			LibraryFederation federation = new LibraryFederation();
+			federation.setParallelism(3);
+			federation.setParseEngine(engine);
+			FederatedLibrary federated = federation.parseLibraries(locations);
+
+			assertEquals(libraries, new ArrayList<String>(
+					federated.getLibraries()));
+			assertEquals(Arrays.asList(missing, broken.getPath()), 
+					new ArrayList<String>(federated.getFailures().keySet()));
+
+			List<Song> merged = new ArrayList<Song>();
+			for (String libLocation : libraries)
+			{
+				RhythmboxXMLLibraryParser parser = 
+						new RhythmboxXMLLibraryParser(libLocation);
+				parser.parseLibrary();
+				List<Song> songs = federated.getSongs(libLocation);
+				assertEquals(parser.returnSongs(), songs);
+				for (Song song : songs)
+				{
+					assertEquals(libLocation, federated.getLibrary(song));
+				}
+				merged.addAll(songs);
+			}
+			LibraryVersion version = federated.getMerged();
+			assertEquals(merged, version.getSongs());
+
+			Song last = merged.get(merged.size() - 1);
+			List<Song> found = version.find(SongField.LOCATION, 
+					last.getLocation());
+			assertTrue(found.contains(last));
+			assertEquals(libraries.get(libraries.size() - 1), 
+					federated.getLibrary(found.get(found.indexOf(last))));
+			assertNull(federated.getLibrary(new Song(last.getTitle(), 
+					last.getArtist(), last.getAlbum(), last.getLocation(), 
+					last.getGenre(), last.getTrackNumber(), last.getRating(), 
+					last.getDiscNumber(), last.getBitRate(), 
+					last.getAlbumArtist(), last.getComments(), 
+					last.getBPM())));
+		}
+	}
+}
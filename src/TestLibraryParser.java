@@ -19,7 +19,12 @@
 
 import static org.junit.Assert.*;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import org.junit.Before;
 import org.junit.Test;
 import org.xml.sax.SAXException;
@@ -83,6 +88,12 @@ public class TestLibraryParser
 		assertEquals("", theSong.getAlbumArtist());
 		assertEquals("", theSong.getComments());
 		assertEquals(0, theSong.getBPM());
+		assertEquals(391, theSong.getDuration());
+		assertEquals(15581962, theSong.getFileSize());
+		assertEquals(0, theSong.getPlayCount());
+		assertEquals(0, theSong.getLastPlayed());
+		assertEquals(1313717309, theSong.getFirstSeen());
+		assertEquals(1237256530, theSong.getModificationTime());
 	}
 
 	/**
@@ -131,4 +142,194 @@ public class TestLibraryParser
 	{
 		parser.searchForSongByTitle("Bohemian Rhapsody");
 	}
+
+	/**
+	 * Tests that {@link RhythmboxXMLLibraryParser#iterateLibrary()} returns 
+	 * the same songs, in the same order, as parsing the whole library.
+	 * @throws IOException 
+	 * @throws XMLStreamException 
+	 */
+	@Test
+	public void testIterateLibrary() throws IOException, XMLStreamException
+	{
+		ArrayList<Song> iteratedSongs = new ArrayList<Song>();
+		try (SongIterator songs = parser.iterateLibrary())
+		{
+			while (songs.hasNext())
+			{
+				iteratedSongs.add(songs.next());
+			}
+		}
+		assertEquals(parser.returnSongs(), iteratedSongs);
+	}
+
+	/**
+	 * Tests that {@link RhythmboxXMLLibraryParser#streamLibrary()} can be 
+	 * filtered like any other stream, and only reads as far as it needs to.
+	 * @throws IOException 
+	 * @throws XMLStreamException 
+	 */
+	@Test
+	public void testStreamLibrary() throws IOException, XMLStreamException
+	{
+		try (Stream<Song> songs = parser.streamLibrary())
+		{
+			List<String> rockTitles = songs.filter(
+					song -> song.getGenre().equals("Rock")).map(
+							Song::getTitle).collect(Collectors.toList());
+			assertEquals(2, rockTitles.size());
+			assertEquals("Hotel California", rockTitles.get(0));
+			assertEquals("Rope", rockTitles.get(1));
+		}
+		try (Stream<Song> songs = parser.streamLibrary())
+		{
+			assertEquals(parser.returnSongs().get(0), songs.findFirst().get());
+		}
+	}
+
+	/**
+	 * Tests the lookups by every indexed field, which ignore case except for
+	 * locations.
+	 */
+	@Test
+	public void testSearchForSongsByField()
+	{
+		assertEquals(1, parser.searchForSongsByTitle("hotel CALIFORNIA").size());
+		assertEquals(14, parser.searchForSongsByArtist("the beatles").size());
+		assertEquals(14, parser.searchForSongsByAlbum("Rubber Soul").size());
+		assertEquals(1, parser.searchForSongsByAlbumArtist("").size());
+		assertEquals(2, parser.searchForSongsByGenre("rock").size());
+		assertEquals(16, parser.searchForSongsByLocation("location").size());
+		assertEquals(0, parser.searchForSongsByLocation("LOCATION").size());
+		assertEquals(0, parser.searchForSongsByArtist("Queen").size());
+		assertEquals("Hotel California", 
+				parser.searchForSongsByGenre("Rock").get(0).getTitle());
+	}
+
+	/**
+	 * Tests that parsing a library again replaces its songs rather than 
+	 * adding them a second time, and that the indexes are rebuilt.
+	 * @throws IOException 
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 */
+	@Test
+	public void testParseAgain() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		assertEquals(1, parser.searchForSongsByTitle("Rope").size());
+		parser.parseLibrary();
+		assertEquals(16, parser.returnSongs().size());
+		assertEquals(1, parser.searchForSongsByTitle("Rope").size());
+		assertSame(parser.returnSongs().get(15), 
+				parser.searchForSongsByTitle("Rope").get(0));
+	}
+
+	/**
+	 * Tests that a {@link SongTable} holds the same songs as the array list of
+	 * songs while using less memory.
+	 * @throws IOException 
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 */
+	@Test
+	public void testSongTable() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		SongTable table = parser.parseLibraryIntoTable();
+		assertEquals(16, table.size());
+		assertEquals(parser.returnSongs(), table.asList());
+
+		SongTable.SongView view = table.get(0);
+		view.moveTo(14);
+		assertEquals("Hotel California", view.getTitle());
+		assertEquals(96, view.getBitRate());
+		assertEquals("Eagles", table.getArtist(14));
+		assertEquals(parser.returnSongs().get(14), view);
+		assertEquals(391, view.getDuration());
+		assertEquals(15581962, table.getFileSize(14));
+	}
+
+	/**
+	 * Tests that songs with the same artist, album and genre share their 
+	 * strings with every engine, and that the deduplication is reported.
+	 * @throws IOException 
+	 * @throws SAXException 
+	 * @throws ParserConfigurationException 
+	 */
+	@Test
+	public void testDedupStrings() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			parser.setParseEngine(engine);
+			parser.parseLibrary();
+			Song first = parser.returnSongs().get(0);
+			Song second = parser.returnSongs().get(1);
+			assertSame(first.getArtist(), second.getArtist());
+			assertSame(first.getAlbum(), second.getAlbum());
+			assertSame(first.getGenre(), second.getGenre());
+			assertNotSame(first.getLocation(), second.getLocation());
+
+			DedupStatistics statistics = parser.returnDedupStatistics();
+			assertTrue(engine.toString(), statistics.getHits() > 40);
+			assertTrue(statistics.getHitRatio() > 0.5);
+			assertTrue(statistics.getBytesSaved() > 0);
+		}
+
+		parser.setDedupCapacity(0);
+		parser.parseLibrary();
+		assertNull(parser.returnDedupStatistics());
+		assertNotSame(parser.returnSongs().get(0).getArtist(), 
+				parser.returnSongs().get(1).getArtist());
+	}
+
+	/**
+	 * Tests searching for partial and misspelled titles, artists and albums.
+	 */
+	@Test
+	public void testSearchSongs()
+	{
+		List<SearchResult> results = parser.searchSongs("norwegian wo", 5);
+		assertEquals("Norwegian Wood (This Bird Has Flown)", 
+				results.get(0).getSong().getTitle());
+
+		results = parser.searchSongs("WAIT", 3);
+		assertEquals("Wait", results.get(0).getSong().getTitle());
+		assertEquals(1.0, results.get(0).getScore(), 0.0);
+
+		results = parser.searchSongs("Micelle", 3);
+		assertEquals("Michelle", results.get(0).getSong().getTitle());
+		assertEquals(SongField.TITLE, results.get(0).getField());
+
+		results = parser.searchSongs("beatles", 20);
+		assertEquals(14, results.size());
+		assertEquals(SongField.ARTIST, results.get(0).getField());
+
+		results = parser.searchSongs("rubb", 3);
+		assertEquals(3, results.size());
+		assertEquals(SongField.ALBUM, results.get(0).getField());
+		assertEquals("If I Needed Someone", results.get(0).getSong().getTitle());
+
+		assertEquals("im looking through you", 
+				SongSearch.normalize("I'm  Looking Through You!"));
+		assertTrue(parser.searchSongs("zzzzzz", 5).isEmpty());
+	}
+
+	/**
+	 * Tests that songs with fields that are null can be compared and hashed.
+	 */
+	@Test
+	public void testNullFields()
+	{
+		Song song = new Song("Wait", null, "Rubber Soul", null, null, 1, 0, 1, 
+				0, null, null, 0);
+		Song same = new Song("Wait", null, "Rubber Soul", null, null, 1, 0, 1, 
+				0, null, null, 0);
+		assertEquals(song, same);
+		assertEquals(song.hashCode(), same.hashCode());
+		assertFalse(song.equals(parser.returnSongs().get(0)));
+		assertFalse(parser.returnSongs().get(0).equals(song));
+	}
 }
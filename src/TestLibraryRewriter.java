@@ -0,0 +1,271 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+/**
+ *Tests that a {@link LibraryRewriter} writes updates back into a library and
+ *leaves everything else as it was.
+ */
+public class TestLibraryRewriter 
+{
+	//Holds the generated libraries.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File generate(int entries) throws Exception
+	{
+		File library = folder.newFile("rhythmdb.xml");
+		new LibraryGenerator(7).generate(library.getPath(), entries);
+		return library;
+	}
+
+	private static List<Song> parse(File library, ParseEngine engine) throws 
+		Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.setParseEngine(engine);
+		parser.parseLibrary();
+		return parser.returnSongs();
+	}
+
+	/**
+	 * Checks that a library without matching updates is copied byte for 
+	 * byte.
+	 */
+	@Test
+	public void testUnchanged() throws Exception
+	{
+		File library = generate(2000);
+		byte[] original = Files.readAllBytes(library.toPath());
+		LibraryRewriter rewriter = new LibraryRewriter(library.getPath());
+
+		File copy = new File(folder.getRoot(), "copy.xml");
+		assertEquals(0, rewriter.rewrite(Collections.<String, SongUpdate>
+			emptyMap(), copy.getPath()));
+		assertArrayEquals(original, Files.readAllBytes(copy.toPath()));
+
+		assertEquals(0, rewriter.rewrite(Collections.singletonMap(
+				"file:///missing.mp3", new SongUpdate().setRating(5))));
+		assertArrayEquals(original, Files.readAllBytes(library.toPath()));
+	}
+
+	/**
+	 * Checks that an update without values leaves its entry as it was and 
+	 * does not stop the others from being written.
+	 */
+	@Test
+	public void testEmptyUpdate() throws Exception
+	{
+		File library = generate(2000);
+		byte[] original = Files.readAllBytes(library.toPath());
+		List<Song> before = parse(library, ParseEngine.SAX);
+		LibraryRewriter rewriter = new LibraryRewriter(library.getPath());
+
+		File copy = new File(folder.getRoot(), "copy.xml");
+		assertEquals(0, rewriter.rewrite(Collections.singletonMap(
+				before.get(0).getLocation(), new SongUpdate()), copy.getPath()));
+		assertArrayEquals(original, Files.readAllBytes(copy.toPath()));
+
+		Map<String, SongUpdate> updates = new HashMap<String, SongUpdate>();
+		updates.put(before.get(0).getLocation(), new SongUpdate());
+		updates.put(before.get(1).getLocation(), new SongUpdate().setRating(5));
+		assertEquals(1, rewriter.rewrite(updates));
+		List<Song> after = parse(library, ParseEngine.MAPPED);
+		assertEquals(before.get(0), after.get(0));
+		assertEquals(5, after.get(1).getRating());
+	}
+
+	/**
+	 * Updates songs that do and do not already have the updated fields, and
+	 * checks that both parse engines read the new values and that every 
+	 * other song is unchanged.
+	 */
+	@Test
+	public void testUpdates() throws Exception
+	{
+		File library = generate(2000);
+		List<Song> before = parse(library, ParseEngine.SAX);
+		Song rated = null;
+		Song unrated = null;
+		Song commented = null;
+		for (Song song : before)
+		{
+			if (rated == null && song.getRating() > 0 && song.getPlayCount() > 0)
+			{
+				rated = song;
+			}
+			else if (unrated == null && song.getRating() == 0 && 
+					song.getPlayCount() == 0 && song.getComments().isEmpty())
+			{
+				unrated = song;
+			}
+			else if (commented == null && !song.getComments().isEmpty())
+			{
+				commented = song;
+			}
+		}
+		assertNotNull(rated);
+		assertNotNull(unrated);
+		assertNotNull(commented);
+
+		Map<String, SongUpdate> updates = new HashMap<String, SongUpdate>();
+		updates.put(rated.getLocation(), new SongUpdate().setRating(1)
+				.setPlayCount(rated.getPlayCount() + 1).setLastPlayed(1400000000L));
+		updates.put(unrated.getLocation(), new SongUpdate().setRating(4)
+				.setPlayCount(3).setLastPlayed(1400000001L)
+				.setComment("Tom & Jerry <Live> \u00e9"));
+		updates.put(commented.getLocation(), new SongUpdate().setComment(""));
+		int updated = new LibraryRewriter(library.getPath()).rewrite(updates);
+		assertTrue(updated >= 3);
+
+		for (ParseEngine engine : Arrays.asList(ParseEngine.SAX, 
+				ParseEngine.MAPPED))
+		{
+			List<Song> after = parse(library, engine);
+			assertEquals(before.size(), after.size());
+			for (int i = 0; i < before.size(); i++)
+			{
+				Song old = before.get(i);
+				Song song = after.get(i);
+				if (!updates.containsKey(old.getLocation()))
+				{
+					assertEquals(old, song);
+					continue;
+				}
+				assertEquals(old.getTitle(), song.getTitle());
+				assertEquals(old.getBitRate(), song.getBitRate());
+				assertEquals(old.getFileSize(), song.getFileSize());
+				if (old.getLocation().equals(rated.getLocation()))
+				{
+					assertEquals(1, song.getRating());
+					assertEquals(rated.getPlayCount() + 1, song.getPlayCount());
+					assertEquals(1400000000L, song.getLastPlayed());
+					assertEquals(old.getComments(), song.getComments());
+				}
+				else if (old.getLocation().equals(unrated.getLocation()))
+				{
+					assertEquals(4, song.getRating());
+					assertEquals(3, song.getPlayCount());
+					assertEquals(1400000001L, song.getLastPlayed());
+					assertEquals("Tom & Jerry <Live> \u00e9", song.getComments());
+				}
+				else
+				{
+					assertEquals(old.getRating(), song.getRating());
+					assertEquals("", song.getComments());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that a library with an unterminated entry is left as it was.
+	 */
+	@Test
+	public void testMalformed() throws Exception
+	{
+		File library = folder.newFile("broken.xml");
+		byte[] original = ("<rhythmdb version=\"1.7\">\n  <entry type=\"song\">\n" +
+				"    <location>file:///a.mp3</location>\n")
+				.getBytes(StandardCharsets.UTF_8);
+		Files.write(library.toPath(), original);
+		try
+		{
+			new LibraryRewriter(library.getPath()).rewrite(
+					Collections.singletonMap("file:///a.mp3", 
+							new SongUpdate().setRating(3)));
+			fail("The library is malformed");
+		}
+		catch (SAXException e)
+		{
+		}
+		assertArrayEquals(original, Files.readAllBytes(library.toPath()));
+		assertEquals(1, folder.getRoot().list().length);
+	}
+
+	/**
+	 * Checks that entries are found when their tags have whitespace before 
+	 * they end, as the parse engines allow, and that only song entries are 
+	 * rewritten.
+	 */
+	@Test
+	public void testTagWhitespace() throws Exception
+	{
+		File library = folder.newFile("spaced.xml");
+		String radio = "  <entry type=\"iradio\">\n" +
+				"    <location>file:///a.mp3</location>\n" +
+				"    <rating>1</rating>\n" +
+				"  </entry>\n";
+		Files.write(library.toPath(), ("<rhythmdb version=\"1.7\">\n" + 
+				radio +
+				"  <entry type='song' >\n" +
+				"    <title>A</title >\n" +
+				"    <location >file:///a.mp3</location\n    >\n" +
+				"    <rating>2</rating >\n" +
+				"  </entry >\n" +
+				"  <entry type=\"song\">\n" +
+				"    <title>B</title>\n" +
+				"    <location>file:///b.mp3</location>\n" +
+				"  </entry\n  >\n" +
+				"</rhythmdb>\n").getBytes(StandardCharsets.UTF_8));
+		Map<String, SongUpdate> updates = new HashMap<String, SongUpdate>();
+		updates.put("file:///a.mp3", new SongUpdate().setRating(5));
+		updates.put("file:///b.mp3", new SongUpdate().setPlayCount(7));
+		assertEquals(2, new LibraryRewriter(library.getPath()).rewrite(updates));
+
+		String rewritten = new String(Files.readAllBytes(library.toPath()), 
+				StandardCharsets.UTF_8);
+		assertTrue(rewritten.contains(radio));
+		assertTrue(rewritten.contains("    <rating>5</rating>\n  </entry >"));
+		for (ParseEngine engine : Arrays.asList(ParseEngine.SAX, 
+				ParseEngine.MAPPED))
+		{
+			List<Song> songs = parse(library, engine);
+			assertEquals(2, songs.size());
+			assertEquals("A", songs.get(0).getTitle());
+			assertEquals(5, songs.get(0).getRating());
+			assertEquals("B", songs.get(1).getTitle());
+			assertEquals(7, songs.get(1).getPlayCount());
+		}
+	}
+
+	/**
+	 * Checks that a comment that XML cannot hold is rejected before it is 
+	 * written.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidComment()
+	{
+		new SongUpdate().setComment("Bell \u0007");
+	}
+}
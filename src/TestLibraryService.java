@@ -0,0 +1,208 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that a {@link LibraryService} only ever shows readers complete 
+ *versions of a library while it is reloaded over and over.
+ */
+public class TestLibraryService 
+{
+	//Holds the generated libraries.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Replaces a library with another file in one step, as Rhythmbox does.
+	 */
+	private void replace(File library, File source) throws Exception
+	{
+		File temp = folder.newFile();
+		Files.copy(source.toPath(), temp.toPath(), 
+				StandardCopyOption.REPLACE_EXISTING);
+		Files.move(temp.toPath(), library.toPath(), 
+				StandardCopyOption.REPLACE_EXISTING, 
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Checks that a version is complete: it has the songs of one of the two
+	 * libraries, and its indexes find them.
+	 */
+	private static void assertComplete(LibraryVersion version, int smallSize,
+			int largeSize)
+	{
+		List<Song> songs = version.getSongs();
+		int size = songs.size();
+		assertTrue(version + " is incomplete", 
+				size == smallSize || size == largeSize);
+		Song last = songs.get(size - 1);
+		assertTrue(version.find(SongField.LOCATION, last.getLocation())
+				.contains(last));
+		assertEquals(version.querySongs(SongQuery.atLeast(SongField.RATING, 0))
+				.size(), size);
+	}
+
+	/**
+	 * Reloads a library that alternates between two versions while several
+	 * threads read it.
+	 */
+	@Test(timeout = 120000)
+	public void testConcurrentReloads() throws Exception
+	{
+		File small = folder.newFile("small.xml");
+		new LibraryGenerator(1).generate(small.getPath(), 2000);
+		File large = folder.newFile("large.xml");
+		new LibraryGenerator(2).generate(large.getPath(), 3000);
+		File library = folder.newFile("rhythmdb.xml");
+		replace(library, small);
+		int smallSize = new LibraryVersion(0, parse(small)).size();
+		int largeSize = new LibraryVersion(0, parse(large)).size();
+		assertNotEquals(smallSize, largeSize);
+
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.setParseEngine(ParseEngine.MAPPED);
+		try (LibraryService service = new LibraryService(parser))
+		{
+			assertEquals(0, service.current().getNumber());
+			assertEquals(1, service.reload().get().getNumber());
+
+			AtomicBoolean running = new AtomicBoolean(true);
+			AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			AtomicLong reads = new AtomicLong();
+			int readerCount = 8;
+			CountDownLatch finished = new CountDownLatch(readerCount);
+			for (int i = 0; i < readerCount; i++)
+			{
+				Thread reader = new Thread(() ->
+				{
+					try
+					{
+						long lastNumber = 0;
+						while (running.get())
+						{
+							LibraryVersion version = service.current();
+							assertTrue(version.getNumber() >= lastNumber);
+							lastNumber = version.getNumber();
+							assertComplete(version, smallSize, largeSize);
+							reads.incrementAndGet();
+						}
+					}
+					catch (Throwable e)
+					{
+						failure.compareAndSet(null, e);
+					}
+					finally
+					{
+						finished.countDown();
+					}
+				});
+				reader.setDaemon(true);
+				reader.start();
+			}
+
+			int reloads = 20;
+			for (int i = 0; i < reloads; i++)
+			{
+				replace(library, i % 2 == 0 ? large : small);
+				LibraryVersion version = service.reload().get(30, 
+						TimeUnit.SECONDS);
+				assertEquals(i % 2 == 0 ? largeSize : smallSize, version.size());
+			}
+			running.set(false);
+			assertTrue(finished.await(30, TimeUnit.SECONDS));
+			if (failure.get() != null)
+			{
+				throw new AssertionError(failure.get());
+			}
+			assertTrue(reads.get() > readerCount);
+			assertEquals(reloads + 1, service.current().getNumber());
+
+			//Requests that are made before a reload starts share it.
+			CompletableFuture<LibraryVersion> first = service.reload();
+			CompletableFuture<LibraryVersion> second = service.reload();
+			first.get();
+			assertTrue(second.get().getNumber() >= first.get().getNumber());
+		}
+	}
+
+	/**
+	 * Tests that a failed reload keeps the current version.
+	 */
+	@Test
+	public void testFailedReload() throws Exception
+	{
+		File library = folder.newFile("rhythmdb.xml");
+		new LibraryGenerator(3).generate(library.getPath(), 500);
+		//The service is closed by the test itself, and again if it fails.
+		LibraryService service = new LibraryService(library.getPath());
+		try
+		{
+			LibraryVersion loaded = service.reload().get();
+			Files.write(library.toPath(), "<rhythmdb><entry".getBytes("UTF-8"));
+			try
+			{
+				service.reload().get();
+				fail("A broken library was loaded");
+			}
+			catch (ExecutionException e)
+			{
+				assertSame(loaded, service.current());
+			}
+			service.close();
+			try
+			{
+				service.reload();
+				fail("A closed service reloaded");
+			}
+			catch (IllegalStateException e)
+			{
+				assertSame(loaded, service.current());
+			}
+		}
+		finally
+		{
+			service.close();
+		}
+	}
+
+	private static List<Song> parse(File library) throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.parseLibrary();
+		return parser.returnSongs();
+	}
+}
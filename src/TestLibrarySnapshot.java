@@ -0,0 +1,163 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import javax.xml.parsers.ParserConfigurationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+/**
+ *Tests that a {@link RhythmboxXMLLibraryParser} loads its songs from a 
+ *snapshot only while the snapshot is valid.
+ */
+public class TestLibrarySnapshot 
+{
+	//Holds the library and its snapshots.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	//A copy of my condensed library that can be modified.
+	private File library;
+	//The directory that snapshots are saved in.
+	private File cacheDirectory;
+
+	@Before
+	public void before() throws IOException
+	{
+		library = folder.newFile("rhythmdb.xml");
+		Files.copy(new File("testXMLlibrary").toPath(), library.toPath(), 
+				StandardCopyOption.REPLACE_EXISTING);
+		cacheDirectory = new File(folder.getRoot(), "cache");
+	}
+
+	private RhythmboxXMLLibraryParser parse() throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		return parse(false);
+	}
+
+	private RhythmboxXMLLibraryParser parse(boolean checksummed) throws 
+		ParserConfigurationException, SAXException, IOException
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.setCacheDirectory(cacheDirectory);
+		parser.setSnapshotChecksummed(checksummed);
+		parser.parseLibrary();
+		return parser;
+	}
+
+	/**
+	 * Tests that the second parse is loaded from the snapshot that the first
+	 * one saved, and that the songs are the same.
+	 */
+	@Test
+	public void testSnapshotIsReused() throws ParserConfigurationException, 
+		SAXException, IOException, SongNotFoundException
+	{
+		RhythmboxXMLLibraryParser first = parse();
+		assertFalse(first.wasLoadedFromSnapshot());
+		RhythmboxXMLLibraryParser second = parse();
+		assertTrue(second.wasLoadedFromSnapshot());
+		assertEquals(first.returnSongs(), second.returnSongs());
+		assertEquals("location", second.searchForSongByTitle("Rope"));
+	}
+
+	/**
+	 * Tests that a snapshot is not used once the library has changed.
+	 */
+	@Test
+	public void testStaleSnapshot() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		parse();
+		String xml = new String(Files.readAllBytes(library.toPath()), "UTF-8");
+		Files.write(library.toPath(), xml.replace("<title>Rope</title>", 
+				"<title>Rope!</title>").getBytes("UTF-8"));
+		RhythmboxXMLLibraryParser parser = parse();
+		assertFalse(parser.wasLoadedFromSnapshot());
+		assertEquals("Rope!", parser.returnSongs().get(15).getTitle());
+		assertTrue(parse().wasLoadedFromSnapshot());
+	}
+
+	/**
+	 * Tests that a library that changed without changing its size or 
+	 * modification time is only noticed when snapshots are checksummed.
+	 */
+	@Test
+	public void testChecksummedSnapshot() throws ParserConfigurationException,
+		SAXException, IOException
+	{
+		assertFalse(parse(true).wasLoadedFromSnapshot());
+		assertTrue(parse(true).wasLoadedFromSnapshot());
+
+		FileTime modified = Files.getLastModifiedTime(library.toPath());
+		String xml = new String(Files.readAllBytes(library.toPath()), "UTF-8");
+		Files.write(library.toPath(), xml.replace("<title>Rope</title>", 
+				"<title>Ripe</title>").getBytes("UTF-8"));
+		Files.setLastModifiedTime(library.toPath(), modified);
+		RhythmboxXMLLibraryParser checksummed = parse(true);
+		assertFalse(checksummed.wasLoadedFromSnapshot());
+		assertEquals("Ripe", checksummed.returnSongs().get(15).getTitle());
+
+		//Without a checksum, only the attributes of the library are read.
+		assertFalse(parse().wasLoadedFromSnapshot());
+		Files.write(library.toPath(), xml.getBytes("UTF-8"));
+		Files.setLastModifiedTime(library.toPath(), modified);
+		RhythmboxXMLLibraryParser unchecked = parse();
+		assertTrue(unchecked.wasLoadedFromSnapshot());
+		assertEquals("Ripe", unchecked.returnSongs().get(15).getTitle());
+	}
+
+	/**
+	 * Tests that a corrupted or truncated snapshot is not used.
+	 */
+	@Test
+	public void testCorruptedSnapshot() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		RhythmboxXMLLibraryParser first = parse();
+		File snapshot = LibrarySnapshot.snapshotFile(cacheDirectory, 
+				library.getPath());
+		try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw"))
+		{
+			file.seek(file.length() / 2);
+			int b = file.read();
+			file.seek(file.length() / 2);
+			file.write(b ^ 0xff);
+		}
+		RhythmboxXMLLibraryParser second = parse();
+		assertFalse(second.wasLoadedFromSnapshot());
+		assertEquals(first.returnSongs(), second.returnSongs());
+
+		Files.write(snapshot.toPath(), new byte[] {0x52, 0x42}, 
+				StandardOpenOption.TRUNCATE_EXISTING);
+		assertFalse(parse().wasLoadedFromSnapshot());
+		assertTrue(parse().wasLoadedFromSnapshot());
+	}
+}
@@ -0,0 +1,152 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that {@link LibraryStatistics} computed while a library is parsed, 
+ *and computed in parallel afterwards, match statistics computed song by 
+ *song.
+ */
+public class TestLibraryStatistics 
+{
+	//Holds the generated library.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void assertSameStatistics(String message, 
+			SongStatistics expected, SongStatistics actual)
+	{
+		assertNotNull(message, actual);
+		assertEquals(message, expected.getTrackCount(), actual.getTrackCount());
+		assertEquals(message, expected.getAverageBitRate(), 
+				actual.getAverageBitRate(), 1e-9);
+		assertArrayEquals(message, expected.getRatingDistribution(), 
+				actual.getRatingDistribution());
+		assertEquals(message, expected.getTotalDuration(), 
+				actual.getTotalDuration());
+		assertEquals(message, expected.getTotalFileSize(), 
+				actual.getTotalFileSize());
+		assertEquals(message, expected.getTotalPlayCount(), 
+				actual.getTotalPlayCount());
+		assertEquals(message, expected.getLastPlayed(), actual.getLastPlayed());
+	}
+
+	private static void assertSameStatistics(LibraryStatistics expected, 
+			LibraryStatistics actual, SongField... groupBy)
+	{
+		assertSameStatistics("total", expected.getTotal(), actual.getTotal());
+		for (SongField field : groupBy)
+		{
+			Map<String, SongStatistics> groups = expected.getGroups(field);
+			assertEquals(groups.keySet(), actual.getGroups(field).keySet());
+			for (Map.Entry<String, SongStatistics> group : groups.entrySet())
+			{
+				assertSameStatistics(field + " " + group.getKey(), 
+						group.getValue(), actual.getGroup(field, group.getKey()));
+			}
+		}
+	}
+
+	/**
+	 * Tests the statistics of my own library against sums of its songs.
+	 */
+	@Test
+	public void testStatistics() throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		parser.parseLibrary();
+		List<Song> songs = parser.returnSongs();
+		LibraryStatistics statistics = parser.aggregateSongs(SongField.ARTIST);
+
+		long duration = 0;
+		long fileSize = 0;
+		long eaglesTracks = 0;
+		long[] ratings = new long[SongStatistics.MAX_RATING + 1];
+		for (Song song : songs)
+		{
+			ratings[song.getRating()]++;
+			duration += song.getDuration();
+			fileSize += song.getFileSize();
+			if (song.getArtist().equals("Eagles"))
+			{
+				eaglesTracks++;
+			}
+		}
+		SongStatistics total = statistics.getTotal();
+		assertEquals(16, total.getTrackCount());
+		assertEquals(duration, total.getTotalDuration());
+		assertEquals(fileSize, total.getTotalFileSize());
+		assertEquals(1, total.getTotalPlayCount());
+		assertEquals(1313717535, total.getLastPlayed());
+		assertArrayEquals(ratings, total.getRatingDistribution());
+		assertEquals(ratings[0], total.getRatingCount(0));
+		assertEquals(eaglesTracks, 
+				statistics.getGroup(SongField.ARTIST, "Eagles").getTrackCount());
+		assertNull(statistics.getGroup(SongField.ARTIST, "Nobody"));
+
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser streaming = 
+					new RhythmboxXMLLibraryParser("testXMLlibrary");
+			streaming.setParseEngine(engine);
+			assertSameStatistics(statistics, 
+					streaming.aggregateLibrary(SongField.ARTIST), SongField.ARTIST);
+			assertTrue(streaming.returnSongs().isEmpty());
+		}
+	}
+
+	/**
+	 * Tests that grouped statistics are the same however they are computed,
+	 * on a generated library that is large enough to be split between 
+	 * threads.
+	 */
+	@Test
+	public void testParallelStatistics() throws Exception
+	{
+		File library = folder.newFile("rhythmdb.xml");
+		new LibraryGenerator(13).generate(library.getPath(), 40000);
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.parseLibrary();
+		SongField[] groupBy = {SongField.ARTIST, SongField.ALBUM, 
+				SongField.GENRE};
+
+		LibraryStatistics expected = new LibraryStatistics(groupBy);
+		for (Song song : parser.returnSongs())
+		{
+			expected.add(song);
+		}
+		assertTrue(expected.getTotal().getTotalPlayCount() > 0);
+		assertTrue(expected.getGroups(SongField.GENRE).size() > 1);
+
+		assertSameStatistics(expected, LibraryStatistics.compute(
+				parser.returnSongs(), 4, groupBy), groupBy);
+		parser.setParseEngine(ParseEngine.PARALLEL);
+		assertSameStatistics(expected, parser.aggregateLibrary(groupBy), 
+				groupBy);
+	}
+}
@@ -0,0 +1,195 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.ParserConfigurationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+/**
+ *Tests that changes to a Rhythmbox library's file are applied to a parser's
+ *songs and indexes by {@link RhythmboxXMLLibraryParser#updateLibrary()} and 
+ *a {@link LibraryWatcher}.
+ */
+public class TestLibraryWatcher 
+{
+	//Holds the library.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	//The library that is changed by the tests.
+	private File library;
+	//The parser for the library.
+	private RhythmboxXMLLibraryParser parser;
+
+	@Before
+	public void before() throws IOException, ParserConfigurationException, 
+		SAXException
+	{
+		library = folder.newFile("rhythmdb.xml");
+		writeLibrary(entry("Wait", "a.mp3", 0), entry("Girl", "b.mp3", 0), 
+				entry("Michelle", "c.mp3", 0));
+		parser = new RhythmboxXMLLibraryParser(library.getPath());
+		parser.parseLibrary();
+	}
+
+	private static String entry(String title, String location, int rating)
+	{
+		return "<entry type=\"song\"><title>" + title + "</title><location>" + 
+				location + "</location><rating>" + rating + "</rating></entry>";
+	}
+
+	private void writeLibrary(String... entries) throws IOException
+	{
+		StringBuilder xml = new StringBuilder("<rhythmdb version=\"1.7\">\n");
+		for (String entry : entries)
+		{
+			xml.append(entry).append('\n');
+		}
+		xml.append("</rhythmdb>\n");
+		Files.write(library.toPath(), 
+				xml.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Tests that an update finds the added, removed and modified songs, 
+	 * keeps the songs that did not change, and updates the indexes.
+	 */
+	@Test
+	public void testUpdateLibrary() throws ParserConfigurationException, 
+		SAXException, IOException, SongNotFoundException
+	{
+		Song wait = parser.returnSongs().get(0);
+		assertEquals("c.mp3", parser.searchForSongByTitle("Michelle"));
+		List<Song> girls = parser.searchForSongsByTitle("Girl");
+		writeLibrary(entry("Wait", "a.mp3", 0), entry("Girl", "b.mp3", 5), 
+				entry("Nowhere Man", "d.mp3", 0));
+
+		LibraryChange change = parser.updateLibrary();
+		assertEquals(1, change.getAddedSongs().size());
+		assertEquals("Nowhere Man", change.getAddedSongs().get(0).getTitle());
+		assertEquals(1, change.getRemovedSongs().size());
+		assertEquals("Michelle", change.getRemovedSongs().get(0).getTitle());
+		assertEquals(1, change.getModifiedSongs().size());
+		assertEquals(5, change.getModifiedSongs().get(0).getRating());
+		assertEquals(0, change.getPreviousSongs().get(0).getRating());
+
+		List<Song> songs = parser.returnSongs();
+		assertEquals(3, songs.size());
+		assertSame(wait, songs.get(0));
+		assertEquals(5, songs.get(1).getRating());
+		assertEquals("d.mp3", parser.searchForSongByTitle("Nowhere Man"));
+		assertEquals(5, parser.searchForSongsByLocation("b.mp3").get(0).getRating());
+		assertTrue(parser.searchForSongsByTitle("Michelle").isEmpty());
+		assertTrue(parser.updateLibrary().isEmpty());
+
+		//Results that were returned before the update do not change.
+		assertEquals(1, girls.size());
+		assertEquals(0, girls.get(0).getRating());
+		assertEquals(5, parser.searchForSongsByTitle("Girl").get(0).getRating());
+	}
+
+	/**
+	 * Tests that a modified song keeps its place in the library and in the 
+	 * indexes, ahead of a later song with the same title.
+	 */
+	@Test
+	public void testUpdateKeepsOrder() throws Exception
+	{
+		writeLibrary(entry("Same", "file:///a.mp3", 0), 
+				entry("Same", "file:///b.mp3", 0));
+		parser.parseLibrary();
+		assertEquals("file:///a.mp3", parser.searchForSongByTitle("Same"));
+		writeLibrary(entry("Same", "file:///a.mp3", 4), 
+				entry("Same", "file:///b.mp3", 0));
+
+		assertEquals(1, parser.updateLibrary().getModifiedSongs().size());
+		assertEquals("file:///a.mp3", parser.searchForSongByTitle("Same"));
+		List<Song> same = parser.searchForSongsByTitle("Same");
+		assertEquals(parser.returnSongs(), same);
+		assertEquals(4, same.get(0).getRating());
+	}
+
+	/**
+	 * Tests that a watcher applies a change to the library's file and tells
+	 * its listeners.
+	 */
+	@Test
+	public void testWatcher() throws IOException, InterruptedException
+	{
+		BlockingQueue<LibraryChange> changes = 
+				new ArrayBlockingQueue<LibraryChange>(10);
+		try (LibraryWatcher watcher = new LibraryWatcher(parser))
+		{
+			watcher.setDebounceMillis(50);
+			watcher.addListener(changes::add);
+			watcher.start();
+			writeLibrary(entry("Wait", "a.mp3", 0), entry("Girl", "b.mp3", 0), 
+					entry("Michelle", "c.mp3", 0), entry("Rope", "e.mp3", 4));
+
+			LibraryChange change = changes.poll(10, TimeUnit.SECONDS);
+			assertNotNull(change);
+			assertEquals("Rope", change.getAddedSongs().get(0).getTitle());
+			assertEquals(4, parser.returnSongs().size());
+		}
+	}
+
+	/**
+	 * Tests that changes to other files in the library's directory do not 
+	 * keep postponing an update.
+	 */
+	@Test
+	public void testOtherFiles() throws Exception
+	{
+		BlockingQueue<LibraryChange> changes = 
+				new ArrayBlockingQueue<LibraryChange>(10);
+		File other = folder.newFile("other.txt");
+		try (LibraryWatcher watcher = new LibraryWatcher(parser))
+		{
+			watcher.setDebounceMillis(200);
+			watcher.addListener(changes::add);
+			watcher.start();
+			writeLibrary(entry("Wait", "a.mp3", 0), entry("Girl", "b.mp3", 0), 
+					entry("Michelle", "c.mp3", 0), entry("Rope", "e.mp3", 4));
+
+			//Another file is written more often than the debounce time until
+			//the change arrives or it is clear that it does not.
+			LibraryChange change = null;
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			for (int i = 0; change == null && System.nanoTime() < deadline; i++)
+			{
+				Files.write(other.toPath(), 
+						Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+				change = changes.poll(20, TimeUnit.MILLISECONDS);
+			}
+			assertNotNull(change);
+			assertEquals("Rope", change.getAddedSongs().get(0).getTitle());
+		}
+	}
+}
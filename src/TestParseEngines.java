@@ -0,0 +1,319 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import javax.xml.parsers.ParserConfigurationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+/**
+ *Tests that every {@link ParseEngine} reads the same {@link Song} objects 
+ *from a Rhythmbox XML library as the SAX engine does.
+ */
+public class TestParseEngines 
+{
+	//Holds the generated libraries.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Parses a library with an engine.
+	 */
+	private ArrayList<Song> parse(String libLocation, ParseEngine engine) 
+		throws ParserConfigurationException, SAXException, IOException
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(libLocation);
+		parser.setParseEngine(engine);
+		parser.parseLibrary();
+		return parser.returnSongs();
+	}
+
+	/**
+	 * Checks that every engine reads the same songs from a library as the SAX
+	 * engine.
+	 */
+	private void assertEnginesAgree(String libLocation, int expectedSongs) 
+		throws ParserConfigurationException, SAXException, IOException
+	{
+		ArrayList<Song> reference = parse(libLocation, ParseEngine.SAX);
+		assertEquals(expectedSongs, reference.size());
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			ArrayList<Song> songs = parse(libLocation, engine);
+			assertEquals(engine.toString(), reference.size(), songs.size());
+			for (int i = 0; i < songs.size(); i++)
+			{
+				assertEquals(engine + " song " + i, reference.get(i), 
+						songs.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Tests the engines on my condensed library.
+	 */
+	@Test
+	public void testTestLibrary() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		assertEnginesAgree("testXMLlibrary", 16);
+	}
+
+	/**
+	 * Tests the engines on a large generated library.
+	 */
+	@Test
+	public void testGeneratedLibrary() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		File library = folder.newFile("generated.xml");
+		new LibraryGenerator(42).generate(library.getPath(), 10000);
+		ArrayList<Song> songs = parse(library.getPath(), ParseEngine.SAX);
+		assertTrue(songs.size() > 7500);
+		assertEnginesAgree(library.getPath(), songs.size());
+
+		SongTable table = SongTable.of(songs);
+		assertEquals(songs, table.asList());
+		assertTrue(table.estimateMemoryUsage() < 
+				SongTable.estimateMemoryUsage(songs));
+	}
+
+	/**
+	 * Tests the engines on entries that use references, empty elements, 
+	 * comments, whitespace in end tags and Windows line endings.
+	 */
+	@Test
+	public void testUnusualMarkup() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		File library = folder.newFile("unusual.xml");
+		String xml = "<?xml version=\"1.0\"?>\r\n" +
+				"<rhythmdb version=\"1.7\">\r\n" +
+				"<!-- <entry type=\"song\"> -->\r\n" +
+				"<entry type=\"song\"><title>Rock &amp; Roll &#8212; " +
+				"&#x41;&lt;&gt;&quot;&apos;</title><artist/><rating></rating>" +
+				"<comment>two\r\nlines</comment ><extra a=\"/>\"><b/></extra>" +
+				"<beats-per-minute>0120</beats-per-minute></entry\r\n>\r\n" +
+				"<entry type='ignore'><title>Skipped</title></entry >\r\n" +
+				"<entry type=\"song\"/>\r\n" +
+				"<entry><title>No type</title></entry>\r\n" +
+				"</rhythmdb>\r\n";
+		Files.write(library.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		assertEnginesAgree(library.getPath(), 2);
+		Song song = parse(library.getPath(), ParseEngine.MAPPED).get(0);
+		assertEquals("Rock & Roll \u2014 A<>\"'", song.getTitle());
+		assertEquals("two\nlines", song.getComments());
+		assertEquals(120, song.getBPM());
+	}
+
+	/**
+	 * Tests that every engine rejects an end tag that only starts with the 
+	 * name of its element, in songs and in records.
+	 */
+	@Test
+	public void testMismatchedEndTags() throws Exception
+	{
+		String[] entries = {
+				"<entry type=\"song\"><title>x</titles></entry>",
+				"<entry type=\"iradio\"><title>x</titles></entry>"
+		};
+		for (String entry : entries)
+		{
+			File library = folder.newFile();
+			Files.write(library.toPath(), ("<?xml version=\"1.0\"?>\n" +
+					"<rhythmdb version=\"1.7\">\n" + entry + "\n</rhythmdb>\n")
+					.getBytes(StandardCharsets.UTF_8));
+			for (ParseEngine engine : ParseEngine.values())
+			{
+				RhythmboxXMLLibraryParser parser = 
+						new RhythmboxXMLLibraryParser(library.getPath());
+				parser.setParseEngine(engine);
+				parser.setRadioStationHandler(station -> {});
+				try
+				{
+					parser.parseLibrary();
+					fail(engine + " accepted " + entry);
+				}
+				catch (SAXException e)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests that the parallel engine keeps the songs in the order that they
+	 * appear in the library, whatever the number of threads.
+	 */
+	@Test
+	public void testParallelOrder() throws ParserConfigurationException, 
+		SAXException, IOException
+	{
+		File library = folder.newFile("parallel.xml");
+		new LibraryGenerator(7).generate(library.getPath(), 10000);
+		ArrayList<Song> reference = parse(library.getPath(), ParseEngine.SAX);
+		assertTrue(library.length() > 4 * ParallelLibraryScanner.MIN_CHUNK_SIZE);
+
+		for (int parallelism = 1; parallelism <= 8; parallelism *= 2)
+		{
+			RhythmboxXMLLibraryParser parser = 
+					new RhythmboxXMLLibraryParser(library.getPath());
+			parser.setParseEngine(ParseEngine.PARALLEL);
+			parser.setParallelism(parallelism);
+			parser.parseLibrary();
+			assertEquals("parallelism " + parallelism, reference, 
+					parser.returnSongs());
+		}
+
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		parser.setParseEngine(ParseEngine.PARALLEL);
+		parser.setParallelism(4);
+		parser.parseLibrary();
+		assertEquals("Hotel California", parser.returnSongs().get(14).getTitle());
+	}
+
+	/**
+	 * Tests that every engine, and the iterator, reads only the projected 
+	 * fields and leaves the others at their defaults.
+	 */
+	@Test
+	public void testProjection() throws Exception
+	{
+		File library = folder.newFile("projection.xml");
+		new LibraryGenerator(11).generate(library.getPath(), 2000);
+		ArrayList<Song> reference = parse(library.getPath(), ParseEngine.SAX);
+		EnumSet<SongField> projection = 
+				EnumSet.of(SongField.TITLE, SongField.LOCATION, SongField.RATING);
+
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser parser = 
+					new RhythmboxXMLLibraryParser(library.getPath());
+			parser.setParseEngine(engine);
+			parser.setProjection(projection);
+			parser.parseLibrary();
+			assertProjected(engine.toString(), reference, parser.returnSongs());
+
+			ArrayList<Song> iterated = new ArrayList<Song>();
+			try (SongIterator songs = parser.iterateLibrary())
+			{
+				songs.forEachRemaining(iterated::add);
+			}
+			assertProjected("iterator", reference, iterated);
+		}
+	}
+
+	/**
+	 * Checks that songs have the title, location and rating of the reference
+	 * songs, and defaults for everything else.
+	 */
+	private void assertProjected(String message, ArrayList<Song> reference, 
+			ArrayList<Song> songs)
+	{
+		assertEquals(message, reference.size(), songs.size());
+		for (int i = 0; i < songs.size(); i++)
+		{
+			Song expected = reference.get(i);
+			Song song = songs.get(i);
+			assertEquals(message, expected.getTitle(), song.getTitle());
+			assertEquals(message, expected.getLocation(), song.getLocation());
+			assertEquals(message, expected.getRating(), song.getRating());
+			assertEquals(message, "", song.getArtist());
+			assertEquals(message, "", song.getComments());
+			assertEquals(message, 0, song.getTrackNumber());
+			assertEquals(message, 0, song.getBitRate());
+		}
+	}
+
+	/**
+	 * Tests that every engine reads the same radio stations and podcast 
+	 * episodes when they are asked for, without changing the songs, and 
+	 * skips entries without a type.
+	 */
+	@Test
+	public void testEntryRecords() throws Exception
+	{
+		File library = folder.newFile("records.xml");
+		LibraryGenerator generator = new LibraryGenerator(17);
+		generator.setEntryFractions(0.3, 0.1, 0.05);
+		generator.generate(library.getPath(), 5000);
+		ArrayList<Song> reference = parse(library.getPath(), ParseEngine.SAX);
+		ArrayList<RadioStation> referenceStations = null;
+		ArrayList<PodcastEpisode> referenceEpisodes = null;
+
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser parser = 
+					new RhythmboxXMLLibraryParser(library.getPath());
+			parser.setParseEngine(engine);
+			parser.setParallelism(4);
+			ArrayList<RadioStation> stations = new ArrayList<RadioStation>();
+			ArrayList<PodcastEpisode> episodes = new ArrayList<PodcastEpisode>();
+			parser.setRadioStationHandler(stations::add);
+			parser.setPodcastEpisodeHandler(episodes::add);
+			parser.parseLibrary();
+			assertEquals(engine.toString(), reference, parser.returnSongs());
+			assertTrue(stations.size() > 100);
+			assertTrue(episodes.size() > 300);
+			if (referenceStations == null)
+			{
+				referenceStations = stations;
+				referenceEpisodes = episodes;
+			}
+			assertEquals(engine.toString(), referenceStations, stations);
+			assertEquals(engine.toString(), referenceEpisodes, episodes);
+		}
+		PodcastEpisode episode = referenceEpisodes.get(0);
+		assertTrue(episode.getDescription().startsWith("The "));
+		assertEquals(episode.getFeed(), episode.getDescription().substring(
+				episode.getDescription().indexOf('<') + 1, 
+				episode.getDescription().length() - 1));
+		assertTrue(episode.getPostTime() >= 1310000000);
+		assertTrue(episode.getDuration() >= 600);
+
+		ArrayList<RadioStation> stations = new ArrayList<RadioStation>();
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		parser.setRadioStationHandler(stations::add);
+		parser.parseLibrary();
+		assertEquals(1, stations.size());
+		assertEquals(new RadioStation("Absolute Classic Rock (Broadband)", 
+				"Rock'n'Roll", "http://network.absoluteradio.co.uk/core/audio/" +
+				"ogg/live.pls?service=vcbb", 0, 0, 0), stations.get(0));
+
+		File untyped = folder.newFile("untyped.xml");
+		Files.write(untyped.toPath(), ("<?xml version=\"1.0\"?>\n<rhythmdb>\n" +
+				"  <entry><title>Untyped</title></entry>\n" +
+				"  <entry type=\"song\"><title>Typed</title></entry>\n" +
+				"</rhythmdb>\n").getBytes(StandardCharsets.UTF_8));
+		assertEnginesAgree(untyped.getPath(), 1);
+		assertEquals("Typed", parse(untyped.getPath(), ParseEngine.SAX).get(0)
+				.getTitle());
+	}
+}
@@ -0,0 +1,142 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests the {@link ParseMetrics} that a {@link RhythmboxXMLLibraryParser} 
+ *collects while parsing.
+ */
+public class TestParseMetrics 
+{
+	//Holds the libraries that are written by the tests.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests that every engine counts the entries and songs in my condensed 
+	 * library.
+	 */
+	@Test
+	public void testCounts() throws Exception
+	{
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser parser = 
+					new RhythmboxXMLLibraryParser("testXMLlibrary");
+			parser.setParseEngine(engine);
+			ArrayList<ParseMetrics> parses = new ArrayList<ParseMetrics>();
+			parser.addMetricsListener(parses::add);
+			parser.parseLibrary();
+
+			assertEquals(1, parses.size());
+			ParseMetrics metrics = parses.get(0);
+			assertSame(metrics, parser.returnParseMetrics());
+			assertEquals(engine, metrics.getParseEngine());
+			assertEquals(new File("testXMLlibrary").length(), 
+					metrics.getBytesRead());
+			assertEquals(16, metrics.getSongEntries());
+			assertEquals(1, metrics.getRadioEntries());
+			assertEquals(0, metrics.getPodcastEntries());
+			assertEquals(17, metrics.getEntries());
+			assertEquals(16, metrics.getSongsEmitted());
+			assertEquals(0, metrics.getNumericFieldFailures());
+			assertTrue(metrics.getTotalNanos() >= metrics.getIoNanos() + 
+					metrics.getSongConstructionNanos() + 
+					metrics.getDeliveryNanos());
+			assertTrue(metrics.getEntriesPerSecond() > 0);
+		}
+	}
+
+	/**
+	 * Tests that numeric fields that are not numbers are counted and left at
+	 * 0 instead of failing the parse, and that nothing is collected without
+	 * listeners.
+	 */
+	@Test
+	public void testNumericFieldFailures() throws Exception
+	{
+		File library = folder.newFile("rhythmdb.xml");
+		Files.write(library.toPath(), ("<?xml version=\"1.0\"?>\n" +
+				"<rhythmdb version=\"1.7\">\n" +
+				"<entry type=\"song\"><title>A</title><rating>high</rating>" +
+				"<track-number>3</track-number></entry>\n" +
+				"<entry type=\"ignore\"><location>file:///b</location></entry>\n" +
+				"<entry type=\"podcast-post\"><title>C</title></entry>\n" +
+				"</rhythmdb>\n").getBytes(StandardCharsets.UTF_8));
+
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser parser = 
+					new RhythmboxXMLLibraryParser(library.getPath());
+			parser.setParseEngine(engine);
+			parser.parseLibrary();
+			assertNull(parser.returnParseMetrics());
+			assertEquals(0, parser.returnSongs().get(0).getRating());
+
+			parser.addMetricsListener(metrics -> {});
+			parser.parseLibrary();
+			ParseMetrics metrics = parser.returnParseMetrics();
+			assertEquals(engine.toString(), 1, metrics.getNumericFieldFailures());
+			assertEquals(1, metrics.getIgnoreEntries());
+			assertEquals(1, metrics.getPodcastEntries());
+			assertEquals(3, parser.returnSongs().get(0).getTrackNumber());
+		}
+	}
+
+	/**
+	 * Tests that the MBean shows the last parse.
+	 */
+	@Test
+	public void testMBean() throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		ObjectName name = parser.registerMBean();
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(0L, server.getAttribute(name, "ParseCount"));
+			parser.parseLibrary();
+			parser.parseLibrary();
+			assertEquals(2L, server.getAttribute(name, "ParseCount"));
+			CompositeData lastParse = 
+					(CompositeData) server.getAttribute(name, "LastParse");
+			assertEquals(16L, lastParse.get("songsEmitted"));
+			assertEquals("SAX", lastParse.get("parseEngine"));
+		}
+		finally
+		{
+			parser.unregisterMBean();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer()
+				.isRegistered(name));
+	}
+}
@@ -0,0 +1,169 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ *Tests the formats that a {@link SongExporter} writes, and exporting a 
+ *library while it is parsed.
+ */
+public class TestSongExporter 
+{
+	//A song whose text needs escaping in every format.
+	private static final Song AWKWARD = new Song("Say \"Hi\", Bye", 
+			"Tab\tArtist", "Back\\slash", "file:///a%20b.mp3", "Rock", 3, 4, 1,
+			192, "", "two\nlines", 120, 245, 5000000000L, 7, 1700000000L, 
+			1600000000L, 1500000000L);
+
+	private String export(ExportFormat format, Song... songs) throws Exception
+	{
+		StringWriter out = new StringWriter();
+		try (SongExporter exporter = new SongExporter(out, format))
+		{
+			exporter.exportAll(Arrays.asList(songs));
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Tests the escaping of each format.
+	 */
+	@Test
+	public void testFormats() throws Exception
+	{
+		assertEquals("title,artist,album,location,genre,track-number,rating," +
+				"disc-number,bitrate,album-artist,comment,beats-per-minute,duration," +
+				"file-size,play-count,last-played,first-seen,mtime\r\n" +
+				"\"Say \"\"Hi\"\", Bye\",Tab\tArtist,Back\\slash," +
+				"file:///a%20b.mp3,Rock,3,4,1,192,,\"two\nlines\",120,245," +
+				"5000000000,7,1700000000,1600000000,1500000000\r\n",
+				export(ExportFormat.CSV, AWKWARD));
+		assertEquals("title\tartist\talbum\tlocation\tgenre\ttrack-number\t" +
+				"rating\tdisc-number\tbitrate\talbum-artist\tcomment\t" +
+				"beats-per-minute\tduration\tfile-size\tplay-count\t" +
+				"last-played\tfirst-seen\tmtime\n" +
+				"Say \"Hi\", Bye\tTab\\tArtist\tBack\\\\slash\t" +
+				"file:///a%20b.mp3\tRock\t3\t4\t1\t192\t\ttwo\\nlines\t120\t" +
+				"245\t5000000000\t7\t1700000000\t1600000000\t1500000000\n",
+				export(ExportFormat.TSV, AWKWARD));
+		assertEquals("{\"title\":\"Say \\\"Hi\\\", Bye\",\"artist\":" +
+				"\"Tab\\tArtist\",\"album\":\"Back\\\\slash\",\"location\":" +
+				"\"file:///a%20b.mp3\",\"genre\":\"Rock\",\"track-number\":3," +
+				"\"rating\":4,\"disc-number\":1,\"bitrate\":192," +
+				"\"album-artist\":\"\",\"comment\":\"two\\nlines\"," +
+				"\"beats-per-minute\":120,\"duration\":245," +
+				"\"file-size\":5000000000,\"play-count\":7," +
+				"\"last-played\":1700000000,\"first-seen\":1600000000," +
+				"\"mtime\":1500000000}\n", 
+				export(ExportFormat.JSON_LINES, AWKWARD));
+		assertEquals("{\"title\":\"\\u0001\",\"artist\":\"\",\"album\":\"\"," +
+				"\"location\":\"\",\"genre\":\"\",\"track-number\":-7," +
+				"\"rating\":0,\"disc-number\":0,\"bitrate\":2147483647," +
+				"\"album-artist\":\"\",\"comment\":\"\",\"beats-per-minute\":0," +
+				"\"duration\":0,\"file-size\":0,\"play-count\":0," +
+				"\"last-played\":0,\"first-seen\":0,\"mtime\":0}\n",
+				export(ExportFormat.JSON_LINES, new Song("\u0001", "", "", "", 
+						"", -7, 0, 0, Integer.MAX_VALUE, "", "", 0)));
+	}
+
+	/**
+	 * Tests that printLibrary() prints the same text as printing each field 
+	 * of each song.
+	 */
+	@Test
+	public void testPrintLibrary() throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		parser.parseLibrary();
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		PrintStream expectedOut = new PrintStream(expected, true, "UTF-8");
+		for (Song song : parser.returnSongs())
+		{
+			expectedOut.println("Song title: " + song.getTitle());
+			expectedOut.println("Song artist: " + song.getArtist());
+			expectedOut.println("Song album: " + song.getAlbum());
+			expectedOut.println("Song location: " + song.getLocation());
+			expectedOut.println("Song genre: " + song.getGenre());
+			expectedOut.println("Song track number: " + song.getTrackNumber());
+			expectedOut.println("Song rating: " + song.getRating());
+			expectedOut.println("Song disc number: " + song.getDiscNumber());
+			expectedOut.println("Song bit rate: " + song.getBitRate());
+			expectedOut.println("Song album artist: " + song.getAlbumArtist());
+			expectedOut.println("Song comments: " + song.getComments());
+			expectedOut.println("Song BPM: " + song.getBPM());
+			expectedOut.println("Song duration: " + song.getDuration());
+			expectedOut.println("Song file size: " + song.getFileSize());
+			expectedOut.println("Song play count: " + song.getPlayCount());
+			expectedOut.println("Song last played: " + song.getLastPlayed());
+			expectedOut.println("Song first seen: " + song.getFirstSeen());
+			expectedOut.println("Song modification time: " + 
+					song.getModificationTime());
+			expectedOut.println();
+		}
+
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		PrintStream systemOut = System.out;
+		System.setOut(new PrintStream(printed, true, "UTF-8"));
+		try
+		{
+			parser.printLibrary();
+		}
+		finally
+		{
+			System.setOut(systemOut);
+		}
+		assertEquals(expected.toString("UTF-8"), printed.toString("UTF-8"));
+	}
+
+	/**
+	 * Tests that every engine exports the same text while parsing as is 
+	 * exported from the parsed songs.
+	 */
+	@Test
+	public void testParseLibraryTo() throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		parser.parseLibrary();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		parser.exportLibrary(expected, ExportFormat.JSON_LINES);
+
+		for (ParseEngine engine : ParseEngine.values())
+		{
+			RhythmboxXMLLibraryParser streaming = 
+					new RhythmboxXMLLibraryParser("testXMLlibrary");
+			streaming.setParseEngine(engine);
+			ByteArrayOutputStream exported = new ByteArrayOutputStream();
+			assertEquals(16, streaming.parseLibraryTo(exported, 
+					ExportFormat.JSON_LINES));
+			assertEquals(engine.toString(), 
+					new String(expected.toByteArray(), StandardCharsets.UTF_8), 
+					new String(exported.toByteArray(), StandardCharsets.UTF_8));
+			assertTrue(streaming.returnSongs().isEmpty());
+		}
+	}
+}
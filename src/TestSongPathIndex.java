@@ -0,0 +1,131 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that a {@link SongPathIndex} decodes locations and finds songs by the
+ *paths of their files.
+ */
+public class TestSongPathIndex 
+{
+	//Holds the files of the songs.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Song song(String location)
+	{
+		return new Song("Title", "Artist", "Album", location, "Rock", 1, 0, 1,
+				320, "Artist", "", 0);
+	}
+
+	/**
+	 * Decodes local file URIs and rejects other locations.
+	 */
+	@Test
+	public void testDecode()
+	{
+		assertEquals("/mnt/music/Sigur R\u00f3s/Takk.mp3", SongPathIndex.decode(
+				"file:///mnt/music/Sigur%20R%C3%B3s/Takk.mp3"));
+		assertEquals("/mnt/music/a b.mp3", 
+				SongPathIndex.decode("file://localhost/mnt/music/a%20b.mp3"));
+		assertEquals("/mnt/music/100%.mp3", 
+				SongPathIndex.decode("file:///mnt/music/100%.mp3"));
+		assertEquals("/mnt/music/Caf\u00e9 50%/1.mp3", 
+				SongPathIndex.decode("file:///mnt/music/Caf\u00e9%2050%/1.mp3"));
+		assertNull(SongPathIndex.decode("http://radio.example.com/1.pls"));
+		assertNull(SongPathIndex.decode("file://server/share/1.mp3"));
+	}
+
+	/**
+	 * Finds songs by file, directory and subtree.
+	 */
+	@Test
+	public void testQueries()
+	{
+		Song help = song("file:///mnt/music/The%20Beatles/Help/01%20Help.mp3");
+		Song yesterday = song(
+				"file:///mnt/music/The%20Beatles/Help/13%20Yesterday.mp3");
+		Song single = song("file:///mnt/music/The%20Beatles/Single.mp3");
+		Song bonus = song(
+				"file:///mnt/music/The%20Beatles/Help/Bonus/01%20Demo.mp3");
+		Song other = song("file:///mnt/music/The%20Beatles%20Tribute/1.mp3");
+		Song helpAgain = song(help.getLocation());
+		Song radio = song("http://radio.example.com/1.pls");
+		List<Song> songs = Arrays.asList(yesterday, help, single, bonus, other,
+				helpAgain, radio);
+		SongPathIndex index = new SongPathIndex(songs);
+
+		assertEquals(6, index.size());
+		assertEquals(Arrays.asList(help, helpAgain), 
+				index.find("/mnt/music/The Beatles/Help/01 Help.mp3"));
+		assertEquals(Arrays.asList(help, helpAgain), index.find(help.getLocation()));
+		assertTrue(index.contains("/mnt/music/The Beatles/Single.mp3"));
+		assertFalse(index.contains("/mnt/music/The Beatles/Help"));
+
+		assertEquals(Arrays.asList(help, helpAgain, yesterday), 
+				index.findIn("/mnt/music/The Beatles/Help"));
+		assertEquals(3, index.countIn("/mnt/music/The Beatles/Help/"));
+		assertEquals(Arrays.asList(single), 
+				index.findIn("file:///mnt/music/The%20Beatles"));
+		assertEquals(0, index.countIn("/mnt/music"));
+
+		assertEquals(Arrays.asList(single, help, helpAgain, yesterday, bonus), 
+				index.findUnder("/mnt/music/The Beatles"));
+		assertEquals(5, index.countUnder("/mnt/music/The Beatles/"));
+		assertEquals(6, index.countUnder("/"));
+		assertEquals(Collections.emptyList(), index.findUnder("/mnt/video"));
+	}
+
+	/**
+	 * Finds the songs whose files are missing.
+	 */
+	@Test
+	public void testFindMissing() throws Exception
+	{
+		List<Song> songs = new ArrayList<Song>();
+		List<Song> missing = new ArrayList<Song>();
+		for (int i = 0; i < 1000; i++)
+		{
+			File file = new File(folder.getRoot(), "song " + i + ".mp3");
+			if (i % 7 != 0)
+			{
+				assertTrue(file.createNewFile());
+			}
+			Song song = song("file://" + file.getPath().replace(" ", "%20"));
+			songs.add(song);
+			if (i % 7 == 0)
+			{
+				missing.add(song);
+			}
+		}
+		songs.add(song("http://radio.example.com/1.pls"));
+		SongPathIndex index = new SongPathIndex(songs);
+		assertEquals(missing, index.findMissing(8));
+		assertEquals(missing, index.findMissing(1));
+	}
+}
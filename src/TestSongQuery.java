@@ -0,0 +1,153 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that a {@link SongQueryEngine} finds the same songs as checking every
+ *song against a {@link SongQuery}.
+ */
+public class TestSongQuery 
+{
+	//Holds the generated library.
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<Song> songs;
+	private static SongQueryEngine engine;
+
+	@BeforeClass
+	public static void parseLibrary() throws Exception
+	{
+		File library = folder.newFile("rhythmdb.xml");
+		LibraryGenerator generator = new LibraryGenerator(5);
+		generator.setArtistCount(50);
+		generator.generate(library.getPath(), 20000);
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.parseLibrary();
+		songs = parser.returnSongs();
+		engine = parser.returnQueryEngine();
+	}
+
+	/**
+	 * Checks that the engine finds exactly the songs that match a query.
+	 */
+	private void assertFinds(SongQuery query)
+	{
+		List<Song> expected = new ArrayList<Song>();
+		for (Song song : songs)
+		{
+			if (query.matches(song))
+			{
+				expected.add(song);
+			}
+		}
+		assertEquals(query.toString(), expected, engine.find(query));
+		assertEquals(query.toString(), expected.size(), engine.count(query));
+	}
+
+	/**
+	 * Tests each kind of condition on its own.
+	 */
+	@Test
+	public void testPredicates()
+	{
+		String genre = songs.get(0).getGenre();
+		String artist = songs.get(1).getArtist();
+		assertFinds(SongQuery.eq(SongField.GENRE, genre));
+		assertFinds(SongQuery.eq(SongField.GENRE, genre.toUpperCase()));
+		assertFinds(SongQuery.eq(SongField.ARTIST, artist));
+		assertFinds(SongQuery.eq(SongField.GENRE, "No Such Genre"));
+		assertFinds(SongQuery.eq(SongField.TITLE, songs.get(2).getTitle()));
+		assertFinds(SongQuery.eq(SongField.LOCATION, songs.get(3).getLocation()));
+		assertFinds(SongQuery.eq(SongField.RATING, 5));
+		assertFinds(SongQuery.atLeast(SongField.RATING, 4));
+		assertFinds(SongQuery.atLeast(SongField.BIT_RATE, 256));
+		assertFinds(SongQuery.atMost(SongField.BPM, 100));
+		assertFinds(SongQuery.range(SongField.TRACK_NUMBER, 3, 7));
+		assertFinds(SongQuery.range(SongField.TRACK_NUMBER, 7, 3));
+		assertFinds(SongQuery.eq(SongField.DISC_NUMBER, 0));
+	}
+
+	/**
+	 * Tests conditions combined with AND, OR and NOT.
+	 */
+	@Test
+	public void testCombinations()
+	{
+		SongQuery rock = SongQuery.eq(SongField.GENRE, songs.get(0).getGenre());
+		SongQuery rated = SongQuery.atLeast(SongField.RATING, 4);
+		SongQuery highBitRate = SongQuery.atLeast(SongField.BIT_RATE, 256);
+		SongQuery artist = SongQuery.eq(SongField.ARTIST, songs.get(1).getArtist());
+		SongQuery title = SongQuery.eq(SongField.TITLE, songs.get(2).getTitle());
+
+		assertFinds(SongQuery.and(rock, rated, highBitRate));
+		assertFinds(SongQuery.and(rated, title));
+		assertFinds(SongQuery.and(highBitRate, SongQuery.not(rock)));
+		assertFinds(SongQuery.or(rock, artist, title));
+		assertFinds(SongQuery.and(SongQuery.or(rock, artist), 
+				SongQuery.not(SongQuery.and(rated, highBitRate))));
+		assertFinds(SongQuery.and());
+		assertFinds(SongQuery.or());
+	}
+
+	/**
+	 * Tests that the most selective index is used first, and that conditions
+	 * without an index are checked last.
+	 */
+	@Test
+	public void testPlan()
+	{
+		String artist = songs.get(1).getArtist();
+		SongQuery query = SongQuery.and(SongQuery.eq(SongField.TITLE, "Anything"),
+				SongQuery.atLeast(SongField.BIT_RATE, 0),
+				SongQuery.eq(SongField.ARTIST, artist));
+		String plan = engine.explain(query);
+		assertTrue(plan, plan.startsWith("(artist = "));
+		int bitRate = plan.indexOf("bitrate >= 0 [sorted");
+		int title = plan.indexOf("title = \"anything\" [scan]");
+		assertTrue(plan, bitRate >= 0);
+		assertTrue(plan, title >= 0);
+		assertTrue(plan, bitRate < title);
+	}
+
+	/**
+	 * Tests querying a parsed library through the parser.
+	 */
+	@Test
+	public void testQuerySongs() throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		parser.parseLibrary();
+		List<Song> found = parser.querySongs(SongQuery.and(
+				SongQuery.eq(SongField.ARTIST, "eagles"), 
+				SongQuery.atLeast(SongField.BIT_RATE, 0)));
+		assertEquals(parser.searchForSongsByArtist("Eagles"), found);
+		assertFalse(found.isEmpty());
+	}
+}
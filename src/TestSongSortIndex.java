@@ -0,0 +1,154 @@
+//Copyright (c) 2011 Juan Cortez
+//
+//Permission is hereby granted, free of charge, to any person obtaining a copy
+//of this software and associated documentation files (the "Software"), to deal
+//in the Software without restriction, including without limitation the rights 
+//to use, copy, modify, merge, publish, distribute, sublicense, and/or sell 
+//copies of the Software, and to permit persons to whom the Software is furnished
+//to do so, subject to the following conditions:
+//
+//The above copyright notice and this permission notice shall be included in all 
+//copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+//IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+//FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR 
+//COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER 
+//IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN 
+//CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+import static org.junit.Assert.*;
+import java.io.File;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *Tests that a {@link SongSortIndex} lists songs in the same orders as 
+ *sorting them with a Collator, and serves pages of them.
+ */
+public class TestSongSortIndex 
+{
+	//Holds the generated library.
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Song song(String title, String artist, String album, 
+			int discNum, int trackNum)
+	{
+		return new Song(title, artist, album, "file:///" + title, "Rock", 
+				trackNum, 0, discNum, 320, artist, "", 0);
+	}
+
+	/**
+	 * @return a comparator that sorts songs as an order should
+	 */
+	private static Comparator<Song> comparator(SongOrder order, Locale locale)
+	{
+		Collator collator = Collator.getInstance(locale);
+		collator.setStrength(Collator.SECONDARY);
+		Comparator<Song> comparator = (a, b) -> 0;
+		for (SongField field : order.getFields())
+		{
+			comparator = comparator.thenComparing(field.isNumeric() ? 
+					Comparator.comparingLong(field::getNumber) : 
+					Comparator.comparing(field::getText, collator));
+		}
+		return comparator;
+	}
+
+	/**
+	 * Ignores case, sorts numbers as numbers and keeps equal songs in 
+	 * library order.
+	 */
+	@Test
+	public void testOrders()
+	{
+		Song help = song("Help", "the Beatles", "Help", 1, 1);
+		Song yesterday = song("Yesterday", "The Beatles", "help", 1, 13);
+		Song ticket = song("Ticket To Ride", "The Beatles", "Help", 1, 7);
+		Song waterloo = song("Waterloo", "ABBA", "Waterloo", 1, 1);
+		Song bonus = song("Bonus", "ABBA", "Waterloo", 2, 1);
+		Song sos = song("SOS", "abba", "ABBA", 1, 10);
+		Song again = song("Help", "the Beatles", "Help", 1, 1);
+		List<Song> songs = Arrays.asList(help, yesterday, ticket, waterloo, 
+				bonus, sos, again);
+		SongSortIndex index = new SongSortIndex(songs, Locale.ENGLISH, 1);
+		assertEquals(Arrays.asList(sos, waterloo, bonus, help, again, ticket, 
+				yesterday), index.sorted(SongOrder.ARTIST));
+		assertEquals(Arrays.asList(sos, help, again, ticket, yesterday, 
+				waterloo, bonus), index.sorted(SongOrder.ALBUM));
+		assertEquals(Arrays.asList(bonus, help, again, sos, ticket, waterloo, 
+				yesterday), index.sorted(SongOrder.TITLE));
+		assertEquals(3, index.rowAt(SongOrder.ARTIST, 1));
+	}
+
+	/**
+	 * Sorts a generated library in every order as a Collator does, on one 
+	 * thread and on several.
+	 */
+	@Test
+	public void testGeneratedLibrary() throws Exception
+	{
+		File library = folder.newFile("generated.xml");
+		new LibraryGenerator(3).generate(library.getPath(), 12000);
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser(library.getPath());
+		parser.parseLibrary();
+		List<Song> songs = parser.returnSongs();
+		assertTrue(songs.size() > 8192);
+		for (int parallelism : new int[] {1, 4})
+		{
+			SongSortIndex index = new SongSortIndex(songs, Locale.ENGLISH, 
+					parallelism);
+			for (SongOrder order : SongOrder.values())
+			{
+				List<Song> expected = new ArrayList<Song>(songs);
+				expected.sort(comparator(order, Locale.ENGLISH));
+				List<Song> sorted = index.sorted(order);
+				assertEquals(expected.size(), sorted.size());
+				for (int i = 0; i < expected.size(); i++)
+				{
+					assertSame(order + " " + i, expected.get(i), sorted.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serves pages of a sorted order, and sorts the songs again after the 
+	 * library is parsed again.
+	 */
+	@Test
+	public void testPages() throws Exception
+	{
+		RhythmboxXMLLibraryParser parser = 
+				new RhythmboxXMLLibraryParser("testXMLlibrary");
+		parser.parseLibrary();
+		SongSortIndex index = parser.returnSortIndex();
+		List<Song> sorted = index.sorted(SongOrder.TITLE);
+		assertEquals(sorted.subList(5, 10), index.page(SongOrder.TITLE, 5, 5));
+		assertEquals(sorted.subList(12, sorted.size()), 
+				index.page(SongOrder.TITLE, 12, 100));
+		assertTrue(index.page(SongOrder.TITLE, sorted.size() + 1, 5).isEmpty());
+		assertEquals(sorted, index.page(SongOrder.TITLE, 0, Integer.MAX_VALUE));
+		try
+		{
+			index.page(SongOrder.TITLE, -1, 5);
+			fail("A negative offset was accepted");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//The offset is rejected.
+		}
+
+		assertSame(index, parser.returnSortIndex());
+		parser.parseLibrary();
+		assertNotSame(index, parser.returnSortIndex());
+	}
+}